@@ -0,0 +1,212 @@
+/*
+ * Copyright (c) 2021-2022 Heiko Bornholdt and Kevin Röbert
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ * IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM,
+ * DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR
+ * OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE
+ * OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package org.drasyl.channel.tun;
+
+import io.netty.buffer.ByteBufAllocator;
+import io.netty.util.internal.PlatformDependent;
+import org.drasyl.channel.tun.jna.TunDevice;
+
+import java.util.Queue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+
+import static java.util.Objects.requireNonNull;
+
+/**
+ * Writes {@link TunPacket}s to a {@link TunDevice} on a dedicated thread, so that blocking writes
+ * do not stall the channel's event loop. Packets are handed over through a bounded MPSC queue and
+ * written in bursts of up to {@code batchSize} packets.
+ * <p>
+ * Producers are expected to {@link #stall()} once {@link #pendingBytes()} exceeds their high water
+ * mark or {@link #offer(TunPacket)} fails. The writer then invokes {@code onWritable} once both
+ * the number of pending bytes has dropped to {@code lowWaterMark} and the queue is at most half
+ * full again.
+ *
+ * @see TunChannelOption#TUN_WRITE_QUEUE_SIZE
+ */
+final class AsyncTunWriter {
+    private final TunDevice device;
+    private final ByteBufAllocator alloc;
+    private final Executor executor;
+    private final Queue<TunPacket> queue;
+    private final int capacity;
+    private final int lowWaterMark;
+    private final TunPacket[] batch;
+    private final Runnable onWritable;
+    private final Consumer<Throwable> onError;
+    private final Runnable drainTask = this::drain;
+    private final AtomicLong pendingBytes = new AtomicLong();
+    private final AtomicBoolean scheduled = new AtomicBoolean();
+    private final AtomicBoolean stalled = new AtomicBoolean();
+    private volatile boolean closed;
+
+    /**
+     * @param device       device to write to
+     * @param alloc        allocator passed to the device
+     * @param executor     executor of the writer thread. Must run tasks one after another
+     * @param capacity     maximum number of queued packets
+     * @param lowWaterMark number of pending bytes below which a stalled producer is resumed
+     * @param batchSize    maximum number of packets passed to the device at once
+     * @param onWritable   invoked on the writer thread once a stalled producer can resume
+     * @param onError      invoked on the writer thread if a write failed
+     * @throws IllegalArgumentException if {@code capacity} or {@code batchSize} is not positive
+     */
+    AsyncTunWriter(final TunDevice device,
+                   final ByteBufAllocator alloc,
+                   final Executor executor,
+                   final int capacity,
+                   final int lowWaterMark,
+                   final int batchSize,
+                   final Runnable onWritable,
+                   final Consumer<Throwable> onError) {
+        if (capacity < 1) {
+            throw new IllegalArgumentException("capacity must be positive.");
+        }
+        if (batchSize < 1) {
+            throw new IllegalArgumentException("batchSize must be positive.");
+        }
+        this.device = requireNonNull(device);
+        this.alloc = requireNonNull(alloc);
+        this.executor = requireNonNull(executor);
+        this.queue = PlatformDependent.newFixedMpscQueue(capacity);
+        this.capacity = capacity;
+        this.lowWaterMark = lowWaterMark;
+        this.batch = new TunPacket[batchSize];
+        this.onWritable = requireNonNull(onWritable);
+        this.onError = requireNonNull(onError);
+    }
+
+    /**
+     * Enqueues {@code packet} for writing. On success, the writer takes over the ownership of
+     * {@code packet}.
+     *
+     * @param packet packet to write
+     * @return {@code false} if the queue is full or this writer has been closed
+     */
+    boolean offer(final TunPacket packet) {
+        if (closed) {
+            return false;
+        }
+        final int size = packet.content().readableBytes();
+        // count bytes first, so that the writer never observes a negative value
+        pendingBytes.addAndGet(size);
+        if (queue.size() >= capacity || !queue.offer(packet)) {
+            pendingBytes.addAndGet(-size);
+            return false;
+        }
+        if (scheduled.compareAndSet(false, true)) {
+            executor.execute(drainTask);
+        }
+        return true;
+    }
+
+    /**
+     * Returns the number of bytes enqueued but not yet written.
+     *
+     * @return number of bytes enqueued but not yet written
+     */
+    long pendingBytes() {
+        return pendingBytes.get();
+    }
+
+    /**
+     * Marks the producer as stalled, causing {@code onWritable} to be invoked once the writer has
+     * caught up.
+     *
+     * @return {@code false} if the writer has already caught up, so the producer must not stall
+     */
+    boolean stall() {
+        stalled.set(true);
+        return closed || !(caughtUp() && stalled.compareAndSet(true, false));
+    }
+
+    /**
+     * Stops accepting packets. Packets still enqueued are released by the writer thread. Once the
+     * writer no longer accesses the device, {@code onClosed} is invoked on the writer thread.
+     *
+     * @param onClosed invoked once the writer has left the device, e.g. to close it
+     */
+    void close(final Runnable onClosed) {
+        closed = true;
+        // tasks of the executor run one after another, so any drain in progress has left the device
+        // once this task runs. Later drains only release packets
+        executor.execute(() -> {
+            drain();
+            onClosed.run();
+        });
+    }
+
+    private boolean caughtUp() {
+        return pendingBytes.get() <= lowWaterMark && queue.size() <= capacity / 2;
+    }
+
+    private void drain() {
+        try {
+            while (true) {
+                // collect next burst of enqueued packets
+                int count = 0;
+                long bytes = 0;
+                TunPacket packet;
+                while (count < batch.length && (packet = queue.poll()) != null) {
+                    bytes += packet.content().readableBytes();
+                    batch[count++] = packet;
+                }
+                if (count == 0) {
+                    break;
+                }
+
+                try {
+                    if (closed) {
+                        for (int i = 0; i < count; i++) {
+                            batch[i].release();
+                        }
+                    }
+                    else {
+                        device.writePackets(alloc, batch, count);
+                    }
+                }
+                catch (final Exception e) {
+                    onError.accept(e);
+                }
+                finally {
+                    for (int i = 0; i < count; i++) {
+                        batch[i] = null;
+                    }
+                    pendingBytes.addAndGet(-bytes);
+                }
+
+                if (stalled.get() && caughtUp() && stalled.compareAndSet(true, false)) {
+                    onWritable.run();
+                }
+            }
+        }
+        finally {
+            scheduled.set(false);
+            // packets may have been enqueued after the last poll
+            if (!queue.isEmpty() && scheduled.compareAndSet(false, true)) {
+                executor.execute(drainTask);
+            }
+        }
+    }
+}
@@ -0,0 +1,94 @@
+/*
+ * Copyright (c) 2021-2022 Heiko Bornholdt and Kevin Röbert
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ * IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM,
+ * DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR
+ * OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE
+ * OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package org.drasyl.channel.tun;
+
+import io.netty.buffer.ByteBufHolder;
+import io.netty.channel.RecvByteBufAllocator;
+
+import java.util.List;
+
+/**
+ * Translates the byte budget of a {@link RecvByteBufAllocator.Handle} into the number of packets
+ * to read at once. Tun devices must read each packet into a buffer large enough for the largest
+ * possible packet, so the number of packets is derived from the average size of the packets read
+ * by the last burst instead.
+ */
+final class BurstSizer {
+    private final int maxBurstSize;
+    // average size of the packets read by the last burst. 0 if nothing has been read yet
+    private int packetSize;
+
+    /**
+     * @param maxBurstSize maximum number of packets read at once
+     * @throws IllegalArgumentException if {@code maxBurstSize} is not positive
+     */
+    BurstSizer(final int maxBurstSize) {
+        if (maxBurstSize < 1) {
+            throw new IllegalArgumentException("maxBurstSize must be positive.");
+        }
+        this.maxBurstSize = maxBurstSize;
+    }
+
+    /**
+     * Returns the number of packets expected to fill {@code bytes}, but at least {@code 1} and no
+     * more than {@code maxBurstSize}. Returns {@code 1} if no packets have been recorded yet.
+     *
+     * @param bytes number of bytes to read. May be zero or negative if the budget is exhausted
+     * @return number of packets to read
+     */
+    int burstSize(final int bytes) {
+        if (packetSize == 0) {
+            return 1;
+        }
+        return (int) Math.max(1, Math.min(maxBurstSize, ((long) bytes + packetSize - 1) / packetSize));
+    }
+
+    /**
+     * Returns the number of bytes of the {@link ByteBufHolder}s in {@code msgs} and updates the
+     * expected packet size accordingly. Returns at least {@code 1}, so that the burst is not
+     * mistaken for an empty read.
+     *
+     * @param msgs messages read by the last burst
+     * @return number of bytes read by the last burst
+     */
+    int record(final List<Object> msgs) {
+        final int size = msgs.size();
+        long bytes = 0;
+        for (int i = 0; i < size; i++) {
+            final Object msg = msgs.get(i);
+            if (msg instanceof ByteBufHolder) {
+                bytes += ((ByteBufHolder) msg).content().readableBytes();
+            }
+        }
+        final int bytesRead = (int) Math.max(1, Math.min(Integer.MAX_VALUE, bytes));
+        packetSize = Math.max(1, bytesRead / Math.max(1, size));
+        return bytesRead;
+    }
+
+    /**
+     * Returns the average size of the packets read by the last burst or {@code 0} if nothing has
+     * been recorded yet.
+     */
+    int packetSize() {
+        return packetSize;
+    }
+}
@@ -0,0 +1,63 @@
+/*
+ * Copyright (c) 2021-2022 Heiko Bornholdt and Kevin Röbert
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ * IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM,
+ * DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR
+ * OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE
+ * OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package org.drasyl.channel.tun;
+
+import io.netty.buffer.ByteBuf;
+
+/**
+ * Sums up large regions of a buffer for {@link InetChecksum}. By default, regions are summed up 8
+ * bytes at a time like all other regions. On Java 22 or newer, the multi-release layer provides an
+ * implementation based on the Vector API, which is used if the {@code jdk.incubator.vector} module
+ * has been added to the runtime (e.g. {@code --add-modules jdk.incubator.vector}).
+ */
+@FunctionalInterface
+interface ChecksumSummer {
+    /**
+     * Sums up 8 bytes at a time. Available on all platforms.
+     */
+    ChecksumSummer SCALAR = InetChecksum::scalarSum;
+
+    /**
+     * Returns the folded sum of {@code length} bytes of {@code buf} starting at {@code index} in
+     * network byte order.
+     */
+    long sum(ByteBuf buf, int index, int length);
+
+    /**
+     * Returns the vectorized implementation if it is provided by the runtime, otherwise
+     * {@link #SCALAR}.
+     */
+    static ChecksumSummer load() {
+        if (ModuleLayer.boot().findModule("jdk.incubator.vector").isEmpty()) {
+            return SCALAR;
+        }
+        try {
+            return (ChecksumSummer) Class.forName(ChecksumSummer.class.getPackageName() + ".VectorizedChecksum")
+                    .getDeclaredConstructor()
+                    .newInstance();
+        }
+        catch (final ReflectiveOperationException | LinkageError e) {
+            // multi-release layer not present (e.g. Java older than 22)
+            return SCALAR;
+        }
+    }
+}
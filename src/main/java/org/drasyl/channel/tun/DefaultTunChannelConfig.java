@@ -21,27 +21,89 @@
  */
 package org.drasyl.channel.tun;
 
+import io.netty.channel.Channel;
 import io.netty.channel.ChannelOption;
 import io.netty.channel.DefaultChannelConfig;
 
+import static java.util.Objects.requireNonNull;
+
+import static org.drasyl.channel.tun.TunChannelOption.TUN_IO_URING;
+import static org.drasyl.channel.tun.TunChannelOption.TUN_INGRESS_OVERFLOW_POLICY;
+import static org.drasyl.channel.tun.TunChannelOption.TUN_INGRESS_WATER_MARK;
 import static org.drasyl.channel.tun.TunChannelOption.TUN_MTU;
+import static org.drasyl.channel.tun.TunChannelOption.TUN_OFFLOAD;
+import static org.drasyl.channel.tun.TunChannelOption.TUN_QUEUES;
+import static org.drasyl.channel.tun.TunChannelOption.TUN_READ_BATCH_SIZE;
+import static org.drasyl.channel.tun.TunChannelOption.TUN_RECEIVE_COPY_POLICY;
+import static org.drasyl.channel.tun.TunChannelOption.TUN_RECEIVE_HEADROOM;
+import static org.drasyl.channel.tun.TunChannelOption.TUN_RECEIVE_SLAB_SIZE;
+import static org.drasyl.channel.tun.TunChannelOption.TUN_RECEIVE_TAILROOM;
+import static org.drasyl.channel.tun.TunChannelOption.TUN_WRITE_QUEUE_SIZE;
 
 /**
  * The default {@link TunChannelConfig} implementation.
  */
 public class DefaultTunChannelConfig extends DefaultChannelConfig implements TunChannelConfig {
     private int mtu;
+    private int queues = 1;
+    private boolean offload;
+    private boolean ioUring;
+    private int receiveSlabSize;
+    private ReceiveCopyPolicy receiveCopyPolicy = ReceiveCopyPolicy.NEVER;
+    private int receiveHeadroom;
+    private int receiveTailroom;
+    private int writeQueueSize;
+    private IngressWaterMark ingressWaterMark = IngressWaterMark.DEFAULT;
+    private IngressOverflowPolicy ingressOverflowPolicy = IngressOverflowPolicy.BLOCK;
+    private int readBatchSize;
 
     public DefaultTunChannelConfig(final TunChannel channel) {
         super(channel);
     }
 
+    protected DefaultTunChannelConfig(final Channel channel) {
+        super(channel);
+    }
+
     @SuppressWarnings("unchecked")
     @Override
     public <T> T getOption(final ChannelOption<T> option) {
         if (option == TUN_MTU) {
             return (T) Integer.valueOf(getMtu());
         }
+        if (option == TUN_QUEUES) {
+            return (T) Integer.valueOf(getQueues());
+        }
+        if (option == TUN_OFFLOAD) {
+            return (T) Boolean.valueOf(isOffload());
+        }
+        if (option == TUN_IO_URING) {
+            return (T) Boolean.valueOf(isIoUring());
+        }
+        if (option == TUN_RECEIVE_SLAB_SIZE) {
+            return (T) Integer.valueOf(getReceiveSlabSize());
+        }
+        if (option == TUN_RECEIVE_COPY_POLICY) {
+            return (T) getReceiveCopyPolicy();
+        }
+        if (option == TUN_RECEIVE_HEADROOM) {
+            return (T) Integer.valueOf(getReceiveHeadroom());
+        }
+        if (option == TUN_RECEIVE_TAILROOM) {
+            return (T) Integer.valueOf(getReceiveTailroom());
+        }
+        if (option == TUN_WRITE_QUEUE_SIZE) {
+            return (T) Integer.valueOf(getWriteQueueSize());
+        }
+        if (option == TUN_INGRESS_WATER_MARK) {
+            return (T) getIngressWaterMark();
+        }
+        if (option == TUN_INGRESS_OVERFLOW_POLICY) {
+            return (T) getIngressOverflowPolicy();
+        }
+        if (option == TUN_READ_BATCH_SIZE) {
+            return (T) Integer.valueOf(getReadBatchSize());
+        }
         return super.getOption(option);
     }
 
@@ -51,6 +113,39 @@ public class DefaultTunChannelConfig extends DefaultChannelConfig implements Tun
             if (option == TUN_MTU) {
                 setMtu((Integer) value);
             }
+            else if (option == TUN_QUEUES) {
+                setQueues((Integer) value);
+            }
+            else if (option == TUN_OFFLOAD) {
+                setOffload((Boolean) value);
+            }
+            else if (option == TUN_IO_URING) {
+                setIoUring((Boolean) value);
+            }
+            else if (option == TUN_RECEIVE_SLAB_SIZE) {
+                setReceiveSlabSize((Integer) value);
+            }
+            else if (option == TUN_RECEIVE_COPY_POLICY) {
+                setReceiveCopyPolicy((ReceiveCopyPolicy) value);
+            }
+            else if (option == TUN_RECEIVE_HEADROOM) {
+                setReceiveHeadroom((Integer) value);
+            }
+            else if (option == TUN_RECEIVE_TAILROOM) {
+                setReceiveTailroom((Integer) value);
+            }
+            else if (option == TUN_WRITE_QUEUE_SIZE) {
+                setWriteQueueSize((Integer) value);
+            }
+            else if (option == TUN_INGRESS_WATER_MARK) {
+                setIngressWaterMark((IngressWaterMark) value);
+            }
+            else if (option == TUN_INGRESS_OVERFLOW_POLICY) {
+                setIngressOverflowPolicy((IngressOverflowPolicy) value);
+            }
+            else if (option == TUN_READ_BATCH_SIZE) {
+                setReadBatchSize((Integer) value);
+            }
             else {
                 return false;
             }
@@ -70,6 +165,145 @@ public class DefaultTunChannelConfig extends DefaultChannelConfig implements Tun
             throw new IllegalArgumentException("mtu must be non-negative.");
         }
         this.mtu = mtu;
-        return null;
+        return this;
+    }
+
+    @Override
+    public int getQueues() {
+        return queues;
+    }
+
+    @Override
+    public TunChannelConfig setQueues(final int queues) {
+        if (queues < 1) {
+            throw new IllegalArgumentException("queues must be positive.");
+        }
+        this.queues = queues;
+        return this;
+    }
+
+    @Override
+    public boolean isOffload() {
+        return offload;
+    }
+
+    @Override
+    public TunChannelConfig setOffload(final boolean offload) {
+        this.offload = offload;
+        return this;
+    }
+
+    @Override
+    public boolean isIoUring() {
+        return ioUring;
+    }
+
+    @Override
+    public TunChannelConfig setIoUring(final boolean ioUring) {
+        this.ioUring = ioUring;
+        return this;
+    }
+
+    @Override
+    public int getReceiveSlabSize() {
+        return receiveSlabSize;
+    }
+
+    @Override
+    public TunChannelConfig setReceiveSlabSize(final int receiveSlabSize) {
+        if (receiveSlabSize < 0) {
+            throw new IllegalArgumentException("receiveSlabSize must be non-negative.");
+        }
+        this.receiveSlabSize = receiveSlabSize;
+        return this;
+    }
+
+    @Override
+    public ReceiveCopyPolicy getReceiveCopyPolicy() {
+        return receiveCopyPolicy;
+    }
+
+    @Override
+    public TunChannelConfig setReceiveCopyPolicy(final ReceiveCopyPolicy receiveCopyPolicy) {
+        this.receiveCopyPolicy = requireNonNull(receiveCopyPolicy);
+        return this;
+    }
+
+    @Override
+    public int getReceiveHeadroom() {
+        return receiveHeadroom;
+    }
+
+    @Override
+    public TunChannelConfig setReceiveHeadroom(final int receiveHeadroom) {
+        if (receiveHeadroom < 0) {
+            throw new IllegalArgumentException("receiveHeadroom must be non-negative.");
+        }
+        this.receiveHeadroom = receiveHeadroom;
+        return this;
+    }
+
+    @Override
+    public int getReceiveTailroom() {
+        return receiveTailroom;
+    }
+
+    @Override
+    public TunChannelConfig setReceiveTailroom(final int receiveTailroom) {
+        if (receiveTailroom < 0) {
+            throw new IllegalArgumentException("receiveTailroom must be non-negative.");
+        }
+        this.receiveTailroom = receiveTailroom;
+        return this;
+    }
+
+    @Override
+    public int getWriteQueueSize() {
+        return writeQueueSize;
+    }
+
+    @Override
+    public TunChannelConfig setWriteQueueSize(final int writeQueueSize) {
+        if (writeQueueSize < 0) {
+            throw new IllegalArgumentException("writeQueueSize must be non-negative.");
+        }
+        this.writeQueueSize = writeQueueSize;
+        return this;
+    }
+
+    @Override
+    public IngressWaterMark getIngressWaterMark() {
+        return ingressWaterMark;
+    }
+
+    @Override
+    public TunChannelConfig setIngressWaterMark(final IngressWaterMark ingressWaterMark) {
+        this.ingressWaterMark = requireNonNull(ingressWaterMark);
+        return this;
+    }
+
+    @Override
+    public IngressOverflowPolicy getIngressOverflowPolicy() {
+        return ingressOverflowPolicy;
+    }
+
+    @Override
+    public TunChannelConfig setIngressOverflowPolicy(final IngressOverflowPolicy ingressOverflowPolicy) {
+        this.ingressOverflowPolicy = requireNonNull(ingressOverflowPolicy);
+        return this;
+    }
+
+    @Override
+    public int getReadBatchSize() {
+        return readBatchSize;
+    }
+
+    @Override
+    public TunChannelConfig setReadBatchSize(final int readBatchSize) {
+        if (readBatchSize < 0) {
+            throw new IllegalArgumentException("readBatchSize must be non-negative.");
+        }
+        this.readBatchSize = readBatchSize;
+        return this;
     }
 }
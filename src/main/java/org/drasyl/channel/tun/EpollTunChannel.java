@@ -0,0 +1,376 @@
+/*
+ * Copyright (c) 2021-2022 Heiko Bornholdt and Kevin Röbert
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ * IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM,
+ * DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR
+ * OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE
+ * OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package org.drasyl.channel.tun;
+
+import io.netty.channel.AbstractChannel;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelMetadata;
+import io.netty.channel.ChannelOutboundBuffer;
+import io.netty.channel.ChannelPipeline;
+import io.netty.channel.ChannelPromise;
+import io.netty.channel.EventLoop;
+import io.netty.channel.RecvByteBufAllocator;
+import io.netty.util.internal.StringUtil;
+import org.drasyl.channel.tun.jna.PartialWriteException;
+import org.drasyl.channel.tun.jna.TunDevice;
+import org.drasyl.channel.tun.jna.linux.EpollPoller;
+import org.drasyl.channel.tun.jna.linux.LinuxTunDevice;
+import org.drasyl.channel.tun.jna.shared.LibC;
+
+import java.io.IOException;
+import java.net.SocketAddress;
+import java.nio.channels.AlreadyConnectedException;
+import java.util.concurrent.RejectedExecutionException;
+
+/**
+ * A {@link io.netty.channel.Channel} implementation that can be used to send or receive packets
+ * over a TUN interface. Unlike {@link TunChannel}, this channel does not require a reader thread
+ * per queue. Instead, the non-blocking tun device is watched via epoll(7) by a single thread shared
+ * by all {@link EpollTunChannel}s, which merely wakes up the channel's event loop once the device
+ * has become readable. The event loop then reads packets until the device has been drained (only
+ * supported on linux). The channel can be registered to any event loop.
+ * <p>
+ * To initialize a {@link EpollTunChannel}, create a {@link TunAddress} object containing the
+ * desired name of the TUN device to open, and then bind the {@link EpollTunChannel} to the
+ * address.
+ * <p>
+ * To send packets into the device (causing them to be received by the local host's network stack)
+ * create a {@link TunPacket} object and call {@link io.netty.channel.Channel#write(Object)}.
+ * <p>
+ * When the host's network stack sends packets out via the device, the packets are delivered to the
+ * channel causing a {@link io.netty.channel.ChannelInboundHandler#channelRead(ChannelHandlerContext,
+ * Object)} invocation. Optionally, the packets are passed through the pipeline as
+ * {@link TunPacketBatch}es (see {@link TunChannelOption#TUN_READ_BATCH_SIZE}).
+ * <p>
+ * If {@link TunChannelOption#TUN_QUEUES} is greater than {@code 1}, the device is created with
+ * multi-queue support. Bind the same amount of {@link EpollTunChannel}s to the same {@link
+ * TunAddress} to serve each queue by its own event loop.
+ */
+public class EpollTunChannel extends AbstractChannel {
+    private static final ChannelMetadata METADATA = new ChannelMetadata(false, 16);
+    private static final String EXPECTED_TYPES =
+            " (expected: " + StringUtil.simpleClassName(TunPacket.class) + ')';
+    // maximum number of packets passed to the device at once
+    private static final int MAX_BATCH_SIZE = 16;
+    private final EpollTunChannelConfig config = new EpollTunChannelConfig(this);
+    private final Runnable epollInReadyTask = this::epollInReady;
+    private final TunPacket[] writeBatch = new TunPacket[MAX_BATCH_SIZE];
+    private EpollPoller poller;
+    private int fd = -1;
+    private TunDevice device;
+    private volatile boolean closeInitiated;
+    // true while the poller watches the device or a read is scheduled. Accessed by event loop only
+    private boolean armed;
+    private boolean readPending;
+
+    public EpollTunChannel() {
+        super(null);
+    }
+
+    @Override
+    public ChannelMetadata metadata() {
+        return METADATA;
+    }
+
+    @Override
+    public EpollTunChannelConfig config() {
+        return config;
+    }
+
+    @Override
+    public boolean isOpen() {
+        return !closeInitiated && (device == null || !device.isClosed());
+    }
+
+    @Override
+    public boolean isActive() {
+        return device != null && isOpen();
+    }
+
+    @Override
+    protected boolean isCompatible(final EventLoop loop) {
+        return true;
+    }
+
+    @Override
+    protected SocketAddress localAddress0() {
+        if (device != null) {
+            return device.localAddress();
+        }
+        else {
+            return null;
+        }
+    }
+
+    @Override
+    protected SocketAddress remoteAddress0() {
+        return null;
+    }
+
+    /**
+     * Opens a new non-blocking file descriptor and attaches it to the device with the given name.
+     * Returns the file descriptor to be watched for readability.
+     */
+    private int openDevice(final TunAddress localAddress) throws IOException {
+        final int newFd = LinuxTunDevice.openFileDescriptor();
+        final LinuxTunDevice linuxDevice;
+        try {
+            linuxDevice = LinuxTunDevice.openNonBlocking(newFd, localAddress.ifName(), config.getMtu(), config.getQueues() > 1, config.isOffload());
+        }
+        catch (final IOException | RuntimeException e) {
+            LibC.close(newFd);
+            throw e;
+        }
+        linuxDevice.setReceiveSlabSize(config.getReceiveSlabSize());
+        linuxDevice.setReceiveCopyPolicy(config.getReceiveCopyPolicy());
+        linuxDevice.setReceiveRoom(config.getReceiveHeadroom(), config.getReceiveTailroom());
+        device = linuxDevice;
+        return newFd;
+    }
+
+    @Override
+    protected void doBind(final SocketAddress localAddress) throws Exception {
+        final int newFd = openDevice((TunAddress) localAddress);
+        final EpollPoller newPoller = EpollPoller.instance();
+        try {
+            newPoller.register(newFd, this::onReadable);
+        }
+        catch (final IOException e) {
+            device.close();
+            throw e;
+        }
+        poller = newPoller;
+        fd = newFd;
+        armed = true;
+    }
+
+    /**
+     * Called by the poller thread once the device has become readable.
+     */
+    private void onReadable() {
+        try {
+            eventLoop().execute(epollInReadyTask);
+        }
+        catch (final RejectedExecutionException e) {
+            // event loop has been shut down. The device will be closed along with the channel
+        }
+    }
+
+    @Override
+    protected void doDisconnect() throws Exception {
+        // do nothing
+    }
+
+    @Override
+    protected void doClose() throws Exception {
+        closeInitiated = true;
+        if (poller != null) {
+            // stop watching the descriptor before it is closed and possibly reused
+            poller.deregister(fd);
+            poller = null;
+        }
+        if (device != null) {
+            device.close();
+        }
+    }
+
+    @Override
+    protected void doBeginRead() {
+        if (!isActive()) {
+            return;
+        }
+
+        readPending = true;
+        if (!armed) {
+            armed = true;
+            arm();
+        }
+    }
+
+    /**
+     * Lets the poller watch the device again.
+     */
+    private void arm() {
+        try {
+            poller.arm(fd);
+        }
+        catch (final IOException e) {
+            pipeline().fireExceptionCaught(e);
+            unsafe().close(unsafe().voidPromise());
+        }
+    }
+
+    /**
+     * Reads packets until the device has been drained (the device returns {@code null} on
+     * {@code EAGAIN}) or the {@link RecvByteBufAllocator} asks to stop. In the first case, the
+     * poller watches the device again if more reads are requested. In the second case, reading is
+     * continued by a new event loop task, so that other tasks of the event loop are not starved.
+     */
+    @SuppressWarnings({ "java:S1181", "java:S3776" })
+    private void epollInReady() {
+        armed = false;
+        if (!isActive() || !readPending && !config.isAutoRead()) {
+            // reading is resumed by doBeginRead
+            return;
+        }
+
+        final ChannelPipeline pipeline = pipeline();
+        final RecvByteBufAllocator.Handle allocHandle = unsafe().recvBufAllocHandle();
+        allocHandle.reset(config);
+
+        final int batchSize = config.getReadBatchSize();
+        TunPacketBatch batch = null;
+        boolean drained = false;
+        Throwable exception = null;
+        try {
+            do {
+                final TunPacket packet = device.readPacket(alloc());
+                if (packet == null) {
+                    drained = true;
+                    break;
+                }
+
+                allocHandle.lastBytesRead(packet.content().readableBytes());
+                allocHandle.incMessagesRead(1);
+                readPending = false;
+                if (batchSize > 0) {
+                    if (batch == null) {
+                        batch = TunPacketBatch.newInstance();
+                    }
+                    batch.add(packet);
+                    if (batch.size() == batchSize) {
+                        pipeline.fireChannelRead(batch);
+                        batch = null;
+                    }
+                }
+                else {
+                    pipeline.fireChannelRead(packet);
+                }
+            } while (TunChannel.continueReading(allocHandle));
+        }
+        catch (final Throwable t) {
+            exception = t;
+        }
+
+        if (batch != null) {
+            pipeline.fireChannelRead(batch);
+        }
+        allocHandle.readComplete();
+        pipeline.fireChannelReadComplete();
+
+        if (exception != null) {
+            pipeline.fireExceptionCaught(exception);
+            if (exception instanceof IOException) {
+                unsafe().close(unsafe().voidPromise());
+                return;
+            }
+        }
+
+        if (isActive() && (readPending || config.isAutoRead())) {
+            armed = true;
+            if (drained) {
+                arm();
+            }
+            else {
+                eventLoop().execute(epollInReadyTask);
+            }
+        }
+    }
+
+    @Override
+    protected void doWrite(final ChannelOutboundBuffer in) throws Exception {
+        while (true) {
+            // collect next burst of flushed packets
+            final int count = Math.min(in.size(), writeBatch.length);
+            if (count == 0) {
+                break;
+            }
+            in.forEachFlushedMessage(new ChannelOutboundBuffer.MessageProcessor() {
+                private int i;
+
+                @Override
+                public boolean processMessage(final Object msg) {
+                    writeBatch[i++] = ((TunPacket) msg).retain();
+                    return i < count;
+                }
+            });
+
+            int written = count;
+            Exception failure = null;
+            try {
+                device.writePackets(alloc(), writeBatch, count);
+            }
+            catch (final PartialWriteException e) {
+                written = e.written();
+                failure = e;
+            }
+            catch (final IOException | RuntimeException e) {
+                // it is unknown which packets of the burst have been written, fail them all
+                written = 0;
+                failure = e;
+            }
+            for (int i = 0; i < count; i++) {
+                writeBatch[i] = null;
+                if (i < written) {
+                    in.remove();
+                }
+                else {
+                    in.remove(failure);
+                }
+            }
+            if (failure != null) {
+                throw failure;
+            }
+        }
+    }
+
+    @Override
+    protected Object filterOutboundMessage(final Object msg) {
+        if (msg instanceof TunPacket) {
+            return msg;
+        }
+
+        throw new UnsupportedOperationException(
+                "unsupported message type: " + StringUtil.simpleClassName(msg) + EXPECTED_TYPES);
+    }
+
+    @Override
+    protected AbstractUnsafe newUnsafe() {
+        return new EpollTunChannelUnsafe();
+    }
+
+    /**
+     * Returns the {@link TunDevice} of this channel.
+     */
+    public TunDevice device() {
+        return device;
+    }
+
+    private class EpollTunChannelUnsafe extends AbstractUnsafe {
+        @Override
+        public void connect(final SocketAddress remoteAddress,
+                            final SocketAddress localAddress,
+                            final ChannelPromise promise) {
+            throw new AlreadyConnectedException();
+        }
+    }
+}
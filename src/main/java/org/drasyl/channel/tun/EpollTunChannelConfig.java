@@ -0,0 +1,42 @@
+/*
+ * Copyright (c) 2021-2022 Heiko Bornholdt and Kevin Röbert
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ * IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM,
+ * DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR
+ * OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE
+ * OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package org.drasyl.channel.tun;
+
+/**
+ * The {@link TunChannelConfig} implementation of {@link EpollTunChannel}. It supports the same
+ * options as {@link DefaultTunChannelConfig}, except for the following, which are validated and
+ * stored, but ignored by {@link EpollTunChannel}:
+ * <ul>
+ * <li>{@link TunChannelOption#TUN_IO_URING}: the device is read on the event loop via regular
+ * reads</li>
+ * <li>{@link TunChannelOption#TUN_WRITE_QUEUE_SIZE}: packets are written on the event loop, as
+ * writing to a non-blocking device does not block</li>
+ * <li>{@link TunChannelOption#TUN_INGRESS_WATER_MARK} and
+ * {@link TunChannelOption#TUN_INGRESS_OVERFLOW_POLICY}: received packets are not queued, as the
+ * device is only read while the pipeline keeps up</li>
+ * </ul>
+ */
+public class EpollTunChannelConfig extends DefaultTunChannelConfig {
+    public EpollTunChannelConfig(final EpollTunChannel channel) {
+        super(channel);
+    }
+}
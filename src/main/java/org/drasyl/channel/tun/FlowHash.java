@@ -0,0 +1,161 @@
+/*
+ * Copyright (c) 2021-2022 Heiko Bornholdt and Kevin Röbert
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ * IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM,
+ * DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR
+ * OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE
+ * OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package org.drasyl.channel.tun;
+
+import io.netty.buffer.ByteBuf;
+
+import static org.drasyl.channel.tun.Tun4Packet.INET4_DESTINATION_ADDRESS;
+import static org.drasyl.channel.tun.Tun4Packet.INET4_FLAGS_AND_FRAGMENT_OFFSET;
+import static org.drasyl.channel.tun.Tun4Packet.INET4_PROTOCOL;
+import static org.drasyl.channel.tun.Tun4Packet.INET4_SOURCE_ADDRESS;
+import static org.drasyl.channel.tun.Tun4Packet.INET4_VERSION_AND_INTERNET_HEADER_LENGTH;
+import static org.drasyl.channel.tun.Tun6Packet.INET6_DESTINATION_ADDRESS;
+import static org.drasyl.channel.tun.Tun6Packet.INET6_HEADER_LENGTH;
+import static org.drasyl.channel.tun.Tun6Packet.INET6_SOURCE_ADDRESS;
+
+/**
+ * Computes a symmetric flow hash of {@link TunPacket}s, i.e. both directions of a flow result in
+ * the same hash. Used to spread packets across workers while keeping all packets of a flow on the
+ * same worker (see {@link FlowHashDispatcher}).
+ * <p>
+ * The hash covers source and destination address, protocol, and source and destination port
+ * (TCP, UDP, UDP-Lite, SCTP, and DCCP). Fragmented IPv4 packets are hashed without ports, as only
+ * the first fragment carries them. IPv6 packets with a flow label (<a
+ * href="https://datatracker.ietf.org/doc/html/rfc6437">RFC 6437</a>) are hashed by their addresses
+ * and flow label instead, without walking the extension header chain. As the flow label is chosen
+ * by each source, the two directions of a labelled IPv6 flow may result in different hashes.
+ * Fragmented IPv6 packets without flow label are hashed without ports as well.
+ * <p>
+ * Neither computing the hash copies nor allocates anything.
+ */
+@SuppressWarnings("java:S109")
+public final class FlowHash {
+    private FlowHash() {
+        // util class
+    }
+
+    /**
+     * Returns the flow hash of {@code packet}.
+     *
+     * @param packet packet to examine
+     * @return flow hash of {@code packet}
+     */
+    public static int of(final TunPacket packet) {
+        final ByteBuf buf = packet.content();
+        if (packet.version() == 4) {
+            final int protocol = buf.getUnsignedByte(INET4_PROTOCOL);
+            int ports = 0;
+            if ((buf.getUnsignedShort(INET4_FLAGS_AND_FRAGMENT_OFFSET) & 0x3fff) == 0 && hasPorts(protocol)) {
+                // not fragmented
+                final int transportOffset = (buf.getUnsignedByte(INET4_VERSION_AND_INTERNET_HEADER_LENGTH) & 0x0f) * 4;
+                if (transportOffset + 4 <= buf.writerIndex()) {
+                    ports = buf.getInt(transportOffset);
+                }
+            }
+            return hash(buf.getInt(INET4_SOURCE_ADDRESS), buf.getInt(INET4_DESTINATION_ADDRESS), ports, protocol);
+        }
+        else {
+            final int source = fold(buf.getLong(INET6_SOURCE_ADDRESS), buf.getLong(INET6_SOURCE_ADDRESS + 8));
+            final int destination = fold(buf.getLong(INET6_DESTINATION_ADDRESS), buf.getLong(INET6_DESTINATION_ADDRESS + 8));
+            final int flowLabel = buf.getInt(0) & 0xfffff;
+            if (flowLabel != 0) {
+                return hash(source, destination, 0, flowLabel << 8);
+            }
+
+            final long chain = packet instanceof Tun6Packet ? ((Tun6Packet) packet).chain() : Inet6ExtensionHeaders.walk(buf, 0);
+            final int fragmentHeaderOffset = Inet6ExtensionHeaders.fragmentHeaderOffset(chain);
+            if (fragmentHeaderOffset != 0) {
+                // hash all fragments without ports, as only the first fragment carries them. Use
+                // the next header of the fragment header, which is the same for all fragments
+                return hash(source, destination, 0, buf.getUnsignedByte(fragmentHeaderOffset));
+            }
+            final int protocol = Inet6ExtensionHeaders.protocol(chain);
+            final int upperLayerOffset = Inet6ExtensionHeaders.upperLayerOffset(chain);
+            int ports = 0;
+            if (upperLayerOffset >= INET6_HEADER_LENGTH && hasPorts(protocol) && upperLayerOffset + 4 <= buf.writerIndex()) {
+                ports = buf.getInt(upperLayerOffset);
+            }
+            return hash(source, destination, ports, protocol);
+        }
+    }
+
+    private static boolean hasPorts(final int protocol) {
+        return protocol == InetProtocol.TCP.decimal ||
+                protocol == InetProtocol.UDP.decimal ||
+                protocol == InetProtocol.UDPLITE.decimal ||
+                protocol == InetProtocol.SCTP.decimal ||
+                protocol == InetProtocol.DCCP.decimal;
+    }
+
+    private static int fold(final long high, final long low) {
+        final long value = high * 0x9e3779b97f4a7c15L ^ low;
+        return (int) (value ^ value >>> 32);
+    }
+
+    /**
+     * Combines both endpoints in an order-independent way.
+     *
+     * @param source      source address
+     * @param destination destination address
+     * @param ports       source port (upper 16 bits) and destination port (lower 16 bits)
+     * @param protocol    protocol number or other flow discriminator
+     */
+    private static int hash(final int source,
+                            final int destination,
+                            final int ports,
+                            final int protocol) {
+        final int sourcePort = ports >>> 16;
+        final int destinationPort = ports & 0xffff;
+        final int low;
+        final int high;
+        final int orderedPorts;
+        final int order = Integer.compareUnsigned(source, destination);
+        if (order < 0 || order == 0 && sourcePort <= destinationPort) {
+            low = source;
+            high = destination;
+            orderedPorts = ports;
+        }
+        else {
+            low = destination;
+            high = source;
+            orderedPorts = destinationPort << 16 | sourcePort;
+        }
+
+        int hash = protocol;
+        hash = 31 * hash + low;
+        hash = 31 * hash + high;
+        hash = 31 * hash + orderedPorts;
+        return mix(hash);
+    }
+
+    /**
+     * Finalization mix of MurmurHash3, spreading all input bits over the whole hash.
+     */
+    private static int mix(int hash) {
+        hash ^= hash >>> 16;
+        hash *= 0x85ebca6b;
+        hash ^= hash >>> 13;
+        hash *= 0xc2b2ae35;
+        hash ^= hash >>> 16;
+        return hash;
+    }
+}
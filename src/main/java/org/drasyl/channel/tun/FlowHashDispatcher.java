@@ -0,0 +1,202 @@
+/*
+ * Copyright (c) 2021-2022 Heiko Bornholdt and Kevin Röbert
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ * IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM,
+ * DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR
+ * OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE
+ * OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package org.drasyl.channel.tun;
+
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelInboundHandlerAdapter;
+import io.netty.util.concurrent.EventExecutor;
+import io.netty.util.concurrent.EventExecutorGroup;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.LongAdder;
+
+import static io.netty.util.internal.ObjectUtil.checkPositive;
+import static java.util.Objects.requireNonNull;
+
+/**
+ * Spreads received {@link TunPacket}s across the {@link EventExecutor}s of a worker group by their
+ * {@link FlowHash} (software receive side scaling). All packets of a flow are processed by the same
+ * worker in the order they were received, while different flows are processed in parallel. This
+ * allows expensive per-packet processing (e.g. encryption or lookups) to scale beyond the core
+ * running the channel's event loop, even if the device has only a single queue.
+ * <p>
+ * Packets are handed over to each worker through a bounded lock-free queue, waking up the worker
+ * once per burst. If a worker's queue is full, further packets for it are dropped (see
+ * {@link #droppedPackets()}). {@link TunPacketBatch}es are split up by flow. All other messages are
+ * passed to the next handler.
+ * <p>
+ * Each packet is released after {@link #channelReadFlow(ChannelHandlerContext, TunPacket)} returns.
+ * Packets to be passed on (e.g. written back via {@link ChannelHandlerContext#write(Object)} or to
+ * a downstream channel) must therefore be {@link TunPacket#retain() retained} first. Writes from a
+ * worker should be flushed in {@link #channelReadFlowComplete(ChannelHandlerContext)}.
+ * <p>
+ * As each worker queue is filled by the channel's event loop, an instance must not be shared
+ * between channels.
+ */
+public abstract class FlowHashDispatcher extends ChannelInboundHandlerAdapter {
+    private final Worker[] workers;
+    private final LongAdder droppedPackets = new LongAdder();
+    private ChannelHandlerContext ctx;
+
+    /**
+     * @param group         workers to spread the flows across. Each {@link EventExecutor} must run
+     *                      its tasks in order on a single thread (e.g. the event loops of a
+     *                      {@link io.netty.channel.DefaultEventLoopGroup})
+     * @param queueCapacity maximum number of packets queued for each worker
+     * @throws IllegalArgumentException if {@code queueCapacity} is not positive
+     */
+    protected FlowHashDispatcher(final EventExecutorGroup group, final int queueCapacity) {
+        requireNonNull(group);
+        checkPositive(queueCapacity, "queueCapacity");
+        final List<Worker> newWorkers = new ArrayList<>();
+        for (final EventExecutor executor : group) {
+            newWorkers.add(new Worker(executor, queueCapacity));
+        }
+        workers = newWorkers.toArray(new Worker[0]);
+    }
+
+    /**
+     * Returns the number of packets dropped because the queue of their worker was full.
+     *
+     * @return the number of dropped packets
+     */
+    public long droppedPackets() {
+        return droppedPackets.sum();
+    }
+
+    @Override
+    public void handlerAdded(final ChannelHandlerContext ctx) {
+        this.ctx = ctx;
+    }
+
+    @Override
+    public void channelRead(final ChannelHandlerContext ctx, final Object msg) {
+        if (msg instanceof TunPacket) {
+            dispatch((TunPacket) msg);
+        }
+        else if (msg instanceof TunPacketBatch) {
+            final TunPacketBatch batch = (TunPacketBatch) msg;
+            try {
+                final int size = batch.size();
+                for (int i = 0; i < size; i++) {
+                    dispatch(batch.get(i).retain());
+                }
+            }
+            finally {
+                batch.release();
+            }
+        }
+        else {
+            ctx.fireChannelRead(msg);
+        }
+    }
+
+    private void dispatch(final TunPacket packet) {
+        final int hash;
+        try {
+            hash = FlowHash.of(packet);
+        }
+        catch (final RuntimeException e) {
+            packet.release();
+            throw e;
+        }
+
+        // map hash uniformly to [0, workers.length)
+        final Worker worker = workers[(int) ((hash & 0xffffffffL) * workers.length >>> 32)];
+        if (!worker.queue.offer(packet)) {
+            packet.release();
+            droppedPackets.increment();
+            return;
+        }
+        if (worker.scheduled.compareAndSet(false, true)) {
+            worker.executor.execute(worker.drainTask);
+        }
+    }
+
+    @SuppressWarnings("java:S1181")
+    private void drain(final Worker worker) {
+        // reset before polling, so that packets offered from now on schedule another drain
+        worker.scheduled.set(false);
+
+        TunPacket packet;
+        while ((packet = worker.queue.poll()) != null) {
+            try {
+                channelReadFlow(ctx, packet);
+            }
+            catch (final Throwable t) {
+                ctx.fireExceptionCaught(t);
+            }
+            finally {
+                packet.release();
+            }
+        }
+        try {
+            channelReadFlowComplete(ctx);
+        }
+        catch (final Throwable t) {
+            ctx.fireExceptionCaught(t);
+        }
+
+        // packets may have been offered after the last poll
+        if (!worker.queue.isEmpty() && worker.scheduled.compareAndSet(false, true)) {
+            worker.executor.execute(worker.drainTask);
+        }
+    }
+
+    /**
+     * Is called on the worker of the flow for each received {@link TunPacket}.
+     *
+     * @param ctx    the {@link ChannelHandlerContext} which this {@link FlowHashDispatcher} belongs
+     *               to
+     * @param packet the received packet
+     * @throws Exception is thrown if an error occurred
+     */
+    @SuppressWarnings("java:S112")
+    protected abstract void channelReadFlow(ChannelHandlerContext ctx,
+                                            TunPacket packet) throws Exception;
+
+    /**
+     * Is called on a worker once it has processed all packets queued for it. Can be used to
+     * flush the packets written by {@link #channelReadFlow(ChannelHandlerContext, TunPacket)}.
+     *
+     * @param ctx the {@link ChannelHandlerContext} which this {@link FlowHashDispatcher} belongs to
+     * @throws Exception is thrown if an error occurred
+     */
+    @SuppressWarnings({ "java:S112", "java:S1130" })
+    protected void channelReadFlowComplete(final ChannelHandlerContext ctx) throws Exception {
+        // do nothing
+    }
+
+    private final class Worker {
+        final EventExecutor executor;
+        final SpscRing<TunPacket> queue;
+        final AtomicBoolean scheduled = new AtomicBoolean();
+        final Runnable drainTask = () -> drain(this);
+
+        Worker(final EventExecutor executor, final int queueCapacity) {
+            this.executor = executor;
+            this.queue = new SpscRing<>(queueCapacity);
+        }
+    }
+}
@@ -0,0 +1,148 @@
+/*
+ * Copyright (c) 2021-2022 Heiko Bornholdt and Kevin Röbert
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ * IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM,
+ * DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR
+ * OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE
+ * OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package org.drasyl.channel.tun;
+
+import static org.drasyl.channel.tun.InetProtocol.ICMP;
+import static org.drasyl.channel.tun.InetProtocol.IPV6_ICMP;
+
+/**
+ * Reusable, zero-copy view of the ICMP header of an IPv4 {@link TunPacket} or the ICMPv6 header of
+ * an IPv6 {@link TunPacket}.
+ *
+ * @see TransportHeaderView
+ */
+public final class IcmpView extends TransportHeaderView {
+    public static final int ICMP_HEADER_LENGTH = 8;
+    // https://datatracker.ietf.org/doc/html/rfc792
+    // https://datatracker.ietf.org/doc/html/rfc4443#section-2.1
+    public static final int ICMP_TYPE = 0;
+    public static final int ICMP_CODE = 1;
+    public static final int ICMP_CHECKSUM = 2;
+    public static final int ICMP_REST_OF_HEADER = 4;
+    // echo request/reply
+    public static final int ICMP_IDENTIFIER = 4;
+    public static final int ICMP_SEQUENCE_NUMBER = 6;
+
+    @Override
+    public IcmpView wrap(final TunPacket packet) {
+        super.wrap(packet);
+        return this;
+    }
+
+    @Override
+    boolean accepts(final int version, final int protocol) {
+        return version == 4 ? protocol == ICMP.decimal : protocol == IPV6_ICMP.decimal;
+    }
+
+    @Override
+    int minHeaderLength() {
+        return ICMP_HEADER_LENGTH;
+    }
+
+    @Override
+    int checksumOffset() {
+        return ICMP_CHECKSUM;
+    }
+
+    @Override
+    int protocol() {
+        return version == 4 ? ICMP.decimal : IPV6_ICMP.decimal;
+    }
+
+    @Override
+    boolean hasPseudoHeader() {
+        // only icmpv6 covers the pseudo header
+        return version == 6;
+    }
+
+    @Override
+    public int headerLength() {
+        return ICMP_HEADER_LENGTH;
+    }
+
+    /**
+     * Returns {@code true} if this is an ICMPv6 message.
+     *
+     * @return {@code true} if this is an ICMPv6 message
+     */
+    public boolean isIcmpv6() {
+        return version == 6;
+    }
+
+    public int type() {
+        return buf.getUnsignedByte(offset + ICMP_TYPE);
+    }
+
+    public int code() {
+        return buf.getUnsignedByte(offset + ICMP_CODE);
+    }
+
+    /**
+     * Returns the type-specific second word of the header.
+     *
+     * @return the type-specific second word of the header
+     */
+    public long restOfHeader() {
+        return buf.getUnsignedInt(offset + ICMP_REST_OF_HEADER);
+    }
+
+    /**
+     * Returns the identifier of echo requests/replies.
+     *
+     * @return the identifier
+     */
+    public int identifier() {
+        return buf.getUnsignedShort(offset + ICMP_IDENTIFIER);
+    }
+
+    /**
+     * Sets the identifier of echo requests/replies and updates the checksum incrementally.
+     *
+     * @param identifier the new identifier
+     */
+    public void setIdentifier(final int identifier) {
+        setShortField(ICMP_IDENTIFIER, identifier);
+    }
+
+    /**
+     * Returns the sequence number of echo requests/replies.
+     *
+     * @return the sequence number
+     */
+    public int sequenceNumber() {
+        return buf.getUnsignedShort(offset + ICMP_SEQUENCE_NUMBER);
+    }
+
+    /**
+     * Sets the sequence number of echo requests/replies and updates the checksum incrementally.
+     *
+     * @param sequenceNumber the new sequence number
+     */
+    public void setSequenceNumber(final int sequenceNumber) {
+        setShortField(ICMP_SEQUENCE_NUMBER, sequenceNumber);
+    }
+
+    @Override
+    public String toString() {
+        return "IcmpView[icmpv6=" + isIcmpv6() + ", type=" + type() + ", code=" + code() + ']';
+    }
+}
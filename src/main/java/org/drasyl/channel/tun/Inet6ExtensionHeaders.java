@@ -0,0 +1,134 @@
+/*
+ * Copyright (c) 2021-2022 Heiko Bornholdt and Kevin Röbert
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ * IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM,
+ * DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR
+ * OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE
+ * OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package org.drasyl.channel.tun;
+
+import io.netty.buffer.ByteBuf;
+
+import static org.drasyl.channel.tun.Tun6Packet.INET6_HEADER_LENGTH;
+import static org.drasyl.channel.tun.Tun6Packet.INET6_NEXT_HEADER;
+
+/**
+ * Walks the IPv6 extension header chain to locate the upper-layer header.
+ *
+ * @see Tun6Packet#upperLayerProtocol()
+ */
+final class Inet6ExtensionHeaders {
+    // https://datatracker.ietf.org/doc/html/rfc8200#section-4
+    static final int HOP_BY_HOP_OPTIONS = 0;
+    static final int ROUTING = 43;
+    static final int FRAGMENT = 44;
+    static final int ENCAPSULATING_SECURITY_PAYLOAD = 50;
+    static final int AUTHENTICATION_HEADER = 51;
+    static final int NO_NEXT_HEADER = 59;
+    static final int DESTINATION_OPTIONS = 60;
+    // fields of the fragment header
+    static final int FRAGMENT_OFFSET = 2;
+    static final int FRAGMENT_IDENTIFICATION = 4;
+    static final int FRAGMENT_HEADER_LENGTH = 8;
+
+    private Inet6ExtensionHeaders() {
+        // util class
+    }
+
+    /**
+     * Walks the extension header chain of the IPv6 packet starting at {@code offset} of
+     * {@code buf} in a single pass. The result is packed into a {@code long} and can be unpacked
+     * via {@link #protocol(long)}, {@link #upperLayerOffset(long)}, and
+     * {@link #fragmentHeaderOffset(long)}.
+     *
+     * @return packed result of the walk
+     */
+    @SuppressWarnings({ "java:S109", "java:S3776" })
+    static long walk(final ByteBuf buf, final int offset) {
+        final int end = buf.writerIndex();
+        int protocol = buf.getUnsignedByte(offset + INET6_NEXT_HEADER);
+        int position = offset + INET6_HEADER_LENGTH;
+        int fragmentHeader = 0;
+        while (true) {
+            switch (protocol) {
+                case HOP_BY_HOP_OPTIONS:
+                case ROUTING:
+                case DESTINATION_OPTIONS:
+                    if (position + 2 > end) {
+                        return pack(protocol, fragmentHeader, -1);
+                    }
+                    protocol = buf.getUnsignedByte(position);
+                    position += (buf.getUnsignedByte(position + 1) + 1) * 8;
+                    break;
+
+                case FRAGMENT:
+                    if (position + FRAGMENT_HEADER_LENGTH > end) {
+                        return pack(protocol, fragmentHeader, -1);
+                    }
+                    fragmentHeader = position - offset;
+                    protocol = buf.getUnsignedByte(position);
+                    if ((buf.getUnsignedShort(position + FRAGMENT_OFFSET) & 0xfff8) != 0) {
+                        // only the first fragment carries the upper-layer header
+                        return pack(protocol, fragmentHeader, -1);
+                    }
+                    position += FRAGMENT_HEADER_LENGTH;
+                    break;
+
+                case AUTHENTICATION_HEADER:
+                    if (position + 2 > end) {
+                        return pack(protocol, fragmentHeader, -1);
+                    }
+                    protocol = buf.getUnsignedByte(position);
+                    position += (buf.getUnsignedByte(position + 1) + 2) * 4;
+                    break;
+
+                default:
+                    // upper-layer header, encapsulating security payload or no next header
+                    return pack(protocol, fragmentHeader, position > end ? -1 : position - offset);
+            }
+        }
+    }
+
+    private static long pack(final int protocol,
+                             final int fragmentHeaderOffset,
+                             final int upperLayerOffset) {
+        return (long) protocol << 48 | (long) fragmentHeaderOffset << 32 | upperLayerOffset & 0xffffffffL;
+    }
+
+    /**
+     * Returns the protocol number following the extension header chain.
+     */
+    static int protocol(final long chain) {
+        return (int) (chain >>> 48);
+    }
+
+    /**
+     * Returns the offset of the upper-layer header relative to the start of the IPv6 header or
+     * {@code -1} if the packet does not contain it (e.g. non-first fragment or truncated chain).
+     */
+    static int upperLayerOffset(final long chain) {
+        return (int) chain;
+    }
+
+    /**
+     * Returns the offset of the fragment header relative to the start of the IPv6 header or
+     * {@code 0} if the packet is not a fragment.
+     */
+    static int fragmentHeaderOffset(final long chain) {
+        return (int) (chain >>> 32) & 0xffff;
+    }
+}
@@ -0,0 +1,434 @@
+/*
+ * Copyright (c) 2021-2022 Heiko Bornholdt and Kevin Röbert
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ * IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM,
+ * DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR
+ * OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE
+ * OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package org.drasyl.channel.tun;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.util.internal.PlatformDependent;
+
+import static io.netty.util.internal.MathUtil.isOutOfBounds;
+import static org.drasyl.channel.tun.IcmpView.ICMP_CHECKSUM;
+import static org.drasyl.channel.tun.InetProtocol.ICMP;
+import static org.drasyl.channel.tun.InetProtocol.IPV6_ICMP;
+import static org.drasyl.channel.tun.InetProtocol.TCP;
+import static org.drasyl.channel.tun.InetProtocol.UDP;
+import static org.drasyl.channel.tun.TcpView.TCP_CHECKSUM;
+import static org.drasyl.channel.tun.Tun4Packet.INET4_DESTINATION_ADDRESS;
+import static org.drasyl.channel.tun.Tun4Packet.INET4_HEADER_CHECKSUM;
+import static org.drasyl.channel.tun.Tun4Packet.INET4_SOURCE_ADDRESS;
+import static org.drasyl.channel.tun.Tun4Packet.INET4_VERSION_AND_INTERNET_HEADER_LENGTH;
+import static org.drasyl.channel.tun.Tun6Packet.INET6_SOURCE_ADDRESS;
+import static org.drasyl.channel.tun.UdpView.UDP_CHECKSUM;
+
+/**
+ * Computes and verifies the internet checksum (<a href="https://datatracker.ietf.org/doc/html/rfc1071">RFC
+ * 1071</a>) of IPv4 headers (including options) and of TCP, UDP, ICMP, and ICMPv6 segments
+ * (including the IPv4 or IPv6 pseudo header).
+ * <p>
+ * The one's complement sum is independent of the byte order, so direct and heap buffers are summed
+ * 8 bytes at a time in native byte order and the result is swapped once at the end. Other buffers
+ * (e.g. composite buffers) are summed 8 bytes at a time through {@link ByteBuf#getLong(int)}. On
+ * Java 22 or newer, large regions are summed with the Vector API if the
+ * {@code jdk.incubator.vector} module has been added to the runtime (e.g.
+ * {@code --add-modules jdk.incubator.vector}).
+ * <p>
+ * Partial sums returned by {@link #sum(ByteBuf, int, int, long)} and
+ * {@link #pseudoHeaderSum(ByteBuf, int, int, int, int)} can be added up and are turned into a
+ * checksum by {@link #fold(long)} and complementing the result.
+ */
+@SuppressWarnings("java:S109")
+public final class InetChecksum {
+    private static final boolean UNSAFE_LONGS = PlatformDependent.hasUnsafe() && PlatformDependent.isUnaligned();
+    // below this length, setting up the vectorized loop costs more than it saves
+    static final int VECTORIZE_THRESHOLD = 256;
+    private static final ChecksumSummer LARGE_REGIONS = ChecksumSummer.load();
+
+    private InetChecksum() {
+        // util class
+    }
+
+    /**
+     * Adds the 16-bit words of {@code length} bytes of {@code buf} starting at {@code index} to
+     * {@code sum}. An odd trailing byte is padded with zero. {@code index} must be even relative
+     * to the start of the checksummed data.
+     *
+     * @param buf    buffer to read from
+     * @param index  first byte to sum up
+     * @param length number of bytes to sum up
+     * @param sum    partial sum to add to
+     * @return the new partial sum
+     */
+    public static long sum(final ByteBuf buf, final int index, final int length, final long sum) {
+        if (length >= VECTORIZE_THRESHOLD) {
+            return sum + LARGE_REGIONS.sum(buf, index, length);
+        }
+        else {
+            return sum + scalarSum(buf, index, length);
+        }
+    }
+
+    /**
+     * Returns the folded sum of {@code length} bytes of {@code buf} starting at {@code index} in
+     * network byte order, summed up 8 bytes at a time.
+     */
+    static long scalarSum(final ByteBuf buf, final int index, final int length) {
+        if (UNSAFE_LONGS && (buf.hasMemoryAddress() || buf.hasArray())) {
+            if (isOutOfBounds(index, length, buf.capacity())) {
+                throw new IndexOutOfBoundsException("index: " + index + ", length: " + length + " (expected: range(0, " + buf.capacity() + "))");
+            }
+            if (buf.hasMemoryAddress()) {
+                return sumAddress(buf.memoryAddress() + index, length);
+            }
+            else {
+                return sumArray(buf.array(), buf.arrayOffset() + index, length);
+            }
+        }
+        else {
+            return sumBuffer(buf, index, length);
+        }
+    }
+
+    /**
+     * Sums up memory in native byte order and returns the folded sum in network byte order.
+     */
+    private static long sumAddress(final long address, final int length) {
+        long sum = 0;
+        int i = 0;
+        for (; i <= length - 8; i += 8) {
+            final long word = PlatformDependent.getLong(address + i);
+            sum += (word >>> 32) + (word & 0xffffffffL);
+        }
+        if (i <= length - 4) {
+            sum += PlatformDependent.getInt(address + i) & 0xffffffffL;
+            i += 4;
+        }
+        if (i <= length - 2) {
+            sum += PlatformDependent.getShort(address + i) & 0xffff;
+            i += 2;
+        }
+        if (i < length) {
+            // pad odd byte
+            final int b = PlatformDependent.getByte(address + i) & 0xff;
+            sum += PlatformDependent.BIG_ENDIAN_NATIVE_ORDER ? b << 8 : b;
+        }
+        return toNetworkOrder(fold(sum));
+    }
+
+    /**
+     * Sums up an array in native byte order and returns the folded sum in network byte order.
+     */
+    private static long sumArray(final byte[] array, final int index, final int length) {
+        long sum = 0;
+        int i = index;
+        final int end = index + length;
+        for (; i <= end - 8; i += 8) {
+            final long word = PlatformDependent.getLong(array, i);
+            sum += (word >>> 32) + (word & 0xffffffffL);
+        }
+        if (i <= end - 4) {
+            sum += PlatformDependent.getInt(array, i) & 0xffffffffL;
+            i += 4;
+        }
+        if (i <= end - 2) {
+            sum += PlatformDependent.getShort(array, i) & 0xffff;
+            i += 2;
+        }
+        if (i < end) {
+            // pad odd byte
+            final int b = array[i] & 0xff;
+            sum += PlatformDependent.BIG_ENDIAN_NATIVE_ORDER ? b << 8 : b;
+        }
+        return toNetworkOrder(fold(sum));
+    }
+
+    /**
+     * Sums up the buffer in network byte order and returns the folded sum.
+     */
+    private static long sumBuffer(final ByteBuf buf, final int index, final int length) {
+        long sum = 0;
+        int i = index;
+        final int end = index + length;
+        for (; i <= end - 8; i += 8) {
+            final long word = buf.getLong(i);
+            sum += (word >>> 32) + (word & 0xffffffffL);
+        }
+        if (i <= end - 4) {
+            sum += buf.getUnsignedInt(i);
+            i += 4;
+        }
+        if (i <= end - 2) {
+            sum += buf.getUnsignedShort(i);
+            i += 2;
+        }
+        if (i < end) {
+            // pad odd byte
+            sum += buf.getUnsignedByte(i) << 8;
+        }
+        return fold(sum);
+    }
+
+    /**
+     * Converts a folded sum of native order words to network byte order.
+     */
+    static long toNetworkOrder(final int folded) {
+        return PlatformDependent.BIG_ENDIAN_NATIVE_ORDER ? folded : Integer.reverseBytes(folded) >>> 16;
+    }
+
+    /**
+     * Folds {@code sum} into 16 bits by adding the carries back in.
+     *
+     * @param sum partial sum
+     * @return the one's complement sum as unsigned 16-bit value
+     */
+    public static int fold(long sum) {
+        sum = (sum & 0xffffffffL) + (sum >>> 32);
+        sum = (sum & 0xffff) + (sum >>> 16);
+        sum = (sum & 0xffff) + (sum >>> 16);
+        return (int) ((sum & 0xffff) + (sum >>> 16));
+    }
+
+    /**
+     * Returns the partial sum of the pseudo header of the IPv4 or IPv6 header at {@code ipOffset}.
+     *
+     * @param buf      buffer holding the IP header
+     * @param ipOffset position of the IP header
+     * @param version  IP version
+     * @param protocol transport protocol
+     * @param length   length of the transport layer segment
+     * @return the partial sum of the pseudo header
+     */
+    public static long pseudoHeaderSum(final ByteBuf buf,
+                                       final int ipOffset,
+                                       final int version,
+                                       final int protocol,
+                                       final int length) {
+        if (version == 4) {
+            final long address = buf.getUnsignedInt(ipOffset + INET4_SOURCE_ADDRESS) + buf.getUnsignedInt(ipOffset + INET4_DESTINATION_ADDRESS);
+            return address + protocol + length;
+        }
+        else {
+            final long address = sum(buf, ipOffset + INET6_SOURCE_ADDRESS, 32, 0);
+            return address + protocol + (length >>> 16) + (length & 0xffff);
+        }
+    }
+
+    /**
+     * Calculates the header checksum of the IPv4 header at {@code offset}, including options. The
+     * checksum field is skipped, so the result can be written to it directly.
+     *
+     * @param buf    buffer holding the IPv4 header
+     * @param offset position of the IPv4 header
+     * @return the header checksum
+     */
+    public static int ipv4HeaderChecksum(final ByteBuf buf, final int offset) {
+        final int headerLength = (buf.getUnsignedByte(offset + INET4_VERSION_AND_INTERNET_HEADER_LENGTH) & 0x0f) * 4;
+        final long sum = sum(buf, offset, headerLength, 0);
+        return ~fold(sum + (~buf.getUnsignedShort(offset + INET4_HEADER_CHECKSUM) & 0xffff)) & 0xffff;
+    }
+
+    /**
+     * Returns {@code true} if the IPv4 header at {@code offset} carries a valid header checksum.
+     *
+     * @param buf    buffer holding the IPv4 header
+     * @param offset position of the IPv4 header
+     * @return {@code true} if the header checksum is valid
+     */
+    public static boolean verifyIpv4Header(final ByteBuf buf, final int offset) {
+        final int headerLength = (buf.getUnsignedByte(offset + INET4_VERSION_AND_INTERNET_HEADER_LENGTH) & 0x0f) * 4;
+        return fold(sum(buf, offset, headerLength, 0)) == 0xffff;
+    }
+
+    /**
+     * Calculates the checksum of the transport layer segment {@code view} points to. The checksum
+     * field is skipped, so the result can be written to it directly.
+     *
+     * @param view view pointing to the segment
+     * @return the checksum
+     */
+    public static int calculate(final TransportHeaderView view) {
+        final int field = view.checksum();
+        final long sum = segmentSum(view) + (~field & 0xffff);
+        final int checksum = ~fold(sum) & 0xffff;
+        if (checksum == 0 && view.protocol() == UDP.decimal) {
+            // zero is reserved for "no checksum" in udp
+            return 0xffff;
+        }
+        return checksum;
+    }
+
+    /**
+     * Returns {@code true} if the transport layer segment {@code view} points to carries a valid
+     * checksum. UDP over IPv4 without checksum is considered valid.
+     *
+     * @param view view pointing to the segment
+     * @return {@code true} if the checksum is valid
+     */
+    public static boolean verify(final TransportHeaderView view) {
+        if (view.protocol() == UDP.decimal && view.ipVersion() == 4 && view.checksum() == 0) {
+            return true;
+        }
+        return fold(segmentSum(view)) == 0xffff;
+    }
+
+    /**
+     * Calculates the checksum of the transport layer segment {@code view} points to and writes it
+     * to the checksum field.
+     *
+     * @param view view pointing to the segment
+     */
+    public static void update(final TransportHeaderView view) {
+        view.buf.setShort(view.offset + view.checksumOffset(), calculate(view));
+    }
+
+    /**
+     * Updates {@code checksum} after a 16-bit word covered by it has changed from
+     * {@code oldValue} to {@code newValue}, without summing up the covered data again (<a
+     * href="https://datatracker.ietf.org/doc/html/rfc1624">RFC 1624</a>, eqn. 3).
+     *
+     * @param checksum checksum to update
+     * @param oldValue previous value of the word
+     * @param newValue new value of the word
+     * @return the updated checksum
+     */
+    public static int adjust(final int checksum, final int oldValue, final int newValue) {
+        return adjust(checksum, delta(oldValue, newValue));
+    }
+
+    /**
+     * Updates {@code checksum} after a 32-bit field covered by it has changed.
+     *
+     * @param checksum checksum to update
+     * @param oldValue previous value of the field
+     * @param newValue new value of the field
+     * @return the updated checksum
+     * @see #adjust(int, int, int)
+     */
+    public static int adjustInt(final int checksum, final int oldValue, final int newValue) {
+        return adjust(checksum, deltaInt(oldValue, newValue));
+    }
+
+    /**
+     * Updates {@code checksum} after a 64-bit field covered by it has changed.
+     *
+     * @param checksum checksum to update
+     * @param oldValue previous value of the field
+     * @param newValue new value of the field
+     * @return the updated checksum
+     * @see #adjust(int, int, int)
+     */
+    public static int adjustLong(final int checksum, final long oldValue, final long newValue) {
+        return adjust(checksum, deltaLong(oldValue, newValue));
+    }
+
+    /**
+     * Returns the partial sum {@code ~m + m'} of a changed 16-bit word.
+     */
+    static long delta(final int oldValue, final int newValue) {
+        return (~oldValue & 0xffff) + (newValue & 0xffff);
+    }
+
+    /**
+     * Returns the partial sum {@code ~m + m'} of a changed 32-bit field.
+     */
+    static long deltaInt(final int oldValue, final int newValue) {
+        return delta(oldValue >>> 16, newValue >>> 16) + delta(oldValue, newValue);
+    }
+
+    /**
+     * Returns the partial sum {@code ~m + m'} of a changed 64-bit field.
+     */
+    static long deltaLong(final long oldValue, final long newValue) {
+        return deltaInt((int) (oldValue >>> 32), (int) (newValue >>> 32)) + deltaInt((int) oldValue, (int) newValue);
+    }
+
+    /**
+     * Applies the partial sum of changed words to {@code checksum}.
+     */
+    static int adjust(final int checksum, final long delta) {
+        return ~fold((~checksum & 0xffff) + delta) & 0xffff;
+    }
+
+    /**
+     * Applies the partial sum of changed pseudo header words to the checksum of the transport
+     * layer segment at {@code offset}. Does nothing for protocols without pseudo header, for
+     * truncated segments, and for UDP datagrams without checksum.
+     */
+    static void adjustPseudoHeader(final ByteBuf buf,
+                                   final int version,
+                                   final int protocol,
+                                   final int offset,
+                                   final long delta) {
+        final int checksumOffset = checksumOffset(version, protocol);
+        if (checksumOffset == -1 || protocol == ICMP.decimal) {
+            return;
+        }
+        final int index = offset + checksumOffset;
+        if (index + 2 > buf.writerIndex()) {
+            return;
+        }
+        final int checksum = buf.getUnsignedShort(index);
+        buf.setShort(index, adjustField(protocol, checksum, delta));
+    }
+
+    /**
+     * Applies the partial sum of changed words to a transport layer checksum, honoring the special
+     * meaning of zero in UDP.
+     */
+    static int adjustField(final int protocol, final int checksum, final long delta) {
+        if (protocol == UDP.decimal) {
+            if (checksum == 0) {
+                // no checksum
+                return 0;
+            }
+            final int adjusted = adjust(checksum, delta);
+            return adjusted == 0 ? 0xffff : adjusted;
+        }
+        return adjust(checksum, delta);
+    }
+
+    /**
+     * Returns the position of the checksum field within the header of the given transport
+     * protocol or {@code -1} if the protocol is not supported.
+     */
+    static int checksumOffset(final int version, final int protocol) {
+        if (protocol == TCP.decimal) {
+            return TCP_CHECKSUM;
+        }
+        else if (protocol == UDP.decimal) {
+            return UDP_CHECKSUM;
+        }
+        else if (version == 4 ? protocol == ICMP.decimal : protocol == IPV6_ICMP.decimal) {
+            return ICMP_CHECKSUM;
+        }
+        else {
+            return -1;
+        }
+    }
+
+    private static long segmentSum(final TransportHeaderView view) {
+        final int length = view.length();
+        long sum = sum(view.buf, view.offset, length, 0);
+        if (view.hasPseudoHeader()) {
+            sum += pseudoHeaderSum(view.buf, 0, view.version, view.protocol(), length);
+        }
+        return sum;
+    }
+}
@@ -0,0 +1,58 @@
+/*
+ * Copyright (c) 2021-2022 Heiko Bornholdt and Kevin Röbert
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ * IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM,
+ * DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR
+ * OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE
+ * OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package org.drasyl.channel.tun;
+
+/**
+ * Defines how a {@link TunChannel} handles received packets while the pipeline falls behind, i.e.
+ * while the queue between a queue reader and the channel's event loop is above its
+ * {@link IngressWaterMark}. Each packet dropped by the channel is counted (see
+ * {@link TunChannel#droppedPackets()}).
+ *
+ * @see TunChannelOption#TUN_INGRESS_OVERFLOW_POLICY
+ */
+public enum IngressOverflowPolicy {
+    /**
+     * Stops reading from the device once the high water mark is reached and resumes once the queue
+     * has been drained to the low water mark (default). Packets are then dropped by the kernel once
+     * the device's own queue is full. Memory usage is bounded without dropping packets in user
+     * space.
+     */
+    BLOCK,
+    /**
+     * Keeps reading and drops newly received packets once the high water mark is reached, until the
+     * queue has been drained to the low water mark.
+     */
+    TAIL_DROP,
+    /**
+     * Keeps reading and drops the oldest queued packets, so that no more packets than the high water
+     * mark are passed to the pipeline. Favors fresh packets over stale ones (e.g. for real-time
+     * traffic). As the oldest packets can only be dropped by the channel's event loop, reading
+     * still stalls if the event loop is so busy that the queue fills up completely.
+     */
+    HEAD_DROP,
+    /**
+     * Random early detection: keeps reading and drops newly received packets with a probability
+     * rising linearly from {@code 0} at the low water mark to {@code 1} at the high water mark. This
+     * signals congestion to TCP senders early, before the queue is full.
+     */
+    RED
+}
@@ -0,0 +1,181 @@
+/*
+ * Copyright (c) 2021-2022 Heiko Bornholdt and Kevin Röbert
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ * IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM,
+ * DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR
+ * OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE
+ * OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package org.drasyl.channel.tun;
+
+import io.netty.util.ReferenceCountUtil;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.LongAdder;
+
+import static java.util.Objects.requireNonNull;
+
+/**
+ * Bounded queue handing received packets over from a single queue reader (producer) to the
+ * channel's event loop (consumer). Applies the {@link IngressOverflowPolicy} while the queue is
+ * above its {@link IngressWaterMark} and counts all dropped packets.
+ * <p>
+ * Producer: call {@link #tryRead(int)} before reading a batch of packets from the device, then
+ * {@link #offer(Object)} each read packet. If {@link #tryRead(int)} fails, the reader must stall
+ * until the consumer {@link #tryResume() resumes} it. Consumer: {@link #poll()} packets and call
+ * {@link #tryResume()} afterwards.
+ */
+final class IngressQueue {
+    private final SpscRing<Object> ring;
+    private final IngressOverflowPolicy policy;
+    private final int low;
+    private final int high;
+    private final LongAdder drops;
+    private final AtomicBoolean stalled = new AtomicBoolean();
+    // TAIL_DROP: drop packets until the queue has been drained to the low water mark. Producer only
+    private boolean dropping;
+
+    /**
+     * @param waterMark water mark to apply the policy at
+     * @param policy    policy to apply above the water mark
+     * @param batchSize maximum number of packets read from the device at once
+     * @param drops     counter incremented for each dropped packet
+     */
+    IngressQueue(final IngressWaterMark waterMark,
+                 final IngressOverflowPolicy policy,
+                 final int batchSize,
+                 final LongAdder drops) {
+        this.policy = requireNonNull(policy);
+        this.low = waterMark.low();
+        this.high = waterMark.high();
+        this.drops = requireNonNull(drops);
+        // leave room for a whole batch read right below the high water mark and for packets
+        // exceeding it until the consumer drops them from the head
+        this.ring = new SpscRing<>(Math.max(2 * high, high + batchSize));
+    }
+
+    /**
+     * Returns the number of queued packets.
+     *
+     * @return the number of queued packets
+     */
+    int size() {
+        return ring.size();
+    }
+
+    /**
+     * Returns {@code true} if the producer may read the next batch of up to {@code batchSize}
+     * packets. Otherwise, the producer is marked as stalled.
+     *
+     * @param batchSize maximum number of packets to read
+     * @return {@code true} if the producer may read the next batch
+     */
+    boolean tryRead(final int batchSize) {
+        final boolean full;
+        if (policy == IngressOverflowPolicy.BLOCK) {
+            full = ring.size() >= high;
+        }
+        else {
+            // other policies drop packets instead, as long as the ring has room for a whole batch
+            full = ring.remainingCapacity() < batchSize;
+        }
+        if (full) {
+            stalled.set(true);
+        }
+        return !full;
+    }
+
+    /**
+     * Enqueues {@code msg} or drops it according to the overflow policy. Must only be called by the
+     * producer.
+     *
+     * @param msg received packet
+     * @return {@code false} if {@code msg} has been dropped
+     */
+    boolean offer(final Object msg) {
+        if (shouldDrop() || !ring.offer(msg)) {
+            drop(msg);
+            return false;
+        }
+        return true;
+    }
+
+    private boolean shouldDrop() {
+        switch (policy) {
+            case TAIL_DROP: {
+                final int size = ring.size();
+                if (dropping && size <= low) {
+                    dropping = false;
+                }
+                else if (!dropping && size >= high) {
+                    dropping = true;
+                }
+                return dropping;
+            }
+            case RED: {
+                final int size = ring.size();
+                if (size <= low) {
+                    return false;
+                }
+                if (size >= high) {
+                    return true;
+                }
+                return ThreadLocalRandom.current().nextInt(high - low) < size - low;
+            }
+            default:
+                return false;
+        }
+    }
+
+    /**
+     * Removes and returns the oldest queued packet. Must only be called by the consumer.
+     *
+     * @return the oldest queued packet or {@code null} if the queue is empty
+     */
+    Object poll() {
+        if (policy == IngressOverflowPolicy.HEAD_DROP) {
+            while (ring.size() > high) {
+                drop(ring.poll());
+            }
+        }
+        return ring.poll();
+    }
+
+    /**
+     * Returns {@code true} if the producer has been stalled and may now resume, as the queue has
+     * been drained to the low water mark. Returns {@code true} only once per stall.
+     *
+     * @return {@code true} if the producer must be resumed
+     */
+    boolean tryResume() {
+        return stalled.get() && ring.size() <= low && stalled.compareAndSet(true, false);
+    }
+
+    /**
+     * Returns {@code true} if no packets are queued.
+     *
+     * @return {@code true} if no packets are queued
+     */
+    boolean isEmpty() {
+        return ring.isEmpty();
+    }
+
+    private void drop(final Object msg) {
+        ReferenceCountUtil.release(msg);
+        drops.increment();
+    }
+}
@@ -0,0 +1,96 @@
+/*
+ * Copyright (c) 2021-2022 Heiko Bornholdt and Kevin Röbert
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ * IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM,
+ * DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR
+ * OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE
+ * OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package org.drasyl.channel.tun;
+
+/**
+ * Defines the low and high water mark of the queue each queue reader of a {@link TunChannel} hands
+ * received packets over to the channel's event loop with, measured in packets. Once {@code high}
+ * packets are queued, the channel's {@link IngressOverflowPolicy} is applied until no more than
+ * {@code low} packets are queued again.
+ *
+ * @see TunChannelOption#TUN_INGRESS_WATER_MARK
+ */
+public final class IngressWaterMark {
+    public static final IngressWaterMark DEFAULT = new IngressWaterMark(512, 1024);
+    private final int low;
+    private final int high;
+
+    /**
+     * @param low  number of queued packets at which the overflow policy is no longer applied
+     * @param high number of queued packets at which the overflow policy is applied
+     * @throws IllegalArgumentException if {@code low} is negative, {@code high} is not positive, or
+     *                                  {@code low} is greater than {@code high}
+     */
+    public IngressWaterMark(final int low, final int high) {
+        if (low < 0) {
+            throw new IllegalArgumentException("low must be non-negative.");
+        }
+        if (high < 1) {
+            throw new IllegalArgumentException("high must be positive.");
+        }
+        if (low > high) {
+            throw new IllegalArgumentException("low must not be greater than high.");
+        }
+        this.low = low;
+        this.high = high;
+    }
+
+    /**
+     * Returns the low water mark.
+     *
+     * @return the low water mark
+     */
+    public int low() {
+        return low;
+    }
+
+    /**
+     * Returns the high water mark.
+     *
+     * @return the high water mark
+     */
+    public int high() {
+        return high;
+    }
+
+    @Override
+    public boolean equals(final Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (o == null || getClass() != o.getClass()) {
+            return false;
+        }
+        final IngressWaterMark that = (IngressWaterMark) o;
+        return low == that.low && high == that.high;
+    }
+
+    @Override
+    public int hashCode() {
+        return 31 * low + high;
+    }
+
+    @Override
+    public String toString() {
+        return "IngressWaterMark(low: " + low + ", high: " + high + ")";
+    }
+}
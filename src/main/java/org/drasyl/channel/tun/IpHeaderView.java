@@ -0,0 +1,281 @@
+/*
+ * Copyright (c) 2021-2022 Heiko Bornholdt and Kevin Röbert
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ * IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM,
+ * DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR
+ * OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE
+ * OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package org.drasyl.channel.tun;
+
+import io.netty.buffer.ByteBuf;
+
+import static java.util.Objects.requireNonNull;
+import static org.drasyl.channel.tun.Tun4Packet.INET4_DESTINATION_ADDRESS;
+import static org.drasyl.channel.tun.Tun4Packet.INET4_HEADER_LENGTH;
+import static org.drasyl.channel.tun.Tun4Packet.INET4_PROTOCOL;
+import static org.drasyl.channel.tun.Tun4Packet.INET4_SOURCE_ADDRESS;
+import static org.drasyl.channel.tun.Tun4Packet.INET4_TIME_TO_LIVE;
+import static org.drasyl.channel.tun.Tun4Packet.INET4_TOTAL_LENGTH;
+import static org.drasyl.channel.tun.Tun4Packet.INET4_VERSION_AND_INTERNET_HEADER_LENGTH;
+import static org.drasyl.channel.tun.Tun6Packet.INET6_DESTINATION_ADDRESS;
+import static org.drasyl.channel.tun.Tun6Packet.INET6_HEADER_LENGTH;
+import static org.drasyl.channel.tun.Tun6Packet.INET6_HOP_LIMIT;
+import static org.drasyl.channel.tun.Tun6Packet.INET6_NEXT_HEADER;
+import static org.drasyl.channel.tun.Tun6Packet.INET6_PAYLOAD_LENGTH;
+import static org.drasyl.channel.tun.Tun6Packet.INET6_SOURCE_ADDRESS;
+
+/**
+ * Reusable view of an IPv4 or IPv6 header located at any offset of a {@link ByteBuf}. A single
+ * instance can be pointed at one packet after another via {@link #wrap(ByteBuf, int)}, so that
+ * handlers can examine headers without any allocation:
+ * <pre>
+ * {@code
+ * private final IpHeaderView header = new IpHeaderView();
+ *
+ * public void channelRead(ChannelHandlerContext ctx, Object msg) {
+ *     header.wrap((TunPacket) msg);
+ *     if (header.isIpv4() && header.sourceAddress4() == BLOCKED_ADDRESS) {
+ *         // ...
+ *     }
+ * }
+ * }
+ * </pre>
+ * The view neither retains nor releases the wrapped buffer and must not be used after the buffer
+ * has been released. This class is not thread-safe.
+ */
+@SuppressWarnings("java:S109")
+public final class IpHeaderView {
+    // ::ffff:0:0/96 prefix of ipv4-mapped ipv6 addresses
+    private static final long IPV4_MAPPED_PREFIX = 0x0000_ffff_0000_0000L;
+    private ByteBuf buf;
+    private int offset;
+    private int version;
+
+    /**
+     * Points this view to the header of {@code packet}.
+     *
+     * @param packet packet to examine
+     * @return this view
+     */
+    public IpHeaderView wrap(final TunPacket packet) {
+        return wrap(packet.content(), 0);
+    }
+
+    /**
+     * Points this view to the header starting at {@code offset} of {@code buf}.
+     *
+     * @param buf    buffer to examine
+     * @param offset absolute position of the header within {@code buf}
+     * @return this view
+     * @throws IllegalArgumentException if there is no IPv4 or IPv6 header at {@code offset}
+     */
+    public IpHeaderView wrap(final ByteBuf buf, final int offset) {
+        requireNonNull(buf);
+        if (offset < 0 || offset >= buf.writerIndex()) {
+            throw new IllegalArgumentException("offset " + offset + " is outside of the written bytes of buf.");
+        }
+        final int newVersion = buf.getUnsignedByte(offset) >> 4;
+        final int minLength;
+        if (newVersion == 4) {
+            minLength = INET4_HEADER_LENGTH;
+        }
+        else if (newVersion == 6) {
+            minLength = INET6_HEADER_LENGTH;
+        }
+        else {
+            throw new IllegalArgumentException("Unknown protocol: " + newVersion);
+        }
+        if (buf.writerIndex() - offset < minLength) {
+            throw new IllegalArgumentException("IPv" + newVersion + " header must be at least " + minLength + " bytes long.");
+        }
+
+        this.buf = buf;
+        this.offset = offset;
+        this.version = newVersion;
+        return this;
+    }
+
+    /**
+     * Returns the wrapped buffer.
+     *
+     * @return the wrapped buffer
+     */
+    public ByteBuf buffer() {
+        return buf;
+    }
+
+    /**
+     * Returns the position of the header within {@link #buffer()}.
+     *
+     * @return the position of the header
+     */
+    public int offset() {
+        return offset;
+    }
+
+    /**
+     * Returns the IP version.
+     *
+     * @return the IP version.
+     */
+    public int version() {
+        return version;
+    }
+
+    public boolean isIpv4() {
+        return version == 4;
+    }
+
+    public boolean isIpv6() {
+        return version == 6;
+    }
+
+    /**
+     * Returns the length of the IPv4 header including options or the length of the fixed IPv6
+     * header.
+     *
+     * @return the header length in bytes
+     */
+    public int headerLength() {
+        if (version == 4) {
+            return (buf.getUnsignedByte(offset + INET4_VERSION_AND_INTERNET_HEADER_LENGTH) & 0x0f) * 4;
+        }
+        return INET6_HEADER_LENGTH;
+    }
+
+    /**
+     * Returns the length of the whole packet (header and payload) as stated in the header.
+     *
+     * @return the packet length in bytes
+     */
+    public int totalLength() {
+        if (version == 4) {
+            return buf.getUnsignedShort(offset + INET4_TOTAL_LENGTH);
+        }
+        return INET6_HEADER_LENGTH + buf.getUnsignedShort(offset + INET6_PAYLOAD_LENGTH);
+    }
+
+    /**
+     * Returns the IPv4 protocol or the IPv6 next header field.
+     *
+     * @return the protocol number (see {@link InetProtocol})
+     */
+    public int protocol() {
+        if (version == 4) {
+            return buf.getUnsignedByte(offset + INET4_PROTOCOL);
+        }
+        return buf.getUnsignedByte(offset + INET6_NEXT_HEADER);
+    }
+
+    /**
+     * Returns the IPv4 time to live or the IPv6 hop limit.
+     *
+     * @return the remaining hops
+     */
+    public int hopLimit() {
+        if (version == 4) {
+            return buf.getUnsignedByte(offset + INET4_TIME_TO_LIVE);
+        }
+        return buf.getUnsignedByte(offset + INET6_HOP_LIMIT);
+    }
+
+    /**
+     * Returns the IPv4 source address as {@code int} in network byte order.
+     *
+     * @return the IPv4 source address
+     * @throws IllegalStateException if the header is not an IPv4 header
+     */
+    public int sourceAddress4() {
+        requireIpv4();
+        return buf.getInt(offset + INET4_SOURCE_ADDRESS);
+    }
+
+    /**
+     * Returns the IPv4 destination address as {@code int} in network byte order.
+     *
+     * @return the IPv4 destination address
+     * @throws IllegalStateException if the header is not an IPv4 header
+     */
+    public int destinationAddress4() {
+        requireIpv4();
+        return buf.getInt(offset + INET4_DESTINATION_ADDRESS);
+    }
+
+    /**
+     * Returns the upper 64 bits of the source address in network byte order. IPv4 addresses are
+     * returned in their IPv4-mapped IPv6 form ({@code ::ffff:a.b.c.d}), so that both versions can
+     * be handled alike.
+     *
+     * @return the upper 64 bits of the source address
+     */
+    public long sourceAddressHigh() {
+        if (version == 4) {
+            return 0;
+        }
+        return buf.getLong(offset + INET6_SOURCE_ADDRESS);
+    }
+
+    /**
+     * Returns the lower 64 bits of the source address in network byte order.
+     *
+     * @return the lower 64 bits of the source address
+     * @see #sourceAddressHigh()
+     */
+    public long sourceAddressLow() {
+        if (version == 4) {
+            return IPV4_MAPPED_PREFIX | buf.getUnsignedInt(offset + INET4_SOURCE_ADDRESS);
+        }
+        return buf.getLong(offset + INET6_SOURCE_ADDRESS + 8);
+    }
+
+    /**
+     * Returns the upper 64 bits of the destination address in network byte order.
+     *
+     * @return the upper 64 bits of the destination address
+     * @see #sourceAddressHigh()
+     */
+    public long destinationAddressHigh() {
+        if (version == 4) {
+            return 0;
+        }
+        return buf.getLong(offset + INET6_DESTINATION_ADDRESS);
+    }
+
+    /**
+     * Returns the lower 64 bits of the destination address in network byte order.
+     *
+     * @return the lower 64 bits of the destination address
+     * @see #sourceAddressHigh()
+     */
+    public long destinationAddressLow() {
+        if (version == 4) {
+            return IPV4_MAPPED_PREFIX | buf.getUnsignedInt(offset + INET4_DESTINATION_ADDRESS);
+        }
+        return buf.getLong(offset + INET6_DESTINATION_ADDRESS + 8);
+    }
+
+    private void requireIpv4() {
+        if (version != 4) {
+            throw new IllegalStateException("Not an IPv4 header.");
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "IpHeaderView[version=" + version + ", offset=" + offset + ']';
+    }
+}
@@ -0,0 +1,280 @@
+/*
+ * Copyright (c) 2021-2022 Heiko Bornholdt and Kevin Röbert
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ * IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM,
+ * DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR
+ * OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE
+ * OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package org.drasyl.channel.tun;
+
+import io.netty.channel.ChannelConfig;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelInboundHandlerAdapter;
+import io.netty.util.ReferenceCountUtil;
+
+import java.util.ArrayDeque;
+import java.util.Queue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static io.netty.util.internal.ObjectUtil.checkPositive;
+import static java.util.Objects.requireNonNull;
+
+/**
+ * Processes received {@link TunPacket}s in parallel on an {@link Executor} (e.g. a
+ * {@link java.util.concurrent.ForkJoinPool}) and passes the results to the next handler in the
+ * order the packets were received. Intended for CPU-bound per-packet work that is not tied to a
+ * flow (e.g. AEAD encryption or compression), so that even a single flow can use multiple cores.
+ * For work that must see all packets of a flow on the same thread, use {@link FlowHashDispatcher}
+ * instead.
+ * <p>
+ * Each packet is stamped with a sequence number and passed to
+ * {@link #process(TunPacket)} on the executor. Completed results are held in a reorder buffer until
+ * all preceding results have been passed on, which then happens on the channel's event loop
+ * followed by a single {@link ChannelHandlerContext#fireChannelReadComplete()} per burst. At most
+ * {@code maxInFlight} packets are processed or waiting for their predecessors at once. Further
+ * packets are queued and {@link ChannelConfig#setAutoRead(boolean) auto read} is disabled until
+ * the buffer has room again. {@link TunPacketBatch}es are split up into their packets. All other
+ * messages are passed on in order with the packets received before them.
+ * <p>
+ * As the sequence numbers are assigned by the channel's event loop, an instance must not be shared
+ * between channels.
+ */
+public abstract class OrderedParallelHandler extends ChannelInboundHandlerAdapter {
+    // process returned null, nothing to pass on
+    private static final Object NO_RESULT = new Object();
+    private final Executor executor;
+    // reorder buffer. The task of sequence number s is stored at index s % tasks.length
+    private final Task[] tasks;
+    private final Queue<Object> pending = new ArrayDeque<>();
+    private final AtomicBoolean emitScheduled = new AtomicBoolean();
+    private final Runnable emitTask = this::emit;
+    private ChannelHandlerContext ctx;
+    // next sequence number to assign. Event loop only
+    private long nextSequence;
+    // next sequence number to pass on. Event loop only
+    private long nextEmit;
+    private boolean autoReadDisabled;
+
+    /**
+     * @param executor    executor running {@link #process(TunPacket)}
+     * @param maxInFlight maximum number of packets processed or waiting to be passed on at once
+     * @throws IllegalArgumentException if {@code maxInFlight} is not positive
+     */
+    protected OrderedParallelHandler(final Executor executor, final int maxInFlight) {
+        this.executor = requireNonNull(executor);
+        tasks = new Task[checkPositive(maxInFlight, "maxInFlight")];
+        for (int i = 0; i < tasks.length; i++) {
+            tasks[i] = new Task();
+        }
+    }
+
+    /**
+     * Processes {@code packet} on the executor. May be called concurrently for different packets
+     * and must therefore be thread-safe. {@code packet} is released after this method returns and
+     * must be {@link TunPacket#retain() retained} if it is part of the result.
+     *
+     * @param packet the received packet
+     * @return the message to pass to the next handler or {@code null} to pass nothing
+     * @throws Exception is thrown if an error occurred. Passed on in order via
+     *                   {@link ChannelHandlerContext#fireExceptionCaught(Throwable)}
+     */
+    @SuppressWarnings("java:S112")
+    protected abstract Object process(TunPacket packet) throws Exception;
+
+    @Override
+    public void handlerAdded(final ChannelHandlerContext ctx) {
+        this.ctx = ctx;
+    }
+
+    @Override
+    public void handlerRemoved(final ChannelHandlerContext ctx) {
+        Object msg;
+        while ((msg = pending.poll()) != null) {
+            ReferenceCountUtil.release(msg);
+        }
+        resumeReading();
+    }
+
+    @Override
+    public void channelRead(final ChannelHandlerContext ctx, final Object msg) {
+        if (msg instanceof TunPacketBatch) {
+            final TunPacketBatch batch = (TunPacketBatch) msg;
+            try {
+                final int size = batch.size();
+                for (int i = 0; i < size; i++) {
+                    submit(batch.get(i).retain());
+                }
+            }
+            finally {
+                batch.release();
+            }
+        }
+        else {
+            submit(msg);
+        }
+    }
+
+    /**
+     * Not passed on, as the results are passed on asynchronously. Instead, a read complete event
+     * is fired after each burst of results.
+     */
+    @Override
+    public void channelReadComplete(final ChannelHandlerContext ctx) {
+        // do nothing
+    }
+
+    private int inFlight() {
+        return (int) (nextSequence - nextEmit);
+    }
+
+    private Task task(final long sequence) {
+        return tasks[(int) (sequence % tasks.length)];
+    }
+
+    private void submit(final Object msg) {
+        if (!pending.isEmpty() || inFlight() == tasks.length) {
+            pending.add(msg);
+            pauseReading();
+            return;
+        }
+        start(msg);
+    }
+
+    private void start(final Object msg) {
+        final Task task = task(nextSequence++);
+        if (msg instanceof TunPacket) {
+            task.packet = (TunPacket) msg;
+            try {
+                executor.execute(task);
+            }
+            catch (final RejectedExecutionException e) {
+                task.packet = null;
+                ReferenceCountUtil.release(msg);
+                task.complete(new Failure(e));
+            }
+        }
+        else {
+            // nothing to process, but keep the order
+            task.complete(msg);
+        }
+    }
+
+    /**
+     * Passes all results on whose predecessors have been passed on. Runs on the channel's event
+     * loop.
+     */
+    private void emit() {
+        // reset before checking, so that tasks completing from now on schedule another emit
+        emitScheduled.set(false);
+
+        boolean emitted = false;
+        while (nextEmit != nextSequence) {
+            final Task task = task(nextEmit);
+            if (!task.done) {
+                break;
+            }
+            final Object result = task.result;
+            task.result = null;
+            task.done = false;
+            nextEmit++;
+
+            if (result instanceof Failure) {
+                ctx.fireExceptionCaught(((Failure) result).cause);
+            }
+            else if (result != NO_RESULT) {
+                ctx.fireChannelRead(result);
+                emitted = true;
+            }
+        }
+        if (emitted) {
+            ctx.fireChannelReadComplete();
+        }
+
+        // fill up the freed slots
+        while (!pending.isEmpty() && inFlight() < tasks.length) {
+            start(pending.poll());
+        }
+        if (pending.isEmpty()) {
+            resumeReading();
+        }
+    }
+
+    private void scheduleEmit() {
+        if (emitScheduled.compareAndSet(false, true)) {
+            ctx.executor().execute(emitTask);
+        }
+    }
+
+    private void pauseReading() {
+        final ChannelConfig config = ctx.channel().config();
+        if (!autoReadDisabled && config.isAutoRead()) {
+            config.setAutoRead(false);
+            autoReadDisabled = true;
+        }
+    }
+
+    private void resumeReading() {
+        if (autoReadDisabled) {
+            autoReadDisabled = false;
+            ctx.channel().config().setAutoRead(true);
+        }
+    }
+
+    private static final class Failure {
+        final Throwable cause;
+
+        Failure(final Throwable cause) {
+            this.cause = cause;
+        }
+    }
+
+    private final class Task implements Runnable {
+        // written by the event loop before the task is passed to the executor
+        TunPacket packet;
+        // written before done is set
+        Object result;
+        volatile boolean done;
+
+        @SuppressWarnings("java:S1181")
+        @Override
+        public void run() {
+            Object newResult;
+            try {
+                newResult = process(packet);
+                if (newResult == null) {
+                    newResult = NO_RESULT;
+                }
+            }
+            catch (final Throwable t) {
+                newResult = new Failure(t);
+            }
+            finally {
+                packet.release();
+                packet = null;
+            }
+            complete(newResult);
+        }
+
+        void complete(final Object result) {
+            this.result = result;
+            done = true;
+            scheduleEmit();
+        }
+    }
+}
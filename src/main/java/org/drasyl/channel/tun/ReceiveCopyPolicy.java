@@ -0,0 +1,124 @@
+/*
+ * Copyright (c) 2021-2022 Heiko Bornholdt and Kevin Röbert
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ * IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM,
+ * DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR
+ * OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE
+ * OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package org.drasyl.channel.tun;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufAllocator;
+import io.netty.buffer.ByteBufAllocatorMetric;
+import io.netty.buffer.ByteBufAllocatorMetricProvider;
+import io.netty.util.internal.PlatformDependent;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Defines whether received packets are copied into a buffer of their actual size. Tun devices read
+ * each packet into a buffer large enough for the largest possible packet. By default, this buffer
+ * is passed on as is and only its reader and writer indices are adjusted. Copying the packet into a
+ * right-sized buffer costs a copy per packet, but frees the oversized buffer immediately.
+ */
+public enum ReceiveCopyPolicy {
+    /**
+     * Never copy received packets (default).
+     */
+    NEVER {
+        @Override
+        boolean shouldCopy(final ByteBufAllocator alloc) {
+            return false;
+        }
+    },
+    /**
+     * Copy received packets only while more than 75 % of the direct or heap memory available to
+     * the allocator is in use. Requires an allocator providing a {@link ByteBufAllocatorMetric}.
+     */
+    UNDER_PRESSURE {
+        @Override
+        boolean shouldCopy(final ByteBufAllocator alloc) {
+            return alloc instanceof ByteBufAllocatorMetricProvider && MemoryPressure.isHigh((ByteBufAllocatorMetricProvider) alloc);
+        }
+    },
+    /**
+     * Always copy received packets.
+     */
+    ALWAYS {
+        @Override
+        boolean shouldCopy(final ByteBufAllocator alloc) {
+            return true;
+        }
+    };
+
+    abstract boolean shouldCopy(ByteBufAllocator alloc);
+
+    /**
+     * Applies this policy to {@code buf} holding a received packet from index {@code 0} to its
+     * writer index. Either returns {@code buf} as is or a right-sized copy with same indices. In the
+     * latter case, {@code buf} is released.
+     *
+     * @param alloc allocator used for the copy
+     * @param buf   buffer holding the received packet
+     * @return {@code buf} or a right-sized copy of it
+     */
+    public ByteBuf apply(final ByteBufAllocator alloc, final ByteBuf buf) {
+        final int length = buf.writerIndex();
+        if (buf.capacity() == length || !shouldCopy(alloc)) {
+            return buf;
+        }
+
+        final ByteBuf copy = alloc.buffer(length, length);
+        try {
+            copy.writeBytes(buf, 0, length).readerIndex(buf.readerIndex());
+        }
+        finally {
+            buf.release();
+        }
+        return copy;
+    }
+
+    /**
+     * Samples the memory usage of an allocator at most every 100 ms, as gathering the metrics may
+     * be expensive.
+     */
+    static final class MemoryPressure {
+        private static final long SAMPLE_INTERVAL = TimeUnit.MILLISECONDS.toNanos(100);
+        private static volatile long nextSample = System.nanoTime();
+        private static volatile boolean high;
+
+        private MemoryPressure() {
+            // util class
+        }
+
+        static boolean isHigh(final ByteBufAllocatorMetricProvider alloc) {
+            final long now = System.nanoTime();
+            if (now - nextSample >= 0) {
+                nextSample = now + SAMPLE_INTERVAL;
+                final ByteBufAllocatorMetric metric = alloc.metric();
+                high = isHigh(metric.usedDirectMemory(), PlatformDependent.maxDirectMemory()) ||
+                        isHigh(metric.usedHeapMemory(), Runtime.getRuntime().maxMemory());
+            }
+            return high;
+        }
+
+        @SuppressWarnings("java:S109")
+        static boolean isHigh(final long used, final long max) {
+            return max > 0 && used > max / 4 * 3;
+        }
+    }
+}
@@ -0,0 +1,144 @@
+/*
+ * Copyright (c) 2021-2022 Heiko Bornholdt and Kevin Röbert
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ * IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM,
+ * DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR
+ * OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE
+ * OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package org.drasyl.channel.tun;
+
+import io.netty.util.internal.MathUtil;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * A bounded, lock-free single-producer single-consumer ring buffer. Exactly one thread may call
+ * {@link #offer(Object)} and {@link #remainingCapacity()}, and exactly one (other) thread may call
+ * {@link #poll()}. {@link #isEmpty()} may be called by both.
+ * <p>
+ * Each side caches the last observed index of the other side, so that shared indices are only
+ * read if the ring appears to be full or empty.
+ *
+ * @param <E> the type of elements held in this ring
+ */
+final class SpscRing<E> {
+    private final AtomicReferenceArray<E> buffer;
+    private final int capacity;
+    private final int mask;
+    // index of the next element to poll. Written by the consumer only
+    private final AtomicLong head = new AtomicLong();
+    // index of the next element to offer. Written by the producer only
+    private final AtomicLong tail = new AtomicLong();
+    private long producerHeadCache;
+    private long consumerTailCache;
+
+    /**
+     * @param capacity maximum number of elements. Rounded up to the next power of two
+     * @throws IllegalArgumentException if {@code capacity} is not positive
+     */
+    SpscRing(final int capacity) {
+        if (capacity < 1) {
+            throw new IllegalArgumentException("capacity must be positive.");
+        }
+        this.capacity = MathUtil.safeFindNextPositivePowerOfTwo(capacity);
+        this.mask = this.capacity - 1;
+        this.buffer = new AtomicReferenceArray<>(this.capacity);
+    }
+
+    /**
+     * Returns the maximum number of elements this ring can hold.
+     *
+     * @return the maximum number of elements this ring can hold
+     */
+    int capacity() {
+        return capacity;
+    }
+
+    /**
+     * Appends {@code e}. Must only be called by the producer.
+     *
+     * @param e element to append
+     * @return {@code false} if the ring is full
+     */
+    boolean offer(final E e) {
+        final long t = tail.get();
+        if (t - producerHeadCache >= capacity) {
+            producerHeadCache = head.get();
+            if (t - producerHeadCache >= capacity) {
+                return false;
+            }
+        }
+        buffer.lazySet((int) t & mask, e);
+        // publish element
+        tail.lazySet(t + 1);
+        return true;
+    }
+
+    /**
+     * Returns the number of elements that can at least be offered without failing. Must only be
+     * called by the producer.
+     *
+     * @return the number of elements that can at least be offered
+     */
+    int remainingCapacity() {
+        producerHeadCache = head.get();
+        return capacity - (int) (tail.get() - producerHeadCache);
+    }
+
+    /**
+     * Removes and returns the oldest element. Must only be called by the consumer.
+     *
+     * @return the oldest element or {@code null} if the ring is empty
+     */
+    E poll() {
+        final long h = head.get();
+        if (h >= consumerTailCache) {
+            consumerTailCache = tail.get();
+            if (h >= consumerTailCache) {
+                return null;
+            }
+        }
+        final int index = (int) h & mask;
+        final E e = buffer.get(index);
+        buffer.lazySet(index, null);
+        // release slot
+        head.lazySet(h + 1);
+        return e;
+    }
+
+    /**
+     * Returns the number of elements in this ring. May be called by both threads, but is only a
+     * snapshot if the other thread modifies the ring concurrently.
+     *
+     * @return the number of elements in this ring
+     */
+    int size() {
+        // read head first, so that the size is never negative
+        final long h = head.get();
+        return (int) (tail.get() - h);
+    }
+
+    /**
+     * Returns {@code true} if the ring contains no elements.
+     *
+     * @return {@code true} if the ring contains no elements
+     */
+    boolean isEmpty() {
+        return head.get() >= tail.get();
+    }
+}
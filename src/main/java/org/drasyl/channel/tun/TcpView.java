@@ -0,0 +1,225 @@
+/*
+ * Copyright (c) 2021-2022 Heiko Bornholdt and Kevin Röbert
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ * IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM,
+ * DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR
+ * OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE
+ * OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package org.drasyl.channel.tun;
+
+import io.netty.buffer.ByteBuf;
+
+import static org.drasyl.channel.tun.InetProtocol.TCP;
+
+/**
+ * Reusable, zero-copy view of the TCP header of a {@link TunPacket}.
+ *
+ * @see TransportHeaderView
+ */
+@SuppressWarnings("java:S109")
+public final class TcpView extends TransportHeaderView {
+    public static final int TCP_HEADER_LENGTH = 20;
+    // https://datatracker.ietf.org/doc/html/rfc793#section-3.1
+    public static final int TCP_SOURCE_PORT = 0;
+    public static final int TCP_DESTINATION_PORT = 2;
+    public static final int TCP_SEQUENCE_NUMBER = 4;
+    public static final int TCP_ACKNOWLEDGEMENT_NUMBER = 8;
+    public static final int TCP_DATA_OFFSET = 12;
+    public static final int TCP_FLAGS = 13;
+    public static final int TCP_WINDOW = 14;
+    public static final int TCP_CHECKSUM = 16;
+    public static final int TCP_URGENT_POINTER = 18;
+    public static final int TCP_FLAG_FIN = 0x01;
+    public static final int TCP_FLAG_SYN = 0x02;
+    public static final int TCP_FLAG_RST = 0x04;
+    public static final int TCP_FLAG_PSH = 0x08;
+    public static final int TCP_FLAG_ACK = 0x10;
+    public static final int TCP_FLAG_URG = 0x20;
+    public static final int TCP_FLAG_ECE = 0x40;
+    public static final int TCP_FLAG_CWR = 0x80;
+
+    @Override
+    public TcpView wrap(final TunPacket packet) {
+        super.wrap(packet);
+        return this;
+    }
+
+    @Override
+    boolean accepts(final int version, final int protocol) {
+        return protocol == TCP.decimal;
+    }
+
+    @Override
+    int minHeaderLength() {
+        return TCP_HEADER_LENGTH;
+    }
+
+    @Override
+    int checksumOffset() {
+        return TCP_CHECKSUM;
+    }
+
+    @Override
+    int protocol() {
+        return TCP.decimal;
+    }
+
+    @Override
+    public int headerLength() {
+        return dataOffset() * 4;
+    }
+
+    @Override
+    int headerLength(final ByteBuf content, final int headerOffset) {
+        return (content.getUnsignedByte(headerOffset + TCP_DATA_OFFSET) >> 4) * 4;
+    }
+
+    public int sourcePort() {
+        return buf.getUnsignedShort(offset + TCP_SOURCE_PORT);
+    }
+
+    /**
+     * Sets the source port and updates the checksum incrementally.
+     *
+     * @param port the new source port
+     */
+    public void setSourcePort(final int port) {
+        setShortField(TCP_SOURCE_PORT, port);
+    }
+
+    public int destinationPort() {
+        return buf.getUnsignedShort(offset + TCP_DESTINATION_PORT);
+    }
+
+    /**
+     * Sets the destination port and updates the checksum incrementally.
+     *
+     * @param port the new destination port
+     */
+    public void setDestinationPort(final int port) {
+        setShortField(TCP_DESTINATION_PORT, port);
+    }
+
+    public long sequenceNumber() {
+        return buf.getUnsignedInt(offset + TCP_SEQUENCE_NUMBER);
+    }
+
+    /**
+     * Sets the sequence number and updates the checksum incrementally.
+     *
+     * @param sequenceNumber the new sequence number
+     */
+    public void setSequenceNumber(final long sequenceNumber) {
+        setIntField(TCP_SEQUENCE_NUMBER, (int) sequenceNumber);
+    }
+
+    public long acknowledgementNumber() {
+        return buf.getUnsignedInt(offset + TCP_ACKNOWLEDGEMENT_NUMBER);
+    }
+
+    /**
+     * Sets the acknowledgement number and updates the checksum incrementally.
+     *
+     * @param acknowledgementNumber the new acknowledgement number
+     */
+    public void setAcknowledgementNumber(final long acknowledgementNumber) {
+        setIntField(TCP_ACKNOWLEDGEMENT_NUMBER, (int) acknowledgementNumber);
+    }
+
+    /**
+     * Returns the header length in 32-bit words.
+     *
+     * @return the header length in 32-bit words
+     */
+    public int dataOffset() {
+        return buf.getUnsignedByte(offset + TCP_DATA_OFFSET) >> 4;
+    }
+
+    /**
+     * Returns the control bits (see {@code TCP_FLAG_*} constants).
+     *
+     * @return the control bits
+     */
+    public int flags() {
+        return buf.getUnsignedByte(offset + TCP_FLAGS);
+    }
+
+    /**
+     * Sets the flags (e.g. {@link #TCP_FLAG_ACK}) and updates the checksum incrementally.
+     *
+     * @param flags the new flags
+     */
+    public void setFlags(final int flags) {
+        // flags share a 16-bit word with the data offset
+        setShortField(TCP_DATA_OFFSET, buf.getUnsignedByte(offset + TCP_DATA_OFFSET) << 8 | flags & 0xff);
+    }
+
+    public boolean isFin() {
+        return (flags() & TCP_FLAG_FIN) != 0;
+    }
+
+    public boolean isSyn() {
+        return (flags() & TCP_FLAG_SYN) != 0;
+    }
+
+    public boolean isRst() {
+        return (flags() & TCP_FLAG_RST) != 0;
+    }
+
+    public boolean isPsh() {
+        return (flags() & TCP_FLAG_PSH) != 0;
+    }
+
+    public boolean isAck() {
+        return (flags() & TCP_FLAG_ACK) != 0;
+    }
+
+    public boolean isUrg() {
+        return (flags() & TCP_FLAG_URG) != 0;
+    }
+
+    public int window() {
+        return buf.getUnsignedShort(offset + TCP_WINDOW);
+    }
+
+    /**
+     * Sets the window and updates the checksum incrementally.
+     *
+     * @param window the new window
+     */
+    public void setWindow(final int window) {
+        setShortField(TCP_WINDOW, window);
+    }
+
+    public int urgentPointer() {
+        return buf.getUnsignedShort(offset + TCP_URGENT_POINTER);
+    }
+
+    /**
+     * Sets the urgent pointer and updates the checksum incrementally.
+     *
+     * @param urgentPointer the new urgent pointer
+     */
+    public void setUrgentPointer(final int urgentPointer) {
+        setShortField(TCP_URGENT_POINTER, urgentPointer);
+    }
+
+    @Override
+    public String toString() {
+        return "TcpView[srcPort=" + sourcePort() + ", dstPort=" + destinationPort() + ", seq=" + sequenceNumber() + ", flags=" + flags() + ']';
+    }
+}
@@ -0,0 +1,279 @@
+/*
+ * Copyright (c) 2021-2022 Heiko Bornholdt and Kevin Röbert
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ * IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM,
+ * DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR
+ * OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE
+ * OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package org.drasyl.channel.tun;
+
+import io.netty.buffer.ByteBuf;
+
+import static org.drasyl.channel.tun.Tun4Packet.INET4_FLAGS_AND_FRAGMENT_OFFSET;
+import static org.drasyl.channel.tun.Tun4Packet.INET4_HEADER_LENGTH;
+import static org.drasyl.channel.tun.Tun4Packet.INET4_PROTOCOL;
+import static org.drasyl.channel.tun.Tun4Packet.INET4_TOTAL_LENGTH;
+import static org.drasyl.channel.tun.Tun4Packet.INET4_VERSION_AND_INTERNET_HEADER_LENGTH;
+import static org.drasyl.channel.tun.Tun6Packet.INET6_HEADER_LENGTH;
+import static org.drasyl.channel.tun.Tun6Packet.INET6_PAYLOAD_LENGTH;
+
+/**
+ * Base class of reusable views of the transport layer header of a {@link TunPacket}. A view is
+ * pointed at a packet via {@link #wrap(TunPacket)} or {@link #tryWrap(TunPacket)}, which locates
+ * the transport layer header behind the IPv4 header (including options) or the IPv6 extension
+ * header chain. Neither locating the header nor reading its fields copies or allocates anything.
+ * <p>
+ * The {@code set*} methods of the views modify the packet in place and update the checksum
+ * incrementally (<a href="https://datatracker.ietf.org/doc/html/rfc1624">RFC 1624</a>), so its
+ * cost does not depend on the length of the segment.
+ * <p>
+ * A view neither retains nor releases the packet and must not be used after the packet has been
+ * released. Views are not thread-safe.
+ *
+ * @see TcpView
+ * @see UdpView
+ * @see IcmpView
+ */
+@SuppressWarnings("java:S109")
+public abstract class TransportHeaderView {
+    ByteBuf buf;
+    int offset;
+    int end;
+    int version;
+
+    TransportHeaderView() {
+        // prevent subclassing outside of this package
+    }
+
+    /**
+     * Points this view to the transport layer header of {@code packet}.
+     *
+     * @param packet packet to examine
+     * @return this view
+     * @throws IllegalArgumentException if {@code packet} does not carry a matching header
+     */
+    public TransportHeaderView wrap(final TunPacket packet) {
+        if (!tryWrap(packet)) {
+            throw new IllegalArgumentException("Packet does not carry a complete " + getClass().getSimpleName().replace("View", "") + " header.");
+        }
+        return this;
+    }
+
+    /**
+     * Points this view to the transport layer header of {@code packet}, if {@code packet} carries
+     * a matching and complete header. Non-first fragments do not carry a transport layer header.
+     *
+     * @param packet packet to examine
+     * @return {@code true} if this view now points to {@code packet}
+     */
+    public boolean tryWrap(final TunPacket packet) {
+        final ByteBuf content = packet.content();
+        final int writerIndex = content.writerIndex();
+        final int newVersion = packet.version();
+        final int protocol;
+        final int newOffset;
+        final int newEnd;
+        if (newVersion == 4 && writerIndex >= INET4_HEADER_LENGTH) {
+            if ((content.getUnsignedShort(INET4_FLAGS_AND_FRAGMENT_OFFSET) & 0x1fff) != 0) {
+                // non-first fragment
+                return false;
+            }
+            protocol = content.getUnsignedByte(INET4_PROTOCOL);
+            newOffset = (content.getUnsignedByte(INET4_VERSION_AND_INTERNET_HEADER_LENGTH) & 0x0f) * 4;
+            newEnd = Math.min(writerIndex, content.getUnsignedShort(INET4_TOTAL_LENGTH));
+            if (newOffset < INET4_HEADER_LENGTH) {
+                return false;
+            }
+        }
+        else if (newVersion == 6 && writerIndex >= INET6_HEADER_LENGTH) {
+            // reuse the extension header chain walk cached on the packet
+            final long chain = packet instanceof Tun6Packet ? ((Tun6Packet) packet).chain() : Inet6ExtensionHeaders.walk(content, 0);
+            protocol = Inet6ExtensionHeaders.protocol(chain);
+            newOffset = Inet6ExtensionHeaders.upperLayerOffset(chain);
+            if (newOffset == -1) {
+                return false;
+            }
+            newEnd = Math.min(writerIndex, INET6_HEADER_LENGTH + content.getUnsignedShort(INET6_PAYLOAD_LENGTH));
+        }
+        else {
+            return false;
+        }
+
+        if (!accepts(newVersion, protocol) || newEnd - newOffset < minHeaderLength() || headerLength(content, newOffset) > newEnd - newOffset) {
+            return false;
+        }
+        this.buf = content;
+        this.version = newVersion;
+        this.offset = newOffset;
+        this.end = newEnd;
+        return true;
+    }
+
+    /**
+     * Returns {@code true} if this view can examine the given transport protocol.
+     */
+    abstract boolean accepts(int version, int protocol);
+
+    /**
+     * Returns the length of the fixed part of the header.
+     */
+    abstract int minHeaderLength();
+
+    /**
+     * Returns the length of the header including options starting at {@code headerOffset} of
+     * {@code content}. Used to validate a packet before this view is pointed to it.
+     */
+    int headerLength(final ByteBuf content, final int headerOffset) {
+        return minHeaderLength();
+    }
+
+    /**
+     * Returns the length of the header including options.
+     *
+     * @return the header length in bytes
+     */
+    public abstract int headerLength();
+
+    /**
+     * Returns the buffer of the wrapped packet.
+     *
+     * @return the buffer of the wrapped packet
+     */
+    public ByteBuf buffer() {
+        return buf;
+    }
+
+    /**
+     * Returns the IP version of the wrapped packet.
+     *
+     * @return the IP version of the wrapped packet
+     */
+    public int ipVersion() {
+        return version;
+    }
+
+    /**
+     * Returns the position of the transport layer header within {@link #buffer()}.
+     *
+     * @return the position of the transport layer header
+     */
+    public int offset() {
+        return offset;
+    }
+
+    /**
+     * Returns the length of the transport layer segment (header and payload).
+     *
+     * @return the length of the transport layer segment
+     */
+    public int length() {
+        return end - offset;
+    }
+
+    /**
+     * Returns the position of the payload within {@link #buffer()}.
+     *
+     * @return the position of the payload
+     */
+    public int payloadOffset() {
+        return offset + headerLength();
+    }
+
+    /**
+     * Returns the length of the payload.
+     *
+     * @return the length of the payload
+     */
+    public int payloadLength() {
+        return end - payloadOffset();
+    }
+
+    /**
+     * Returns a slice of {@link #buffer()} holding the payload. The slice shares the memory and
+     * reference count of the packet.
+     *
+     * @return the payload
+     */
+    public ByteBuf payload() {
+        return buf.slice(payloadOffset(), payloadLength());
+    }
+
+    public int checksum() {
+        return buf.getUnsignedShort(offset + checksumOffset());
+    }
+
+    /**
+     * Returns {@code true} if the segment carries a valid checksum.
+     *
+     * @return {@code true} if the segment carries a valid checksum
+     * @see InetChecksum#verify(TransportHeaderView)
+     */
+    public boolean verifyChecksum() {
+        return InetChecksum.verify(this);
+    }
+
+    /**
+     * Recalculates the checksum of the segment and writes it to the checksum field.
+     *
+     * @see InetChecksum#update(TransportHeaderView)
+     */
+    public void updateChecksum() {
+        InetChecksum.update(this);
+    }
+
+    /**
+     * Writes a 16-bit field of the header and adjusts the checksum incrementally.
+     */
+    void setShortField(final int fieldOffset, final int value) {
+        final int index = offset + fieldOffset;
+        final long delta = InetChecksum.delta(buf.getUnsignedShort(index), value);
+        buf.setShort(index, value);
+        adjustChecksum(delta);
+    }
+
+    /**
+     * Writes a 32-bit field of the header and adjusts the checksum incrementally.
+     */
+    void setIntField(final int fieldOffset, final int value) {
+        final int index = offset + fieldOffset;
+        final long delta = InetChecksum.deltaInt(buf.getInt(index), value);
+        buf.setInt(index, value);
+        adjustChecksum(delta);
+    }
+
+    private void adjustChecksum(final long delta) {
+        final int index = offset + checksumOffset();
+        buf.setShort(index, InetChecksum.adjustField(protocol(), buf.getUnsignedShort(index), delta));
+    }
+
+    /**
+     * Returns the position of the checksum field within the header.
+     */
+    abstract int checksumOffset();
+
+    /**
+     * Returns the transport protocol of the segment.
+     */
+    abstract int protocol();
+
+    /**
+     * Returns {@code true} if the checksum covers the IP pseudo header.
+     */
+    boolean hasPseudoHeader() {
+        return true;
+    }
+}
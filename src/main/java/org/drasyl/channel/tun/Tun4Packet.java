@@ -22,6 +22,9 @@
 package org.drasyl.channel.tun;
 
 import io.netty.buffer.ByteBuf;
+import io.netty.util.NetUtil;
+import io.netty.util.Recycler;
+import io.netty.util.Recycler.Handle;
 import io.netty.util.internal.StringUtil;
 
 import java.net.Inet4Address;
@@ -60,16 +63,71 @@ public class Tun4Packet extends TunPacket {
     public static final int INET4_SOURCE_ADDRESS_LENGTH = 4;
     public static final int INET4_DESTINATION_ADDRESS = 16;
     public static final int INET4_DESTINATION_ADDRESS_LENGTH = 4;
+    private static final Recycler<Tun4Packet> RECYCLER = new Recycler<Tun4Packet>() {
+        @Override
+        protected Tun4Packet newObject(final Handle<Tun4Packet> handle) {
+            return new Tun4Packet(handle);
+        }
+    };
+    private final Handle<Tun4Packet> handle;
     private InetAddress sourceAddress;
     private InetAddress destinationAddress;
 
     public Tun4Packet(final ByteBuf data) {
-        super(data);
+        this(data, VirtioNetHeader.NONE);
+    }
+
+    public Tun4Packet(final ByteBuf data, final VirtioNetHeader virtioNetHeader) {
+        super(data, virtioNetHeader);
+        checkLength(data);
+        this.handle = null;
+    }
+
+    private Tun4Packet(final Handle<Tun4Packet> handle) {
+        this.handle = handle;
+    }
+
+    /**
+     * Returns a pooled {@link Tun4Packet} holding {@code data}. The packet is returned to the pool
+     * once {@code data} has been released through it.
+     *
+     * @param data            the packet
+     * @param virtioNetHeader the offload information of the packet
+     * @return pooled {@link Tun4Packet}
+     * @throws IllegalArgumentException if {@code data} is too short for an IPv4 packet
+     */
+    public static Tun4Packet newInstance(final ByteBuf data, final VirtioNetHeader virtioNetHeader) {
+        checkLength(data);
+        final Tun4Packet packet = RECYCLER.get();
+        packet.init(data, virtioNetHeader);
+        return packet;
+    }
+
+    /**
+     * Returns a pooled {@link Tun4Packet} holding {@code data}.
+     *
+     * @see #newInstance(ByteBuf, VirtioNetHeader)
+     */
+    public static Tun4Packet newInstance(final ByteBuf data) {
+        return newInstance(data, VirtioNetHeader.NONE);
+    }
+
+    private static void checkLength(final ByteBuf data) {
         if (data.readableBytes() < INET4_HEADER_LENGTH) {
             throw new IllegalArgumentException("data has only " + data.readableBytes() + " readable bytes. But an IPv4 packet must be at least " + INET4_HEADER_LENGTH + " bytes long.");
         }
     }
 
+    @Override
+    protected void deallocate() {
+        super.deallocate();
+        sourceAddress = null;
+        destinationAddress = null;
+        if (handle != null) {
+            handle.recycle(this);
+        }
+    }
+
     @Override
     public int version() {
         return content().getUnsignedByte(INET4_VERSION_AND_INTERNET_HEADER_LENGTH) >> 4;
@@ -83,6 +141,53 @@ public class Tun4Packet extends TunPacket {
         return content().getUnsignedShort(INET4_TYPE_OF_SERVICE);
     }
 
+    /**
+     * Returns the differentiated services code point (the upper six bits of the type of service
+     * field).
+     *
+     * @return the differentiated services code point
+     */
+    public int dscp() {
+        return content().getUnsignedByte(INET4_TYPE_OF_SERVICE) >> 2;
+    }
+
+    /**
+     * Returns the explicit congestion notification (the lower two bits of the type of service
+     * field).
+     *
+     * @return the explicit congestion notification
+     */
+    public int ecn() {
+        return content().getUnsignedByte(INET4_TYPE_OF_SERVICE) & 0x03;
+    }
+
+    /**
+     * Sets the differentiated services code point and updates the header checksum incrementally.
+     *
+     * @param dscp the new differentiated services code point
+     */
+    public void setDscp(final int dscp) {
+        setTypeOfService((dscp & 0x3f) << 2 | ecn());
+    }
+
+    /**
+     * Sets the explicit congestion notification and updates the header checksum incrementally.
+     *
+     * @param ecn the new explicit congestion notification
+     */
+    public void setEcn(final int ecn) {
+        setTypeOfService(dscp() << 2 | ecn & 0x03);
+    }
+
+    private void setTypeOfService(final int typeOfService) {
+        // type of service shares a 16-bit word with version and ihl
+        final ByteBuf buf = content();
+        final int oldWord = buf.getUnsignedShort(INET4_VERSION_AND_INTERNET_HEADER_LENGTH);
+        final int newWord = oldWord & 0xff00 | typeOfService;
+        buf.setShort(INET4_VERSION_AND_INTERNET_HEADER_LENGTH, newWord);
+        adjustHeaderChecksum(InetChecksum.delta(oldWord, newWord));
+    }
+
     public int totalLength() {
         return content().getUnsignedShort(INET4_TOTAL_LENGTH);
     }
@@ -103,6 +208,20 @@ public class Tun4Packet extends TunPacket {
         return content().getUnsignedByte(INET4_TIME_TO_LIVE);
     }
 
+    /**
+     * Sets the time to live and updates the header checksum incrementally.
+     *
+     * @param timeToLive the new time to live
+     */
+    public void setTimeToLive(final int timeToLive) {
+        // time to live shares a 16-bit word with protocol
+        final ByteBuf buf = content();
+        final int oldWord = buf.getUnsignedShort(INET4_TIME_TO_LIVE);
+        final int newWord = (timeToLive & 0xff) << 8 | oldWord & 0xff;
+        buf.setShort(INET4_TIME_TO_LIVE, newWord);
+        adjustHeaderChecksum(InetChecksum.delta(oldWord, newWord));
+    }
+
     public int protocol() {
         return content().getUnsignedByte(INET4_PROTOCOL);
     }
@@ -145,6 +264,85 @@ public class Tun4Packet extends TunPacket {
         return destinationAddress;
     }
 
+    /**
+     * Returns the source address as {@code int} in network byte order (e.g. {@code 0x0a000001} for
+     * {@code 10.0.0.1}). Unlike {@link #sourceAddress()}, this does not allocate.
+     *
+     * @return the source address
+     */
+    public int sourceAddressAsInt() {
+        return content().getInt(INET4_SOURCE_ADDRESS);
+    }
+
+    /**
+     * Returns the destination address as {@code int} in network byte order (e.g.
+     * {@code 0x0a000001} for {@code 10.0.0.1}). Unlike {@link #destinationAddress()}, this does
+     * not allocate.
+     *
+     * @return the destination address
+     */
+    public int destinationAddressAsInt() {
+        return content().getInt(INET4_DESTINATION_ADDRESS);
+    }
+
+    /**
+     * Sets the source address and updates the header checksum and the checksum of a TCP, UDP, or
+     * ICMP header incrementally.
+     *
+     * @param address the new source address as {@code int} in network byte order
+     */
+    public void setSourceAddress(final int address) {
+        setAddress(INET4_SOURCE_ADDRESS, address);
+        sourceAddress = null;
+    }
+
+    /**
+     * Sets the source address and updates the header checksum and the checksum of a TCP, UDP, or
+     * ICMP header incrementally.
+     *
+     * @param address the new source address
+     */
+    public void setSourceAddress(final Inet4Address address) {
+        setSourceAddress(NetUtil.ipv4AddressToInt(address));
+    }
+
+    /**
+     * Sets the destination address and updates the header checksum and the checksum of a TCP, UDP,
+     * or ICMP header incrementally.
+     *
+     * @param address the new destination address as {@code int} in network byte order
+     */
+    public void setDestinationAddress(final int address) {
+        setAddress(INET4_DESTINATION_ADDRESS, address);
+        destinationAddress = null;
+    }
+
+    /**
+     * Sets the destination address and updates the header checksum and the checksum of a TCP, UDP,
+     * or ICMP header incrementally.
+     *
+     * @param address the new destination address
+     */
+    public void setDestinationAddress(final Inet4Address address) {
+        setDestinationAddress(NetUtil.ipv4AddressToInt(address));
+    }
+
+    private void setAddress(final int index, final int address) {
+        final ByteBuf buf = content();
+        final long delta = InetChecksum.deltaInt(buf.getInt(index), address);
+        buf.setInt(index, address);
+        adjustHeaderChecksum(delta);
+        if (fragmentOffset() == 0) {
+            // the address is part of the pseudo header (non-first fragments carry no transport header)
+            InetChecksum.adjustPseudoHeader(buf, 4, protocol(), internetHeaderLength() * 4, delta);
+        }
+    }
+
+    private void adjustHeaderChecksum(final long delta) {
+        final ByteBuf buf = content();
+        buf.setShort(INET4_HEADER_CHECKSUM, InetChecksum.adjust(buf.getUnsignedShort(INET4_HEADER_CHECKSUM), delta));
+    }
+
     public byte[] data() {
         final byte[] data = new byte[content().readableBytes() - INET4_HEADER_LENGTH];
         content().getBytes(INET4_HEADER_LENGTH, data);
@@ -167,12 +365,18 @@ public class Tun4Packet extends TunPacket {
         return calculateChecksum(content()) == 0;
     }
 
+    /**
+     * Returns the complemented one's complement sum of the IPv4 header (including options) at the
+     * beginning of {@code buf}. This is {@code 0} for headers with a valid checksum and the
+     * header checksum for headers with a zeroed checksum field.
+     *
+     * @param buf buffer holding the IPv4 header
+     * @return the complemented one's complement sum of the header
+     * @see InetChecksum#ipv4HeaderChecksum(ByteBuf, int)
+     */
     public static int calculateChecksum(final ByteBuf buf) {
-        int sum = 0;
-        for (int i = 0; i < INET4_HEADER_LENGTH; i += 2) {
-            sum += buf.getUnsignedShort(i);
-        }
-        return (~((sum & 0xffff) + (sum >> 16))) & 0xffff;
+        final int headerLength = (buf.getUnsignedByte(INET4_VERSION_AND_INTERNET_HEADER_LENGTH) & 0x0f) * 4;
+        return ~InetChecksum.fold(InetChecksum.sum(buf, 0, headerLength, 0)) & 0xffff;
     }
 
     @SuppressWarnings({ "java:S107", "UnusedReturnValue" })
@@ -22,8 +22,11 @@
 package org.drasyl.channel.tun;
 
 import io.netty.buffer.ByteBuf;
+import io.netty.util.Recycler;
+import io.netty.util.Recycler.Handle;
 import io.netty.util.internal.StringUtil;
 
+import java.net.Inet6Address;
 import java.net.InetAddress;
 import java.net.UnknownHostException;
 
@@ -42,11 +45,66 @@ public class Tun6Packet extends TunPacket {
     public static final int INET6_SOURCE_ADDRESS_LENGTH = 16;
     public static final int INET6_DESTINATION_ADDRESS = 24;
     public static final int INET6_DESTINATION_ADDRESS_LENGTH = 16;
+    private static final Recycler<Tun6Packet> RECYCLER = new Recycler<Tun6Packet>() {
+        @Override
+        protected Tun6Packet newObject(final Handle<Tun6Packet> handle) {
+            return new Tun6Packet(handle);
+        }
+    };
+    // result of walking the extension header chain (see Inet6ExtensionHeaders)
+    private static final long CHAIN_UNKNOWN = -1;
+    private final Handle<Tun6Packet> handle;
+    private long chain = CHAIN_UNKNOWN;
+    // next header field the cached chain has been walked for
+    private int chainNextHeader;
     private InetAddress sourceAddress;
     private InetAddress destinationAddress;
 
     public Tun6Packet(final ByteBuf data) {
-        super(data);
+        this(data, VirtioNetHeader.NONE);
+    }
+
+    public Tun6Packet(final ByteBuf data, final VirtioNetHeader virtioNetHeader) {
+        super(data, virtioNetHeader);
+        this.handle = null;
+    }
+
+    private Tun6Packet(final Handle<Tun6Packet> handle) {
+        this.handle = handle;
+    }
+
+    /**
+     * Returns a pooled {@link Tun6Packet} holding {@code data}. The packet is returned to the pool
+     * once {@code data} has been released through it.
+     *
+     * @param data            the packet
+     * @param virtioNetHeader the offload information of the packet
+     * @return pooled {@link Tun6Packet}
+     */
+    public static Tun6Packet newInstance(final ByteBuf data, final VirtioNetHeader virtioNetHeader) {
+        final Tun6Packet packet = RECYCLER.get();
+        packet.init(data, virtioNetHeader);
+        return packet;
+    }
+
+    /**
+     * Returns a pooled {@link Tun6Packet} holding {@code data}.
+     *
+     * @see #newInstance(ByteBuf, VirtioNetHeader)
+     */
+    public static Tun6Packet newInstance(final ByteBuf data) {
+        return newInstance(data, VirtioNetHeader.NONE);
+    }
+
+    @Override
+    protected void deallocate() {
+        super.deallocate();
+        sourceAddress = null;
+        destinationAddress = null;
+        chain = CHAIN_UNKNOWN;
+        if (handle != null) {
+            handle.recycle(this);
+        }
     }
 
     @SuppressWarnings("java:S109")
@@ -59,6 +117,46 @@ public class Tun6Packet extends TunPacket {
         return content().getUnsignedShort(INET6_VERSION_AND_TRAFFIC_CLASS) >> 4 & 0x0f;
     }
 
+    /**
+     * Returns the differentiated services code point (the upper six bits of the traffic class).
+     *
+     * @return the differentiated services code point
+     */
+    public int dscp() {
+        return content().getUnsignedShort(INET6_VERSION_AND_TRAFFIC_CLASS) >> 6 & 0x3f;
+    }
+
+    /**
+     * Returns the explicit congestion notification (the lower two bits of the traffic class).
+     *
+     * @return the explicit congestion notification
+     */
+    public int ecn() {
+        return content().getUnsignedShort(INET6_VERSION_AND_TRAFFIC_CLASS) >> 4 & 0x03;
+    }
+
+    /**
+     * Sets the differentiated services code point.
+     *
+     * @param dscp the new differentiated services code point
+     */
+    public void setDscp(final int dscp) {
+        final ByteBuf buf = content();
+        final int word = buf.getUnsignedShort(INET6_VERSION_AND_TRAFFIC_CLASS);
+        buf.setShort(INET6_VERSION_AND_TRAFFIC_CLASS, word & ~(0x3f << 6) | (dscp & 0x3f) << 6);
+    }
+
+    /**
+     * Sets the explicit congestion notification.
+     *
+     * @param ecn the new explicit congestion notification
+     */
+    public void setEcn(final int ecn) {
+        final ByteBuf buf = content();
+        final int word = buf.getUnsignedShort(INET6_VERSION_AND_TRAFFIC_CLASS);
+        buf.setShort(INET6_VERSION_AND_TRAFFIC_CLASS, word & ~(0x03 << 4) | (ecn & 0x03) << 4);
+    }
+
     public long flowLabel() {
         return content().getUnsignedInt(INET6_FLOW_LABEL) >> 8 & 0x0fffff;
     }
@@ -75,6 +173,115 @@ public class Tun6Packet extends TunPacket {
         return content().getUnsignedByte(INET6_HOP_LIMIT);
     }
 
+    /**
+     * Sets the hop limit. IPv6 has no header checksum, so nothing else has to be updated.
+     *
+     * @param hopLimit the new hop limit
+     */
+    public void setHopLimit(final int hopLimit) {
+        content().setByte(INET6_HOP_LIMIT, hopLimit);
+    }
+
+    /**
+     * Returns the protocol number of the header following the extension header chain (e.g.
+     * {@link InetProtocol#TCP}), whereas {@link #nextHeader()} only returns the protocol of the
+     * first header following the fixed header.
+     * <p>
+     * The extension header chain is walked once on first use. The result is cached on this packet
+     * and shared by all subsequent calls of {@code upperLayer*} and {@code fragment*} methods. The
+     * chain is walked again if the {@link #nextHeader() next header} field has been changed. Call
+     * {@link #invalidateExtensionHeaders()} after modifying the extension headers otherwise.
+     *
+     * @return the protocol number of the upper-layer header
+     */
+    public int upperLayerProtocol() {
+        return Inet6ExtensionHeaders.protocol(chain());
+    }
+
+    /**
+     * Returns the position of the upper-layer header within {@link #content()}.
+     *
+     * @return the position of the upper-layer header or {@code -1} if this packet does not contain
+     * it (e.g. non-first fragment or truncated extension header chain)
+     * @see #upperLayerProtocol()
+     */
+    public int upperLayerOffset() {
+        return Inet6ExtensionHeaders.upperLayerOffset(chain());
+    }
+
+    /**
+     * Returns {@code true} if this packet carries a fragment header.
+     *
+     * @return {@code true} if this packet is a fragment
+     * @see #upperLayerProtocol()
+     */
+    public boolean isFragment() {
+        return Inet6ExtensionHeaders.fragmentHeaderOffset(chain()) != 0;
+    }
+
+    /**
+     * Returns the fragment offset in 8-octet units or {@code 0} if this packet is not a fragment.
+     *
+     * @return the fragment offset
+     * @see #upperLayerProtocol()
+     */
+    public int fragmentOffset() {
+        final int fragmentHeader = Inet6ExtensionHeaders.fragmentHeaderOffset(chain());
+        if (fragmentHeader == 0) {
+            return 0;
+        }
+        return content().getUnsignedShort(fragmentHeader + Inet6ExtensionHeaders.FRAGMENT_OFFSET) >> 3;
+    }
+
+    /**
+     * Returns {@code true} if this packet is a fragment followed by further fragments.
+     *
+     * @return the more fragments flag
+     * @see #upperLayerProtocol()
+     */
+    public boolean moreFragments() {
+        final int fragmentHeader = Inet6ExtensionHeaders.fragmentHeaderOffset(chain());
+        return fragmentHeader != 0 && (content().getUnsignedByte(fragmentHeader + Inet6ExtensionHeaders.FRAGMENT_OFFSET + 1) & 0x01) != 0;
+    }
+
+    /**
+     * Returns the identification of the fragmented packet or {@code 0} if this packet is not a
+     * fragment.
+     *
+     * @return the identification
+     * @see #upperLayerProtocol()
+     */
+    public long fragmentIdentification() {
+        final int fragmentHeader = Inet6ExtensionHeaders.fragmentHeaderOffset(chain());
+        if (fragmentHeader == 0) {
+            return 0;
+        }
+        return content().getUnsignedInt(fragmentHeader + Inet6ExtensionHeaders.FRAGMENT_IDENTIFICATION);
+    }
+
+    /**
+     * Discards the cached result of walking the extension header chain (see
+     * {@link #upperLayerProtocol()}). Must be called after extension headers have been modified
+     * via {@link #content()}.
+     */
+    public void invalidateExtensionHeaders() {
+        chain = CHAIN_UNKNOWN;
+    }
+
+    /**
+     * Returns the cached result of walking the extension header chain. The chain is walked again
+     * if the next header field has been changed since.
+     */
+    long chain() {
+        final ByteBuf buf = content();
+        final int nextHeader = buf.getUnsignedByte(INET6_NEXT_HEADER);
+        if (chain == CHAIN_UNKNOWN || nextHeader != chainNextHeader) {
+            chain = Inet6ExtensionHeaders.walk(buf, 0);
+            chainNextHeader = nextHeader;
+        }
+        return chain;
+    }
+
     @SuppressWarnings("java:S1166")
     @Override
     public InetAddress sourceAddress() {
@@ -109,12 +316,130 @@ public class Tun6Packet extends TunPacket {
         return destinationAddress;
     }
 
+    /**
+     * Returns the upper 64 bits of the source address in network byte order. Together with
+     * {@link #sourceAddressLow()}, this allows to examine the address without the allocations of
+     * {@link #sourceAddress()}.
+     *
+     * @return the upper 64 bits of the source address
+     */
+    public long sourceAddressHigh() {
+        return content().getLong(INET6_SOURCE_ADDRESS);
+    }
+
+    /**
+     * Returns the lower 64 bits of the source address in network byte order.
+     *
+     * @return the lower 64 bits of the source address
+     * @see #sourceAddressHigh()
+     */
+    public long sourceAddressLow() {
+        return content().getLong(INET6_SOURCE_ADDRESS + 8);
+    }
+
+    /**
+     * Returns the upper 64 bits of the destination address in network byte order. Together with
+     * {@link #destinationAddressLow()}, this allows to examine the address without the allocations
+     * of {@link #destinationAddress()}.
+     *
+     * @return the upper 64 bits of the destination address
+     */
+    public long destinationAddressHigh() {
+        return content().getLong(INET6_DESTINATION_ADDRESS);
+    }
+
+    /**
+     * Returns the lower 64 bits of the destination address in network byte order.
+     *
+     * @return the lower 64 bits of the destination address
+     * @see #destinationAddressHigh()
+     */
+    public long destinationAddressLow() {
+        return content().getLong(INET6_DESTINATION_ADDRESS + 8);
+    }
+
+    /**
+     * Sets the source address and updates the checksum of a TCP, UDP, or ICMPv6 header
+     * incrementally.
+     *
+     * @param high the upper 64 bits of the new source address
+     * @param low  the lower 64 bits of the new source address
+     */
+    public void setSourceAddress(final long high, final long low) {
+        setAddress(INET6_SOURCE_ADDRESS, high, low);
+        sourceAddress = null;
+    }
+
+    /**
+     * Sets the source address and updates the checksum of a TCP, UDP, or ICMPv6 header
+     * incrementally.
+     *
+     * @param address the new source address
+     */
+    public void setSourceAddress(final Inet6Address address) {
+        final byte[] bytes = address.getAddress();
+        setSourceAddress(toLong(bytes, 0), toLong(bytes, 8));
+    }
+
+    /**
+     * Sets the destination address and updates the checksum of a TCP, UDP, or ICMPv6 header
+     * incrementally. If the packet carries a routing header, the transport checksum covers the
+     * final destination instead, so it will only be correct if that is the address being set.
+     *
+     * @param high the upper 64 bits of the new destination address
+     * @param low  the lower 64 bits of the new destination address
+     */
+    public void setDestinationAddress(final long high, final long low) {
+        setAddress(INET6_DESTINATION_ADDRESS, high, low);
+        destinationAddress = null;
+    }
+
+    /**
+     * Sets the destination address and updates the checksum of a TCP, UDP, or ICMPv6 header
+     * incrementally.
+     *
+     * @param address the new destination address
+     * @see #setDestinationAddress(long, long)
+     */
+    public void setDestinationAddress(final Inet6Address address) {
+        final byte[] bytes = address.getAddress();
+        setDestinationAddress(toLong(bytes, 0), toLong(bytes, 8));
+    }
+
+    private void setAddress(final int index, final long high, final long low) {
+        final ByteBuf buf = content();
+        final long delta = InetChecksum.deltaLong(buf.getLong(index), high) + InetChecksum.deltaLong(buf.getLong(index + 8), low);
+        buf.setLong(index, high);
+        buf.setLong(index + 8, low);
+        final int upperLayerOffset = upperLayerOffset();
+        if (upperLayerOffset != -1) {
+            InetChecksum.adjustPseudoHeader(buf, 6, upperLayerProtocol(), upperLayerOffset, delta);
+        }
+    }
+
+    private static long toLong(final byte[] bytes, final int offset) {
+        long value = 0;
+        for (int i = offset; i < offset + 8; i++) {
+            value = value << 8 | bytes[i] & 0xff;
+        }
+        return value;
+    }
+
     public byte[] data() {
         final byte[] data = new byte[content().readableBytes() - INET6_HEADER_LENGTH];
         content().getBytes(INET6_HEADER_LENGTH, data);
         return data;
     }
 
+    /**
+     * Returns a new {@link Tun6Packet} holding {@code content}. The extension header chain of the
+     * new packet is walked on its own, as {@code content} may differ from this packet's content.
+     */
+    @Override
+    public Tun6Packet replace(final ByteBuf content) {
+        return new Tun6Packet(content, virtioNetHeader());
+    }
+
     @Override
     public String toString() {
         return new StringBuilder(StringUtil.simpleClassName(this))
@@ -28,14 +28,21 @@ import io.netty.channel.ChannelMetadata;
 import io.netty.channel.ChannelOutboundBuffer;
 import io.netty.channel.ChannelPipeline;
 import io.netty.channel.ChannelPromise;
+import io.netty.channel.DefaultEventLoop;
+import io.netty.channel.DefaultEventLoopGroup;
 import io.netty.channel.EventLoop;
+import io.netty.channel.EventLoopGroup;
 import io.netty.channel.RecvByteBufAllocator;
 import io.netty.channel.nio.NioEventLoop;
-import io.netty.channel.nio.NioEventLoopGroup;
+import io.netty.util.ReferenceCountUtil;
+import io.netty.util.UncheckedBooleanSupplier;
 import io.netty.util.internal.PlatformDependent;
 import io.netty.util.internal.StringUtil;
+import org.drasyl.channel.tun.jna.AbstractTunDevice;
+import org.drasyl.channel.tun.jna.PartialWriteException;
 import org.drasyl.channel.tun.jna.TunDevice;
 import org.drasyl.channel.tun.jna.darwin.DarwinTunDevice;
+import org.drasyl.channel.tun.jna.linux.IoUringTunDevice;
 import org.drasyl.channel.tun.jna.linux.LinuxTunDevice;
 import org.drasyl.channel.tun.jna.windows.WindowsTunDevice;
 
@@ -44,6 +51,10 @@ import java.net.SocketAddress;
 import java.nio.channels.AlreadyConnectedException;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.LongAdder;
 
 /**
  * A {@link io.netty.channel.Channel} implementation that can be used to send or receive packets
@@ -57,18 +68,32 @@ import java.util.List;
  * <p>
  * When the host's network stack sends packets out via the device, the packets are delivered to the
  * channel causing a {@link io.netty.channel.ChannelInboundHandler#channelRead(ChannelHandlerContext,
- * Object)} invocation.
+ * Object)} invocation. Each queue of the device is read by its own thread, which hands the packets
+ * over to the channel's event loop through a bounded lock-free queue. All handlers therefore run
+ * on the channel's event loop, even if the device has multiple queues (bind one
+ * {@link EpollTunChannel} per queue to process each queue on its own event loop instead). If the
+ * pipeline cannot keep up, the queue either stalls the reader or drops packets (see
+ * {@link TunChannelOption#TUN_INGRESS_OVERFLOW_POLICY}). Optionally, the packets are passed
+ * through the pipeline as {@link TunPacketBatch}es (see
+ * {@link TunChannelOption#TUN_READ_BATCH_SIZE}).
  */
 public class TunChannel extends AbstractChannel {
     private static final ChannelMetadata METADATA = new ChannelMetadata(false);
     private static final String EXPECTED_TYPES =
             " (expected: " + StringUtil.simpleClassName(TunPacket.class) + ')';
-    final Runnable readTask = this::doRead;
+    // maximum number of packets passed to/from the device at once
+    private static final int MAX_BATCH_SIZE = 16;
+    // user-defined writability bit cleared while the dedicated writer is behind
+    private static final int WRITER_WRITABILITY_INDEX = 1;
     private final TunChannelConfig config = new DefaultTunChannelConfig(this);
-    private final List<Object> readBuf = new ArrayList<>();
-    private boolean readPending;
-    private final EventLoop readLoop = new NioEventLoopGroup(1).next();
+    private EventLoopGroup readGroup;
+    private EventLoopGroup writeGroup;
+    private AsyncTunWriter writer;
+    private final LongAdder droppedPackets = new LongAdder();
+    private QueueReader[] readers = new QueueReader[0];
     private TunDevice device;
+    private volatile boolean closeInitiated;
+    private final TunPacket[] writeBatch = new TunPacket[MAX_BATCH_SIZE];
 
     public TunChannel() {
         super(null);
@@ -86,7 +111,7 @@ public class TunChannel extends AbstractChannel {
 
     @Override
     public boolean isOpen() {
-        return device == null || !device.isClosed();
+        return !closeInitiated && (device == null || !device.isClosed());
     }
 
     @Override
@@ -109,16 +134,50 @@ public class TunChannel extends AbstractChannel {
         return null;
     }
 
-    @Override
-    protected void doBind(final SocketAddress localAddress) throws Exception {
+    /**
+     * Opens the queues of the device with the given name.
+     */
+    List<TunDevice> openQueues(final TunAddress localAddress) throws IOException {
         if (PlatformDependent.isOsx()) {
-            device = DarwinTunDevice.open(((TunAddress) localAddress).ifName(), config.getMtu());
+            return List.of(DarwinTunDevice.open(localAddress.ifName(), config.getMtu()));
         }
         else if (PlatformDependent.isWindows()) {
-            device = WindowsTunDevice.open(((TunAddress) localAddress).ifName());
+            return List.of(WindowsTunDevice.open(localAddress.ifName()));
+        }
+        else if (config.isIoUring() && IoUringTunDevice.isAvailable()) {
+            return IoUringTunDevice.openQueues(localAddress.ifName(), config.getMtu(), config.getQueues(), config.isOffload());
         }
         else {
-            device = LinuxTunDevice.open(((TunAddress) localAddress).ifName(), config.getMtu());
+            final List<TunDevice> queues = LinuxTunDevice.openQueues(localAddress.ifName(), config.getMtu(), config.getQueues(), config.isOffload());
+            for (final TunDevice queue : queues) {
+                ((LinuxTunDevice) queue).setReceiveSlabSize(config.getReceiveSlabSize());
+            }
+            return queues;
+        }
+    }
+
+    @Override
+    protected void doBind(final SocketAddress localAddress) throws Exception {
+        final List<TunDevice> queues = openQueues((TunAddress) localAddress);
+        for (final TunDevice queue : queues) {
+            ((AbstractTunDevice) queue).setReceiveCopyPolicy(config.getReceiveCopyPolicy());
+            ((AbstractTunDevice) queue).setReceiveRoom(config.getReceiveHeadroom(), config.getReceiveTailroom());
+        }
+
+        readGroup = new DefaultEventLoopGroup(queues.size());
+        final QueueReader[] newReaders = new QueueReader[queues.size()];
+        for (int i = 0; i < newReaders.length; i++) {
+            newReaders[i] = new QueueReader(queues.get(i), readGroup.next());
+        }
+        readers = newReaders;
+        device = queues.get(0);
+
+        if (config.getWriteQueueSize() > 0) {
+            writeGroup = new DefaultEventLoop();
+            writer = new AsyncTunWriter(device, alloc(), writeGroup.next(), config.getWriteQueueSize(),
+                    config.getWriteBufferLowWaterMark(), MAX_BATCH_SIZE,
+                    () -> eventLoop().execute(this::writerCaughtUp),
+                    e -> eventLoop().execute(() -> writerFailed(e)));
         }
     }
 
@@ -129,35 +188,157 @@ public class TunChannel extends AbstractChannel {
 
     @Override
     protected void doClose() throws Exception {
-        if (device != null) {
-            device.close();
+        closeInitiated = true;
+        if (writer != null) {
+            // the writer may still be writing to the device. Close the device once the writer has
+            // left it, as its descriptor could otherwise be reused for another file in between
+            writer.close(() -> {
+                try {
+                    closeQueues();
+                }
+                catch (final IOException e) {
+                    eventLoop().execute(() -> pipeline().fireExceptionCaught(e));
+                }
+                finally {
+                    writeGroup.shutdownGracefully();
+                }
+            });
+        }
+        else {
+            closeQueues();
+        }
+        if (readGroup != null) {
+            readGroup.shutdownGracefully();
+        }
+    }
+
+    private void closeQueues() throws IOException {
+        for (final QueueReader reader : readers) {
+            reader.device.close();
         }
     }
 
     /**
-     * Read messages into the given array and return the amount which was read.
+     * Read messages from the given queue into the given list and return the amount which was
+     * read. {@code batch} can be used as temporary storage. No more than {@code max} messages must
+     * be read at once. {@code max} never exceeds {@code batch.length}. Called on the queue's reader
+     * thread.
      */
     @SuppressWarnings("java:S112")
-    protected int doReadMessages(List<Object> msgs) throws Exception {
-        final TunPacket msg = device.readPacket(alloc());
-        msgs.add(msg);
-        return 1;
+    protected int doReadMessages(final TunDevice queue,
+                                 final TunPacket[] batch,
+                                 final int max,
+                                 final List<Object> msgs) throws Exception {
+        final int count = queue.readPackets(alloc(), batch, max);
+        for (int i = 0; i < count; i++) {
+            msgs.add(batch[i]);
+            batch[i] = null;
+        }
+        return count;
     }
 
     @Override
-    protected void doWrite(ChannelOutboundBuffer in) throws Exception {
+    protected void doWrite(final ChannelOutboundBuffer in) throws Exception {
+        if (writer != null) {
+            doWriteAsync(in);
+            return;
+        }
+
         while (true) {
-            final Object msg = in.current();
-            if (msg == null) {
+            // collect next burst of flushed packets
+            final int count = Math.min(in.size(), writeBatch.length);
+            if (count == 0) {
                 break;
             }
+            in.forEachFlushedMessage(new ChannelOutboundBuffer.MessageProcessor() {
+                private int i;
+
+                @Override
+                public boolean processMessage(final Object msg) {
+                    writeBatch[i++] = ((TunPacket) msg).retain();
+                    return i < count;
+                }
+            });
 
+            int written = count;
+            Exception failure = null;
             try {
-                device.writePacket(alloc(), (TunPacket) (((TunPacket) msg).retain()));
+                device.writePackets(alloc(), writeBatch, count);
+            }
+            catch (final PartialWriteException e) {
+                written = e.written();
+                failure = e;
+            }
+            catch (final IOException | RuntimeException e) {
+                // it is unknown which packets of the burst have been written, fail them all
+                written = 0;
+                failure = e;
+            }
+            for (int i = 0; i < count; i++) {
+                writeBatch[i] = null;
+                if (i < written) {
+                    in.remove();
+                }
+                else {
+                    in.remove(failure);
+                }
             }
-            finally {
+            if (failure != null) {
+                throw failure;
+            }
+        }
+    }
+
+    /**
+     * Hands flushed packets over to the dedicated writer. Packets that do not fit into its queue
+     * remain in {@code in} until the writer has caught up.
+     */
+    private void doWriteAsync(final ChannelOutboundBuffer in) {
+        Object msg;
+        while ((msg = in.current()) != null) {
+            final TunPacket packet = ((TunPacket) msg).retain();
+            if (writer.offer(packet)) {
                 in.remove();
             }
+            else {
+                packet.release();
+                if (writer.stall()) {
+                    in.setUserDefinedWritability(WRITER_WRITABILITY_INDEX, false);
+                    return;
+                }
+            }
+        }
+
+        if (writer.pendingBytes() > config.getWriteBufferHighWaterMark() && writer.stall()) {
+            in.setUserDefinedWritability(WRITER_WRITABILITY_INDEX, false);
+        }
+    }
+
+    /**
+     * Called once the dedicated writer has caught up with a stalled producer.
+     */
+    private void writerCaughtUp() {
+        final ChannelOutboundBuffer in = unsafe().outboundBuffer();
+        if (in != null) {
+            in.setUserDefinedWritability(WRITER_WRITABILITY_INDEX, true);
+            // resume writing packets that did not fit into the queue
+            ((TunChannelUnsafe) unsafe()).resumeWrite();
+        }
+    }
+
+    /**
+     * Called if the dedicated writer failed to write packets. Like failed writes on the event loop,
+     * {@link IOException}s close the channel if {@link ChannelConfig#isAutoClose()} is set.
+     */
+    private void writerFailed(final Throwable cause) {
+        if (!isOpen()) {
+            return;
+        }
+        if (cause instanceof IOException && config.isAutoClose()) {
+            unsafe().close(unsafe().voidPromise());
+        }
+        else {
+            pipeline().fireExceptionCaught(cause);
         }
     }
 
@@ -171,24 +352,48 @@ public class TunChannel extends AbstractChannel {
                 "unsupported message type: " + StringUtil.simpleClassName(msg) + EXPECTED_TYPES);
     }
 
+    /**
+     * Reads packets from the queue of {@code reader} on its own thread and publishes them to the
+     * reader's ingress queue. The channel's event loop is woken up once per burst to pass them
+     * through the pipeline (see {@link #drainReads(QueueReader)}). Reading stalls while the queue is
+     * full and is resumed by the event loop once it has drained to the low water mark.
+     * <p>
+     * The {@link RecvByteBufAllocator.Handle#guess() guess} of the channel's
+     * {@link RecvByteBufAllocator} is used as the number of bytes to read at once. Tun devices must
+     * read each packet into a buffer large enough for the largest possible packet, so the guess
+     * limits the number of packets per burst instead, based on the size of the packets read
+     * before. An adaptive allocator thus reads small bursts while the device is idle and whole
+     * batches under load.
+     */
     @SuppressWarnings({ "java:S135", "java:S1117", "java:S1181", "java:S1874", "java:S3776" })
-    private void doRead() {
-        if (!readPending) {
+    private void doRead(final QueueReader reader) {
+        if (!reader.readPending) {
             return;
         }
-        readPending = false;
+        reader.readPending = false;
 
         final ChannelConfig config = config();
-        final ChannelPipeline pipeline = pipeline();
-        final RecvByteBufAllocator.Handle allocHandle = unsafe().recvBufAllocHandle();
+        final RecvByteBufAllocator.Handle allocHandle = reader.allocHandle;
         allocHandle.reset(config);
 
-        // read messages until RecvByteBuf is full
+        // read bursts until the guessed number of bytes has been read
+        final int guess = allocHandle.guess();
+        int totalBytesRead = 0;
+        boolean maybeMoreData;
+        boolean readData = false;
         boolean closed = false;
+        boolean stalled = false;
         Throwable exception = null;
         try {
             do {
-                int localRead = doReadMessages(readBuf);
+                final int max = reader.burstSizer.burstSize(guess - totalBytesRead);
+                if (!reader.ingress.tryRead(max)) {
+                    stalled = true;
+                    break;
+                }
+
+                allocHandle.attemptedBytesRead(guess - totalBytesRead);
+                int localRead = doReadMessages(reader.device, reader.readBatch, max, reader.readBuf);
                 if (localRead == 0) {
                     break;
                 }
@@ -197,44 +402,183 @@ public class TunChannel extends AbstractChannel {
                     break;
                 }
 
+                final int bytesRead = reader.burstSizer.record(reader.readBuf);
+                allocHandle.lastBytesRead(bytesRead);
                 allocHandle.incMessagesRead(localRead);
-            } while (allocHandle.continueReading());
+                totalBytesRead += bytesRead;
+                readData = true;
+                publish(reader);
+                // a partial burst has drained the device
+                maybeMoreData = localRead == max && totalBytesRead < guess;
+            } while (maybeMoreData && continueReading(allocHandle));
         }
         catch (final Throwable t) {
             exception = t;
         }
 
-        // process read messages
-        boolean readData = false;
-        int size = readBuf.size();
-        if (size > 0) {
-            readData = true;
-            for (int i = 0; i < size; i++) {
-                readPending = false;
-                pipeline.fireChannelRead(readBuf.get(i));
-            }
-            readBuf.clear();
+        if (readData) {
             allocHandle.readComplete();
-            pipeline.fireChannelReadComplete();
+        }
+        if (exception instanceof IOException) {
+            closed = true;
         }
 
+        // hand exception and closure over to the channel's event loop. They are passed through the
+        // pipeline after all packets read before
         if (exception != null) {
-            if (exception instanceof IOException) {
-                closed = true;
+            reader.exception.set(exception);
+        }
+        if (closed) {
+            reader.closed = true;
+        }
+        if (exception != null || closed || stalled) {
+            scheduleDrain(reader);
+        }
+
+        // keep reading directly on the reader thread. A detour via the pipeline would stall the
+        // reader while the event loop is busy, defeating the policies that keep reading. A read
+        // requested in the meantime has already been scheduled by doBeginRead
+        if (!closed && !stalled && !reader.orphaned.get() && !reader.readPending && (config.isAutoRead() || !readData && isActive())) {
+            reader.readPending = true;
+            reader.loop.execute(reader.readTask);
+        }
+    }
+
+    static boolean continueReading(final RecvByteBufAllocator.Handle allocHandle) {
+        if (allocHandle instanceof RecvByteBufAllocator.ExtendedHandle) {
+            // the burst size already tells whether more packets may be available
+            return ((RecvByteBufAllocator.ExtendedHandle) allocHandle).continueReading(UncheckedBooleanSupplier.TRUE_SUPPLIER);
+        }
+        return allocHandle.continueReading();
+    }
+
+    /**
+     * Publishes the packets read into {@link QueueReader#readBuf} to the reader's ingress queue and
+     * wakes up the channel's event loop. Packets may be dropped according to the
+     * {@link IngressOverflowPolicy}.
+     */
+    private void publish(final QueueReader reader) {
+        final List<Object> readBuf = reader.readBuf;
+        final int size = readBuf.size();
+        for (int i = 0; i < size; i++) {
+            reader.ingress.offer(readBuf.get(i));
+        }
+        readBuf.clear();
+        scheduleDrain(reader);
+        if (reader.consumerTerminated) {
+            // nobody drains the queue anymore
+            releaseOrphanedPackets(reader);
+        }
+    }
+
+    private void scheduleDrain(final QueueReader reader) {
+        if (reader.drainScheduled.compareAndSet(false, true)) {
+            try {
+                eventLoop().execute(reader.drainTask);
+            }
+            catch (final RejectedExecutionException e) {
+                // the event loop has been shut down, but may still run drains submitted before. As
+                // the queue must only be consumed by one thread at a time, the packets left are
+                // released once the event loop has terminated. drainScheduled remains set, so that
+                // no further drains are submitted
+                if (reader.orphaned.compareAndSet(false, true)) {
+                    eventLoop().terminationFuture().addListener(future -> {
+                        reader.consumerTerminated = true;
+                        releaseOrphanedPackets(reader);
+                    });
+                }
             }
+        }
+    }
 
-            if (isOpen()) {
-                pipeline.fireExceptionCaught(exception);
+    /**
+     * Releases all packets in the ingress queue of {@code reader}. Must only be called once the
+     * channel's event loop has terminated. Then, the queue is consumed by the termination listener
+     * and the reader thread, which are serialized by the reader's lock.
+     */
+    private static void releaseOrphanedPackets(final QueueReader reader) {
+        synchronized (reader) {
+            Object msg;
+            while ((msg = reader.ingress.poll()) != null) {
+                ReferenceCountUtil.release(msg);
             }
         }
+    }
 
-        if (closed) {
-            if (isOpen()) {
-                unsafe().close(unsafe().voidPromise());
+    /**
+     * Passes all packets published by {@code reader} through the pipeline, followed by any
+     * exception or closure of the reader. Runs on the channel's event loop, so bursts of different
+     * queues do not interleave within the pipeline.
+     */
+    private void drainReads(final QueueReader reader) {
+        reader.drainScheduled.set(false);
+
+        final ChannelPipeline pipeline = pipeline();
+        boolean readData = fireReads(reader, pipeline);
+        final Throwable exception = reader.exception.getAndSet(null);
+        final boolean closed = reader.closed;
+        if (exception != null || closed) {
+            // packets published right before the exception/closure
+            readData |= fireReads(reader, pipeline);
+        }
+        if (readData) {
+            pipeline.fireChannelReadComplete();
+        }
+
+        if (exception != null && isOpen()) {
+            pipeline.fireExceptionCaught(exception);
+        }
+
+        if (closed && isOpen()) {
+            unsafe().close(unsafe().voidPromise());
+        }
+
+        resumeIfDrained(reader);
+
+        // packets may have been published after the last poll
+        if (!reader.ingress.isEmpty()) {
+            scheduleDrain(reader);
+        }
+    }
+
+    private boolean fireReads(final QueueReader reader, final ChannelPipeline pipeline) {
+        final int batchSize = reader.batchSize;
+        TunPacketBatch batch = null;
+        boolean readData = false;
+        Object msg;
+        while ((msg = reader.ingress.poll()) != null) {
+            readData = true;
+            if (batchSize > 0 && msg instanceof TunPacket) {
+                if (batch == null) {
+                    batch = TunPacketBatch.newInstance();
+                }
+                batch.add((TunPacket) msg);
+                if (batch.size() == batchSize) {
+                    pipeline.fireChannelRead(batch);
+                    batch = null;
+                }
+            }
+            else {
+                // preserve order
+                if (batch != null) {
+                    pipeline.fireChannelRead(batch);
+                    batch = null;
+                }
+                pipeline.fireChannelRead(msg);
             }
+            // resume a stalled reader as soon as the low water mark is reached
+            resumeIfDrained(reader);
+        }
+        if (batch != null) {
+            pipeline.fireChannelRead(batch);
         }
-        else if (readPending || config.isAutoRead() || !readData && isActive()) {
-            read();
+        return readData;
+    }
+
+    private void resumeIfDrained(final QueueReader reader) {
+        if (reader.ingress.tryResume() && isOpen()) {
+            reader.readPending = true;
+            reader.loop.execute(reader.readTask);
         }
     }
 
@@ -250,17 +594,33 @@ public class TunChannel extends AbstractChannel {
 
     @Override
     protected void doBeginRead() {
-        if (readPending) {
-            return;
-        }
         if (!isActive()) {
             return;
         }
 
-        readPending = true;
-        readLoop.execute(readTask);
+        for (final QueueReader reader : readers) {
+            if (!reader.readPending) {
+                reader.readPending = true;
+                reader.loop.execute(reader.readTask);
+            }
+        }
     }
 
+    /**
+     * Returns the number of received packets dropped by this channel according to its
+     * {@link IngressOverflowPolicy}. Packets dropped by the kernel, e.g. while reading is blocked,
+     * are not included.
+     *
+     * @return the number of received packets dropped by this channel
+     * @see TunChannelOption#TUN_INGRESS_OVERFLOW_POLICY
+     */
+    public long droppedPackets() {
+        return droppedPackets.sum();
+    }
+
+    /**
+     * Returns the {@link TunDevice} of the first queue.
+     */
     public TunDevice device() {
         return device;
     }
@@ -272,5 +632,41 @@ public class TunChannel extends AbstractChannel {
                             final ChannelPromise promise) {
             throw new AlreadyConnectedException();
         }
+
+        void resumeWrite() {
+            flush0();
+        }
+    }
+
+    /**
+     * Reads packets from a single queue of the tun device on its own thread and hands them over to
+     * the channel's event loop.
+     */
+    private class QueueReader {
+        final TunDevice device;
+        final EventLoop loop;
+        final Runnable readTask = () -> doRead(this);
+        final Runnable drainTask = () -> drainReads(this);
+        final List<Object> readBuf = new ArrayList<>();
+        final TunPacket[] readBatch = new TunPacket[MAX_BATCH_SIZE];
+        final RecvByteBufAllocator.Handle allocHandle = config.getRecvByteBufAllocator().newHandle();
+        final BurstSizer burstSizer = new BurstSizer(MAX_BATCH_SIZE);
+        // hands read packets over to the channel's event loop
+        final IngressQueue ingress = new IngressQueue(config.getIngressWaterMark(), config.getIngressOverflowPolicy(), MAX_BATCH_SIZE, droppedPackets);
+        final AtomicBoolean drainScheduled = new AtomicBoolean();
+        // set once a drain has been rejected by the shut down event loop
+        final AtomicBoolean orphaned = new AtomicBoolean();
+        // set once the event loop has terminated and will never consume the ingress queue again
+        volatile boolean consumerTerminated;
+        // maximum number of packets fired as a TunPacketBatch. 0 fires packets individually
+        final int batchSize = config.getReadBatchSize();
+        final AtomicReference<Throwable> exception = new AtomicReference<>();
+        volatile boolean closed;
+        volatile boolean readPending;
+
+        QueueReader(final TunDevice device, final EventLoop loop) {
+            this.device = device;
+            this.loop = loop;
+        }
     }
 }
@@ -36,6 +36,28 @@ import io.netty.channel.ChannelConfig;
  * <th>Name</th><th>Associated setter method</th>
  * </tr><tr>
  * <td>{@link TunChannelOption#TUN_MTU}</td><td>{@link #setMtu(int)}</td>
+ * </tr><tr>
+ * <td>{@link TunChannelOption#TUN_QUEUES}</td><td>{@link #setQueues(int)}</td>
+ * </tr><tr>
+ * <td>{@link TunChannelOption#TUN_OFFLOAD}</td><td>{@link #setOffload(boolean)}</td>
+ * </tr><tr>
+ * <td>{@link TunChannelOption#TUN_IO_URING}</td><td>{@link #setIoUring(boolean)}</td>
+ * </tr><tr>
+ * <td>{@link TunChannelOption#TUN_RECEIVE_SLAB_SIZE}</td><td>{@link #setReceiveSlabSize(int)}</td>
+ * </tr><tr>
+ * <td>{@link TunChannelOption#TUN_RECEIVE_COPY_POLICY}</td><td>{@link #setReceiveCopyPolicy(ReceiveCopyPolicy)}</td>
+ * </tr><tr>
+ * <td>{@link TunChannelOption#TUN_RECEIVE_HEADROOM}</td><td>{@link #setReceiveHeadroom(int)}</td>
+ * </tr><tr>
+ * <td>{@link TunChannelOption#TUN_RECEIVE_TAILROOM}</td><td>{@link #setReceiveTailroom(int)}</td>
+ * </tr><tr>
+ * <td>{@link TunChannelOption#TUN_WRITE_QUEUE_SIZE}</td><td>{@link #setWriteQueueSize(int)}</td>
+ * </tr><tr>
+ * <td>{@link TunChannelOption#TUN_INGRESS_WATER_MARK}</td><td>{@link #setIngressWaterMark(IngressWaterMark)}</td>
+ * </tr><tr>
+ * <td>{@link TunChannelOption#TUN_INGRESS_OVERFLOW_POLICY}</td><td>{@link #setIngressOverflowPolicy(IngressOverflowPolicy)}</td>
+ * </tr><tr>
+ * <td>{@link TunChannelOption#TUN_READ_BATCH_SIZE}</td><td>{@link #setReadBatchSize(int)}</td>
  * </tr>
  * </table>
  */
@@ -49,4 +71,114 @@ public interface TunChannelConfig extends ChannelConfig {
      * Sets the {@link TunChannelOption#TUN_MTU} option.
      */
     TunChannelConfig setMtu(int mtu);
+
+    /**
+     * Gets the {@link TunChannelOption#TUN_QUEUES} option.
+     */
+    int getQueues();
+
+    /**
+     * Sets the {@link TunChannelOption#TUN_QUEUES} option.
+     */
+    TunChannelConfig setQueues(int queues);
+
+    /**
+     * Gets the {@link TunChannelOption#TUN_OFFLOAD} option.
+     */
+    boolean isOffload();
+
+    /**
+     * Sets the {@link TunChannelOption#TUN_OFFLOAD} option.
+     */
+    TunChannelConfig setOffload(boolean offload);
+
+    /**
+     * Gets the {@link TunChannelOption#TUN_IO_URING} option.
+     */
+    boolean isIoUring();
+
+    /**
+     * Sets the {@link TunChannelOption#TUN_IO_URING} option.
+     */
+    TunChannelConfig setIoUring(boolean ioUring);
+
+    /**
+     * Gets the {@link TunChannelOption#TUN_RECEIVE_SLAB_SIZE} option.
+     */
+    int getReceiveSlabSize();
+
+    /**
+     * Sets the {@link TunChannelOption#TUN_RECEIVE_SLAB_SIZE} option.
+     */
+    TunChannelConfig setReceiveSlabSize(int receiveSlabSize);
+
+    /**
+     * Gets the {@link TunChannelOption#TUN_RECEIVE_COPY_POLICY} option.
+     */
+    ReceiveCopyPolicy getReceiveCopyPolicy();
+
+    /**
+     * Sets the {@link TunChannelOption#TUN_RECEIVE_COPY_POLICY} option.
+     */
+    TunChannelConfig setReceiveCopyPolicy(ReceiveCopyPolicy receiveCopyPolicy);
+
+    /**
+     * Gets the {@link TunChannelOption#TUN_RECEIVE_HEADROOM} option.
+     */
+    int getReceiveHeadroom();
+
+    /**
+     * Sets the {@link TunChannelOption#TUN_RECEIVE_HEADROOM} option.
+     */
+    TunChannelConfig setReceiveHeadroom(int receiveHeadroom);
+
+    /**
+     * Gets the {@link TunChannelOption#TUN_RECEIVE_TAILROOM} option.
+     */
+    int getReceiveTailroom();
+
+    /**
+     * Sets the {@link TunChannelOption#TUN_RECEIVE_TAILROOM} option.
+     */
+    TunChannelConfig setReceiveTailroom(int receiveTailroom);
+
+    /**
+     * Gets the {@link TunChannelOption#TUN_WRITE_QUEUE_SIZE} option.
+     */
+    int getWriteQueueSize();
+
+    /**
+     * Sets the {@link TunChannelOption#TUN_WRITE_QUEUE_SIZE} option.
+     */
+    TunChannelConfig setWriteQueueSize(int writeQueueSize);
+
+    /**
+     * Gets the {@link TunChannelOption#TUN_INGRESS_WATER_MARK} option.
+     */
+    IngressWaterMark getIngressWaterMark();
+
+    /**
+     * Sets the {@link TunChannelOption#TUN_INGRESS_WATER_MARK} option.
+     */
+    TunChannelConfig setIngressWaterMark(IngressWaterMark ingressWaterMark);
+
+    /**
+     * Gets the {@link TunChannelOption#TUN_INGRESS_OVERFLOW_POLICY} option.
+     */
+    IngressOverflowPolicy getIngressOverflowPolicy();
+
+    /**
+     * Sets the {@link TunChannelOption#TUN_INGRESS_OVERFLOW_POLICY} option.
+     */
+    TunChannelConfig setIngressOverflowPolicy(IngressOverflowPolicy ingressOverflowPolicy);
+
+    /**
+     * Gets the {@link TunChannelOption#TUN_READ_BATCH_SIZE} option.
+     */
+    int getReadBatchSize();
+
+    /**
+     * Sets the {@link TunChannelOption#TUN_READ_BATCH_SIZE} option.
+     */
+    TunChannelConfig setReadBatchSize(int readBatchSize);
 }
@@ -31,6 +31,87 @@ public final class TunChannelOption<T> extends ChannelOption<T> {
      * Defines MTU for the created tun device (not supported on windows).
      */
     public static final ChannelOption<Integer> TUN_MTU = valueOf("TUN_MTU");
+    /**
+     * Defines the number of queues attached to the created tun device (only supported on linux).
+     * Each queue is read by its own thread, allowing the kernel to spread the flows across
+     * multiple cores. The read packets of all queues are passed through the pipeline on the
+     * channel's event loop. Use one {@link EpollTunChannel} per queue to process each queue on its
+     * own event loop.
+     */
+    public static final ChannelOption<Integer> TUN_QUEUES = valueOf("TUN_QUEUES");
+    /**
+     * Enables TSO and checksum offloading for the created tun device (only supported on linux).
+     * The device will then pass GSO super-packets of up to 64 KB. Use
+     * {@link TunPacketSegmenter} if actual MTU-sized packets are required.
+     */
+    public static final ChannelOption<Boolean> TUN_OFFLOAD = valueOf("TUN_OFFLOAD");
+    /**
+     * Uses io_uring for reading from and writing to the created tun device (only supported on linux
+     * and ignored by {@link EpollTunChannel}). Falls back to regular reads/writes if the kernel
+     * does not support io_uring.
+     */
+    public static final ChannelOption<Boolean> TUN_IO_URING = valueOf("TUN_IO_URING");
+    /**
+     * Defines the size in bytes of the direct buffers (slabs) consecutive packets are read into
+     * (only supported on linux and ignored if {@link #TUN_IO_URING} is used). Each received packet
+     * is then a slice of such a slab, avoiding an allocation per packet. A slab is freed once all of
+     * its packets have been released. {@code 0} (default) allocates a buffer per packet.
+     */
+    public static final ChannelOption<Integer> TUN_RECEIVE_SLAB_SIZE = valueOf("TUN_RECEIVE_SLAB_SIZE");
+    /**
+     * Defines whether received packets are copied into a buffer of their actual size (not supported
+     * on windows and ignored if {@link #TUN_RECEIVE_SLAB_SIZE} or {@link #TUN_IO_URING} is used).
+     * Defaults to {@link ReceiveCopyPolicy#NEVER}.
+     */
+    public static final ChannelOption<ReceiveCopyPolicy> TUN_RECEIVE_COPY_POLICY = valueOf("TUN_RECEIVE_COPY_POLICY");
+    /**
+     * Defines the number of bytes reserved in front of each received packet (ignored if
+     * {@link #TUN_IO_URING} is used). Handlers can then prepend encapsulation headers in place via
+     * {@link TunPacket#encapsulationBuffer()}. Received packets are never copied if any room is
+     * reserved, regardless of {@link #TUN_RECEIVE_COPY_POLICY}. Defaults to {@code 0}.
+     */
+    public static final ChannelOption<Integer> TUN_RECEIVE_HEADROOM = valueOf("TUN_RECEIVE_HEADROOM");
+    /**
+     * Defines the number of bytes reserved behind each received packet (ignored if
+     * {@link #TUN_IO_URING} is used). Handlers can then append trailers (e.g. authentication tags)
+     * in place via {@link TunPacket#encapsulationBuffer()}. Received packets are never copied if
+     * any room is reserved, regardless of {@link #TUN_RECEIVE_COPY_POLICY}. Defaults to {@code 0}.
+     */
+    public static final ChannelOption<Integer> TUN_RECEIVE_TAILROOM = valueOf("TUN_RECEIVE_TAILROOM");
+    /**
+     * Defines the number of packets that can be queued for a dedicated writer thread (not
+     * supported by {@link EpollTunChannel}). The channel's event loop then only hands flushed
+     * packets over to this thread, which writes them to the device in bursts. Write promises are
+     * completed once a packet has been queued. Write failures close the channel (see
+     * {@link io.netty.channel.ChannelOption#AUTO_CLOSE}) or are reported via
+     * {@link io.netty.channel.ChannelInboundHandler#exceptionCaught(io.netty.channel.ChannelHandlerContext, Throwable)}.
+     * The channel becomes unwritable if more bytes than the
+     * {@link io.netty.channel.ChannelOption#WRITE_BUFFER_WATER_MARK write buffer high water mark}
+     * are queued or the queue is full, and writable again once the writer has caught up.
+     * {@code 0} (default) writes on the channel's event loop.
+     */
+    public static final ChannelOption<Integer> TUN_WRITE_QUEUE_SIZE = valueOf("TUN_WRITE_QUEUE_SIZE");
+    /**
+     * Defines the number of received packets each queue may hold while they wait to be passed
+     * through the pipeline by the channel's event loop (not supported by {@link EpollTunChannel}).
+     * Once a queue holds {@link IngressWaterMark#high()} packets, the
+     * {@link #TUN_INGRESS_OVERFLOW_POLICY} is applied until it has been drained to
+     * {@link IngressWaterMark#low()} packets. Defaults to {@link IngressWaterMark#DEFAULT}.
+     */
+    public static final ChannelOption<IngressWaterMark> TUN_INGRESS_WATER_MARK = valueOf("TUN_INGRESS_WATER_MARK");
+    /**
+     * Defines how received packets are handled when the pipeline cannot keep up with the device
+     * (not supported by {@link EpollTunChannel}). Dropped packets are counted by
+     * {@link TunChannel#droppedPackets()}. Defaults to {@link IngressOverflowPolicy#BLOCK}.
+     */
+    public static final ChannelOption<IngressOverflowPolicy> TUN_INGRESS_OVERFLOW_POLICY = valueOf("TUN_INGRESS_OVERFLOW_POLICY");
+    /**
+     * Defines the maximum number of received packets passed through the pipeline at once as a
+     * {@link TunPacketBatch} (not supported by {@link EpollTunChannel}). Batches are fired with
+     * the packets available when the channel's event loop wakes up, so they are never delayed to
+     * fill up. {@code 0} (default) passes each {@link TunPacket} individually.
+     */
+    public static final ChannelOption<Integer> TUN_READ_BATCH_SIZE = valueOf("TUN_READ_BATCH_SIZE");
 
     @SuppressWarnings({ "java:S1144", "java:S1874" })
     private TunChannelOption(final String name) {
@@ -22,20 +22,106 @@
 package org.drasyl.channel.tun;
 
 import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufHolder;
+import io.netty.buffer.ByteBufUtil;
 import io.netty.buffer.DefaultByteBufHolder;
+import io.netty.util.IllegalReferenceCountException;
+import io.netty.util.internal.StringUtil;
 
 import java.net.InetAddress;
 
+import static java.util.Objects.requireNonNull;
+
 /**
  * Envelope class for IPv4 and IPv6 packets received from/sent to TUN devices.
+ * <p>
+ * Packets obtained from a pool (e.g. via {@link Tun4Packet#newInstance(ByteBuf, VirtioNetHeader)})
+ * are returned to it once their content has been released. Such packets must not be used after
+ * their last {@link #release()}.
  *
  * @see Tun4Packet
  * @see Tun6Packet
  */
 @SuppressWarnings("java:S118")
-public abstract class TunPacket extends DefaultByteBufHolder {
+public abstract class TunPacket implements ByteBufHolder {
+    private ByteBuf data;
+    private VirtioNetHeader virtioNetHeader;
+    private ByteBuf frame;
+    private int frameOffset;
+    private int headroom;
+    private int tailroom;
+
+    protected TunPacket(final ByteBuf data, final VirtioNetHeader virtioNetHeader) {
+        init(data, virtioNetHeader);
+    }
+
     protected TunPacket(final ByteBuf data) {
-        super(data);
+        this(data, VirtioNetHeader.NONE);
+    }
+
+    /**
+     * Creates an empty packet to be populated via {@link #init(ByteBuf, VirtioNetHeader)}. Used by
+     * pooled packets.
+     */
+    protected TunPacket() {
+        // empty
+    }
+
+    /**
+     * Returns a pooled {@link Tun4Packet} or {@link Tun6Packet} holding {@code data}, depending on
+     * the IP version of {@code data}. The packet is returned to the pool once {@code data} has been
+     * released through it.
+     *
+     * @param data            the packet
+     * @param virtioNetHeader the offload information of the packet
+     * @return pooled {@link TunPacket}
+     * @throws IllegalArgumentException if {@code data} holds neither an IPv4 nor an IPv6 packet
+     */
+    public static TunPacket newInstance(final ByteBuf data, final VirtioNetHeader virtioNetHeader) {
+        if (!data.isReadable()) {
+            throw new IllegalArgumentException("data must not be empty.");
+        }
+
+        final int version = data.getUnsignedByte(data.readerIndex()) >> 4;
+        if (version == 4) {
+            return Tun4Packet.newInstance(data, virtioNetHeader);
+        }
+        else if (version == 6) {
+            return Tun6Packet.newInstance(data, virtioNetHeader);
+        }
+        else {
+            throw new IllegalArgumentException("Unknown protocol: " + version);
+        }
+    }
+
+    /**
+     * Returns a pooled {@link TunPacket} holding {@code data}.
+     *
+     * @see #newInstance(ByteBuf, VirtioNetHeader)
+     */
+    public static TunPacket newInstance(final ByteBuf data) {
+        return newInstance(data, VirtioNetHeader.NONE);
+    }
+
+    /**
+     * Sets the content and offload information of this packet.
+     */
+    protected void init(final ByteBuf data, final VirtioNetHeader virtioNetHeader) {
+        this.data = requireNonNull(data);
+        this.virtioNetHeader = requireNonNull(virtioNetHeader);
+    }
+
+    /**
+     * Called once the content of this packet has been released. Subclasses must reset all state
+     * derived from the content and may return this packet to its pool afterwards.
+     */
+    protected void deallocate() {
+        data = null;
+        virtioNetHeader = null;
+        frame = null;
+        frameOffset = 0;
+        headroom = 0;
+        tailroom = 0;
     }
 
     /**
@@ -58,4 +144,197 @@ public abstract class TunPacket extends DefaultByteBufHolder {
      * @return the destination address.
      */
     public abstract InetAddress destinationAddress();
+
+    /**
+     * Returns the offload information of this packet. For devices not operating in offload mode,
+     * this is always {@link VirtioNetHeader#NONE}.
+     *
+     * @return the offload information of this packet.
+     * @see TunChannelOption#TUN_OFFLOAD
+     */
+    public VirtioNetHeader virtioNetHeader() {
+        return virtioNetHeader;
+    }
+
+    /**
+     * Returns the number of writable bytes reserved in front of this packet's content.
+     *
+     * @return the number of bytes reserved in front of the content.
+     * @see TunChannelOption#TUN_RECEIVE_HEADROOM
+     * @see #encapsulationBuffer()
+     */
+    public int headroom() {
+        return headroom;
+    }
+
+    /**
+     * Returns the number of writable bytes reserved behind this packet's content.
+     *
+     * @return the number of bytes reserved behind the content.
+     * @see TunChannelOption#TUN_RECEIVE_TAILROOM
+     * @see #encapsulationBuffer()
+     */
+    public int tailroom() {
+        return tailroom;
+    }
+
+    /**
+     * Declares that this packet's content has been placed {@code headroom} bytes into {@code frame}
+     * (starting at {@code frameOffset}), followed by at least {@code tailroom} unused bytes. Used by
+     * {@link TunDevice} implementations that reserve room around received packets. {@code frame}
+     * must remain accessible as long as the content of this packet is.
+     *
+     * @param frame       the buffer the content is a slice of
+     * @param frameOffset index of the first reserved byte in {@code frame}
+     * @param headroom    number of bytes reserved in front of the content
+     * @param tailroom    number of bytes reserved behind the content
+     * @throws IllegalArgumentException if {@code headroom} or {@code tailroom} is negative
+     */
+    public void reserve(final ByteBuf frame,
+                        final int frameOffset,
+                        final int headroom,
+                        final int tailroom) {
+        if (headroom < 0 || tailroom < 0) {
+            throw new IllegalArgumentException("headroom and tailroom must be non-negative.");
+        }
+        this.frame = requireNonNull(frame);
+        this.frameOffset = frameOffset;
+        this.headroom = headroom;
+        this.tailroom = tailroom;
+    }
+
+    /**
+     * Returns a retained buffer sharing this packet's memory whose readable bytes are the packet
+     * and whose {@link #headroom()} bytes in front of the reader index and {@link #tailroom()}
+     * bytes behind the writer index may be overwritten. Outer headers can thus be prepended and
+     * trailers appended in place:
+     * <pre>
+     * final ByteBuf buf = packet.encapsulationBuffer();
+     * buf.readerIndex(buf.readerIndex() - OUTER_HEADER_LENGTH);
+     * writeOuterHeader(buf, buf.readerIndex());
+     * datagramChannel.write(new DatagramPacket(buf, remote));
+     * </pre>
+     * If no room has been reserved, this is a retained duplicate of {@link #content()}. The
+     * returned buffer must be released by the caller.
+     *
+     * @return a retained buffer sharing this packet's memory
+     * @see TunChannelOption#TUN_RECEIVE_HEADROOM
+     * @see TunChannelOption#TUN_RECEIVE_TAILROOM
+     */
+    public ByteBuf encapsulationBuffer() {
+        final ByteBuf content = content();
+        if (frame == null) {
+            return content.retainedDuplicate();
+        }
+        final int length = content.readableBytes();
+        return frame.retainedSlice(frameOffset, headroom + length + tailroom)
+                .setIndex(headroom, headroom + length);
+    }
+
+    /**
+     * Returns a new packet sharing the content (with increased reference count) and the reserved
+     * room of this packet, but carrying {@code virtioNetHeader} instead.
+     */
+    TunPacket retainedWithVirtioNetHeader(final VirtioNetHeader virtioNetHeader) {
+        final TunPacket packet = newInstance(content().retain(), virtioNetHeader);
+        if (frame != null) {
+            packet.reserve(frame, frameOffset, headroom, tailroom);
+        }
+        return packet;
+    }
+
+    @Override
+    public ByteBuf content() {
+        if (data == null) {
+            throw new IllegalReferenceCountException(0);
+        }
+        return ByteBufUtil.ensureAccessible(data);
+    }
+
+    @Override
+    public ByteBufHolder copy() {
+        return replace(content().copy());
+    }
+
+    @Override
+    public ByteBufHolder duplicate() {
+        return replace(content().duplicate());
+    }
+
+    @Override
+    public ByteBufHolder retainedDuplicate() {
+        return replace(content().retainedDuplicate());
+    }
+
+    @Override
+    public ByteBufHolder replace(final ByteBuf content) {
+        return new DefaultByteBufHolder(content);
+    }
+
+    @Override
+    public int refCnt() {
+        return data != null ? data.refCnt() : 0;
+    }
+
+    @Override
+    public TunPacket retain() {
+        content().retain();
+        return this;
+    }
+
+    @Override
+    public TunPacket retain(final int increment) {
+        content().retain(increment);
+        return this;
+    }
+
+    @Override
+    public TunPacket touch() {
+        content().touch();
+        return this;
+    }
+
+    @Override
+    public TunPacket touch(final Object hint) {
+        content().touch(hint);
+        return this;
+    }
+
+    @Override
+    public boolean release() {
+        return release(1);
+    }
+
+    @Override
+    public boolean release(final int decrement) {
+        if (data == null) {
+            throw new IllegalReferenceCountException(0, -decrement);
+        }
+        final boolean deallocated = data.release(decrement);
+        if (deallocated) {
+            deallocate();
+        }
+        return deallocated;
+    }
+
+    @Override
+    public String toString() {
+        return StringUtil.simpleClassName(this) + '(' + data + ')';
+    }
+
+    @Override
+    public boolean equals(final Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (o != null && getClass() == o.getClass()) {
+            return content().equals(((TunPacket) o).content());
+        }
+        return false;
+    }
+
+    @Override
+    public int hashCode() {
+        return content().hashCode();
+    }
 }
@@ -0,0 +1,185 @@
+/*
+ * Copyright (c) 2021-2022 Heiko Bornholdt and Kevin Röbert
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ * IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM,
+ * DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR
+ * OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE
+ * OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package org.drasyl.channel.tun;
+
+import io.netty.util.AbstractReferenceCounted;
+import io.netty.util.Recycler;
+import io.netty.util.Recycler.Handle;
+import io.netty.util.internal.StringUtil;
+
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+import static java.util.Objects.requireNonNull;
+
+/**
+ * Indexed container of {@link TunPacket}s passed through the pipeline as a single message. Fired
+ * by {@link TunChannel} instead of individual packets if
+ * {@link TunChannelOption#TUN_READ_BATCH_SIZE} is set, so that each handler is invoked once per
+ * batch instead of once per packet.
+ * <p>
+ * A batch owns the packets added to it: releasing the batch for the last time releases all
+ * contained packets and returns the batch to its pool. Handlers that want to keep a packet beyond
+ * the lifetime of the batch must {@link TunPacket#retain()} it. Use {@link TunPacketBatchHandler}
+ * to process batches or {@link TunPacketBatchUnroller} to pass their packets on individually.
+ */
+public final class TunPacketBatch extends AbstractReferenceCounted implements Iterable<TunPacket> {
+    private static final int INITIAL_CAPACITY = 16;
+    private static final Recycler<TunPacketBatch> RECYCLER = new Recycler<TunPacketBatch>() {
+        @Override
+        protected TunPacketBatch newObject(final Handle<TunPacketBatch> handle) {
+            return new TunPacketBatch(handle);
+        }
+    };
+    private final Handle<TunPacketBatch> handle;
+    private TunPacket[] packets = new TunPacket[INITIAL_CAPACITY];
+    private int size;
+
+    private TunPacketBatch(final Handle<TunPacketBatch> handle) {
+        this.handle = handle;
+    }
+
+    /**
+     * Returns an empty pooled {@link TunPacketBatch}.
+     *
+     * @return empty pooled {@link TunPacketBatch}
+     */
+    public static TunPacketBatch newInstance() {
+        final TunPacketBatch batch = RECYCLER.get();
+        batch.setRefCnt(1);
+        return batch;
+    }
+
+    /**
+     * Appends {@code packet} to this batch. The batch takes over the ownership of {@code packet}.
+     *
+     * @param packet packet to append
+     * @return this batch
+     */
+    public TunPacketBatch add(final TunPacket packet) {
+        requireNonNull(packet);
+        if (size == packets.length) {
+            packets = Arrays.copyOf(packets, size << 1);
+        }
+        packets[size++] = packet;
+        return this;
+    }
+
+    /**
+     * Returns the packet at {@code index}.
+     *
+     * @param index index of the packet
+     * @return packet at {@code index}
+     * @throws IndexOutOfBoundsException if {@code index} is negative or not less than
+     *                                   {@link #size()}
+     */
+    public TunPacket get(final int index) {
+        if (index < 0 || index >= size) {
+            throw new IndexOutOfBoundsException("index: " + index + " (expected: 0 <= index < " + size + ")");
+        }
+        return packets[index];
+    }
+
+    /**
+     * Returns the number of packets in this batch.
+     *
+     * @return the number of packets in this batch
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Returns {@code true} if this batch contains no packets.
+     *
+     * @return {@code true} if this batch contains no packets
+     */
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    @Override
+    public Iterator<TunPacket> iterator() {
+        return new Iterator<>() {
+            private int index;
+
+            @Override
+            public boolean hasNext() {
+                return index < size;
+            }
+
+            @Override
+            public TunPacket next() {
+                if (index >= size) {
+                    throw new NoSuchElementException();
+                }
+                return packets[index++];
+            }
+        };
+    }
+
+    @Override
+    public TunPacketBatch retain() {
+        super.retain();
+        return this;
+    }
+
+    @Override
+    public TunPacketBatch retain(final int increment) {
+        super.retain(increment);
+        return this;
+    }
+
+    @Override
+    public TunPacketBatch touch() {
+        super.touch();
+        return this;
+    }
+
+    @Override
+    public TunPacketBatch touch(final Object hint) {
+        for (int i = 0; i < size; i++) {
+            packets[i].touch(hint);
+        }
+        return this;
+    }
+
+    @Override
+    protected void deallocate() {
+        try {
+            for (int i = 0; i < size; i++) {
+                packets[i].release();
+            }
+        }
+        finally {
+            Arrays.fill(packets, 0, size, null);
+            size = 0;
+            handle.recycle(this);
+        }
+    }
+
+    @Override
+    public String toString() {
+        return StringUtil.simpleClassName(this) + "(size: " + size + ')';
+    }
+}
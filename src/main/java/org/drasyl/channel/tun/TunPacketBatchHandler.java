@@ -0,0 +1,73 @@
+/*
+ * Copyright (c) 2021-2022 Heiko Bornholdt and Kevin Röbert
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ * IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM,
+ * DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR
+ * OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE
+ * OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package org.drasyl.channel.tun;
+
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelInboundHandlerAdapter;
+
+/**
+ * {@link io.netty.channel.ChannelInboundHandler} processing received {@link TunPacket}s a whole
+ * {@link TunPacketBatch} at a time. Individual {@link TunPacket}s (e.g. fired by a
+ * {@link TunChannel} without {@link TunChannelOption#TUN_READ_BATCH_SIZE}) are passed as a batch
+ * of one, so the same handler works with and without batching. All other messages are passed to
+ * the next handler.
+ * <p>
+ * Each batch is released after {@link #channelReadBatch(ChannelHandlerContext, TunPacketBatch)}
+ * returns. Packets to be passed on (e.g. via {@link ChannelHandlerContext#fireChannelRead(Object)}
+ * or {@link ChannelHandlerContext#write(Object)}) must therefore be {@link TunPacket#retain()
+ * retained} first.
+ */
+public abstract class TunPacketBatchHandler extends ChannelInboundHandlerAdapter {
+    @Override
+    public void channelRead(final ChannelHandlerContext ctx, final Object msg) throws Exception {
+        final TunPacketBatch batch;
+        if (msg instanceof TunPacketBatch) {
+            batch = (TunPacketBatch) msg;
+        }
+        else if (msg instanceof TunPacket) {
+            batch = TunPacketBatch.newInstance().add((TunPacket) msg);
+        }
+        else {
+            ctx.fireChannelRead(msg);
+            return;
+        }
+
+        try {
+            channelReadBatch(ctx, batch);
+        }
+        finally {
+            batch.release();
+        }
+    }
+
+    /**
+     * Is called for each {@link TunPacketBatch} received.
+     *
+     * @param ctx   the {@link ChannelHandlerContext} which this {@link TunPacketBatchHandler}
+     *              belongs to
+     * @param batch the received packets
+     * @throws Exception is thrown if an error occurred
+     */
+    @SuppressWarnings("java:S112")
+    protected abstract void channelReadBatch(ChannelHandlerContext ctx,
+                                             TunPacketBatch batch) throws Exception;
+}
@@ -0,0 +1,59 @@
+/*
+ * Copyright (c) 2021-2022 Heiko Bornholdt and Kevin Röbert
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ * IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM,
+ * DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR
+ * OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE
+ * OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package org.drasyl.channel.tun;
+
+import io.netty.channel.ChannelHandler.Sharable;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelInboundHandlerAdapter;
+
+/**
+ * Passes the packets of each received {@link TunPacketBatch} individually to the next handler, so
+ * that handlers processing one {@link TunPacket} at a time can be placed behind handlers processing
+ * whole batches. All other messages are passed on as is.
+ */
+@Sharable
+public final class TunPacketBatchUnroller extends ChannelInboundHandlerAdapter {
+    public static final TunPacketBatchUnroller INSTANCE = new TunPacketBatchUnroller();
+
+    private TunPacketBatchUnroller() {
+        // singleton
+    }
+
+    @Override
+    public void channelRead(final ChannelHandlerContext ctx, final Object msg) {
+        if (!(msg instanceof TunPacketBatch)) {
+            ctx.fireChannelRead(msg);
+            return;
+        }
+
+        final TunPacketBatch batch = (TunPacketBatch) msg;
+        try {
+            final int size = batch.size();
+            for (int i = 0; i < size; i++) {
+                ctx.fireChannelRead(batch.get(i).retain());
+            }
+        }
+        finally {
+            batch.release();
+        }
+    }
+}
@@ -0,0 +1,508 @@
+/*
+ * Copyright (c) 2021-2022 Heiko Bornholdt and Kevin Röbert
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ * IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM,
+ * DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR
+ * OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE
+ * OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package org.drasyl.channel.tun;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufAllocator;
+import io.netty.util.NetUtil;
+
+import java.net.Inet4Address;
+import java.net.Inet6Address;
+import java.net.InetAddress;
+
+import static java.util.Objects.requireNonNull;
+import static org.drasyl.channel.tun.InetProtocol.ICMP;
+import static org.drasyl.channel.tun.InetProtocol.UDP;
+import static org.drasyl.channel.tun.Tun4Packet.INET4_DESTINATION_ADDRESS;
+import static org.drasyl.channel.tun.Tun4Packet.INET4_FLAGS_AND_FRAGMENT_OFFSET;
+import static org.drasyl.channel.tun.Tun4Packet.INET4_HEADER_CHECKSUM;
+import static org.drasyl.channel.tun.Tun4Packet.INET4_HEADER_LENGTH;
+import static org.drasyl.channel.tun.Tun4Packet.INET4_IDENTIFICATION;
+import static org.drasyl.channel.tun.Tun4Packet.INET4_SOURCE_ADDRESS;
+import static org.drasyl.channel.tun.Tun4Packet.INET4_TIME_TO_LIVE;
+import static org.drasyl.channel.tun.Tun4Packet.INET4_TOTAL_LENGTH;
+import static org.drasyl.channel.tun.Tun4Packet.INET4_VERSION_AND_INTERNET_HEADER_LENGTH;
+import static org.drasyl.channel.tun.Tun6Packet.INET6_DESTINATION_ADDRESS;
+import static org.drasyl.channel.tun.Tun6Packet.INET6_HEADER_LENGTH;
+import static org.drasyl.channel.tun.Tun6Packet.INET6_HOP_LIMIT;
+import static org.drasyl.channel.tun.Tun6Packet.INET6_NEXT_HEADER;
+import static org.drasyl.channel.tun.Tun6Packet.INET6_PAYLOAD_LENGTH;
+import static org.drasyl.channel.tun.Tun6Packet.INET6_SOURCE_ADDRESS;
+import static org.drasyl.channel.tun.Tun6Packet.INET6_VERSION_AND_TRAFFIC_CLASS;
+
+/**
+ * Builds IPv4 or IPv6 packets around a {@link ByteBuf} payload without copying the payload.
+ * <p>
+ * If the payload has at least {@link #headerLength()} bytes of headroom (i.e. its reader index is
+ * at least {@link #headerLength()}), the IP header is written directly in front of the payload.
+ * Otherwise, the header is placed in a separate buffer that is combined with the payload into a
+ * two-component {@link io.netty.buffer.CompositeByteBuf}. Payload buffers with headroom can be
+ * obtained from {@link #payloadBuffer(ByteBufAllocator, int)}.
+ * <pre>
+ * TunPacketBuilder builder = TunPacketBuilder.ipv4()
+ *         .protocol(InetProtocol.UDP)
+ *         .sourceAddress(local)
+ *         .destinationAddress(remote)
+ *         .transportChecksum(true);
+ * ByteBuf payload = builder.payloadBuffer(ctx.alloc(), 8 + data.readableBytes());
+ * payload.writeShort(sourcePort).writeShort(destinationPort).writeShort(8 + data.readableBytes()).writeShort(0).writeBytes(data);
+ * ctx.write(builder.build(ctx.alloc(), payload));
+ * </pre>
+ * The builder does not reset its fields on {@link #build(ByteBufAllocator, ByteBuf)}, so it can be
+ * reused for any number of packets of the same flow. Builders are not thread-safe.
+ */
+@SuppressWarnings({ "java:S109", "UnusedReturnValue" })
+public final class TunPacketBuilder {
+    private static final int INET4_DONT_FRAGMENT = 0x4000;
+    private static final int MAX_LENGTH = 0xffff;
+    private final int version;
+    private int protocol = -1;
+    private int trafficClass;
+    private int hopLimit = 64;
+    private int identification;
+    private boolean dontFragment;
+    private int flowLabel;
+    private int sourceAddress4;
+    private int destinationAddress4;
+    private long sourceAddressHigh;
+    private long sourceAddressLow;
+    private long destinationAddressHigh;
+    private long destinationAddressLow;
+    private boolean transportChecksum;
+
+    private TunPacketBuilder(final int version) {
+        this.version = version;
+    }
+
+    /**
+     * Returns a new builder for IPv4 packets.
+     *
+     * @return new builder for IPv4 packets
+     */
+    public static TunPacketBuilder ipv4() {
+        return new TunPacketBuilder(4);
+    }
+
+    /**
+     * Returns a new builder for IPv6 packets.
+     *
+     * @return new builder for IPv6 packets
+     */
+    public static TunPacketBuilder ipv6() {
+        return new TunPacketBuilder(6);
+    }
+
+    /**
+     * Returns a new builder for replies to {@code packet}: IP version and transport protocol are
+     * taken from {@code packet}, and its source and destination addresses are swapped.
+     *
+     * @param packet packet to reply to
+     * @return new builder for replies to {@code packet}
+     */
+    public static TunPacketBuilder replyTo(final TunPacket packet) {
+        if (packet instanceof Tun4Packet) {
+            final Tun4Packet packet4 = (Tun4Packet) packet;
+            return ipv4()
+                    .protocol(packet4.protocol())
+                    .sourceAddress(packet4.destinationAddressAsInt())
+                    .destinationAddress(packet4.sourceAddressAsInt());
+        }
+        else if (packet instanceof Tun6Packet) {
+            final Tun6Packet packet6 = (Tun6Packet) packet;
+            return ipv6()
+                    .protocol(packet6.upperLayerProtocol())
+                    .sourceAddress(packet6.destinationAddressHigh(), packet6.destinationAddressLow())
+                    .destinationAddress(packet6.sourceAddressHigh(), packet6.sourceAddressLow());
+        }
+        else {
+            throw new IllegalArgumentException("Unknown packet type: " + packet.getClass().getName());
+        }
+    }
+
+    /**
+     * Returns the IP version of the built packets.
+     *
+     * @return the IP version of the built packets
+     */
+    public int version() {
+        return version;
+    }
+
+    /**
+     * Returns the length of the IP header and thus the headroom required to avoid a composite
+     * buffer.
+     *
+     * @return the length of the IP header
+     */
+    public int headerLength() {
+        return version == 4 ? INET4_HEADER_LENGTH : INET6_HEADER_LENGTH;
+    }
+
+    /**
+     * Sets the transport protocol (IPv4) or next header (IPv6).
+     *
+     * @param protocol the transport protocol
+     * @return this builder
+     */
+    public TunPacketBuilder protocol(final int protocol) {
+        this.protocol = protocol & 0xff;
+        return this;
+    }
+
+    /**
+     * Sets the transport protocol (IPv4) or next header (IPv6).
+     *
+     * @param protocol the transport protocol
+     * @return this builder
+     */
+    public TunPacketBuilder protocol(final InetProtocol protocol) {
+        return protocol(protocol.decimal);
+    }
+
+    /**
+     * Sets the differentiated services code point.
+     *
+     * @param dscp the differentiated services code point
+     * @return this builder
+     */
+    public TunPacketBuilder dscp(final int dscp) {
+        trafficClass = (dscp & 0x3f) << 2 | trafficClass & 0x03;
+        return this;
+    }
+
+    /**
+     * Sets the explicit congestion notification.
+     *
+     * @param ecn the explicit congestion notification
+     * @return this builder
+     */
+    public TunPacketBuilder ecn(final int ecn) {
+        trafficClass = trafficClass & 0xfc | ecn & 0x03;
+        return this;
+    }
+
+    /**
+     * Sets the time to live (IPv4) or hop limit (IPv6). Defaults to {@code 64}.
+     *
+     * @param hopLimit the time to live or hop limit
+     * @return this builder
+     */
+    public TunPacketBuilder hopLimit(final int hopLimit) {
+        this.hopLimit = hopLimit & 0xff;
+        return this;
+    }
+
+    /**
+     * Sets the identification of IPv4 packets.
+     *
+     * @param identification the identification
+     * @return this builder
+     */
+    public TunPacketBuilder identification(final int identification) {
+        this.identification = identification & 0xffff;
+        return this;
+    }
+
+    /**
+     * Sets the don't fragment flag of IPv4 packets.
+     *
+     * @param dontFragment the don't fragment flag
+     * @return this builder
+     */
+    public TunPacketBuilder dontFragment(final boolean dontFragment) {
+        this.dontFragment = dontFragment;
+        return this;
+    }
+
+    /**
+     * Sets the flow label of IPv6 packets.
+     *
+     * @param flowLabel the flow label
+     * @return this builder
+     */
+    public TunPacketBuilder flowLabel(final int flowLabel) {
+        this.flowLabel = flowLabel & 0xfffff;
+        return this;
+    }
+
+    /**
+     * Sets the source address of IPv4 packets.
+     *
+     * @param address the source address as {@code int} in network byte order
+     * @return this builder
+     */
+    public TunPacketBuilder sourceAddress(final int address) {
+        checkVersion(4);
+        sourceAddress4 = address;
+        return this;
+    }
+
+    /**
+     * Sets the source address of IPv6 packets.
+     *
+     * @param high the upper 64 bits of the source address
+     * @param low  the lower 64 bits of the source address
+     * @return this builder
+     */
+    public TunPacketBuilder sourceAddress(final long high, final long low) {
+        checkVersion(6);
+        sourceAddressHigh = high;
+        sourceAddressLow = low;
+        return this;
+    }
+
+    /**
+     * Sets the source address.
+     *
+     * @param address the source address
+     * @return this builder
+     * @throws IllegalArgumentException if the address does not match the IP version
+     */
+    public TunPacketBuilder sourceAddress(final InetAddress address) {
+        if (version == 4) {
+            return sourceAddress(NetUtil.ipv4AddressToInt(toInet4Address(address)));
+        }
+        else {
+            final byte[] bytes = toInet6Address(address).getAddress();
+            return sourceAddress(toLong(bytes, 0), toLong(bytes, 8));
+        }
+    }
+
+    /**
+     * Sets the destination address of IPv4 packets.
+     *
+     * @param address the destination address as {@code int} in network byte order
+     * @return this builder
+     */
+    public TunPacketBuilder destinationAddress(final int address) {
+        checkVersion(4);
+        destinationAddress4 = address;
+        return this;
+    }
+
+    /**
+     * Sets the destination address of IPv6 packets.
+     *
+     * @param high the upper 64 bits of the destination address
+     * @param low  the lower 64 bits of the destination address
+     * @return this builder
+     */
+    public TunPacketBuilder destinationAddress(final long high, final long low) {
+        checkVersion(6);
+        destinationAddressHigh = high;
+        destinationAddressLow = low;
+        return this;
+    }
+
+    /**
+     * Sets the destination address.
+     *
+     * @param address the destination address
+     * @return this builder
+     * @throws IllegalArgumentException if the address does not match the IP version
+     */
+    public TunPacketBuilder destinationAddress(final InetAddress address) {
+        if (version == 4) {
+            return destinationAddress(NetUtil.ipv4AddressToInt(toInet4Address(address)));
+        }
+        else {
+            final byte[] bytes = toInet6Address(address).getAddress();
+            return destinationAddress(toLong(bytes, 0), toLong(bytes, 8));
+        }
+    }
+
+    /**
+     * If enabled, the payload is expected to start with a TCP, UDP, ICMP, or ICMPv6 header whose
+     * checksum is calculated by {@link #build(ByteBufAllocator, ByteBuf)}. Disabled by default.
+     *
+     * @param transportChecksum {@code true} to calculate the transport layer checksum
+     * @return this builder
+     */
+    public TunPacketBuilder transportChecksum(final boolean transportChecksum) {
+        this.transportChecksum = transportChecksum;
+        return this;
+    }
+
+    /**
+     * Allocates a buffer for a payload of {@code capacity} bytes with enough headroom for the IP
+     * header. Write the payload to the returned buffer and pass it to
+     * {@link #build(ByteBufAllocator, ByteBuf)}.
+     *
+     * @param alloc    allocator to use
+     * @param capacity capacity of the payload
+     * @return buffer with reserved headroom
+     */
+    public ByteBuf payloadBuffer(final ByteBufAllocator alloc, final int capacity) {
+        final int headerLength = headerLength();
+        final ByteBuf buf = alloc.buffer(headerLength + capacity);
+        buf.setIndex(headerLength, headerLength);
+        return buf;
+    }
+
+    /**
+     * Builds a packet carrying the readable bytes of {@code payload}. The header is written into
+     * the headroom of {@code payload} if it has enough headroom. Otherwise, header and payload are
+     * combined in a composite buffer. In neither case is the payload copied.
+     * <p>
+     * This method takes ownership of {@code payload}: it is released together with the returned
+     * packet or, if this method throws, immediately.
+     *
+     * @param alloc   allocator used for the header, if {@code payload} lacks headroom
+     * @param payload payload of the packet
+     * @return pooled packet
+     * @throws IllegalStateException    if no protocol has been set
+     * @throws IllegalArgumentException if the payload is too long, or too short or read-only while
+     *                                  its transport layer checksum should be calculated
+     */
+    public TunPacket build(final ByteBufAllocator alloc, final ByteBuf payload) {
+        final int headerLength = headerLength();
+        final int payloadLength = payload.readableBytes();
+        final int checksumOffset = transportChecksum ? InetChecksum.checksumOffset(version, protocol) : -1;
+        try {
+            if (protocol == -1) {
+                throw new IllegalStateException("No protocol set.");
+            }
+            if ((version == 4 ? headerLength : 0) + payloadLength > MAX_LENGTH) {
+                throw new IllegalArgumentException("Payload too long: " + payloadLength);
+            }
+            if (checksumOffset != -1 && checksumOffset + 2 > payloadLength) {
+                throw new IllegalArgumentException("Payload too short to carry a transport layer header: " + payloadLength);
+            }
+            if (checksumOffset != -1 && payload.isReadOnly()) {
+                throw new IllegalArgumentException("Payload must be writable to calculate the transport layer checksum.");
+            }
+        }
+        catch (final RuntimeException e) {
+            payload.release();
+            throw e;
+        }
+
+        if (checksumOffset != -1) {
+            writeTransportChecksum(payload, checksumOffset);
+        }
+
+        final ByteBuf content;
+        final int readerIndex = payload.readerIndex();
+        if (readerIndex >= headerLength && !payload.isReadOnly()) {
+            // write header into headroom
+            final int start = readerIndex - headerLength;
+            writeHeader(payload, start, payloadLength);
+            if (start == 0) {
+                content = payload.readerIndex(0);
+            }
+            else {
+                // packets are indexed from zero
+                content = payload.retainedSlice(start, headerLength + payloadLength);
+                payload.release();
+            }
+        }
+        else {
+            final ByteBuf header = alloc.buffer(headerLength, headerLength);
+            writeHeader(header, 0, payloadLength);
+            header.writerIndex(headerLength);
+            content = alloc.compositeBuffer(2).addComponents(true, header, payload);
+        }
+        return TunPacket.newInstance(content);
+    }
+
+    private void writeHeader(final ByteBuf buf, final int index, final int payloadLength) {
+        if (version == 4) {
+            buf.setShort(index + INET4_VERSION_AND_INTERNET_HEADER_LENGTH, 0x45 << 8 | trafficClass);
+            buf.setShort(index + INET4_TOTAL_LENGTH, INET4_HEADER_LENGTH + payloadLength);
+            buf.setShort(index + INET4_IDENTIFICATION, identification);
+            buf.setShort(index + INET4_FLAGS_AND_FRAGMENT_OFFSET, dontFragment ? INET4_DONT_FRAGMENT : 0);
+            buf.setShort(index + INET4_TIME_TO_LIVE, hopLimit << 8 | protocol);
+            buf.setShort(index + INET4_HEADER_CHECKSUM, 0);
+            buf.setInt(index + INET4_SOURCE_ADDRESS, sourceAddress4);
+            buf.setInt(index + INET4_DESTINATION_ADDRESS, destinationAddress4);
+            buf.setShort(index + INET4_HEADER_CHECKSUM, InetChecksum.ipv4HeaderChecksum(buf, index));
+        }
+        else {
+            buf.setInt(index + INET6_VERSION_AND_TRAFFIC_CLASS, 6 << 28 | trafficClass << 20 | flowLabel);
+            buf.setShort(index + INET6_PAYLOAD_LENGTH, payloadLength);
+            buf.setByte(index + INET6_NEXT_HEADER, protocol);
+            buf.setByte(index + INET6_HOP_LIMIT, hopLimit);
+            buf.setLong(index + INET6_SOURCE_ADDRESS, sourceAddressHigh);
+            buf.setLong(index + INET6_SOURCE_ADDRESS + 8, sourceAddressLow);
+            buf.setLong(index + INET6_DESTINATION_ADDRESS, destinationAddressHigh);
+            buf.setLong(index + INET6_DESTINATION_ADDRESS + 8, destinationAddressLow);
+        }
+    }
+
+    private void writeTransportChecksum(final ByteBuf payload, final int checksumOffset) {
+        final int index = payload.readerIndex();
+        final int length = payload.readableBytes();
+        payload.setShort(index + checksumOffset, 0);
+        long sum = InetChecksum.sum(payload, index, length, 0);
+        if (version == 4) {
+            if (protocol != ICMP.decimal) {
+                sum += (sourceAddress4 >>> 16) + (sourceAddress4 & 0xffff) + (destinationAddress4 >>> 16) + (destinationAddress4 & 0xffff) + protocol + length;
+            }
+        }
+        else {
+            sum += sumWords(sourceAddressHigh) + sumWords(sourceAddressLow) + sumWords(destinationAddressHigh) + sumWords(destinationAddressLow) + protocol + length;
+        }
+        int checksum = ~InetChecksum.fold(sum) & 0xffff;
+        if (checksum == 0 && protocol == UDP.decimal) {
+            // zero is reserved for "no checksum" in udp
+            checksum = 0xffff;
+        }
+        payload.setShort(index + checksumOffset, checksum);
+    }
+
+    private static long sumWords(final long value) {
+        return (value >>> 32) + (value & 0xffffffffL);
+    }
+
+    private void checkVersion(final int expected) {
+        if (version != expected) {
+            throw new IllegalArgumentException("Not an IPv" + expected + " builder.");
+        }
+    }
+
+    private static Inet4Address toInet4Address(final InetAddress address) {
+        if (!(requireNonNull(address) instanceof Inet4Address)) {
+            throw new IllegalArgumentException("Not an IPv4 address: " + address);
+        }
+        return (Inet4Address) address;
+    }
+
+    private static Inet6Address toInet6Address(final InetAddress address) {
+        if (!(requireNonNull(address) instanceof Inet6Address)) {
+            throw new IllegalArgumentException("Not an IPv6 address: " + address);
+        }
+        return (Inet6Address) address;
+    }
+
+    private static long toLong(final byte[] bytes, final int offset) {
+        long value = 0;
+        for (int i = offset; i < offset + 8; i++) {
+            value = value << 8 | bytes[i] & 0xff;
+        }
+        return value;
+    }
+
+    @Override
+    public String toString() {
+        return "TunPacketBuilder[version=" + version + ", protocol=" + protocol + ", hopLimit=" + hopLimit + ']';
+    }
+}
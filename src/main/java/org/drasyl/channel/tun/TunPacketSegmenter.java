@@ -0,0 +1,191 @@
+/*
+ * Copyright (c) 2021-2022 Heiko Bornholdt and Kevin Röbert
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ * IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM,
+ * DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR
+ * OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE
+ * OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package org.drasyl.channel.tun;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufAllocator;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.drasyl.channel.tun.InetChecksum.fold;
+import static org.drasyl.channel.tun.InetChecksum.ipv4HeaderChecksum;
+import static org.drasyl.channel.tun.InetChecksum.pseudoHeaderSum;
+import static org.drasyl.channel.tun.InetChecksum.sum;
+import static org.drasyl.channel.tun.InetProtocol.TCP;
+import static org.drasyl.channel.tun.TcpView.TCP_CHECKSUM;
+import static org.drasyl.channel.tun.TcpView.TCP_DATA_OFFSET;
+import static org.drasyl.channel.tun.TcpView.TCP_FLAGS;
+import static org.drasyl.channel.tun.TcpView.TCP_FLAG_CWR;
+import static org.drasyl.channel.tun.TcpView.TCP_FLAG_FIN;
+import static org.drasyl.channel.tun.TcpView.TCP_FLAG_PSH;
+import static org.drasyl.channel.tun.TcpView.TCP_SEQUENCE_NUMBER;
+import static org.drasyl.channel.tun.Tun4Packet.INET4_HEADER_CHECKSUM;
+import static org.drasyl.channel.tun.Tun4Packet.INET4_IDENTIFICATION;
+import static org.drasyl.channel.tun.Tun4Packet.INET4_TOTAL_LENGTH;
+import static org.drasyl.channel.tun.Tun6Packet.INET6_HEADER_LENGTH;
+import static org.drasyl.channel.tun.Tun6Packet.INET6_PAYLOAD_LENGTH;
+import static org.drasyl.channel.tun.UdpView.UDP_CHECKSUM;
+import static org.drasyl.channel.tun.VirtioNetHeader.VIRTIO_NET_HDR_GSO_ECN;
+import static org.drasyl.channel.tun.VirtioNetHeader.VIRTIO_NET_HDR_GSO_NONE;
+import static org.drasyl.channel.tun.VirtioNetHeader.VIRTIO_NET_HDR_GSO_TCPV4;
+import static org.drasyl.channel.tun.VirtioNetHeader.VIRTIO_NET_HDR_GSO_TCPV6;
+
+/**
+ * Converts packets read from a tun device operating in offload mode (see
+ * {@link TunChannelOption#TUN_OFFLOAD}) into regular packets: GSO super-packets are split into
+ * segments of {@link VirtioNetHeader#gsoSize()} bytes payload each and pending transport layer
+ * checksums are calculated.
+ * <p>
+ * This is only required for consumers that need actual MTU-sized packets (e.g. when forwarding the
+ * packets to a peer). Packets written back into an offloading tun device can be kept as they are.
+ */
+public final class TunPacketSegmenter {
+    private TunPacketSegmenter() {
+        // util class
+    }
+
+    /**
+     * Segments {@code packet} into regular packets.
+     * <p>
+     * If {@code packet} is not a GSO super-packet, a list only containing {@code packet} (with
+     * increased reference count) is returned. In this case, a pending transport layer checksum is
+     * calculated in place and a packet sharing the content of {@code packet} but without offload
+     * information is returned instead, so that the checksum is not calculated again.
+     * <p>
+     * {@code packet} is not released by this method.
+     *
+     * @param alloc  allocator used to create the segments
+     * @param packet packet to segment
+     * @return list of regular packets
+     * @throws IllegalArgumentException if {@code packet} uses an unsupported GSO type
+     */
+    @SuppressWarnings("java:S109")
+    public static List<TunPacket> segment(final ByteBufAllocator alloc, final TunPacket packet) {
+        final VirtioNetHeader header = packet.virtioNetHeader();
+        final int gsoType = header.gsoType() & ~VIRTIO_NET_HDR_GSO_ECN;
+
+        if (gsoType == VIRTIO_NET_HDR_GSO_NONE) {
+            final List<TunPacket> segments = new ArrayList<>(1);
+            if (header.needsChecksum()) {
+                completeChecksum(packet.content(), header.csumStart(), header.csumOffset());
+                // the checksum is final now and must not be completed again
+                segments.add(packet.retainedWithVirtioNetHeader(VirtioNetHeader.NONE));
+            }
+            else {
+                segments.add(packet.retain());
+            }
+            return segments;
+        }
+        else if (gsoType == VIRTIO_NET_HDR_GSO_TCPV4 || gsoType == VIRTIO_NET_HDR_GSO_TCPV6) {
+            return segmentTcp(alloc, packet, header, gsoType == VIRTIO_NET_HDR_GSO_TCPV4);
+        }
+        else {
+            throw new IllegalArgumentException("Unsupported GSO type: " + header.gsoType());
+        }
+    }
+
+    @SuppressWarnings("java:S109")
+    private static List<TunPacket> segmentTcp(final ByteBufAllocator alloc,
+                                              final TunPacket packet,
+                                              final VirtioNetHeader header,
+                                              final boolean ipv4) {
+        final ByteBuf buf = packet.content();
+        final int base = buf.readerIndex();
+
+        // locate tcp header
+        final int ipHeaderLength;
+        if (ipv4) {
+            ipHeaderLength = (buf.getUnsignedByte(base) & 0x0f) * 4;
+        }
+        else {
+            ipHeaderLength = INET6_HEADER_LENGTH;
+        }
+        final int l4Offset = header.needsChecksum() ? header.csumStart() : ipHeaderLength;
+        final int tcpHeaderLength = (buf.getUnsignedByte(base + l4Offset + TCP_DATA_OFFSET) >> 4) * 4;
+        final int headerLength = l4Offset + tcpHeaderLength;
+        final int payloadLength = buf.readableBytes() - headerLength;
+        final int mss = header.gsoSize();
+        if (mss == 0) {
+            throw new IllegalArgumentException("GSO packet with gso_size of 0.");
+        }
+
+        final int identification = ipv4 ? buf.getUnsignedShort(base + INET4_IDENTIFICATION) : 0;
+        final long sequenceNumber = buf.getUnsignedInt(base + l4Offset + TCP_SEQUENCE_NUMBER);
+        final int tcpFlags = buf.getUnsignedByte(base + l4Offset + TCP_FLAGS);
+
+        final List<TunPacket> segments = new ArrayList<>((payloadLength + mss - 1) / mss);
+        for (int offset = 0; offset < payloadLength; offset += mss) {
+            final int length = Math.min(mss, payloadLength - offset);
+            final boolean first = offset == 0;
+            final boolean last = offset + length == payloadLength;
+
+            final ByteBuf segment = alloc.buffer(headerLength + length);
+            segment.writeBytes(buf, base, headerLength);
+            segment.writeBytes(buf, base + headerLength + offset, length);
+
+            // ip header
+            if (ipv4) {
+                segment.setShort(INET4_TOTAL_LENGTH, headerLength + length);
+                segment.setShort(INET4_IDENTIFICATION, identification + segments.size());
+                segment.setShort(INET4_HEADER_CHECKSUM, ipv4HeaderChecksum(segment, 0));
+            }
+            else {
+                segment.setShort(INET6_PAYLOAD_LENGTH, headerLength + length - INET6_HEADER_LENGTH);
+            }
+
+            // tcp header
+            int flags = tcpFlags;
+            if (!first) {
+                flags &= ~TCP_FLAG_CWR;
+            }
+            if (!last) {
+                flags &= ~(TCP_FLAG_FIN | TCP_FLAG_PSH);
+            }
+            segment.setInt(l4Offset + TCP_SEQUENCE_NUMBER, (int) (sequenceNumber + offset));
+            segment.setByte(l4Offset + TCP_FLAGS, flags);
+            segment.setShort(l4Offset + TCP_CHECKSUM, 0);
+            final long pseudoHeaderSum = pseudoHeaderSum(segment, 0, ipv4 ? 4 : 6, TCP.decimal, tcpHeaderLength + length);
+            segment.setShort(l4Offset + TCP_CHECKSUM, ~fold(sum(segment, l4Offset, tcpHeaderLength + length, pseudoHeaderSum)));
+
+            segments.add(ipv4 ? Tun4Packet.newInstance(segment) : Tun6Packet.newInstance(segment));
+        }
+
+        return segments;
+    }
+
+    /**
+     * Calculates the checksum from {@code csumStart} to the end of {@code buf} and places it at
+     * {@code csumStart + csumOffset}. The checksum field is expected to already contain the
+     * (non-complemented) pseudo header sum.
+     */
+    @SuppressWarnings("java:S109")
+    static void completeChecksum(final ByteBuf buf, final int csumStart, final int csumOffset) {
+        final int base = buf.readerIndex();
+        int checksum = ~fold(sum(buf, base + csumStart, buf.readableBytes() - csumStart, 0)) & 0xffff;
+        if (checksum == 0 && csumOffset == UDP_CHECKSUM) {
+            // zero is reserved for "no checksum" in udp
+            checksum = 0xffff;
+        }
+        buf.setShort(base + csumStart + csumOffset, checksum);
+    }
+}
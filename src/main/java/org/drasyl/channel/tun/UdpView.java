@@ -0,0 +1,109 @@
+/*
+ * Copyright (c) 2021-2022 Heiko Bornholdt and Kevin Röbert
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ * IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM,
+ * DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR
+ * OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE
+ * OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package org.drasyl.channel.tun;
+
+import static org.drasyl.channel.tun.InetProtocol.UDP;
+
+/**
+ * Reusable, zero-copy view of the UDP header of a {@link TunPacket}.
+ *
+ * @see TransportHeaderView
+ */
+public final class UdpView extends TransportHeaderView {
+    public static final int UDP_HEADER_LENGTH = 8;
+    // https://datatracker.ietf.org/doc/html/rfc768
+    public static final int UDP_SOURCE_PORT = 0;
+    public static final int UDP_DESTINATION_PORT = 2;
+    public static final int UDP_LENGTH = 4;
+    public static final int UDP_CHECKSUM = 6;
+
+    @Override
+    public UdpView wrap(final TunPacket packet) {
+        super.wrap(packet);
+        return this;
+    }
+
+    @Override
+    boolean accepts(final int version, final int protocol) {
+        return protocol == UDP.decimal;
+    }
+
+    @Override
+    int minHeaderLength() {
+        return UDP_HEADER_LENGTH;
+    }
+
+    @Override
+    int checksumOffset() {
+        return UDP_CHECKSUM;
+    }
+
+    @Override
+    int protocol() {
+        return UDP.decimal;
+    }
+
+    @Override
+    public int headerLength() {
+        return UDP_HEADER_LENGTH;
+    }
+
+    public int sourcePort() {
+        return buf.getUnsignedShort(offset + UDP_SOURCE_PORT);
+    }
+
+    /**
+     * Sets the source port and updates the checksum incrementally.
+     *
+     * @param port the new source port
+     */
+    public void setSourcePort(final int port) {
+        setShortField(UDP_SOURCE_PORT, port);
+    }
+
+    public int destinationPort() {
+        return buf.getUnsignedShort(offset + UDP_DESTINATION_PORT);
+    }
+
+    /**
+     * Sets the destination port and updates the checksum incrementally.
+     *
+     * @param port the new destination port
+     */
+    public void setDestinationPort(final int port) {
+        setShortField(UDP_DESTINATION_PORT, port);
+    }
+
+    /**
+     * Returns the length field, which covers header and payload.
+     *
+     * @return the length field
+     */
+    public int udpLength() {
+        return buf.getUnsignedShort(offset + UDP_LENGTH);
+    }
+
+    @Override
+    public String toString() {
+        return "UdpView[srcPort=" + sourcePort() + ", dstPort=" + destinationPort() + ", len=" + udpLength() + ']';
+    }
+}
@@ -0,0 +1,230 @@
+/*
+ * Copyright (c) 2021-2022 Heiko Bornholdt and Kevin Röbert
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ * IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM,
+ * DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR
+ * OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE
+ * OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package org.drasyl.channel.tun;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.util.internal.StringUtil;
+
+import java.nio.ByteOrder;
+import java.util.Objects;
+
+/**
+ * Offload information prepended by the kernel to each packet read from/written to a tun device
+ * operating in offload mode (see {@link TunChannelOption#TUN_OFFLOAD}).
+ * <p>
+ * The header tells whether the packet is a GSO super-packet that must be segmented into multiple
+ * packets of {@link #gsoSize()} bytes payload each, and whether the transport layer checksum still
+ * has to be calculated.
+ *
+ * @see <a href="https://github.com/torvalds/linux/blob/master/include/uapi/linux/virtio_net.h">virtio_net.h</a>
+ * @see TunPacketSegmenter
+ */
+public final class VirtioNetHeader {
+    // https://github.com/torvalds/linux/blob/master/include/uapi/linux/virtio_net.h
+    public static final int VIRTIO_NET_HDR_LENGTH = 10;
+    public static final int VIRTIO_NET_HDR_FLAGS = 0;
+    public static final int VIRTIO_NET_HDR_GSO_TYPE = 1;
+    public static final int VIRTIO_NET_HDR_HDR_LEN = 2;
+    public static final int VIRTIO_NET_HDR_GSO_SIZE = 4;
+    public static final int VIRTIO_NET_HDR_CSUM_START = 6;
+    public static final int VIRTIO_NET_HDR_CSUM_OFFSET = 8;
+    // use csum_start, csum_offset
+    public static final int VIRTIO_NET_HDR_F_NEEDS_CSUM = 1;
+    // csum is valid
+    public static final int VIRTIO_NET_HDR_F_DATA_VALID = 2;
+    // not a GSO frame
+    public static final int VIRTIO_NET_HDR_GSO_NONE = 0;
+    // GSO frame, IPv4 TCP (TSO)
+    public static final int VIRTIO_NET_HDR_GSO_TCPV4 = 1;
+    // GSO frame, IPv4 UDP (UFO)
+    public static final int VIRTIO_NET_HDR_GSO_UDP = 3;
+    // GSO frame, IPv6 TCP
+    public static final int VIRTIO_NET_HDR_GSO_TCPV6 = 4;
+    // TCP has ECN set
+    public static final int VIRTIO_NET_HDR_GSO_ECN = 0x80;
+    /**
+     * Header describing a regular packet with complete checksums.
+     */
+    public static final VirtioNetHeader NONE = new VirtioNetHeader(0, VIRTIO_NET_HDR_GSO_NONE, 0, 0, 0, 0);
+    // the kernel uses the host's byte order for the header fields
+    private static final boolean LITTLE_ENDIAN = ByteOrder.nativeOrder() == ByteOrder.LITTLE_ENDIAN;
+    private final int flags;
+    private final int gsoType;
+    private final int hdrLen;
+    private final int gsoSize;
+    private final int csumStart;
+    private final int csumOffset;
+
+    @SuppressWarnings("java:S107")
+    public VirtioNetHeader(final int flags,
+                           final int gsoType,
+                           final int hdrLen,
+                           final int gsoSize,
+                           final int csumStart,
+                           final int csumOffset) {
+        this.flags = flags & 0xff;
+        this.gsoType = gsoType & 0xff;
+        this.hdrLen = hdrLen & 0xffff;
+        this.gsoSize = gsoSize & 0xffff;
+        this.csumStart = csumStart & 0xffff;
+        this.csumOffset = csumOffset & 0xffff;
+    }
+
+    /**
+     * Parses the header located at {@code index} of {@code buf}.
+     *
+     * @param buf   buffer to read from
+     * @param index position of the header within {@code buf}
+     * @return the parsed header
+     */
+    public static VirtioNetHeader decode(final ByteBuf buf, final int index) {
+        final int flags = buf.getUnsignedByte(index + VIRTIO_NET_HDR_FLAGS);
+        final int gsoType = buf.getUnsignedByte(index + VIRTIO_NET_HDR_GSO_TYPE);
+        if (flags == 0 && gsoType == VIRTIO_NET_HDR_GSO_NONE) {
+            return NONE;
+        }
+        return new VirtioNetHeader(
+                flags,
+                gsoType,
+                getUnsignedShort(buf, index + VIRTIO_NET_HDR_HDR_LEN),
+                getUnsignedShort(buf, index + VIRTIO_NET_HDR_GSO_SIZE),
+                getUnsignedShort(buf, index + VIRTIO_NET_HDR_CSUM_START),
+                getUnsignedShort(buf, index + VIRTIO_NET_HDR_CSUM_OFFSET)
+        );
+    }
+
+    /**
+     * Writes this header at {@code index} of {@code buf}.
+     *
+     * @param buf   buffer to write to
+     * @param index position of the header within {@code buf}
+     * @return {@code buf}
+     */
+    public ByteBuf encode(final ByteBuf buf, final int index) {
+        buf.setByte(index + VIRTIO_NET_HDR_FLAGS, flags);
+        buf.setByte(index + VIRTIO_NET_HDR_GSO_TYPE, gsoType);
+        setShort(buf, index + VIRTIO_NET_HDR_HDR_LEN, hdrLen);
+        setShort(buf, index + VIRTIO_NET_HDR_GSO_SIZE, gsoSize);
+        setShort(buf, index + VIRTIO_NET_HDR_CSUM_START, csumStart);
+        setShort(buf, index + VIRTIO_NET_HDR_CSUM_OFFSET, csumOffset);
+        return buf;
+    }
+
+    private static int getUnsignedShort(final ByteBuf buf, final int index) {
+        return LITTLE_ENDIAN ? buf.getUnsignedShortLE(index) : buf.getUnsignedShort(index);
+    }
+
+    private static void setShort(final ByteBuf buf, final int index, final int value) {
+        if (LITTLE_ENDIAN) {
+            buf.setShortLE(index, value);
+        }
+        else {
+            buf.setShort(index, value);
+        }
+    }
+
+    public int flags() {
+        return flags;
+    }
+
+    public int gsoType() {
+        return gsoType;
+    }
+
+    /**
+     * Returns the length of the headers (IP and transport) that must be copied to each segment.
+     */
+    public int hdrLen() {
+        return hdrLen;
+    }
+
+    /**
+     * Returns the maximum payload size of each segment.
+     */
+    public int gsoSize() {
+        return gsoSize;
+    }
+
+    /**
+     * Returns the position (relative to the start of the IP header) from which on the checksum has
+     * to be calculated.
+     */
+    public int csumStart() {
+        return csumStart;
+    }
+
+    /**
+     * Returns the position (relative to {@link #csumStart()}) where the checksum has to be placed.
+     */
+    public int csumOffset() {
+        return csumOffset;
+    }
+
+    /**
+     * Returns {@code true} if the transport layer checksum has not been calculated yet.
+     */
+    public boolean needsChecksum() {
+        return (flags & VIRTIO_NET_HDR_F_NEEDS_CSUM) != 0;
+    }
+
+    /**
+     * Returns {@code true} if the packet is a GSO super-packet.
+     */
+    public boolean isGso() {
+        return (gsoType & ~VIRTIO_NET_HDR_GSO_ECN) != VIRTIO_NET_HDR_GSO_NONE;
+    }
+
+    @Override
+    public boolean equals(final Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (o == null || getClass() != o.getClass()) {
+            return false;
+        }
+        final VirtioNetHeader that = (VirtioNetHeader) o;
+        return flags == that.flags &&
+                gsoType == that.gsoType &&
+                hdrLen == that.hdrLen &&
+                gsoSize == that.gsoSize &&
+                csumStart == that.csumStart &&
+                csumOffset == that.csumOffset;
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(flags, gsoType, hdrLen, gsoSize, csumStart, csumOffset);
+    }
+
+    @Override
+    public String toString() {
+        return new StringBuilder(StringUtil.simpleClassName(this))
+                .append('[')
+                .append("flags=").append(flags)
+                .append(", gsoType=").append(gsoType)
+                .append(", hdrLen=").append(hdrLen)
+                .append(", gsoSize=").append(gsoSize)
+                .append(", csumStart=").append(csumStart)
+                .append(", csumOffset=").append(csumOffset)
+                .append(']').toString();
+    }
+}
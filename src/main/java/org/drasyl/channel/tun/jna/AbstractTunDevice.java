@@ -21,13 +21,19 @@
  */
 package org.drasyl.channel.tun.jna;
 
+import io.netty.buffer.ByteBuf;
+import org.drasyl.channel.tun.ReceiveCopyPolicy;
 import org.drasyl.channel.tun.TunAddress;
+import org.drasyl.channel.tun.TunPacket;
 
 import static java.util.Objects.requireNonNull;
 
 public abstract class AbstractTunDevice implements TunDevice {
     protected final TunAddress localAddress;
-    protected boolean closed;
+    protected volatile boolean closed;
+    protected ReceiveCopyPolicy receiveCopyPolicy = ReceiveCopyPolicy.NEVER;
+    protected int receiveHeadroom;
+    protected int receiveTailroom;
 
     protected AbstractTunDevice(TunAddress localAddress) {
         this.localAddress = requireNonNull(localAddress);
@@ -42,4 +48,55 @@ public abstract class AbstractTunDevice implements TunDevice {
     public boolean isClosed() {
         return closed;
     }
+
+    /**
+     * Sets whether received packets are copied into a buffer of their actual size. Must be called
+     * before the first read.
+     *
+     * @param receiveCopyPolicy policy to apply to received packets
+     */
+    public void setReceiveCopyPolicy(final ReceiveCopyPolicy receiveCopyPolicy) {
+        this.receiveCopyPolicy = requireNonNull(receiveCopyPolicy);
+    }
+
+    /**
+     * Sets the number of bytes reserved in front of and behind each received packet (see
+     * {@link TunPacket#encapsulationBuffer()}). If any room is reserved, received packets are never
+     * copied, regardless of the {@link #setReceiveCopyPolicy(ReceiveCopyPolicy) copy policy}. Must
+     * be called before the first read.
+     *
+     * @param headroom number of bytes reserved in front of each packet
+     * @param tailroom number of bytes reserved behind each packet
+     * @throws IllegalArgumentException if {@code headroom} or {@code tailroom} is negative
+     */
+    public void setReceiveRoom(final int headroom, final int tailroom) {
+        if (headroom < 0 || tailroom < 0) {
+            throw new IllegalArgumentException("headroom and tailroom must be non-negative.");
+        }
+        this.receiveHeadroom = headroom;
+        this.receiveTailroom = tailroom;
+    }
+
+    /**
+     * Returns {@code true} if room is reserved around received packets.
+     */
+    protected boolean hasReceiveRoom() {
+        return receiveHeadroom != 0 || receiveTailroom != 0;
+    }
+
+    /**
+     * Records the reserved room of {@code packet}, if any. {@code packet} must have been read
+     * {@code offset} bytes behind the headroom reserved at {@code frameOffset} of {@code frame}.
+     *
+     * @return {@code packet}
+     */
+    protected TunPacket reserveReceiveRoom(final TunPacket packet,
+                                           final ByteBuf frame,
+                                           final int frameOffset,
+                                           final int offset) {
+        if (hasReceiveRoom()) {
+            packet.reserve(frame, frameOffset, receiveHeadroom + offset, receiveTailroom);
+        }
+        return packet;
+    }
 }
@@ -0,0 +1,58 @@
+/*
+ * Copyright (c) 2021-2022 Heiko Bornholdt and Kevin Röbert
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ * IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM,
+ * DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR
+ * OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE
+ * OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package org.drasyl.channel.tun.jna;
+
+import java.io.IOException;
+
+/**
+ * Signals that {@link TunDevice#writePackets(io.netty.buffer.ByteBufAllocator,
+ * org.drasyl.channel.tun.TunPacket[], int)} has failed after the first {@link #written()}
+ * {@link org.drasyl.channel.tun.TunPacket}s of the burst have been written. The remaining
+ * {@link org.drasyl.channel.tun.TunPacket}s have not been written.
+ */
+public class PartialWriteException extends IOException {
+    private static final long serialVersionUID = -4310217893364527816L;
+    private final int written;
+
+    /**
+     * @param written number of {@link org.drasyl.channel.tun.TunPacket}s written before the
+     *                failure
+     * @param cause   reason why the remaining {@link org.drasyl.channel.tun.TunPacket}s have not
+     *                been written
+     */
+    public PartialWriteException(final int written, final Throwable cause) {
+        super("Write failed after " + written + " packet(s): " + cause.getMessage(), cause);
+        if (written < 0) {
+            throw new IllegalArgumentException("written must be non-negative.");
+        }
+        this.written = written;
+    }
+
+    /**
+     * Returns the number of {@link org.drasyl.channel.tun.TunPacket}s written before the failure.
+     *
+     * @return number of {@link org.drasyl.channel.tun.TunPacket}s written before the failure
+     */
+    public int written() {
+        return written;
+    }
+}
@@ -0,0 +1,113 @@
+/*
+ * Copyright (c) 2021-2022 Heiko Bornholdt and Kevin Röbert
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ * IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM,
+ * DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR
+ * OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE
+ * OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package org.drasyl.channel.tun.jna;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufAllocator;
+
+/**
+ * Receives consecutive packets into a large direct buffer (slab) and hands out each packet as a
+ * reference-counted slice of it. This avoids a buffer allocation per packet and any shrinking of
+ * oversized receive buffers. A slab is freed once it is full and all of its packets have been
+ * released.
+ * <p>
+ * Usage: obtain the slab of the next read via {@link #next(ByteBufAllocator, int)}, read into it
+ * starting at its writer index and then call {@link #commit(int)} with the number of bytes read.
+ * To reserve room around each packet, request {@code headroom + capacity + tailroom} bytes, read
+ * {@code headroom} bytes behind the writer index and call {@link #commit(int, int, int)} instead.
+ * <p>
+ * This class is not thread-safe.
+ */
+public final class ReceiveSlab {
+    // packets start at 8-byte aligned addresses
+    private static final int ALIGNMENT = 8;
+    private final int slabSize;
+    private ByteBuf slab;
+
+    /**
+     * @param slabSize size of each slab in bytes
+     * @throws IllegalArgumentException if {@code slabSize} is not positive
+     */
+    public ReceiveSlab(final int slabSize) {
+        if (slabSize < 1) {
+            throw new IllegalArgumentException("slabSize must be positive.");
+        }
+        this.slabSize = slabSize;
+    }
+
+    /**
+     * Returns the slab the next packet of up to {@code capacity} bytes should be read into,
+     * starting at its writer index. A new slab is allocated if the current slab has not enough
+     * space left. The indices of the returned slab must not be modified.
+     *
+     * @param alloc    allocator used for new slabs
+     * @param capacity maximum size of the next packet
+     * @return slab the next packet should be read into
+     */
+    public ByteBuf next(final ByteBufAllocator alloc, final int capacity) {
+        if (slab == null || slab.capacity() - slab.writerIndex() < capacity) {
+            release();
+            slab = alloc.directBuffer(Math.max(slabSize, capacity));
+        }
+        return slab;
+    }
+
+    /**
+     * Hands out the {@code bytesRead} bytes previously read into the memory returned by
+     * {@link #next(ByteBufAllocator, int)}.
+     *
+     * @param bytesRead number of bytes read
+     * @return slice holding the read bytes. Must be released by the caller
+     */
+    public ByteBuf commit(final int bytesRead) {
+        return commit(0, bytesRead, 0);
+    }
+
+    /**
+     * Hands out the {@code bytesRead} bytes previously read {@code headroom} bytes behind the
+     * writer index of the memory returned by {@link #next(ByteBufAllocator, int)}. The
+     * {@code headroom} bytes in front of and {@code tailroom} bytes behind the packet are not
+     * handed out to other packets.
+     *
+     * @param headroom  number of bytes reserved in front of the packet
+     * @param bytesRead number of bytes read
+     * @param tailroom  number of bytes reserved behind the packet
+     * @return slice holding the read bytes. Must be released by the caller
+     */
+    public ByteBuf commit(final int headroom, final int bytesRead, final int tailroom) {
+        final int index = slab.writerIndex();
+        final ByteBuf packet = slab.retainedSlice(index + headroom, bytesRead);
+        slab.writerIndex(Math.min(slab.capacity(), (index + headroom + bytesRead + tailroom + ALIGNMENT - 1) & -ALIGNMENT));
+        return packet;
+    }
+
+    /**
+     * Drops the reference to the current slab. The slab is freed once all of its packets have been
+     * released.
+     */
+    public void release() {
+        if (slab != null) {
+            slab.release();
+            slab = null;
+        }
+    }
+}
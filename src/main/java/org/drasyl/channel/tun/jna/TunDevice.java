@@ -21,9 +21,11 @@
  */
 package org.drasyl.channel.tun.jna;
 
+import io.netty.buffer.ByteBuf;
 import io.netty.buffer.ByteBufAllocator;
 import org.drasyl.channel.tun.TunAddress;
 import org.drasyl.channel.tun.TunPacket;
+import org.drasyl.channel.tun.VirtioNetHeader;
 
 import java.io.Closeable;
 import java.io.IOException;
@@ -40,16 +42,43 @@ public interface TunDevice extends Closeable {
     TunAddress localAddress();
 
     /**
-     * Reads and blocks until a {@link TunPacket} has been received by the tun device.
+     * Reads and blocks until a {@link TunPacket} has been received by the tun device. Devices
+     * operating in non-blocking mode return {@code null} if no packet is available.
      *
      * @param alloc
-     * @return {@link TunPacket} received by the tun device
+     * @return {@link TunPacket} received by the tun device or {@code null}
      * @throws IOException if read failed
      */
     TunPacket readPacket(final ByteBufAllocator alloc) throws IOException;
 
     /**
-     * Writes and blocks until a {@link TunPacket} has been sent by the tun device.
+     * Reads and blocks until at least one {@link TunPacket} has been received by the tun device.
+     * Then, up to {@code max} {@link TunPacket}s are stored in {@code out}. Devices operating in
+     * non-blocking mode return {@code 0} if no packet is available.
+     * <p>
+     * The default implementation reads a single {@link TunPacket} using
+     * {@link #readPacket(ByteBufAllocator)}.
+     *
+     * @param alloc
+     * @param out   array to store the received {@link TunPacket}s in
+     * @param max   maximum number of {@link TunPacket}s to read
+     * @return number of {@link TunPacket}s stored in {@code out}
+     * @throws IOException if read failed
+     */
+    default int readPackets(final ByteBufAllocator alloc,
+                            final TunPacket[] out,
+                            final int max) throws IOException {
+        final TunPacket packet = readPacket(alloc);
+        if (packet == null) {
+            return 0;
+        }
+        out[0] = packet;
+        return 1;
+    }
+
+    /**
+     * Writes and blocks until a {@link TunPacket} has been sent by the tun device. Devices may
+     * defer the actual submission until {@link #flush()} is called.
      *
      * @param alloc
      * @param msg   {@link TunPacket} to write by the tun device
@@ -57,6 +86,84 @@ public interface TunDevice extends Closeable {
      */
     void writePacket(final ByteBufAllocator alloc, final TunPacket msg) throws IOException;
 
+    /**
+     * Passes all written but not yet submitted {@link TunPacket}s to the tun device. Devices
+     * submitting every {@link TunPacket} immediately do nothing.
+     *
+     * @throws IOException if write failed
+     */
+    default void flush() throws IOException {
+        // do nothing
+    }
+
+    /**
+     * Writes the first {@code count} {@link TunPacket}s of {@code msgs} in order and passes them
+     * to the tun device. All {@link TunPacket}s are released, even if the write fails.
+     * <p>
+     * If the write fails after some {@link TunPacket}s have been written, a
+     * {@link PartialWriteException} reports their number. Any other exception means that none of
+     * the {@link TunPacket}s are known to have been written.
+     * <p>
+     * The default implementation writes each {@link TunPacket} using
+     * {@link #writePacket(ByteBufAllocator, TunPacket)} followed by a {@link #flush()}. As a failed
+     * {@link #flush()} may affect any {@link TunPacket} of the burst, devices deferring submission
+     * until {@link #flush()} should override this method.
+     *
+     * @param alloc
+     * @param msgs  {@link TunPacket}s to write by the tun device
+     * @param count number of {@link TunPacket}s to write
+     * @throws PartialWriteException if only some {@link TunPacket}s have been written
+     * @throws IOException           if write failed
+     */
+    default void writePackets(final ByteBufAllocator alloc,
+                              final TunPacket[] msgs,
+                              final int count) throws IOException {
+        int i = 0;
+        try {
+            while (i < count) {
+                writePacket(alloc, msgs[i++]);
+            }
+        }
+        catch (final IOException e) {
+            if (i == 1) {
+                throw e;
+            }
+            throw new PartialWriteException(i - 1, e);
+        }
+        finally {
+            // release packets that have not been passed to writePacket
+            while (i < count) {
+                msgs[i++].release();
+            }
+        }
+        flush();
+    }
+
+    /**
+     * Returns a pooled {@link TunPacket} holding {@code data} that can be written to this device.
+     * The packet is returned to the pool once it has been released. Writing the packet releases
+     * it.
+     * <p>
+     * The default implementation uses {@link TunPacket#newInstance(ByteBuf, VirtioNetHeader)}.
+     *
+     * @param data            the packet
+     * @param virtioNetHeader the offload information of the packet
+     * @return pooled {@link TunPacket}
+     * @throws IllegalArgumentException if {@code data} holds neither an IPv4 nor an IPv6 packet
+     */
+    default TunPacket newPacket(final ByteBuf data, final VirtioNetHeader virtioNetHeader) {
+        return TunPacket.newInstance(data, virtioNetHeader);
+    }
+
+    /**
+     * Returns a pooled {@link TunPacket} holding {@code data} that can be written to this device.
+     *
+     * @see #newPacket(ByteBuf, VirtioNetHeader)
+     */
+    default TunPacket newPacket(final ByteBuf data) {
+        return newPacket(data, VirtioNetHeader.NONE);
+    }
+
     /**
      * Returns whether the device is closed or not.
      *
@@ -31,6 +31,7 @@ import io.netty.buffer.ByteBufAllocator;
 import io.netty.buffer.CompositeByteBuf;
 import io.netty.buffer.Unpooled;
 import org.drasyl.channel.tun.Tun4Packet;
+import org.drasyl.channel.tun.Tun6Packet;
 import org.drasyl.channel.tun.TunAddress;
 import org.drasyl.channel.tun.TunPacket;
 import org.drasyl.channel.tun.jna.AbstractTunDevice;
@@ -142,27 +143,33 @@ public final class DarwinTunDevice extends AbstractTunDevice {
             throw new IOException("Device is closed.");
         }
 
-        // read from socket
+        // read from socket behind the reserved headroom
         final int capacity = ADDRESS_FAMILY_SIZE + mtu.intValue();
-        final ByteBuf maxByteBuf = alloc.buffer(capacity).writerIndex(capacity);
-        final ByteBuffer byteBuffer = maxByteBuf.nioBuffer();
+        final ByteBuf maxByteBuf = alloc.buffer(receiveHeadroom + capacity + receiveTailroom)
+                .writerIndex(receiveHeadroom + capacity);
+        final ByteBuffer byteBuffer = maxByteBuf.nioBuffer(receiveHeadroom, capacity);
         final int bytesRead = read(fd, byteBuffer, mtu);
 
         // extract address family
-        final int addressFamily = maxByteBuf.getInt(0);
+        final int addressFamily = maxByteBuf.getInt(receiveHeadroom);
 
-        // shrink bytebuf to actual required size
-        final ByteBuf actualByteBuf = maxByteBuf
-                .setIndex(ADDRESS_FAMILY_SIZE, bytesRead)
-                .capacity(bytesRead)
-                .slice();
+        final ByteBuf actualByteBuf;
+        if (hasReceiveRoom()) {
+            // never copy, as this would drop the reserved room
+            actualByteBuf = maxByteBuf.slice(receiveHeadroom + ADDRESS_FAMILY_SIZE, bytesRead - ADDRESS_FAMILY_SIZE);
+        }
+        else {
+            // only adjust indices. A copy is made only if requested by the policy
+            actualByteBuf = receiveCopyPolicy.apply(alloc, maxByteBuf.setIndex(ADDRESS_FAMILY_SIZE, bytesRead))
+                    .slice();
+        }
 
         switch (addressFamily) {
             case AF_INET:
-                return new Tun4Packet(actualByteBuf);
+                return reserveReceiveRoom(Tun4Packet.newInstance(actualByteBuf), maxByteBuf, 0, ADDRESS_FAMILY_SIZE);
 
             case AF_INET6:
-                return new Tun4Packet(actualByteBuf);
+                return reserveReceiveRoom(Tun6Packet.newInstance(actualByteBuf), maxByteBuf, 0, ADDRESS_FAMILY_SIZE);
 
             default:
                 throw new IOException("Unknown address family: " + addressFamily);
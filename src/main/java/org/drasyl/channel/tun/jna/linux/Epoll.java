@@ -0,0 +1,70 @@
+/*
+ * Copyright (c) 2021-2022 Heiko Bornholdt and Kevin Röbert
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ * IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM,
+ * DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR
+ * OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE
+ * OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package org.drasyl.channel.tun.jna.linux;
+
+import com.sun.jna.LastErrorException;
+import com.sun.jna.Native;
+import com.sun.jna.Platform;
+import com.sun.jna.Pointer;
+
+/**
+ * JNA mapping for <a href="https://github.com/torvalds/linux/blob/master/include/uapi/linux/eventpoll.h">eventpoll.h</a>.
+ */
+final class Epoll {
+    // epoll_ctl(2) operations
+    static final int EPOLL_CTL_ADD = 1;
+    static final int EPOLL_CTL_DEL = 2;
+    static final int EPOLL_CTL_MOD = 3;
+    // there is data to read
+    static final int EPOLLIN = 0x001;
+    // disable the file descriptor after an event has been reported
+    static final int EPOLLONESHOT = 1 << 30;
+    // close the epoll file descriptor on exec
+    static final int EPOLL_CLOEXEC = 02000000;
+    // struct epoll_event is packed on x86-64
+    static final int EPOLL_EVENT_SIZE = Platform.isIntel() && Platform.is64Bit() ? 12 : 16;
+    static final int EPOLL_EVENT_EVENTS = 0;
+    static final int EPOLL_EVENT_DATA = Platform.isIntel() && Platform.is64Bit() ? 4 : 8;
+
+    static {
+        Native.register(Platform.C_LIBRARY_NAME);
+    }
+
+    private Epoll() {
+        // JNA mapping
+    }
+
+    // https://man7.org/linux/man-pages/man2/epoll_create.2.html
+    static native int epoll_create1(final int flags) throws LastErrorException;
+
+    // https://man7.org/linux/man-pages/man2/epoll_ctl.2.html
+    static native int epoll_ctl(final int epfd,
+                                final int op,
+                                final int fd,
+                                final Pointer event) throws LastErrorException;
+
+    // https://man7.org/linux/man-pages/man2/epoll_wait.2.html
+    static native int epoll_wait(final int epfd,
+                                 final Pointer events,
+                                 final int maxevents,
+                                 final int timeout) throws LastErrorException;
+}
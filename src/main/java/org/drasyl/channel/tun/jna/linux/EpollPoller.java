@@ -0,0 +1,166 @@
+/*
+ * Copyright (c) 2021-2022 Heiko Bornholdt and Kevin Röbert
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ * IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM,
+ * DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR
+ * OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE
+ * OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package org.drasyl.channel.tun.jna.linux;
+
+import com.sun.jna.LastErrorException;
+import com.sun.jna.Memory;
+import io.netty.util.concurrent.DefaultThreadFactory;
+
+import java.io.IOException;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import static org.drasyl.channel.tun.jna.linux.Epoll.EPOLLIN;
+import static org.drasyl.channel.tun.jna.linux.Epoll.EPOLLONESHOT;
+import static org.drasyl.channel.tun.jna.linux.Epoll.EPOLL_CLOEXEC;
+import static org.drasyl.channel.tun.jna.linux.Epoll.EPOLL_CTL_ADD;
+import static org.drasyl.channel.tun.jna.linux.Epoll.EPOLL_CTL_DEL;
+import static org.drasyl.channel.tun.jna.linux.Epoll.EPOLL_CTL_MOD;
+import static org.drasyl.channel.tun.jna.linux.Epoll.EPOLL_EVENT_DATA;
+import static org.drasyl.channel.tun.jna.linux.Epoll.EPOLL_EVENT_EVENTS;
+import static org.drasyl.channel.tun.jna.linux.Epoll.EPOLL_EVENT_SIZE;
+import static org.drasyl.channel.tun.jna.linux.Errno.EINTR;
+
+/**
+ * Waits for registered file descriptors to become readable using a single epoll(7) instance and
+ * a single thread shared by all file descriptors. File descriptors are registered in one-shot mode:
+ * once readable, the registered callback is run on the polling thread and the file descriptor is
+ * not polled again until it has been {@link #arm(int) armed} again. The callback is expected to
+ * hand the actual reading over to another thread (e.g. an event loop), which reads until the file
+ * descriptor is drained and then re-arms it.
+ * <p>
+ * Only file descriptors in non-blocking mode should be registered.
+ */
+public final class EpollPoller {
+    // maximum number of events returned by a single epoll_wait call
+    private static final int MAX_EVENTS = 64;
+    private static EpollPoller instance;
+    private final int epfd;
+    private final Map<Integer, Runnable> callbacks = new ConcurrentHashMap<>();
+    // struct epoll_event passed to epoll_ctl, one per calling thread
+    private final ThreadLocal<Memory> event = ThreadLocal.withInitial(() -> new Memory(EPOLL_EVENT_SIZE));
+
+    private EpollPoller() {
+        epfd = Epoll.epoll_create1(EPOLL_CLOEXEC);
+        new DefaultThreadFactory("tun-epoll-poller", true).newThread(this::run).start();
+    }
+
+    /**
+     * Returns the poller shared by all file descriptors. The poller and its thread are created on
+     * first use and live as long as the JVM.
+     *
+     * @return the shared poller
+     * @throws IOException if the epoll instance could not be created
+     */
+    public static synchronized EpollPoller instance() throws IOException {
+        if (instance == null) {
+            try {
+                instance = new EpollPoller();
+            }
+            catch (final LastErrorException e) {
+                throw new IOException("Creating epoll instance failed.", e);
+            }
+        }
+        return instance;
+    }
+
+    /**
+     * Starts polling {@code fd}. {@code onReadable} is run on the polling thread once {@code fd}
+     * has become readable. It must not block.
+     *
+     * @param fd         file descriptor to poll
+     * @param onReadable callback to run once {@code fd} has become readable
+     * @throws IOException if {@code fd} could not be registered
+     */
+    public void register(final int fd, final Runnable onReadable) throws IOException {
+        callbacks.put(fd, onReadable);
+        try {
+            ctl(EPOLL_CTL_ADD, fd);
+        }
+        catch (final IOException e) {
+            callbacks.remove(fd);
+            throw e;
+        }
+    }
+
+    /**
+     * Polls {@code fd} again after its callback has been run.
+     *
+     * @param fd registered file descriptor
+     * @throws IOException if {@code fd} could not be re-armed
+     */
+    public void arm(final int fd) throws IOException {
+        ctl(EPOLL_CTL_MOD, fd);
+    }
+
+    /**
+     * Stops polling {@code fd}. Must be called before {@code fd} is closed. The callback of
+     * {@code fd} may still be running or run once more concurrently to this call.
+     *
+     * @param fd registered file descriptor
+     */
+    public void deregister(final int fd) {
+        callbacks.remove(fd);
+        try {
+            Epoll.epoll_ctl(epfd, EPOLL_CTL_DEL, fd, null);
+        }
+        catch (final LastErrorException e) {
+            // not registered (anymore)
+        }
+    }
+
+    private void ctl(final int op, final int fd) throws IOException {
+        final Memory ev = event.get();
+        ev.setInt(EPOLL_EVENT_EVENTS, EPOLLIN | EPOLLONESHOT);
+        ev.setLong(EPOLL_EVENT_DATA, fd);
+        try {
+            Epoll.epoll_ctl(epfd, op, fd, ev);
+        }
+        catch (final LastErrorException e) {
+            throw new IOException("epoll_ctl failed: " + e.getErrorCode(), e);
+        }
+    }
+
+    private void run() {
+        final Memory events = new Memory((long) MAX_EVENTS * EPOLL_EVENT_SIZE);
+        while (true) {
+            final int ready;
+            try {
+                ready = Epoll.epoll_wait(epfd, events, MAX_EVENTS, -1);
+            }
+            catch (final LastErrorException e) {
+                if (e.getErrorCode() == EINTR) {
+                    continue;
+                }
+                throw e;
+            }
+
+            for (int i = 0; i < ready; i++) {
+                final int fd = (int) events.getLong((long) i * EPOLL_EVENT_SIZE + EPOLL_EVENT_DATA);
+                final Runnable onReadable = callbacks.get(fd);
+                if (onReadable != null) {
+                    onReadable.run();
+                }
+            }
+        }
+    }
+}
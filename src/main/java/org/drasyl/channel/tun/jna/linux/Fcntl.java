@@ -27,6 +27,12 @@ package org.drasyl.channel.tun.jna.linux;
 final class Fcntl {
     // open for reading and writing
     public static final int O_RDWR = 2;
+    // non-blocking I/O
+    public static final int O_NONBLOCK = 04000;
+    // get file status flags
+    public static final int F_GETFL = 3;
+    // set file status flags
+    public static final int F_SETFL = 4;
 
     private Fcntl() {
         // JNA mapping
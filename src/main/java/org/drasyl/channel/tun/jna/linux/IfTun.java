@@ -28,10 +28,24 @@ import com.sun.jna.NativeLong;
  */
 public final class IfTun {
     static final NativeLong TUNSETIFF = new NativeLong(0x400454caL);
+    static final NativeLong TUNSETOFFLOAD = new NativeLong(0x400454d0L);
     // TUN device (no Ethernet headers)
     static final short IFF_TUN = 0x0001;
     // do not provide packet information
     static final short IFF_NO_PI = 0x1000;
+    // allow multiple file descriptors (queues) to be attached to the same device
+    static final short IFF_MULTI_QUEUE = 0x0100;
+    // prepend a virtio_net_hdr to each packet
+    static final short IFF_VNET_HDR = 0x4000;
+    // features for TUNSETOFFLOAD
+    // you can hand me unchecksummed packets
+    static final int TUN_F_CSUM = 0x01;
+    // I can handle TSO for IPv4 packets
+    static final int TUN_F_TSO4 = 0x02;
+    // I can handle TSO for IPv6 packets
+    static final int TUN_F_TSO6 = 0x04;
+    // I can handle TSO with ECN bits
+    static final int TUN_F_TSO_ECN = 0x08;
 
     private IfTun() {
         // JNA mapping
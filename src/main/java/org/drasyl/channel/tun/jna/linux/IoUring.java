@@ -0,0 +1,179 @@
+/*
+ * Copyright (c) 2021-2022 Heiko Bornholdt and Kevin Röbert
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ * IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM,
+ * DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR
+ * OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE
+ * OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package org.drasyl.channel.tun.jna.linux;
+
+import com.sun.jna.LastErrorException;
+import com.sun.jna.Native;
+import com.sun.jna.Platform;
+import com.sun.jna.Pointer;
+import com.sun.jna.Structure;
+import com.sun.jna.Structure.FieldOrder;
+
+/**
+ * JNA mapping for <a href="https://github.com/torvalds/linux/blob/master/include/uapi/linux/io_uring.h">io_uring.h</a>.
+ */
+@SuppressWarnings("java:S2974")
+final class IoUring {
+    // syscall numbers (identical on all architectures)
+    static final long SYS_IO_URING_SETUP = 425;
+    static final long SYS_IO_URING_ENTER = 426;
+    static final long SYS_IO_URING_REGISTER = 427;
+    // magic offsets for the application to mmap the data it needs
+    static final long IORING_OFF_SQ_RING = 0L;
+    static final long IORING_OFF_CQ_RING = 0x8000000L;
+    static final long IORING_OFF_SQES = 0x10000000L;
+    // io_uring_params->features flags
+    static final int IORING_FEAT_EXT_ARG = 1 << 8;
+    // io_uring_enter(2) flags
+    static final int IORING_ENTER_GETEVENTS = 1 << 0;
+    static final int IORING_ENTER_EXT_ARG = 1 << 3;
+    // io_uring_register(2) opcodes
+    static final int IORING_REGISTER_BUFFERS = 0;
+    // io_uring_sqe->opcode
+    static final byte IORING_OP_READ_FIXED = 4;
+    static final byte IORING_OP_WRITE_FIXED = 5;
+    static final byte IORING_OP_ASYNC_CANCEL = 14;
+    // io_uring_sqe->flags
+    static final byte IOSQE_IO_LINK = 1 << 2;
+    // size of struct io_uring_sqe
+    static final int SQE_SIZE = 64;
+    static final int SQE_OPCODE = 0;
+    static final int SQE_FLAGS = 1;
+    static final int SQE_FD = 4;
+    static final int SQE_OFF = 8;
+    static final int SQE_ADDR = 16;
+    static final int SQE_LEN = 24;
+    static final int SQE_USER_DATA = 32;
+    static final int SQE_BUF_INDEX = 40;
+    // size of struct io_uring_cqe
+    static final int CQE_SIZE = 16;
+    static final int CQE_USER_DATA = 0;
+    static final int CQE_RES = 8;
+    // size of struct io_uring_getevents_arg
+    static final int GETEVENTS_ARG_SIZE = 24;
+    static final int GETEVENTS_ARG_TS = 16;
+    // size of struct iovec
+    static final int IOVEC_SIZE = 16;
+
+    static {
+        Native.register(Platform.C_LIBRARY_NAME);
+    }
+
+    private IoUring() {
+        // JNA mapping
+    }
+
+    // https://man7.org/linux/man-pages/man2/io_uring_setup.2.html
+    static native int syscall(final long number,
+                              final int entries,
+                              final IoUringParams p) throws LastErrorException;
+
+    // https://man7.org/linux/man-pages/man2/io_uring_enter.2.html
+    static native int syscall(final long number,
+                              final int fd,
+                              final int toSubmit,
+                              final int minComplete,
+                              final int flags,
+                              final Pointer arg,
+                              final long argsz) throws LastErrorException;
+
+    // https://man7.org/linux/man-pages/man2/io_uring_register.2.html
+    static native int syscall(final long number,
+                              final int fd,
+                              final int opcode,
+                              final Pointer arg,
+                              final int nrArgs) throws LastErrorException;
+
+    @SuppressWarnings({ "java:S116", "java:S1104", "java:S2160" })
+    @FieldOrder({
+            "sq_entries",
+            "cq_entries",
+            "flags",
+            "sq_thread_cpu",
+            "sq_thread_idle",
+            "features",
+            "wq_fd",
+            "resv",
+            "sq_off",
+            "cq_off"
+    })
+    public static class IoUringParams extends Structure {
+        public int sq_entries;
+        public int cq_entries;
+        public int flags;
+        public int sq_thread_cpu;
+        public int sq_thread_idle;
+        public int features;
+        public int wq_fd;
+        public int[] resv = new int[3];
+        public IoSqringOffsets sq_off;
+        public IoCqringOffsets cq_off;
+    }
+
+    @SuppressWarnings({ "java:S116", "java:S1104", "java:S2160" })
+    @FieldOrder({
+            "head",
+            "tail",
+            "ring_mask",
+            "ring_entries",
+            "flags",
+            "dropped",
+            "array",
+            "resv1",
+            "user_addr"
+    })
+    public static class IoSqringOffsets extends Structure {
+        public int head;
+        public int tail;
+        public int ring_mask;
+        public int ring_entries;
+        public int flags;
+        public int dropped;
+        public int array;
+        public int resv1;
+        public long user_addr;
+    }
+
+    @SuppressWarnings({ "java:S116", "java:S1104", "java:S2160" })
+    @FieldOrder({
+            "head",
+            "tail",
+            "ring_mask",
+            "ring_entries",
+            "overflow",
+            "cqes",
+            "flags",
+            "resv1",
+            "user_addr"
+    })
+    public static class IoCqringOffsets extends Structure {
+        public int head;
+        public int tail;
+        public int ring_mask;
+        public int ring_entries;
+        public int overflow;
+        public int cqes;
+        public int flags;
+        public int resv1;
+        public long user_addr;
+    }
+}
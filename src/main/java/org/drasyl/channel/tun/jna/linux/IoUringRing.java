@@ -0,0 +1,330 @@
+/*
+ * Copyright (c) 2021-2022 Heiko Bornholdt and Kevin Röbert
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ * IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM,
+ * DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR
+ * OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE
+ * OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package org.drasyl.channel.tun.jna.linux;
+
+import com.sun.jna.LastErrorException;
+import com.sun.jna.Memory;
+import com.sun.jna.NativeLong;
+import com.sun.jna.Pointer;
+import org.drasyl.channel.tun.jna.linux.IoUring.IoUringParams;
+import org.drasyl.channel.tun.jna.shared.LibC;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+import static org.drasyl.channel.tun.jna.linux.Errno.EAGAIN;
+import static org.drasyl.channel.tun.jna.linux.Errno.EBUSY;
+import static org.drasyl.channel.tun.jna.linux.Errno.EINTR;
+import static org.drasyl.channel.tun.jna.linux.Errno.ETIME;
+import static org.drasyl.channel.tun.jna.linux.IoUring.CQE_RES;
+import static org.drasyl.channel.tun.jna.linux.IoUring.CQE_SIZE;
+import static org.drasyl.channel.tun.jna.linux.IoUring.CQE_USER_DATA;
+import static org.drasyl.channel.tun.jna.linux.IoUring.GETEVENTS_ARG_SIZE;
+import static org.drasyl.channel.tun.jna.linux.IoUring.GETEVENTS_ARG_TS;
+import static org.drasyl.channel.tun.jna.linux.IoUring.IORING_ENTER_EXT_ARG;
+import static org.drasyl.channel.tun.jna.linux.IoUring.IORING_ENTER_GETEVENTS;
+import static org.drasyl.channel.tun.jna.linux.IoUring.IORING_FEAT_EXT_ARG;
+import static org.drasyl.channel.tun.jna.linux.IoUring.IORING_OP_ASYNC_CANCEL;
+import static org.drasyl.channel.tun.jna.linux.IoUring.IORING_OFF_CQ_RING;
+import static org.drasyl.channel.tun.jna.linux.IoUring.IORING_OFF_SQES;
+import static org.drasyl.channel.tun.jna.linux.IoUring.IORING_OFF_SQ_RING;
+import static org.drasyl.channel.tun.jna.linux.IoUring.IORING_REGISTER_BUFFERS;
+import static org.drasyl.channel.tun.jna.linux.IoUring.IOSQE_IO_LINK;
+import static org.drasyl.channel.tun.jna.linux.IoUring.IOVEC_SIZE;
+import static org.drasyl.channel.tun.jna.linux.IoUring.SQE_ADDR;
+import static org.drasyl.channel.tun.jna.linux.IoUring.SQE_BUF_INDEX;
+import static org.drasyl.channel.tun.jna.linux.IoUring.SQE_FD;
+import static org.drasyl.channel.tun.jna.linux.IoUring.SQE_FLAGS;
+import static org.drasyl.channel.tun.jna.linux.IoUring.SQE_LEN;
+import static org.drasyl.channel.tun.jna.linux.IoUring.SQE_OFF;
+import static org.drasyl.channel.tun.jna.linux.IoUring.SQE_OPCODE;
+import static org.drasyl.channel.tun.jna.linux.IoUring.SQE_SIZE;
+import static org.drasyl.channel.tun.jna.linux.IoUring.SQE_USER_DATA;
+import static org.drasyl.channel.tun.jna.linux.IoUring.SYS_IO_URING_ENTER;
+import static org.drasyl.channel.tun.jna.linux.IoUring.SYS_IO_URING_REGISTER;
+import static org.drasyl.channel.tun.jna.linux.IoUring.SYS_IO_URING_SETUP;
+import static org.drasyl.channel.tun.jna.linux.Mman.MAP_POPULATE;
+import static org.drasyl.channel.tun.jna.linux.Mman.MAP_SHARED;
+import static org.drasyl.channel.tun.jna.linux.Mman.PROT_READ;
+import static org.drasyl.channel.tun.jna.linux.Mman.PROT_WRITE;
+
+/**
+ * A single io_uring instance with a submission and a completion queue. Instances are not
+ * thread-safe and must be confined to a single thread at a time.
+ */
+@SuppressWarnings("java:S2160")
+final class IoUringRing implements Closeable {
+    private static final VarHandle INT_HANDLE = MethodHandles.byteBufferViewVarHandle(int[].class, ByteOrder.nativeOrder());
+    private final int ringFd;
+    private final int entries;
+    private final Pointer sqRing;
+    private final long sqRingSize;
+    private final Pointer cqRing;
+    private final long cqRingSize;
+    private final Pointer sqes;
+    private final long sqesSize;
+    private final ByteBuffer sqRingBuf;
+    private final ByteBuffer cqRingBuf;
+    private final ByteBuffer sqeBuf;
+    private final int sqHead;
+    private final int sqTail;
+    private final int sqMask;
+    private final int cqHead;
+    private final int cqTail;
+    private final int cqMask;
+    private final int cqes;
+    private final Memory getEventsArg;
+    private int localSqTail;
+    private int localCqHead;
+    private int toSubmit;
+    private boolean closed;
+    // result of the last completion returned by pollCompletion()
+    private long completionUserData;
+    private int completionResult;
+
+    IoUringRing(final int entries) throws IOException {
+        final IoUringParams p = new IoUringParams();
+        ringFd = IoUring.syscall(SYS_IO_URING_SETUP, entries, p);
+        try {
+            if ((p.features & IORING_FEAT_EXT_ARG) == 0) {
+                throw new IOException("io_uring lacks IORING_FEAT_EXT_ARG.");
+            }
+
+            this.entries = p.sq_entries;
+            sqRingSize = p.sq_off.array + (long) p.sq_entries * Integer.BYTES;
+            cqRingSize = p.cq_off.cqes + (long) p.cq_entries * CQE_SIZE;
+            sqesSize = (long) p.sq_entries * SQE_SIZE;
+            sqRing = mmap(ringFd, sqRingSize, IORING_OFF_SQ_RING);
+            cqRing = mmap(ringFd, cqRingSize, IORING_OFF_CQ_RING);
+            sqes = mmap(ringFd, sqesSize, IORING_OFF_SQES);
+        }
+        catch (final IOException | LastErrorException e) {
+            LibC.close(ringFd);
+            throw e;
+        }
+        sqRingBuf = sqRing.getByteBuffer(0, sqRingSize).order(ByteOrder.nativeOrder());
+        cqRingBuf = cqRing.getByteBuffer(0, cqRingSize).order(ByteOrder.nativeOrder());
+        sqeBuf = sqes.getByteBuffer(0, sqesSize).order(ByteOrder.nativeOrder());
+
+        sqHead = p.sq_off.head;
+        sqTail = p.sq_off.tail;
+        sqMask = sqRingBuf.getInt(p.sq_off.ring_mask);
+        cqHead = p.cq_off.head;
+        cqTail = p.cq_off.tail;
+        cqMask = cqRingBuf.getInt(p.cq_off.ring_mask);
+        cqes = p.cq_off.cqes;
+        localSqTail = sqRingBuf.getInt(sqTail);
+        localCqHead = cqRingBuf.getInt(cqHead);
+
+        // submission queue entries are always used in order. So the index array can be fixed
+        for (int i = 0; i < this.entries; i++) {
+            sqRingBuf.putInt(p.sq_off.array + i * Integer.BYTES, i);
+        }
+
+        // struct io_uring_getevents_arg followed by struct __kernel_timespec
+        getEventsArg = new Memory(GETEVENTS_ARG_SIZE + 16L);
+        getEventsArg.clear();
+        getEventsArg.setLong(GETEVENTS_ARG_TS, Pointer.nativeValue(getEventsArg.share(GETEVENTS_ARG_SIZE)));
+    }
+
+    private static Pointer mmap(final int fd, final long size, final long offset) {
+        return LibC.mmap(null, new NativeLong(size), PROT_READ | PROT_WRITE, MAP_SHARED | MAP_POPULATE, fd, new NativeLong(offset));
+    }
+
+    /**
+     * Returns the number of submission queue entries.
+     */
+    int entries() {
+        return entries;
+    }
+
+    /**
+     * Registers {@code count} fixed buffers of {@code size} bytes each located in {@code region}.
+     */
+    void registerBuffers(final Pointer region, final int count, final int size) {
+        final Memory iovecs = new Memory((long) count * IOVEC_SIZE);
+        for (int i = 0; i < count; i++) {
+            iovecs.setLong((long) i * IOVEC_SIZE, Pointer.nativeValue(region) + (long) i * size);
+            iovecs.setLong((long) i * IOVEC_SIZE + Long.BYTES, size);
+        }
+        IoUring.syscall(SYS_IO_URING_REGISTER, ringFd, IORING_REGISTER_BUFFERS, iovecs, count);
+        iovecs.close();
+    }
+
+    /**
+     * Queues a {@code opcode} operation on fixed buffer {@code bufIndex}. The operation is passed
+     * to the kernel on the next {@link #submit()} or {@link #submitAndWait(long)} call.
+     *
+     * @return {@code false} if the submission queue is full
+     */
+    boolean prepare(final byte opcode,
+                    final int fd,
+                    final Pointer buf,
+                    final int len,
+                    final int bufIndex,
+                    final long userData) {
+        return prepare(opcode, fd, Pointer.nativeValue(buf), len, bufIndex, userData);
+    }
+
+    /**
+     * Queues the cancellation of the outstanding operation identified by {@code targetUserData}.
+     * Both the cancelled operation and the cancellation itself produce a completion.
+     *
+     * @return {@code false} if the submission queue is full
+     */
+    boolean prepareCancel(final long targetUserData, final long userData) {
+        return prepare(IORING_OP_ASYNC_CANCEL, -1, targetUserData, 0, 0, userData);
+    }
+
+    private boolean prepare(final byte opcode,
+                            final int fd,
+                            final long addr,
+                            final int len,
+                            final int bufIndex,
+                            final long userData) {
+        final int head = (int) INT_HANDLE.getAcquire(sqRingBuf, sqHead);
+        if (localSqTail - head == entries) {
+            return false;
+        }
+
+        final int offset = (localSqTail & sqMask) * SQE_SIZE;
+        for (int i = 0; i < SQE_SIZE; i += Long.BYTES) {
+            sqeBuf.putLong(offset + i, 0);
+        }
+        sqeBuf.put(offset + SQE_OPCODE, opcode);
+        sqeBuf.putInt(offset + SQE_FD, fd);
+        sqeBuf.putLong(offset + SQE_OFF, 0);
+        sqeBuf.putLong(offset + SQE_ADDR, addr);
+        sqeBuf.putInt(offset + SQE_LEN, len);
+        sqeBuf.putLong(offset + SQE_USER_DATA, userData);
+        sqeBuf.putShort(offset + SQE_BUF_INDEX, (short) bufIndex);
+
+        localSqTail++;
+        toSubmit++;
+        return true;
+    }
+
+    /**
+     * Links the last queued operation to the next queued operation. The next operation is only
+     * started once the last operation has completed successfully. Otherwise, it completes with
+     * {@code -ECANCELED}. Must only be called if an operation has been queued since the last
+     * submission.
+     */
+    void linkLast() {
+        final int offset = ((localSqTail - 1) & sqMask) * SQE_SIZE;
+        sqeBuf.put(offset + SQE_FLAGS, (byte) (sqeBuf.get(offset + SQE_FLAGS) | IOSQE_IO_LINK));
+    }
+
+    /**
+     * Returns the number of queued but not yet submitted operations.
+     */
+    int pending() {
+        return toSubmit;
+    }
+
+    /**
+     * Passes all queued operations to the kernel without waiting for any completion.
+     */
+    void submit() throws IOException {
+        if (toSubmit > 0) {
+            enter(0, 0, null, 0);
+        }
+    }
+
+    /**
+     * Passes all queued operations to the kernel and waits up to {@code timeoutNanos} for at least
+     * one completion.
+     */
+    void submitAndWait(final long timeoutNanos) throws IOException {
+        getEventsArg.setLong(GETEVENTS_ARG_SIZE, timeoutNanos / 1_000_000_000L);
+        getEventsArg.setLong(GETEVENTS_ARG_SIZE + 8L, timeoutNanos % 1_000_000_000L);
+        enter(1, IORING_ENTER_GETEVENTS | IORING_ENTER_EXT_ARG, getEventsArg, GETEVENTS_ARG_SIZE);
+    }
+
+    @SuppressWarnings("java:S1142")
+    private void enter(final int minComplete,
+                       final int flags,
+                       final Pointer arg,
+                       final long argsz) throws IOException {
+        if (closed) {
+            throw new IOException("Ring is closed.");
+        }
+
+        INT_HANDLE.setRelease(sqRingBuf, sqTail, localSqTail);
+        try {
+            final int submitted = IoUring.syscall(SYS_IO_URING_ENTER, ringFd, toSubmit, minComplete, flags, arg, argsz);
+            toSubmit -= submitted;
+        }
+        catch (final LastErrorException e) {
+            final int errno = e.getErrorCode();
+            if (errno != EINTR && errno != ETIME && errno != EAGAIN && errno != EBUSY) {
+                throw new IOException("io_uring_enter failed: " + errno, e);
+            }
+        }
+    }
+
+    /**
+     * Consumes the next completion, if available. Use {@link #completionUserData()} and
+     * {@link #completionResult()} to access the completion.
+     *
+     * @return {@code true} if a completion was consumed
+     */
+    boolean pollCompletion() {
+        final int tail = (int) INT_HANDLE.getAcquire(cqRingBuf, cqTail);
+        if (localCqHead == tail) {
+            return false;
+        }
+
+        final int offset = cqes + (localCqHead & cqMask) * CQE_SIZE;
+        completionUserData = cqRingBuf.getLong(offset + CQE_USER_DATA);
+        completionResult = cqRingBuf.getInt(offset + CQE_RES);
+
+        localCqHead++;
+        INT_HANDLE.setRelease(cqRingBuf, cqHead, localCqHead);
+        return true;
+    }
+
+    long completionUserData() {
+        return completionUserData;
+    }
+
+    int completionResult() {
+        return completionResult;
+    }
+
+    @Override
+    public void close() {
+        if (!closed) {
+            closed = true;
+
+            LibC.munmap(sqes, new NativeLong(sqesSize));
+            LibC.munmap(cqRing, new NativeLong(cqRingSize));
+            LibC.munmap(sqRing, new NativeLong(sqRingSize));
+            LibC.close(ringFd);
+            getEventsArg.close();
+        }
+    }
+}
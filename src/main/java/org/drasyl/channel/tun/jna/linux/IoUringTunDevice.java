@@ -0,0 +1,620 @@
+/*
+ * Copyright (c) 2021-2022 Heiko Bornholdt and Kevin Röbert
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ * IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM,
+ * DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR
+ * OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE
+ * OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package org.drasyl.channel.tun.jna.linux;
+
+import com.sun.jna.LastErrorException;
+import com.sun.jna.Memory;
+import com.sun.jna.Platform;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufAllocator;
+import io.netty.buffer.Unpooled;
+import io.netty.buffer.UnpooledByteBufAllocator;
+import io.netty.buffer.UnpooledUnsafeDirectByteBuf;
+import io.netty.util.internal.PlatformDependent;
+import org.drasyl.channel.tun.TunPacket;
+import org.drasyl.channel.tun.jna.AbstractTunDevice;
+import org.drasyl.channel.tun.jna.PartialWriteException;
+import org.drasyl.channel.tun.jna.TunDevice;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.drasyl.channel.tun.VirtioNetHeader.VIRTIO_NET_HDR_LENGTH;
+import static org.drasyl.channel.tun.jna.linux.Errno.EAGAIN;
+import static org.drasyl.channel.tun.jna.linux.Errno.EINTR;
+import static org.drasyl.channel.tun.jna.linux.IoUring.IORING_OP_READ_FIXED;
+import static org.drasyl.channel.tun.jna.linux.IoUring.IORING_OP_WRITE_FIXED;
+
+/**
+ * A Linux {@link TunDevice} backed by io_uring. Each device uses one ring for reading and one ring
+ * for writing, each with a fixed set of pre-registered buffers. Multiple reads are kept outstanding
+ * all the time and writes are queued until {@link #flush()} is called. A single
+ * {@code io_uring_enter} call then replaces many {@code read}/{@code write} calls.
+ * <p>
+ * Received packets are handed out as zero-copy slices of the registered read buffers (unless the
+ * {@link #setReceiveCopyPolicy(org.drasyl.channel.tun.ReceiveCopyPolicy) copy policy} requests a
+ * copy). A read buffer is used for the next read once its packet has been released, so holding
+ * many received packets reduces the number of outstanding reads. Writes of a burst are linked, so
+ * that a failed write cancels all subsequent writes of the burst, and each burst is awaited before
+ * its writes are reported as done.
+ * <p>
+ * Requires Linux 5.11 or newer. Use {@link #isAvailable()} to check whether io_uring can be used.
+ */
+public final class IoUringTunDevice extends AbstractTunDevice {
+    // number of fixed buffers (and therefore outstanding operations) per ring
+    private static final int ENTRIES = 32;
+    // upper bound for blocking waits, so that close() is able to acquire the rings in time
+    private static final long WAIT_TIMEOUT = TimeUnit.MILLISECONDS.toNanos(100);
+    // upper bound for waiting on cancelled operations when closing
+    private static final long CLOSE_TIMEOUT = TimeUnit.SECONDS.toNanos(1);
+    // user data of cancellations, distinct from all buffer indices
+    private static final long CANCEL_USER_DATA = -1;
+    // result of writes that have not been completed yet
+    private static final int WRITE_PENDING = Integer.MIN_VALUE;
+    private static final boolean AVAILABLE = probe();
+    private final LinuxTunDevice device;
+    private final int fd;
+    private final boolean offload;
+    private final int slotSize;
+    private final IoUringRing readRing;
+    private final Memory readBuffers;
+    private final ReadBuffer[] readBufs = new ReadBuffer[ENTRIES];
+    private final boolean[] readOutstanding = new boolean[ENTRIES];
+    // read buffers released by the application since the last read, one bit per buffer
+    private final AtomicLong releasedReadBuffers = new AtomicLong();
+    // number of read buffers held by the application
+    private final AtomicInteger lentReadBuffers = new AtomicInteger();
+    private final AtomicBoolean readBuffersFreed = new AtomicBoolean();
+    // set once no outstanding read is able to access the read buffers anymore
+    private volatile boolean readsDrained;
+    private final IoUringRing writeRing;
+    private final Memory writeBuffers;
+    private final ByteBuf writeBuffersBuf;
+    private final int[] freeWriteSlots = new int[ENTRIES];
+    private int freeWriteSlotCount;
+    // writes queued since the last submission in order, with their lengths and results
+    private final int[] queuedWrites = new int[ENTRIES];
+    private int queuedWriteCount;
+    private final int[] writeLengths = new int[ENTRIES];
+    private final int[] writeResults = new int[ENTRIES];
+    // read failure that occurred after packets had been read. Reported by the next read
+    private IOException readFailure;
+
+    IoUringTunDevice(final LinuxTunDevice device) throws IOException {
+        super(device.localAddress());
+        this.device = device;
+        this.fd = device.fd();
+        this.offload = device.isOffload();
+        this.slotSize = device.capacity();
+
+        // io_uring completes reads on non-blocking files with EAGAIN instead of waiting for data
+        LinuxTunDevice.setNonBlocking(fd, false);
+
+        readBuffers = new Memory((long) ENTRIES * slotSize);
+        writeBuffers = new Memory((long) ENTRIES * slotSize);
+        writeBuffersBuf = Unpooled.wrappedBuffer(writeBuffers.getByteBuffer(0, writeBuffers.size()));
+
+        readRing = new IoUringRing(ENTRIES);
+        try {
+            writeRing = new IoUringRing(ENTRIES);
+        }
+        catch (final IOException | LastErrorException e) {
+            readRing.close();
+            throw e;
+        }
+
+        try {
+            readRing.registerBuffers(readBuffers, ENTRIES, slotSize);
+            writeRing.registerBuffers(writeBuffers, ENTRIES, slotSize);
+        }
+        catch (final LastErrorException e) {
+            readRing.close();
+            writeRing.close();
+            throw e;
+        }
+
+        // keep a read outstanding for every buffer
+        for (int slot = 0; slot < ENTRIES; slot++) {
+            readBufs[slot] = new ReadBuffer(slot);
+            prepareRead(slot);
+            freeWriteSlots[freeWriteSlotCount++] = slot;
+        }
+        readRing.submit();
+    }
+
+    /**
+     * Returns {@code true} if io_uring is supported by the running kernel.
+     *
+     * @return {@code true} if io_uring is supported by the running kernel
+     */
+    public static boolean isAvailable() {
+        return AVAILABLE;
+    }
+
+    @SuppressWarnings("java:S1181")
+    private static boolean probe() {
+        // read buffers are handed out as unsafe direct buffers
+        if (!Platform.isLinux() || !Platform.is64Bit() || !PlatformDependent.hasUnsafe()) {
+            return false;
+        }
+
+        try {
+            new IoUringRing(1).close();
+            return true;
+        }
+        catch (final Throwable e) {
+            // io_uring not supported or disabled
+            return false;
+        }
+    }
+
+    /**
+     * Opens the tun device {@code name} like {@link LinuxTunDevice#openQueues(String, int, int,
+     * boolean)} does, but uses io_uring for reading from and writing to each queue.
+     *
+     * @param name    desired name of the device or {@code null}
+     * @param mtu     desired mtu or {@code 0} to use the system default
+     * @param queues  number of queues to attach
+     * @param offload enable TSO and checksum offloading
+     * @return one {@link TunDevice} for each queue
+     * @throws IOException if device could not be opened
+     */
+    public static List<TunDevice> openQueues(final String name,
+                                             final int mtu,
+                                             final int queues,
+                                             final boolean offload) throws IOException {
+        final List<TunDevice> devices = LinuxTunDevice.openQueues(name, mtu, queues, offload);
+        final List<TunDevice> ioUringDevices = new ArrayList<>(devices.size());
+        try {
+            for (final TunDevice device : devices) {
+                ioUringDevices.add(new IoUringTunDevice((LinuxTunDevice) device));
+            }
+        }
+        catch (final IOException | LastErrorException e) {
+            for (final TunDevice device : ioUringDevices) {
+                device.close();
+            }
+            for (final TunDevice device : devices) {
+                device.close();
+            }
+            throw e;
+        }
+        return ioUringDevices;
+    }
+
+    private void prepareRead(final int slot) {
+        if (!readRing.prepare(IORING_OP_READ_FIXED, fd, readBuffers.share((long) slot * slotSize), slotSize, slot, slot)) {
+            throw new IllegalStateException("Submission queue overflow.");
+        }
+        readOutstanding[slot] = true;
+    }
+
+    /**
+     * Uses all read buffers released by the application for the next reads. The reads are
+     * submitted on next wait.
+     */
+    private void rearmReleasedReadBuffers() {
+        long released = releasedReadBuffers.getAndSet(0);
+        while (released != 0) {
+            final int slot = Long.numberOfTrailingZeros(released);
+            released &= released - 1;
+            readBufs[slot].rearm();
+            prepareRead(slot);
+        }
+    }
+
+    @Override
+    public TunPacket readPacket(final ByteBufAllocator alloc) throws IOException {
+        synchronized (readRing) {
+            while (true) {
+                if (closed) {
+                    throw new IOException("Device is closed.");
+                }
+
+                final TunPacket packet = pollPacket(alloc);
+                if (packet != null) {
+                    return packet;
+                }
+
+                readRing.submitAndWait(WAIT_TIMEOUT);
+            }
+        }
+    }
+
+    @Override
+    public int readPackets(final ByteBufAllocator alloc,
+                           final TunPacket[] out,
+                           final int max) throws IOException {
+        synchronized (readRing) {
+            int count = 0;
+            while (count < max) {
+                if (closed) {
+                    throw new IOException("Device is closed.");
+                }
+
+                final TunPacket packet;
+                try {
+                    packet = pollPacket(alloc);
+                }
+                catch (final IOException e) {
+                    if (count > 0) {
+                        // pass the packets read so far. The failed completion has already been
+                        // consumed, so report the failure on the next read
+                        readFailure = e;
+                        break;
+                    }
+                    throw e;
+                }
+
+                if (packet != null) {
+                    out[count++] = packet;
+                }
+                else if (count > 0) {
+                    break;
+                }
+                else {
+                    readRing.submitAndWait(WAIT_TIMEOUT);
+                }
+            }
+            return count;
+        }
+    }
+
+    /**
+     * Returns the packet of the next completed read, if available. Throws a failure remembered by
+     * {@link #readPackets(ByteBufAllocator, TunPacket[], int)} first.
+     */
+    private TunPacket pollPacket(final ByteBufAllocator alloc) throws IOException {
+        final IOException failure = readFailure;
+        if (failure != null) {
+            readFailure = null;
+            throw failure;
+        }
+
+        rearmReleasedReadBuffers();
+        while (readRing.pollCompletion()) {
+            final int slot = (int) readRing.completionUserData();
+            final int result = readRing.completionResult();
+            readOutstanding[slot] = false;
+            if (result == -EINTR || result == -EAGAIN) {
+                prepareRead(slot);
+                continue;
+            }
+            if (result < 0) {
+                prepareRead(slot);
+                throw new IOException("Read failed: " + -result);
+            }
+
+            // hand out read buffer. It is used for the next read once it has been released
+            lentReadBuffers.incrementAndGet();
+            final ByteBuf byteBuf = readBufs[slot].setIndex(0, result);
+            return LinuxTunDevice.decodePacket(receiveCopyPolicy.apply(alloc, byteBuf), offload);
+        }
+        return null;
+    }
+
+    @Override
+    public void writePacket(final ByteBufAllocator alloc, final TunPacket msg) throws IOException {
+        // writes are submitted on flush
+        try {
+            synchronized (writeRing) {
+                if (closed) {
+                    throw new IOException("Device is closed.");
+                }
+
+                if (freeWriteSlotCount == 0) {
+                    // all write buffers are used by writes that have not been flushed yet
+                    flush();
+                }
+                queueWrite(msg, false);
+            }
+        }
+        finally {
+            msg.release();
+        }
+    }
+
+    /**
+     * Copies {@code msg} into a free write buffer and queues its write. If {@code link} is
+     * {@code true}, the write is only started once the previously queued write has succeeded.
+     */
+    private void queueWrite(final TunPacket msg, final boolean link) throws IOException {
+        final int slot = freeWriteSlots[freeWriteSlotCount - 1];
+        final int index = slot * slotSize;
+        int length = 0;
+        if (offload) {
+            // add offload information
+            msg.virtioNetHeader().encode(writeBuffersBuf, index);
+            length += VIRTIO_NET_HDR_LENGTH;
+        }
+        final ByteBuf content = msg.content();
+        final int contentLength = content.readableBytes();
+        if (length + contentLength > slotSize) {
+            throw new IOException("Packet of " + contentLength + " bytes is too large.");
+        }
+        writeBuffersBuf.setBytes(index + length, content, content.readerIndex(), contentLength);
+        length += contentLength;
+
+        if (link) {
+            writeRing.linkLast();
+        }
+        if (!writeRing.prepare(IORING_OP_WRITE_FIXED, fd, writeBuffers.share(index), length, slot, slot)) {
+            throw new IllegalStateException("Submission queue overflow.");
+        }
+        freeWriteSlotCount--;
+        queuedWrites[queuedWriteCount++] = slot;
+        writeLengths[slot] = length;
+        writeResults[slot] = WRITE_PENDING;
+    }
+
+    /**
+     * Submits all queued writes and waits until all of them have been completed. Returns the
+     * number of leading writes that have succeeded. All write buffers are free afterwards.
+     */
+    private int submitWrites() throws IOException {
+        int completed = 0;
+        while (completed < queuedWriteCount) {
+            if (closed) {
+                throw new IOException("Device is closed.");
+            }
+
+            writeRing.submitAndWait(WAIT_TIMEOUT);
+            while (writeRing.pollCompletion()) {
+                writeResults[(int) writeRing.completionUserData()] = writeRing.completionResult();
+                completed++;
+            }
+        }
+
+        int succeeded = 0;
+        while (succeeded < queuedWriteCount && writeResults[queuedWrites[succeeded]] == writeLengths[queuedWrites[succeeded]]) {
+            succeeded++;
+        }
+        for (int i = 0; i < queuedWriteCount; i++) {
+            freeWriteSlots[freeWriteSlotCount++] = queuedWrites[i];
+        }
+        queuedWriteCount = 0;
+        return succeeded;
+    }
+
+    /**
+     * Returns the failure of the write {@code index} of the last submission.
+     */
+    private IOException writeFailure(final int index) {
+        final int result = writeResults[queuedWrites[index]];
+        if (result < 0) {
+            return new IOException("Write failed: " + -result);
+        }
+        else {
+            return new IOException("Write failed: only " + result + " of " + writeLengths[queuedWrites[index]] + " bytes written.");
+        }
+    }
+
+    /**
+     * Writes all {@link TunPacket}s with a single {@code io_uring_enter} call (as long as enough
+     * write buffers are available) and waits for their completion. The writes are linked, so that
+     * a failed write cancels all subsequent writes.
+     */
+    @Override
+    public void writePackets(final ByteBufAllocator alloc,
+                             final TunPacket[] msgs,
+                             final int count) throws IOException {
+        synchronized (writeRing) {
+            int i = 0;
+            int written = 0;
+            try {
+                if (closed) {
+                    throw new IOException("Device is closed.");
+                }
+                if (queuedWriteCount > 0) {
+                    // complete writes of previous writePacket calls first
+                    flush();
+                }
+
+                while (i < count) {
+                    final int burst = Math.min(count - i, freeWriteSlotCount);
+                    IOException failure = null;
+                    for (int j = 0; j < burst && failure == null; j++) {
+                        final TunPacket msg = msgs[i++];
+                        try {
+                            queueWrite(msg, j > 0);
+                        }
+                        catch (final IOException e) {
+                            failure = e;
+                        }
+                        finally {
+                            msg.release();
+                        }
+                    }
+
+                    final int queued = queuedWriteCount;
+                    final int succeeded = submitWrites();
+                    written += succeeded;
+                    if (succeeded < queued) {
+                        throw writeFailure(succeeded);
+                    }
+                    if (failure != null) {
+                        throw failure;
+                    }
+                }
+            }
+            catch (final IOException e) {
+                if (written == 0) {
+                    throw e;
+                }
+                throw new PartialWriteException(written, e);
+            }
+            finally {
+                // release packets that have not been passed to queueWrite
+                while (i < count) {
+                    msgs[i++].release();
+                }
+            }
+        }
+    }
+
+    /**
+     * Submits all written {@link TunPacket}s and waits for their completion.
+     *
+     * @throws IOException if any write failed
+     */
+    @Override
+    public void flush() throws IOException {
+        synchronized (writeRing) {
+            if (closed) {
+                throw new IOException("Device is closed.");
+            }
+
+            final int queued = queuedWriteCount;
+            final int succeeded = submitWrites();
+            if (succeeded < queued) {
+                throw writeFailure(succeeded);
+            }
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (!closed) {
+            closed = true;
+
+            // rings are released once the reading/writing threads have left them. Buffers are
+            // freed once the kernel is no longer able to access them
+            synchronized (writeRing) {
+                final long[] pending = new long[ENTRIES];
+                int pendingCount = 0;
+                for (int i = 0; i < queuedWriteCount; i++) {
+                    if (writeResults[queuedWrites[i]] == WRITE_PENDING) {
+                        pending[pendingCount++] = queuedWrites[i];
+                    }
+                }
+                final boolean drained = cancel(writeRing, pending, pendingCount);
+                writeRing.close();
+                writeBuffersBuf.release();
+                if (drained) {
+                    writeBuffers.close();
+                }
+            }
+            synchronized (readRing) {
+                final long[] pending = new long[ENTRIES];
+                int pendingCount = 0;
+                for (int slot = 0; slot < ENTRIES; slot++) {
+                    if (readOutstanding[slot]) {
+                        pending[pendingCount++] = slot;
+                    }
+                }
+                readsDrained = cancel(readRing, pending, pendingCount);
+                readRing.close();
+                if (readsDrained && lentReadBuffers.get() == 0) {
+                    freeReadBuffers();
+                }
+            }
+            device.close();
+        }
+    }
+
+    /**
+     * Cancels the first {@code count} operations of {@code userData} outstanding on {@code ring}
+     * and waits until all of them have been completed.
+     *
+     * @return {@code false} if the operations have not been completed in time. The kernel may
+     * still access their buffers, which must therefore not be freed
+     */
+    private static boolean cancel(final IoUringRing ring, final long[] userData, final int count) {
+        try {
+            // operations queued but not submitted yet would occupy the submission queue
+            ring.submit();
+            for (int i = 0; i < count; i++) {
+                ring.prepareCancel(userData[i], CANCEL_USER_DATA);
+            }
+
+            int remaining = count;
+            final long deadline = System.nanoTime() + CLOSE_TIMEOUT;
+            while (remaining > 0 && System.nanoTime() - deadline < 0) {
+                ring.submitAndWait(WAIT_TIMEOUT);
+                while (ring.pollCompletion()) {
+                    if (ring.completionUserData() != CANCEL_USER_DATA) {
+                        remaining--;
+                    }
+                }
+            }
+            return remaining == 0;
+        }
+        catch (final IOException e) {
+            return false;
+        }
+    }
+
+    private void freeReadBuffers() {
+        if (readBuffersFreed.compareAndSet(false, true)) {
+            readBuffers.close();
+        }
+    }
+
+    /**
+     * Returns the number of read buffers held by the application.
+     */
+    int lentReadBuffers() {
+        return lentReadBuffers.get();
+    }
+
+    /**
+     * Returns {@code true} if the read buffers have been freed.
+     */
+    boolean isReadBufferFreed() {
+        return readBuffersFreed.get();
+    }
+
+    /**
+     * A registered read buffer handed out to the application. Releasing it does not free its
+     * memory, but returns it to the device.
+     */
+    private final class ReadBuffer extends UnpooledUnsafeDirectByteBuf {
+        private final int slot;
+
+        ReadBuffer(final int slot) {
+            super(UnpooledByteBufAllocator.DEFAULT, readBuffers.getByteBuffer((long) slot * slotSize, slotSize), slotSize);
+            this.slot = slot;
+        }
+
+        /**
+         * Prepares this buffer for the next read.
+         */
+        void rearm() {
+            resetRefCnt();
+            clear();
+        }
+
+        @Override
+        protected void deallocate() {
+            // memory is owned by the device
+            releasedReadBuffers.getAndAccumulate(1L << slot, (a, b) -> a | b);
+            if (lentReadBuffers.decrementAndGet() == 0 && readsDrained) {
+                freeReadBuffers();
+            }
+        }
+    }
+}
@@ -21,31 +21,57 @@
  */
 package org.drasyl.channel.tun.jna.linux;
 
+import com.sun.jna.LastErrorException;
+import com.sun.jna.Memory;
 import com.sun.jna.Native;
 import com.sun.jna.NativeLong;
+import com.sun.jna.Platform;
+import com.sun.jna.Pointer;
 import io.netty.buffer.ByteBuf;
 import io.netty.buffer.ByteBufAllocator;
+import io.netty.buffer.CompositeByteBuf;
+import io.netty.buffer.Unpooled;
+import io.netty.util.internal.PlatformDependent;
 import org.drasyl.channel.tun.Tun4Packet;
 import org.drasyl.channel.tun.Tun6Packet;
 import org.drasyl.channel.tun.TunAddress;
 import org.drasyl.channel.tun.TunPacket;
+import org.drasyl.channel.tun.VirtioNetHeader;
 import org.drasyl.channel.tun.jna.AbstractTunDevice;
+import org.drasyl.channel.tun.jna.ReceiveSlab;
 import org.drasyl.channel.tun.jna.TunDevice;
 import org.drasyl.channel.tun.jna.shared.If.Ifreq;
 import org.drasyl.channel.tun.jna.shared.LibC;
 
 import java.io.IOException;
 import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
 
 import static java.nio.charset.StandardCharsets.US_ASCII;
+import static org.drasyl.channel.tun.VirtioNetHeader.VIRTIO_NET_HDR_LENGTH;
+import static org.drasyl.channel.tun.jna.linux.Errno.EAGAIN;
+import static org.drasyl.channel.tun.jna.linux.Errno.EINTR;
+import static org.drasyl.channel.tun.jna.linux.Fcntl.F_GETFL;
+import static org.drasyl.channel.tun.jna.linux.Fcntl.F_SETFL;
+import static org.drasyl.channel.tun.jna.linux.Fcntl.O_NONBLOCK;
 import static org.drasyl.channel.tun.jna.linux.Fcntl.O_RDWR;
+import static org.drasyl.channel.tun.jna.linux.IfTun.IFF_MULTI_QUEUE;
 import static org.drasyl.channel.tun.jna.linux.IfTun.IFF_NO_PI;
 import static org.drasyl.channel.tun.jna.linux.IfTun.IFF_TUN;
+import static org.drasyl.channel.tun.jna.linux.IfTun.IFF_VNET_HDR;
 import static org.drasyl.channel.tun.jna.linux.IfTun.TUNSETIFF;
+import static org.drasyl.channel.tun.jna.linux.IfTun.TUNSETOFFLOAD;
+import static org.drasyl.channel.tun.jna.linux.IfTun.TUN_F_CSUM;
+import static org.drasyl.channel.tun.jna.linux.IfTun.TUN_F_TSO4;
+import static org.drasyl.channel.tun.jna.linux.IfTun.TUN_F_TSO6;
+import static org.drasyl.channel.tun.jna.linux.IfTun.TUN_F_TSO_ECN;
+import static org.drasyl.channel.tun.jna.linux.Poll.POLLIN;
 import static org.drasyl.channel.tun.jna.linux.Sockios.SIOCGIFMTU;
 import static org.drasyl.channel.tun.jna.linux.Sockios.SIOCSIFMTU;
 import static org.drasyl.channel.tun.jna.shared.If.IFNAMSIZ;
 import static org.drasyl.channel.tun.jna.shared.LibC.ioctl;
+import static org.drasyl.channel.tun.jna.shared.LibC.poll;
 import static org.drasyl.channel.tun.jna.shared.LibC.read;
 import static org.drasyl.channel.tun.jna.shared.LibC.socket;
 import static org.drasyl.channel.tun.jna.shared.LibC.write;
@@ -57,23 +83,188 @@ import static org.drasyl.channel.tun.jna.shared.Socket.SOCK_DGRAM;
  */
 public final class LinuxTunDevice extends AbstractTunDevice {
     private static final IllegalArgumentException ILLEGAL_NAME_EXCEPTION = new IllegalArgumentException("Device name must be an ASCII string shorter than 16 characters or null.");
+    // largest (GSO super-)packet the kernel may pass to us in offload mode
+    private static final int MAX_PACKET_SIZE = 65535;
+    private static final int OFFLOAD_FEATURES = TUN_F_CSUM | TUN_F_TSO4 | TUN_F_TSO6 | TUN_F_TSO_ECN;
+    // pass memory addresses of direct buffers to the kernel as is (see NativeIo)
+    private static final boolean ADDRESS_IO = Platform.is64Bit();
+    // size of struct iovec on 64-bit platforms
+    private static final int IOVEC_SIZE = 16;
+    // pass the nio buffers of multi-component direct buffers to the kernel via writev
+    private static final boolean GATHER_IO = ADDRESS_IO && PlatformDependent.hasUnsafe();
+    // buffers with more components are flattened before writing (far below IOV_MAX)
+    private static final int MAX_GATHER_COMPONENTS = 64;
+    private static final ByteBuf NO_OFFLOAD_HEADER_BUF = Unpooled.unreleasableBuffer(VirtioNetHeader.NONE.encode(Unpooled.directBuffer(VIRTIO_NET_HDR_LENGTH).writerIndex(VIRTIO_NET_HDR_LENGTH), 0));
     private final int fd;
-    private final NativeLong mtu;
+    private final boolean offload;
+    private final boolean nonBlocking;
+    private final NativeLong capacity;
+    // struct pollfd used to wait for the device to become readable
+    private final Memory pollFd = new Memory(8);
+    // struct iovec[2] followed by the virtio net header. Used in offload mode to read/write the
+    // header separately, so that the packet starts at the beginning of its buffer
+    private final Memory readVectors;
+    private final ByteBuf readHeader;
+    private final Memory writeVectors;
+    private final ByteBuf writeHeader;
+    // struct iovec[1 + MAX_GATHER_COMPONENTS]. In offload mode, the first vector points to the
+    // virtio net header of writeVectors
+    private final Memory gatherVectors;
+    private ReceiveSlab receiveSlab;
 
-    private LinuxTunDevice(final int fd, final int mtu, final TunAddress localAddress) {
+    LinuxTunDevice(final int fd,
+                           final int mtu,
+                           final boolean offload,
+                           final boolean nonBlocking,
+                           final TunAddress localAddress) {
         super(localAddress);
         this.fd = fd;
-        this.mtu = new NativeLong(mtu);
+        this.offload = offload;
+        this.nonBlocking = nonBlocking;
+        this.capacity = new NativeLong(offload ? VIRTIO_NET_HDR_LENGTH + MAX_PACKET_SIZE : mtu);
+        pollFd.setInt(0, fd);
+        pollFd.setShort(4, POLLIN);
+        pollFd.setShort(6, (short) 0);
+        if (offload && ADDRESS_IO) {
+            readVectors = newVectors();
+            readHeader = Unpooled.wrappedBuffer(readVectors.getByteBuffer(2L * IOVEC_SIZE, VIRTIO_NET_HDR_LENGTH));
+            writeVectors = newVectors();
+            writeHeader = Unpooled.wrappedBuffer(writeVectors.getByteBuffer(2L * IOVEC_SIZE, VIRTIO_NET_HDR_LENGTH));
+        }
+        else {
+            readVectors = null;
+            readHeader = null;
+            writeVectors = null;
+            writeHeader = null;
+        }
+        if (GATHER_IO) {
+            gatherVectors = new Memory((1L + MAX_GATHER_COMPONENTS) * IOVEC_SIZE);
+            if (writeVectors != null) {
+                gatherVectors.setLong(0, writeVectors.getLong(0));
+                gatherVectors.setLong(8, VIRTIO_NET_HDR_LENGTH);
+            }
+        }
+        else {
+            gatherVectors = null;
+        }
     }
 
-    public static TunDevice open(String name, int mtu) throws IOException {
-        if (name != null && name.isEmpty()) {
-            name = null;
+    /**
+     * Allocates a struct iovec[2] whose first vector points to the virtio net header stored right
+     * behind the vectors.
+     */
+    private static Memory newVectors() {
+        final Memory vectors = new Memory(2L * IOVEC_SIZE + VIRTIO_NET_HDR_LENGTH);
+        vectors.setLong(0, Pointer.nativeValue(vectors) + 2L * IOVEC_SIZE);
+        vectors.setLong(8, VIRTIO_NET_HDR_LENGTH);
+        return vectors;
+    }
+
+    /**
+     * Reads consecutive packets into shared direct buffers of {@code slabSize} bytes and hands out
+     * each packet as a slice of it (see {@link ReceiveSlab}). Slabs smaller than the maximum packet
+     * size are enlarged accordingly. Must be called before the first read.
+     *
+     * @param slabSize size of each slab in bytes or {@code 0} to allocate a buffer per packet
+     */
+    public void setReceiveSlabSize(final int slabSize) {
+        if (slabSize < 0) {
+            throw new IllegalArgumentException("slabSize must be non-negative.");
         }
-        if (name != null && (name.length() >= IFNAMSIZ || !US_ASCII.newEncoder().canEncode(name))) {
-            throw ILLEGAL_NAME_EXCEPTION;
+        receiveSlab = slabSize > 0 ? new ReceiveSlab(slabSize) : null;
+    }
+
+    int fd() {
+        return fd;
+    }
+
+    boolean isOffload() {
+        return offload;
+    }
+
+    /**
+     * Returns the maximum number of bytes a single read may return.
+     */
+    int capacity() {
+        return capacity.intValue();
+    }
+
+    public static TunDevice open(final String name, final int mtu) throws IOException {
+        return openQueues(name, mtu, 1, false).get(0);
+    }
+
+    /**
+     * Opens the tun device {@code name} with {@code queues} queues. If more than one queue is
+     * requested, the device is created with {@code IFF_MULTI_QUEUE} and a separate file descriptor
+     * is attached for each queue. The kernel then spreads the flows across all queues. Each queue is
+     * returned as its own {@link TunDevice} that can be read from/written to independently.
+     * <p>
+     * If {@code offload} is {@code true}, the device is created with {@code IFF_VNET_HDR} and TSO
+     * and checksum offloading is enabled. The kernel then passes GSO super-packets of up to 64 KB
+     * together with a {@link VirtioNetHeader} (see {@link TunPacket#virtioNetHeader()}).
+     *
+     * @param name    desired name of the device or {@code null}
+     * @param mtu     desired mtu or {@code 0} to use the system default
+     * @param queues  number of queues to attach
+     * @param offload enable TSO and checksum offloading
+     * @return one {@link TunDevice} for each queue
+     * @throws IOException if device could not be opened
+     */
+    public static List<TunDevice> openQueues(String name,
+                                             int mtu,
+                                             final int queues,
+                                             final boolean offload) throws IOException {
+        if (queues < 1) {
+            throw new IllegalArgumentException("queues must be positive.");
         }
+        name = validateName(name);
+
+        final int[] fds = new int[queues];
+        int opened = 0;
+        String deviceName = name;
+        try {
+            for (; opened < queues; opened++) {
+                final int fd = openFileDescriptor();
+                fds[opened] = fd;
+
+                try {
+                    // all further queues are attached to the device created by the first one
+                    deviceName = attach(fd, deviceName, queues > 1, offload);
+
+                    // reads wait via poll(2), allowing readPackets to drain all available packets
+                    setNonBlocking(fd, true);
+                }
+                catch (final LastErrorException e) {
+                    LibC.close(fd);
+                    throw e;
+                }
+            }
+
+            mtu = configureMtu(deviceName, mtu);
+        }
+        catch (final IOException | LastErrorException e) {
+            for (int i = 0; i < opened; i++) {
+                LibC.close(fds[i]);
+            }
+            throw e;
+        }
+
+        final TunAddress localAddress = new TunAddress(deviceName);
+        final List<TunDevice> devices = new ArrayList<>(queues);
+        for (final int fd : fds) {
+            devices.add(new LinuxTunDevice(fd, mtu, offload, false, localAddress));
+        }
+        return devices;
+    }
 
+    /**
+     * Opens a new file descriptor of the tun clone device. The file descriptor is not attached to
+     * any tun device yet. Use {@link #openNonBlocking(int, String, int, boolean, boolean)} to do so.
+     *
+     * @return the opened file descriptor
+     * @throws IOException if file descriptor could not be opened
+     */
+    public static int openFileDescriptor() throws IOException {
         // open tun device
         final int fd = LibC.open("/dev/net/tun", O_RDWR);
 
@@ -81,58 +272,412 @@ public final class LinuxTunDevice extends AbstractTunDevice {
             throw new IOException("Create an endpoint for communication failed.");
         }
 
-        // configure/create actual tun device
-        final Ifreq ifreq = new Ifreq(name, (short) (IFF_TUN | IFF_NO_PI));
+        return fd;
+    }
+
+    /**
+     * Attaches the file descriptor {@code fd} (see {@link #openFileDescriptor()}) to the tun device
+     * {@code name} and puts it into non-blocking mode. {@link #readPacket(ByteBufAllocator)} of the
+     * returned device will return {@code null} instead of blocking if no packet is available.
+     * <p>
+     * If {@code multiQueue} is {@code true}, the device is created with {@code IFF_MULTI_QUEUE}, so
+     * that further file descriptors can be attached to the same device.
+     * <p>
+     * Closing the returned device will close {@code fd}.
+     *
+     * @param fd         file descriptor to attach
+     * @param name       desired name of the device or {@code null}
+     * @param mtu        desired mtu or {@code 0} to use the system default
+     * @param multiQueue allow further file descriptors to be attached
+     * @param offload    enable TSO and checksum offloading
+     * @return the attached {@link TunDevice}
+     * @throws IOException if device could not be opened
+     */
+    public static LinuxTunDevice openNonBlocking(final int fd,
+                                            String name,
+                                            int mtu,
+                                            final boolean multiQueue,
+                                            final boolean offload) throws IOException {
+        name = validateName(name);
+
+        final String deviceName = attach(fd, name, multiQueue, offload);
+
+        setNonBlocking(fd, true);
+
+        mtu = configureMtu(deviceName, mtu);
+
+        return new LinuxTunDevice(fd, mtu, offload, true, new TunAddress(deviceName));
+    }
+
+    /**
+     * Enables or disables non-blocking mode of the file descriptor {@code fd}.
+     */
+    static void setNonBlocking(final int fd, final boolean nonBlocking) {
+        final int flags = LibC.fcntl(fd, F_GETFL, 0);
+        LibC.fcntl(fd, F_SETFL, nonBlocking ? flags | O_NONBLOCK : flags & ~O_NONBLOCK);
+    }
+
+    private static String validateName(final String name) {
+        if (name != null && name.isEmpty()) {
+            return null;
+        }
+        if (name != null && (name.length() >= IFNAMSIZ || !US_ASCII.newEncoder().canEncode(name))) {
+            throw ILLEGAL_NAME_EXCEPTION;
+        }
+        return name;
+    }
+
+    /**
+     * Configures/creates actual tun device and returns its name.
+     */
+    private static String attach(final int fd,
+                                 final String name,
+                                 final boolean multiQueue,
+                                 final boolean offload) {
+        short flags = IFF_TUN | IFF_NO_PI;
+        if (multiQueue) {
+            flags |= IFF_MULTI_QUEUE;
+        }
+        if (offload) {
+            flags |= IFF_VNET_HDR;
+        }
+
+        final Ifreq ifreq = new Ifreq(name, flags);
         ioctl(fd, TUNSETIFF, ifreq);
 
-        final String deviceName = Native.toString(ifreq.ifr_name, US_ASCII);
+        if (offload) {
+            // enable tso and checksum offloading
+            if (ADDRESS_IO) {
+                NativeIo.ioctl(fd, TUNSETOFFLOAD.longValue(), OFFLOAD_FEATURES);
+            }
+            else {
+                ioctl(fd, TUNSETOFFLOAD, new NativeLong(OFFLOAD_FEATURES));
+            }
+        }
+
+        return Native.toString(ifreq.ifr_name, US_ASCII);
+    }
 
+    /**
+     * Sets the mtu of the given device (if {@code mtu} is not {@code 0}) and returns its actual
+     * mtu.
+     */
+    private static int configureMtu(final String deviceName, final int mtu) {
         final int s = socket(AF_INET, SOCK_DGRAM, 0);
-        if (mtu != 0) {
-            // set mtu
-            final Ifreq ifreq2 = new Ifreq(deviceName, mtu);
-            ioctl(s, SIOCSIFMTU, ifreq2);
-            mtu = ifreq2.ifr_ifru.ifru_mtu;
+        try {
+            if (mtu != 0) {
+                // set mtu
+                final Ifreq ifreq2 = new Ifreq(deviceName, mtu);
+                ioctl(s, SIOCSIFMTU, ifreq2);
+                return ifreq2.ifr_ifru.ifru_mtu;
+            }
+            else {
+                // get mtu
+                final Ifreq ifreq2 = new Ifreq(deviceName);
+                ioctl(s, SIOCGIFMTU, ifreq2);
+                return ifreq2.ifr_ifru.ifru_mtu;
+            }
         }
-        else {
-            // get mtu
-            final Ifreq ifreq2 = new Ifreq(deviceName);
-            ioctl(s, SIOCGIFMTU, ifreq2);
-            mtu = ifreq2.ifr_ifru.ifru_mtu;
+        finally {
+            LibC.close(s);
         }
-
-        return new LinuxTunDevice(fd, mtu, new TunAddress(deviceName));
     }
 
-    @SuppressWarnings("java:S109")
     @Override
     public TunPacket readPacket(final ByteBufAllocator alloc) throws IOException {
         if (closed) {
             throw new IOException("Device is closed.");
         }
 
+        while (true) {
+            final TunPacket packet = tryReadPacket(alloc);
+            if (packet != null || nonBlocking) {
+                return packet;
+            }
+            waitReadable();
+        }
+    }
+
+    /**
+     * Reads all available packets (up to {@code max}) with one read call each, but waits only once
+     * if no packet is available.
+     */
+    @Override
+    public int readPackets(final ByteBufAllocator alloc,
+                           final TunPacket[] out,
+                           final int max) throws IOException {
+        if (closed) {
+            throw new IOException("Device is closed.");
+        }
+
+        int count = 0;
+        while (count < max) {
+            final TunPacket packet;
+            try {
+                packet = tryReadPacket(alloc);
+            }
+            catch (final IOException | LastErrorException e) {
+                if (count > 0) {
+                    // pass the packets read so far. Error will reoccur on next read
+                    break;
+                }
+                throw e;
+            }
+
+            if (packet != null) {
+                out[count++] = packet;
+            }
+            else if (count > 0 || nonBlocking) {
+                break;
+            }
+            else {
+                waitReadable();
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Reads a single packet without blocking.
+     *
+     * @return read packet or {@code null} if no packet is available
+     */
+    private TunPacket tryReadPacket(final ByteBufAllocator alloc) throws IOException {
+        final ReceiveSlab slab = receiveSlab;
+        if (slab != null) {
+            // guard against concurrent close. Read does not block
+            synchronized (slab) {
+                if (closed) {
+                    throw new IOException("Device is closed.");
+                }
+
+                // read from socket into slab behind the reserved headroom
+                final ByteBuf slabBuf = slab.next(alloc, receiveHeadroom + capacity.intValue() + receiveTailroom);
+                final boolean vectored = isVectored(slabBuf);
+                final int frameOffset = slabBuf.writerIndex();
+                final int bytesRead = read0(slabBuf, frameOffset + receiveHeadroom);
+                if (bytesRead == -1) {
+                    // no packet available
+                    return null;
+                }
+                final TunPacket packet = decodeReadPacket(slab.commit(receiveHeadroom, bytesRead, receiveTailroom), vectored);
+                return reserveReceiveRoom(packet, slabBuf, frameOffset, headerOffset(vectored));
+            }
+        }
+
         // read from socket
-        final int capacity = mtu.intValue();
-        final ByteBuf maxByteBuf = alloc.buffer(capacity).writerIndex(capacity);
-        final ByteBuffer byteBuffer = maxByteBuf.nioBuffer();
-        final int bytesRead = read(fd, byteBuffer, mtu);
+        final ByteBuf maxByteBuf = alloc.buffer(receiveHeadroom + capacity.intValue() + receiveTailroom);
+        final boolean vectored = isVectored(maxByteBuf);
+        final int bytesRead;
+        try {
+            bytesRead = read0(maxByteBuf, receiveHeadroom);
+        }
+        catch (final LastErrorException e) {
+            maxByteBuf.release();
+            throw e;
+        }
+        if (bytesRead == -1) {
+            maxByteBuf.release();
+            // no packet available
+            return null;
+        }
+
+        if (!hasReceiveRoom()) {
+            // only adjust indices. A copy is made only if requested by the policy
+            return decodeReadPacket(receiveCopyPolicy.apply(alloc, maxByteBuf.writerIndex(bytesRead)), vectored);
+        }
 
-        // shrink bytebuf to actual required size
-        final ByteBuf actualByteBuf = maxByteBuf
-                .writerIndex(bytesRead)
-                .capacity(bytesRead)
-                .slice();
+        // never copy, as this would drop the reserved room
+        final ByteBuf byteBuf = maxByteBuf.retainedSlice(receiveHeadroom, bytesRead);
+        maxByteBuf.release();
+        return reserveReceiveRoom(decodeReadPacket(byteBuf, vectored), maxByteBuf, 0, headerOffset(vectored));
+    }
+
+    /**
+     * Returns the number of bytes preceding a packet read by {@link #read0(ByteBuf, int)}.
+     */
+    private int headerOffset(final boolean vectored) {
+        return offload && !vectored ? VIRTIO_NET_HDR_LENGTH : 0;
+    }
+
+    /**
+     * Returns {@code true} if the memory of {@code buf} can be passed to the kernel by address. In
+     * offload mode, the virtio net header is then read into/written from separate memory.
+     */
+    private static boolean isVectored(final ByteBuf buf) {
+        return ADDRESS_IO && buf.hasMemoryAddress();
+    }
+
+    /**
+     * Reads a single packet into {@code buf} starting at {@code index}. {@code buf} must provide
+     * {@link #capacity()} writable bytes from there on. In offload mode, the virtio net header is
+     * read into {@link #readHeader} if {@code buf} {@link #isVectored(ByteBuf)}. Otherwise, the
+     * header precedes the packet in {@code buf}.
+     *
+     * @return number of bytes read into {@code buf} or {@code -1} if no packet is available
+     */
+    private int read0(final ByteBuf buf, final int index) {
+        if (isVectored(buf)) {
+            final long bytesRead;
+            if (offload) {
+                readVectors.setLong(IOVEC_SIZE, buf.memoryAddress() + index);
+                readVectors.setLong(IOVEC_SIZE + 8L, MAX_PACKET_SIZE);
+                bytesRead = NativeIo.readv(fd, Pointer.nativeValue(readVectors), 2);
+            }
+            else {
+                bytesRead = NativeIo.read(fd, buf.memoryAddress() + index, capacity.longValue());
+            }
+            if (bytesRead == -1) {
+                final int errno = NativeIo.errno();
+                if (errno == EAGAIN) {
+                    return -1;
+                }
+                throw new LastErrorException(errno);
+            }
+            return offload ? (int) bytesRead - VIRTIO_NET_HDR_LENGTH : (int) bytesRead;
+        }
 
+        try {
+            return read(fd, buf.nioBuffer(index, capacity.intValue()), capacity);
+        }
+        catch (final LastErrorException e) {
+            if (e.getErrorCode() == EAGAIN) {
+                return -1;
+            }
+            throw e;
+        }
+    }
+
+    /**
+     * Decodes the packet read by {@link #read0(ByteBuf, int)}.
+     */
+    private TunPacket decodeReadPacket(final ByteBuf byteBuf,
+                                       final boolean vectored) throws IOException {
+        if (vectored) {
+            return decodePacket(byteBuf, offload ? VirtioNetHeader.decode(readHeader, 0) : VirtioNetHeader.NONE);
+        }
+        return decodePacket(byteBuf, offload);
+    }
+
+    /**
+     * Writes the readable bytes of {@code buf} as a single packet.
+     */
+    private void write0(final ByteBuf buf) {
+        if (isVectored(buf)) {
+            if (NativeIo.write(fd, buf.memoryAddress() + buf.readerIndex(), buf.readableBytes()) == -1) {
+                throw new LastErrorException(NativeIo.errno());
+            }
+        }
+        else if (!writeGathered(null, buf)) {
+            final ByteBuffer byteBuffer = buf.nioBuffer();
+            write(fd, byteBuffer, new NativeLong(byteBuffer.remaining()));
+        }
+    }
+
+    /**
+     * Writes {@code header} followed by the readable bytes of {@code buf} as a single packet.
+     * {@code buf} must be {@link #isVectored(ByteBuf)}.
+     */
+    private void writeVectored(final VirtioNetHeader header, final ByteBuf buf) {
+        header.encode(writeHeader, 0);
+        writeVectors.setLong(IOVEC_SIZE, buf.memoryAddress() + buf.readerIndex());
+        writeVectors.setLong(IOVEC_SIZE + 8L, buf.readableBytes());
+        if (NativeIo.writev(fd, Pointer.nativeValue(writeVectors), 2) == -1) {
+            throw new LastErrorException(NativeIo.errno());
+        }
+    }
+
+    /**
+     * Writes {@code header} (if not {@code null}) followed by the readable bytes of {@code buf} as a
+     * single packet by passing each of the {@link ByteBuf#nioBuffers()} of {@code buf} to writev.
+     * Multi-component buffers (e.g. a {@link CompositeByteBuf} of an encapsulation header and its
+     * payload) thus reach the kernel without being flattened into a copy first.
+     *
+     * @return {@code false} if nothing has been written, as {@code buf} does not consist of
+     * multiple direct buffers
+     */
+    private boolean writeGathered(final VirtioNetHeader header, final ByteBuf buf) {
+        final int nioBufferCount = buf.nioBufferCount();
+        if (!GATHER_IO || nioBufferCount < 2 || nioBufferCount > MAX_GATHER_COMPONENTS) {
+            return false;
+        }
+
+        final ByteBuffer[] nioBuffers = buf.nioBuffers();
+        for (final ByteBuffer nioBuffer : nioBuffers) {
+            if (!nioBuffer.isDirect()) {
+                return false;
+            }
+        }
+        int iovcnt = 1;
+        for (final ByteBuffer nioBuffer : nioBuffers) {
+            if (nioBuffer.hasRemaining()) {
+                final long offset = (long) iovcnt * IOVEC_SIZE;
+                gatherVectors.setLong(offset, PlatformDependent.directBufferAddress(nioBuffer) + nioBuffer.position());
+                gatherVectors.setLong(offset + 8, nioBuffer.remaining());
+                iovcnt++;
+            }
+        }
+
+        final long bytesWritten;
+        if (header != null) {
+            header.encode(writeHeader, 0);
+            bytesWritten = NativeIo.writev(fd, Pointer.nativeValue(gatherVectors), iovcnt);
+        }
+        else {
+            bytesWritten = NativeIo.writev(fd, Pointer.nativeValue(gatherVectors) + IOVEC_SIZE, iovcnt - 1);
+        }
+        if (bytesWritten == -1) {
+            throw new LastErrorException(NativeIo.errno());
+        }
+        return true;
+    }
+
+    /**
+     * Blocks until the device becomes readable.
+     */
+    private void waitReadable() {
+        try {
+            poll(pollFd, 1, -1);
+        }
+        catch (final LastErrorException e) {
+            if (e.getErrorCode() != EINTR) {
+                throw e;
+            }
+        }
+    }
+
+    /**
+     * Decodes {@code byteBuf} holding a packet read from a tun device into a {@link TunPacket}. If
+     * {@code offload} is {@code true}, {@code byteBuf} is expected to start with a
+     * {@link VirtioNetHeader}.
+     */
+    static TunPacket decodePacket(final ByteBuf byteBuf, final boolean offload) throws IOException {
+        if (!offload) {
+            return decodePacket(byteBuf, VirtioNetHeader.NONE);
+        }
+
+        // extract offload information
+        final VirtioNetHeader header = VirtioNetHeader.decode(byteBuf, 0);
+        return decodePacket(byteBuf.readerIndex(VIRTIO_NET_HDR_LENGTH).slice(), header);
+    }
+
+    /**
+     * Decodes {@code byteBuf} holding a packet starting at index {@code 0} into a pooled
+     * {@link TunPacket} with the given offload information.
+     */
+    static TunPacket decodePacket(final ByteBuf byteBuf,
+                                  final VirtioNetHeader header) throws IOException {
         // extract ip version
-        final int version = Byte.toUnsignedInt(actualByteBuf.getByte(0)) >> 4;
+        final int version = byteBuf.getUnsignedByte(0) >> 4;
 
         if (version == 4) {
-            return new Tun4Packet(actualByteBuf);
+            return Tun4Packet.newInstance(byteBuf, header);
         }
         else if (version == 6) {
-            return new Tun6Packet(actualByteBuf);
+            return Tun6Packet.newInstance(byteBuf, header);
         }
         else {
+            byteBuf.release();
             throw new IOException("Unknown protocol: " + version);
         }
     }
@@ -140,14 +685,43 @@ public final class LinuxTunDevice extends AbstractTunDevice {
     @Override
     public void writePacket(final ByteBufAllocator alloc, final TunPacket msg) throws IOException {
         if (closed) {
+            msg.release();
             throw new IOException("Device is closed.");
         }
 
-        // write to socket
-        final ByteBuffer byteBuffer = msg.content().nioBuffer();
-        write(fd, byteBuffer, new NativeLong(byteBuffer.remaining()));
-
-        msg.release();
+        try {
+            final ByteBuf content = msg.content();
+            if (!offload) {
+                // write to socket
+                write0(content);
+            }
+            else if (isVectored(content)) {
+                // write offload information and packet at once
+                writeVectored(msg.virtioNetHeader(), content);
+            }
+            else if (!writeGathered(msg.virtioNetHeader(), content)) {
+                // add offload information
+                final VirtioNetHeader header = msg.virtioNetHeader();
+                final ByteBuf headerBuf;
+                if (header.equals(VirtioNetHeader.NONE)) {
+                    headerBuf = NO_OFFLOAD_HEADER_BUF;
+                }
+                else {
+                    headerBuf = header.encode(alloc.buffer(VIRTIO_NET_HDR_LENGTH).writerIndex(VIRTIO_NET_HDR_LENGTH), 0);
+                }
+                final CompositeByteBuf byteBuf = alloc.compositeBuffer(2).addComponents(true, headerBuf, content.retain());
+                try {
+                    // write to socket
+                    write0(byteBuf);
+                }
+                finally {
+                    byteBuf.release();
+                }
+            }
+        }
+        finally {
+            msg.release();
+        }
     }
 
     @Override
@@ -157,6 +731,13 @@ public final class LinuxTunDevice extends AbstractTunDevice {
 
             // close tun device
             LibC.close(fd);
+
+            final ReceiveSlab slab = receiveSlab;
+            if (slab != null) {
+                synchronized (slab) {
+                    slab.release();
+                }
+            }
         }
     }
 }
@@ -0,0 +1,88 @@
+/*
+ * Copyright (c) 2021-2022 Heiko Bornholdt and Kevin Röbert
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ * IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM,
+ * DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR
+ * OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE
+ * OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package org.drasyl.channel.tun.jna.linux;
+
+import com.sun.jna.LastErrorException;
+import com.sun.jna.Native;
+import com.sun.jna.Platform;
+
+/**
+ * Binds the system calls on the hot path of {@link LinuxTunDevice}. Memory is passed as raw
+ * addresses (e.g. of direct {@link io.netty.buffer.ByteBuf}s), so that no
+ * {@link java.nio.ByteBuffer} views or {@link com.sun.jna.NativeLong}s have to be created per call.
+ * Requires a 64-bit platform.
+ * <p>
+ * To keep the hot path free of exceptions (e.g. for {@code EAGAIN}), {@code read}, {@code write},
+ * {@code readv}, and {@code writev} return {@code -1} on failure and leave the error number to
+ * {@link #errno()}.
+ * <p>
+ * This implementation uses JNA direct mapping. On Java 22 and newer, it is replaced by an
+ * implementation based on the Foreign Function & Memory API (see {@code src/main/java22}).
+ */
+final class NativeIo {
+    static {
+        Native.register(Platform.C_LIBRARY_NAME);
+    }
+
+    private NativeIo() {
+        // JNA mapping
+    }
+
+    /**
+     * Returns the name of the binding in use.
+     */
+    static String binding() {
+        return "JNA";
+    }
+
+    /**
+     * Returns the error number of the last failed call of the current thread.
+     */
+    static int errno() {
+        return Native.getLastError();
+    }
+
+    // https://man7.org/linux/man-pages/man2/read.2.html
+    static native long read(final int fd,
+                            final long buf,
+                            final long count);
+
+    // https://man7.org/linux/man-pages/man2/write.2.html
+    static native long write(final int fd,
+                             final long buf,
+                             final long count);
+
+    // https://man7.org/linux/man-pages/man2/readv.2.html
+    static native long readv(final int fd,
+                             final long iov,
+                             final int iovcnt);
+
+    // https://man7.org/linux/man-pages/man2/writev.2.html
+    static native long writev(final int fd,
+                              final long iov,
+                              final int iovcnt);
+
+    // https://man7.org/linux/man-pages/man2/ioctl.2.html
+    static native int ioctl(final int fd,
+                            final long request,
+                            final long arg) throws LastErrorException;
+}
@@ -25,6 +25,7 @@ import com.sun.jna.LastErrorException;
 import com.sun.jna.Native;
 import com.sun.jna.NativeLong;
 import com.sun.jna.Platform;
+import com.sun.jna.Pointer;
 import com.sun.jna.Structure;
 import com.sun.jna.ptr.IntByReference;
 
@@ -48,6 +49,26 @@ public final class LibC {
     // https://www.freebsd.org/cgi/man.cgi?query=close&sektion=2
     public static native int close(final int fd) throws LastErrorException;
 
+    // https://www.freebsd.org/cgi/man.cgi?query=dup2&sektion=2
+    public static native int dup2(final int oldd, final int newd) throws LastErrorException;
+
+    // https://www.freebsd.org/cgi/man.cgi?query=poll&sektion=2
+    public static native int poll(final Pointer fds,
+                                  final int nfds,
+                                  final int timeout) throws LastErrorException;
+
+    // https://www.freebsd.org/cgi/man.cgi?query=mmap&sektion=2
+    public static native Pointer mmap(final Pointer addr,
+                                      final NativeLong len,
+                                      final int prot,
+                                      final int flags,
+                                      final int fd,
+                                      final NativeLong offset) throws LastErrorException;
+
+    // https://www.freebsd.org/cgi/man.cgi?query=munmap&sektion=2
+    public static native int munmap(final Pointer addr,
+                                    final NativeLong len) throws LastErrorException;
+
     // https://www.freebsd.org/cgi/man.cgi?query=read&sektion=2
     public static native int read(final int fd,
                                   final byte[] buf,
@@ -68,6 +89,11 @@ public final class LibC {
                                    final ByteBuffer buf,
                                    final NativeLong nbytes) throws LastErrorException;
 
+    // https://www.freebsd.org/cgi/man.cgi?query=fcntl&sektion=2
+    public static native int fcntl(final int fd,
+                                   final int cmd,
+                                   final int arg) throws LastErrorException;
+
     /**
      * socket() creates an endpoint for communication and returns a descriptor.
      * <p>
@@ -325,4 +351,11 @@ public final class LibC {
     public static native int ioctl(final int fildes,
                                    final NativeLong request,
                                    final Structure argp) throws LastErrorException;
+
+    /**
+     * Same as {@link #ioctl(int, NativeLong, Structure)}, but passes {@code arg} by value.
+     */
+    public static native int ioctl(final int fildes,
+                                   final NativeLong request,
+                                   final NativeLong arg) throws LastErrorException;
 }
@@ -113,17 +113,18 @@ public final class WindowsTunDevice extends AbstractTunDevice {
                 // extract ip version
                 final int ipVersion = packetPointer.getByte(0) >> 4;
 
-                // shrink bytebuf to actual required size
+                // shrink bytebuf to actual required size plus the reserved room
                 final int PacketSize = packetSizePointer.getInt(0);
-                final ByteBuf byteBuf = alloc.buffer(PacketSize);
-                byteBuf.writeBytes(packetPointer.getByteArray(0, PacketSize));
+                final ByteBuf frame = alloc.buffer(receiveHeadroom + PacketSize + receiveTailroom);
+                frame.writerIndex(receiveHeadroom).writeBytes(packetPointer.getByteArray(0, PacketSize));
                 WintunReleaseReceivePacket(session, packetPointer);
+                final ByteBuf byteBuf = hasReceiveRoom() ? frame.slice(receiveHeadroom, PacketSize) : frame;
 
                 if (ipVersion == 4) {
-                    return new Tun4Packet(byteBuf);
+                    return reserveReceiveRoom(Tun4Packet.newInstance(byteBuf), frame, 0, 0);
                 }
                 else {
-                    return new Tun6Packet(byteBuf);
+                    return reserveReceiveRoom(Tun6Packet.newInstance(byteBuf), frame, 0, 0);
                 }
             }
             catch (final LastErrorException e) {
@@ -0,0 +1,107 @@
+/*
+ * Copyright (c) 2021-2022 Heiko Bornholdt and Kevin Röbert
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ * IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM,
+ * DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR
+ * OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE
+ * OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package org.drasyl.channel.tun;
+
+import io.netty.buffer.ByteBuf;
+import jdk.incubator.vector.LongVector;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorSpecies;
+
+import java.lang.foreign.MemorySegment;
+import java.nio.ByteOrder;
+
+import static io.netty.util.internal.MathUtil.isOutOfBounds;
+import static java.lang.foreign.ValueLayout.JAVA_BYTE;
+import static java.lang.foreign.ValueLayout.JAVA_INT_UNALIGNED;
+import static java.lang.foreign.ValueLayout.JAVA_SHORT_UNALIGNED;
+
+/**
+ * Sums up large buffers for {@link InetChecksum} with the Vector API. The buffer is loaded in
+ * native byte order into vectors of 64-bit lanes. Each lane is split into its two 32-bit halves,
+ * which are added to a 64-bit accumulator lane, so that no carries get lost. Buffers without
+ * array or memory address (e.g. composite buffers) are summed up by {@link ChecksumSummer#SCALAR}.
+ * <p>
+ * The Vector API is still incubating, so this class is only instantiated by
+ * {@link ChecksumSummer#load()} if the {@code jdk.incubator.vector} module has been added to the
+ * runtime (e.g. {@code --add-modules jdk.incubator.vector}).
+ */
+@SuppressWarnings("java:S109")
+final class VectorizedChecksum implements ChecksumSummer {
+    VectorizedChecksum() {
+        // instantiated by ChecksumSummer#load()
+    }
+
+    @Override
+    public long sum(final ByteBuf buf, final int index, final int length) {
+        if (!buf.hasMemoryAddress() && !buf.hasArray()) {
+            return SCALAR.sum(buf, index, length);
+        }
+        if (isOutOfBounds(index, length, buf.capacity())) {
+            throw new IndexOutOfBoundsException("index: " + index + ", length: " + length + " (expected: range(0, " + buf.capacity() + "))");
+        }
+        final MemorySegment segment;
+        if (buf.hasMemoryAddress()) {
+            segment = MemorySegment.ofAddress(buf.memoryAddress() + index).reinterpret(length);
+        }
+        else {
+            segment = MemorySegment.ofArray(buf.array()).asSlice(buf.arrayOffset() + (long) index, length);
+        }
+        return InetChecksum.toNetworkOrder(InetChecksum.fold(Vectors.sum(segment)));
+    }
+
+    /**
+     * Holds the Vector API usages, so that they are only linked if the module is present.
+     */
+    private static final class Vectors {
+        private static final VectorSpecies<Long> SPECIES = LongVector.SPECIES_PREFERRED;
+        private static final ByteOrder ORDER = ByteOrder.nativeOrder();
+
+        private Vectors() {
+            // util class
+        }
+
+        static long sum(final MemorySegment segment) {
+            final long length = segment.byteSize();
+            final long bound = length - length % SPECIES.vectorByteSize();
+            LongVector acc = LongVector.zero(SPECIES);
+            long i = 0;
+            for (; i < bound; i += SPECIES.vectorByteSize()) {
+                final LongVector words = LongVector.fromMemorySegment(SPECIES, segment, i, ORDER);
+                acc = acc.add(words.and(0xffffffffL)).add(words.lanewise(VectorOperators.LSHR, 32));
+            }
+            long sum = acc.reduceLanes(VectorOperators.ADD);
+            for (; i <= length - 4; i += 4) {
+                sum += segment.get(JAVA_INT_UNALIGNED, i) & 0xffffffffL;
+            }
+            if (i <= length - 2) {
+                sum += segment.get(JAVA_SHORT_UNALIGNED, i) & 0xffff;
+                i += 2;
+            }
+            if (i < length) {
+                // pad odd byte
+                final int b = segment.get(JAVA_BYTE, i) & 0xff;
+                sum += ORDER == ByteOrder.BIG_ENDIAN ? b << 8 : b;
+            }
+            return sum;
+        }
+    }
+}
@@ -0,0 +1,146 @@
+/*
+ * Copyright (c) 2021-2022 Heiko Bornholdt and Kevin Röbert
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ * IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM,
+ * DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR
+ * OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE
+ * OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package org.drasyl.channel.tun.jna.linux;
+
+import com.sun.jna.LastErrorException;
+
+import java.lang.foreign.Arena;
+import java.lang.foreign.FunctionDescriptor;
+import java.lang.foreign.Linker;
+import java.lang.foreign.MemoryLayout.PathElement;
+import java.lang.foreign.MemorySegment;
+import java.lang.foreign.StructLayout;
+import java.lang.invoke.MethodHandle;
+
+import static java.lang.foreign.ValueLayout.JAVA_INT;
+import static java.lang.foreign.ValueLayout.JAVA_LONG;
+
+/**
+ * Binds the system calls on the hot path of {@link LinuxTunDevice}. Memory is passed as raw
+ * addresses (e.g. of direct {@link io.netty.buffer.ByteBuf}s), so that no
+ * {@link java.nio.ByteBuffer} views have to be created per call. Requires a 64-bit platform.
+ * <p>
+ * This implementation uses downcall handles of the Foreign Function & Memory API. Addresses are
+ * passed as {@code long}s, which share the calling convention of pointers on all supported 64-bit
+ * platforms.
+ * <p>
+ * To keep the hot path free of exceptions (e.g. for {@code EAGAIN}), {@code read}, {@code write},
+ * {@code readv}, and {@code writev} return {@code -1} on failure and leave the error number to
+ * {@link #errno()}. The error number is captured per thread.
+ */
+final class NativeIo {
+    private static final Linker LINKER = Linker.nativeLinker();
+    private static final StructLayout CAPTURE_STATE_LAYOUT = Linker.Option.captureStateLayout();
+    private static final long ERRNO_OFFSET = CAPTURE_STATE_LAYOUT.byteOffset(PathElement.groupElement("errno"));
+    private static final ThreadLocal<MemorySegment> CAPTURE_STATE = ThreadLocal.withInitial(() -> Arena.ofAuto().allocate(CAPTURE_STATE_LAYOUT));
+    private static final MethodHandle READ = downcall("read", FunctionDescriptor.of(JAVA_LONG, JAVA_INT, JAVA_LONG, JAVA_LONG));
+    private static final MethodHandle WRITE = downcall("write", FunctionDescriptor.of(JAVA_LONG, JAVA_INT, JAVA_LONG, JAVA_LONG));
+    private static final MethodHandle READV = downcall("readv", FunctionDescriptor.of(JAVA_LONG, JAVA_INT, JAVA_LONG, JAVA_INT));
+    private static final MethodHandle WRITEV = downcall("writev", FunctionDescriptor.of(JAVA_LONG, JAVA_INT, JAVA_LONG, JAVA_INT));
+    private static final MethodHandle IOCTL = downcall("ioctl", FunctionDescriptor.of(JAVA_INT, JAVA_INT, JAVA_LONG, JAVA_LONG), Linker.Option.firstVariadicArg(2));
+
+    private NativeIo() {
+        // FFM mapping
+    }
+
+    private static MethodHandle downcall(final String name,
+                                         final FunctionDescriptor function,
+                                         final Linker.Option... options) {
+        final MemorySegment symbol = LINKER.defaultLookup().find(name).orElseThrow(() -> new UnsatisfiedLinkError("Symbol not found: " + name));
+        final Linker.Option[] allOptions = new Linker.Option[options.length + 1];
+        allOptions[0] = Linker.Option.captureCallState("errno");
+        System.arraycopy(options, 0, allOptions, 1, options.length);
+        return LINKER.downcallHandle(symbol, function, allOptions);
+    }
+
+    /**
+     * Returns the error number of the last failed call of the current thread.
+     */
+    static int errno() {
+        return CAPTURE_STATE.get().get(JAVA_INT, ERRNO_OFFSET);
+    }
+
+    /**
+     * Returns the name of the binding in use.
+     */
+    static String binding() {
+        return "FFM";
+    }
+
+    // https://man7.org/linux/man-pages/man2/read.2.html
+    static long read(final int fd, final long buf, final long count) {
+        try {
+            return (long) READ.invokeExact(CAPTURE_STATE.get(), fd, buf, count);
+        }
+        catch (final Throwable e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    // https://man7.org/linux/man-pages/man2/write.2.html
+    static long write(final int fd, final long buf, final long count) {
+        try {
+            return (long) WRITE.invokeExact(CAPTURE_STATE.get(), fd, buf, count);
+        }
+        catch (final Throwable e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    // https://man7.org/linux/man-pages/man2/readv.2.html
+    static long readv(final int fd, final long iov, final int iovcnt) {
+        try {
+            return (long) READV.invokeExact(CAPTURE_STATE.get(), fd, iov, iovcnt);
+        }
+        catch (final Throwable e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    // https://man7.org/linux/man-pages/man2/writev.2.html
+    static long writev(final int fd, final long iov, final int iovcnt) {
+        try {
+            return (long) WRITEV.invokeExact(CAPTURE_STATE.get(), fd, iov, iovcnt);
+        }
+        catch (final Throwable e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    // https://man7.org/linux/man-pages/man2/ioctl.2.html
+    static int ioctl(final int fd, final long request, final long arg) {
+        final MemorySegment state = CAPTURE_STATE.get();
+        try {
+            final int result = (int) IOCTL.invokeExact(state, fd, request, arg);
+            if (result == -1) {
+                throw new LastErrorException(state.get(JAVA_INT, ERRNO_OFFSET));
+            }
+            return result;
+        }
+        catch (final LastErrorException e) {
+            throw e;
+        }
+        catch (final Throwable e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
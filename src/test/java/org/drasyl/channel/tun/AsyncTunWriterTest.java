@@ -0,0 +1,239 @@
+/*
+ * Copyright (c) 2021-2022 Heiko Bornholdt and Kevin Röbert
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ * IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM,
+ * DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR
+ * OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE
+ * OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package org.drasyl.channel.tun;
+
+import io.netty.buffer.ByteBufAllocator;
+import io.netty.buffer.Unpooled;
+import io.netty.buffer.UnpooledByteBufAllocator;
+import io.netty.channel.DefaultEventLoop;
+import io.netty.channel.EventLoop;
+import org.drasyl.channel.tun.jna.TunDevice;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class AsyncTunWriterTest {
+    private final EventLoop executor = new DefaultEventLoop();
+    private final RecordingDevice device = new RecordingDevice();
+    private final CountDownLatch writable = new CountDownLatch(1);
+    private final List<Throwable> errors = new CopyOnWriteArrayList<>();
+
+    @AfterEach
+    void tearDown() {
+        device.unblock.countDown();
+        executor.shutdownGracefully(0, 1, TimeUnit.SECONDS).syncUninterruptibly();
+    }
+
+    @Test
+    void shouldWriteAllPacketsInOrder() throws InterruptedException {
+        device.unblock.countDown();
+        final AsyncTunWriter writer = newWriter(1024, 0);
+        final List<TunPacket> packets = new ArrayList<>();
+        for (int i = 0; i < 100; i++) {
+            final TunPacket packet = packet(20 + i);
+            packets.add(packet);
+            assertTrue(writer.offer(packet));
+        }
+
+        executor.submit(() -> null).await();
+
+        assertEquals(packets, device.written);
+        assertEquals(0, writer.pendingBytes());
+        for (final TunPacket packet : packets) {
+            assertEquals(0, packet.refCnt());
+        }
+    }
+
+    @Test
+    void shouldRejectPacketsIfQueueIsFull() {
+        final AsyncTunWriter writer = newWriter(4, 0);
+
+        // first packet is taken by the blocked writer, further packets fill the queue
+        assertTrue(writer.offer(packet(20)));
+        awaitBlocked();
+        for (int i = 0; i < 4; i++) {
+            assertTrue(writer.offer(packet(20)));
+        }
+        final TunPacket rejected = packet(20);
+
+        assertFalse(writer.offer(rejected));
+        assertEquals(1, rejected.refCnt());
+        rejected.release();
+    }
+
+    @Test
+    void shouldNotifyStalledProducerOnceCaughtUp() throws InterruptedException {
+        final AsyncTunWriter writer = newWriter(64, 100);
+        for (int i = 0; i < 10; i++) {
+            assertTrue(writer.offer(packet(100)));
+        }
+        awaitBlocked();
+
+        assertEquals(1000, writer.pendingBytes());
+        assertTrue(writer.stall());
+        assertFalse(writable.await(100, TimeUnit.MILLISECONDS));
+
+        device.unblock.countDown();
+
+        assertTrue(writable.await(5, TimeUnit.SECONDS));
+    }
+
+    @Test
+    void stallShouldFailIfWriterHasAlreadyCaughtUp() throws InterruptedException {
+        device.unblock.countDown();
+        final AsyncTunWriter writer = newWriter(64, 100);
+        assertTrue(writer.offer(packet(100)));
+        executor.submit(() -> null).await();
+
+        assertFalse(writer.stall());
+        assertEquals(1, writable.getCount());
+    }
+
+    @Test
+    void shouldReportWriteFailures() throws InterruptedException {
+        device.unblock.countDown();
+        device.fail = true;
+        final AsyncTunWriter writer = newWriter(64, 0);
+        final TunPacket packet = packet(20);
+
+        assertTrue(writer.offer(packet));
+        executor.submit(() -> null).await();
+
+        assertEquals(1, errors.size());
+        assertEquals(0, packet.refCnt());
+    }
+
+    @Test
+    void closeShouldReleaseQueuedPackets() throws InterruptedException {
+        final AsyncTunWriter writer = newWriter(64, 0);
+        assertTrue(writer.offer(packet(20)));
+        awaitBlocked();
+        final TunPacket queued = packet(20);
+        assertTrue(writer.offer(queued));
+
+        writer.close(() -> {
+        });
+        device.unblock.countDown();
+        executor.submit(() -> null).await();
+
+        assertEquals(0, queued.refCnt());
+        assertFalse(writer.offer(packet(20)));
+        assertEquals(0, writer.pendingBytes());
+    }
+
+    @Test
+    void closeShouldNotifyOnceWriterHasLeftDevice() throws InterruptedException {
+        final AsyncTunWriter writer = newWriter(64, 0);
+        assertTrue(writer.offer(packet(20)));
+        awaitBlocked();
+        final CountDownLatch closed = new CountDownLatch(1);
+
+        writer.close(closed::countDown);
+
+        assertFalse(closed.await(100, TimeUnit.MILLISECONDS));
+        device.unblock.countDown();
+        assertTrue(closed.await(5, TimeUnit.SECONDS));
+        assertEquals(1, device.written.size());
+    }
+
+    @Test
+    void shouldRejectNonPositiveCapacity() {
+        final ByteBufAllocator alloc = UnpooledByteBufAllocator.DEFAULT;
+        assertThrows(IllegalArgumentException.class, () -> new AsyncTunWriter(device, alloc, executor, 0, 0, 16, () -> {
+        }, errors::add));
+    }
+
+    private AsyncTunWriter newWriter(final int capacity, final int lowWaterMark) {
+        return new AsyncTunWriter(device, UnpooledByteBufAllocator.DEFAULT, executor, capacity, lowWaterMark, 16, writable::countDown, errors::add);
+    }
+
+    private void awaitBlocked() {
+        try {
+            assertTrue(device.blocked.await(5, TimeUnit.SECONDS));
+        }
+        catch (final InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new AssertionError(e);
+        }
+    }
+
+    private static TunPacket packet(final int length) {
+        return new Tun4Packet(Unpooled.buffer(length).writeByte(0x45).writeZero(length - 1));
+    }
+
+    /**
+     * Records written packets. Writes block until {@link #unblock} is counted down.
+     */
+    private static class RecordingDevice implements TunDevice {
+        final List<TunPacket> written = new CopyOnWriteArrayList<>();
+        final CountDownLatch blocked = new CountDownLatch(1);
+        final CountDownLatch unblock = new CountDownLatch(1);
+        volatile boolean fail;
+
+        @Override
+        public TunAddress localAddress() {
+            return new TunAddress("recording");
+        }
+
+        @Override
+        public TunPacket readPacket(final ByteBufAllocator alloc) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public void writePacket(final ByteBufAllocator alloc, final TunPacket msg) throws IOException {
+            blocked.countDown();
+            try {
+                unblock.await();
+            }
+            catch (final InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            msg.release();
+            if (fail) {
+                throw new IOException("Write failed.");
+            }
+            written.add(msg);
+        }
+
+        @Override
+        public boolean isClosed() {
+            return false;
+        }
+
+        @Override
+        public void close() {
+            // do nothing
+        }
+    }
+}
@@ -0,0 +1,105 @@
+/*
+ * Copyright (c) 2021-2022 Heiko Bornholdt and Kevin Röbert
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ * IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM,
+ * DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR
+ * OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE
+ * OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package org.drasyl.channel.tun;
+
+import io.netty.buffer.DefaultByteBufHolder;
+import io.netty.buffer.Unpooled;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class BurstSizerTest {
+    private final BurstSizer sizer = new BurstSizer(16);
+
+    @Test
+    void shouldReadSinglePacketIfPacketSizeIsUnknown() {
+        assertEquals(0, sizer.packetSize());
+        assertEquals(1, sizer.burstSize(65536));
+    }
+
+    @Test
+    void shouldReadAtLeastOnePacketIfBytesAreLessThanOnePacket() {
+        sizer.record(packets(1000, 1000));
+
+        assertEquals(1, sizer.burstSize(999));
+        assertEquals(1, sizer.burstSize(1));
+    }
+
+    @Test
+    void shouldReadAtLeastOnePacketIfBytesAreExhausted() {
+        sizer.record(packets(1000));
+
+        assertEquals(1, sizer.burstSize(0));
+        assertEquals(1, sizer.burstSize(-500));
+    }
+
+    @Test
+    void shouldRoundUpToWholePackets() {
+        sizer.record(packets(1000));
+
+        assertEquals(2, sizer.burstSize(2000));
+        assertEquals(3, sizer.burstSize(2001));
+    }
+
+    @Test
+    void shouldNotExceedMaxBurstSize() {
+        sizer.record(packets(1000));
+
+        assertEquals(16, sizer.burstSize(17_000));
+        assertEquals(16, sizer.burstSize(Integer.MAX_VALUE));
+    }
+
+    @Test
+    void recordShouldReturnBytesAndAveragePacketSize() {
+        final List<Object> msgs = packets(100, 200, 300);
+        msgs.add("not a packet");
+
+        assertEquals(600, sizer.record(msgs));
+        assertEquals(150, sizer.packetSize());
+    }
+
+    @Test
+    void recordShouldReturnAtLeastOneByte() {
+        assertEquals(1, sizer.record(new ArrayList<>()));
+        assertEquals(1, sizer.packetSize());
+
+        assertEquals(1, sizer.record(packets(0)));
+        assertEquals(1, sizer.packetSize());
+    }
+
+    @Test
+    void shouldRejectNonPositiveMaxBurstSize() {
+        assertThrows(IllegalArgumentException.class, () -> new BurstSizer(0));
+    }
+
+    private static List<Object> packets(final int... sizes) {
+        final List<Object> msgs = new ArrayList<>();
+        for (final int size : sizes) {
+            msgs.add(new DefaultByteBufHolder(Unpooled.wrappedBuffer(new byte[size])));
+        }
+        return msgs;
+    }
+}
@@ -0,0 +1,318 @@
+/*
+ * Copyright (c) 2021-2022 Heiko Bornholdt and Kevin Röbert
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ * IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM,
+ * DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR
+ * OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE
+ * OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package org.drasyl.channel.tun;
+
+import com.sun.jna.NativeLong;
+import io.netty.buffer.Unpooled;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelInboundHandlerAdapter;
+import io.netty.channel.EventLoopGroup;
+import io.netty.channel.nio.NioEventLoopGroup;
+import org.drasyl.channel.tun.jna.linux.LinuxTunDevice;
+import org.drasyl.channel.tun.jna.shared.If.Ifreq;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIf;
+
+import java.io.IOException;
+import java.net.BindException;
+import java.net.DatagramPacket;
+import java.net.Inet6Address;
+import java.net.InetAddress;
+import java.net.MulticastSocket;
+import java.net.NetworkInterface;
+import java.net.UnknownHostException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import static org.drasyl.channel.tun.jna.shared.LibC.close;
+import static org.drasyl.channel.tun.jna.shared.LibC.ioctl;
+import static org.drasyl.channel.tun.jna.shared.LibC.socket;
+import static org.drasyl.channel.tun.jna.shared.Socket.AF_INET;
+import static org.drasyl.channel.tun.jna.shared.Socket.SOCK_DGRAM;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.junit.jupiter.api.Assumptions.assumeFalse;
+
+/**
+ * Requires the permission to create tun devices.
+ */
+@EnabledIf("isAvailable")
+class EpollTunChannelTest {
+    // from <linux/sockios.h> and <net/if.h>
+    private static final NativeLong SIOCSIFFLAGS = new NativeLong(0x8914L);
+    private static final short IFF_UP = 0x1;
+    private EventLoopGroup group;
+
+    @BeforeEach
+    void setUp() {
+        group = new NioEventLoopGroup(1);
+    }
+
+    @AfterEach
+    void tearDown() {
+        group.shutdownGracefully(0, 1, TimeUnit.SECONDS).syncUninterruptibly();
+    }
+
+    @Test
+    void shouldPassPacketsBetweenDeviceAndPipeline() throws InterruptedException, IOException {
+        final BlockingQueue<TunPacket> reads = new LinkedBlockingQueue<>();
+        final EpollTunChannel channel = new EpollTunChannel();
+        channel.pipeline().addLast(new ChannelInboundHandlerAdapter() {
+            @Override
+            public void channelRead(final ChannelHandlerContext ctx, final Object msg) {
+                reads.add((TunPacket) msg);
+            }
+        });
+        group.register(channel).sync();
+        channel.bind(new TunAddress("epolltest0")).sync();
+        try {
+            assertTrue(channel.isActive());
+            assertEquals("epolltest0", ((TunAddress) channel.localAddress()).ifName());
+
+            up("epolltest0");
+            final TunPacket packet = new Tun4Packet(Unpooled.buffer(20).writeByte(0x45).writeZero(19));
+            assertTrue(channel.writeAndFlush(packet).await().isSuccess());
+            assertEquals(0, packet.refCnt());
+
+            // once up, the host announces itself via ipv6 (e.g. router solicitations)
+            assumeFalse("1".equals(Files.readString(Path.of("/proc/sys/net/ipv6/conf/epolltest0/disable_ipv6")).trim()));
+            final TunPacket read = reads.poll(10, TimeUnit.SECONDS);
+            assertNotNull(read);
+            assertEquals(6, read.version());
+            read.release();
+        }
+        finally {
+            channel.close().sync();
+            TunPacket packet;
+            while ((packet = reads.poll()) != null) {
+                packet.release();
+            }
+        }
+
+        assertFalse(Files.exists(Path.of("/sys/class/net/epolltest0")));
+    }
+
+    @Test
+    void shouldServeEachQueueByOwnChannel() throws InterruptedException {
+        final EpollTunChannel first = new EpollTunChannel();
+        final EpollTunChannel second = new EpollTunChannel();
+        first.config().setOption(TunChannelOption.TUN_QUEUES, 2);
+        second.config().setOption(TunChannelOption.TUN_QUEUES, 2);
+        group.register(first).sync();
+        group.register(second).sync();
+        first.bind(new TunAddress("epolltest1")).sync();
+        second.bind(new TunAddress("epolltest1")).sync();
+
+        assertTrue(first.isActive());
+        assertTrue(second.isActive());
+        assertEquals("epolltest1", ((TunAddress) first.localAddress()).ifName());
+        assertEquals("epolltest1", ((TunAddress) second.localAddress()).ifName());
+
+        // device remains until its last queue has been closed
+        first.close().sync();
+        assertTrue(Files.exists(Path.of("/sys/class/net/epolltest1")));
+        second.close().sync();
+        assertFalse(Files.exists(Path.of("/sys/class/net/epolltest1")));
+    }
+
+    @Test
+    void shouldReadUntilDeviceIsDrained() throws Exception {
+        final int port = 4242;
+        final int count = 8;
+        final List<String> events = new ArrayList<>();
+        final BlockingQueue<Integer> reads = new LinkedBlockingQueue<>();
+        final EpollTunChannel channel = new EpollTunChannel();
+        channel.config().setAutoRead(false);
+        channel.pipeline().addLast(new ChannelInboundHandlerAdapter() {
+            @Override
+            public void channelRead(final ChannelHandlerContext ctx, final Object msg) {
+                final TunPacket packet = (TunPacket) msg;
+                final UdpView udp = new UdpView();
+                if (udp.tryWrap(packet) && udp.destinationPort() == port) {
+                    events.add("read");
+                    reads.add(events.size());
+                }
+                packet.release();
+            }
+
+            @Override
+            public void channelReadComplete(final ChannelHandlerContext ctx) {
+                events.add("readComplete");
+            }
+        });
+        group.register(channel).sync();
+        channel.bind(new TunAddress("epolltest2")).sync();
+        try {
+            assumeFalse("1".equals(Files.readString(Path.of("/proc/sys/net/ipv6/conf/epolltest2/disable_ipv6")).trim()));
+            upWithLinkLocalAddress("epolltest2");
+
+            // queue packets in the device while reading is suspended
+            try (final MulticastSocket socket = new MulticastSocket()) {
+                final NetworkInterface ifc = NetworkInterface.getByName("epolltest2");
+                socket.setNetworkInterface(ifc);
+                final InetAddress group = allNodes(ifc);
+                for (int i = 0; i < count; i++) {
+                    socket.send(new DatagramPacket(new byte[]{ (byte) i }, 1, group, port));
+                }
+                Thread.sleep(100);
+                assertTrue(reads.isEmpty());
+
+                // a single readiness event must drain all queued packets
+                channel.config().setAutoRead(true);
+                for (int i = 0; i < count; i++) {
+                    assertNotNull(reads.poll(5, TimeUnit.SECONDS));
+                }
+                channel.eventLoop().submit(() -> {
+                    // all packets were read by the same read loop
+                    assertEquals(count, events.stream().filter("read"::equals).count());
+                    assertFalse(events.subList(0, events.lastIndexOf("read")).contains("readComplete"));
+                }).sync();
+
+                // the device is watched again once it has been drained
+                socket.send(new DatagramPacket(new byte[]{ 0 }, 1, group, port));
+                assertNotNull(reads.poll(5, TimeUnit.SECONDS));
+            }
+        }
+        finally {
+            channel.close().sync();
+        }
+    }
+
+    @Test
+    void shouldReadEachQueueOnOwnEventLoop() throws Exception {
+        final int port = 4243;
+        final EventLoopGroup queueGroup = new NioEventLoopGroup(2);
+        final EpollTunChannel[] channels = new EpollTunChannel[2];
+        final List<BlockingQueue<Boolean>> reads = List.of(new LinkedBlockingQueue<>(), new LinkedBlockingQueue<>());
+        try {
+            for (int i = 0; i < channels.length; i++) {
+                final BlockingQueue<Boolean> queueReads = reads.get(i);
+                channels[i] = new EpollTunChannel();
+                channels[i].config().setOption(TunChannelOption.TUN_QUEUES, 2);
+                channels[i].pipeline().addLast(new ChannelInboundHandlerAdapter() {
+                    @Override
+                    public void channelRead(final ChannelHandlerContext ctx, final Object msg) {
+                        final TunPacket packet = (TunPacket) msg;
+                        final UdpView udp = new UdpView();
+                        if (udp.tryWrap(packet) && udp.destinationPort() == port) {
+                            queueReads.add(ctx.channel().eventLoop().inEventLoop());
+                        }
+                        packet.release();
+                    }
+                });
+                queueGroup.register(channels[i]).sync();
+                channels[i].bind(new TunAddress("epolltest3")).sync();
+            }
+            assertTrue(channels[0].eventLoop() != channels[1].eventLoop());
+
+            assumeFalse("1".equals(Files.readString(Path.of("/proc/sys/net/ipv6/conf/epolltest3/disable_ipv6")).trim()));
+            upWithLinkLocalAddress("epolltest3");
+
+            // the kernel spreads flows across the queues by their hash
+            final NetworkInterface ifc = NetworkInterface.getByName("epolltest3");
+            final InetAddress group = allNodes(ifc);
+            for (int i = 0; i < 32; i++) {
+                try (final MulticastSocket socket = new MulticastSocket()) {
+                    socket.setNetworkInterface(ifc);
+                    socket.send(new DatagramPacket(new byte[]{ (byte) i }, 1, group, port));
+                }
+            }
+
+            for (final BlockingQueue<Boolean> queueReads : reads) {
+                // each queue has been read by its channel on the channel's event loop
+                assertEquals(Boolean.TRUE, queueReads.poll(5, TimeUnit.SECONDS));
+            }
+        }
+        finally {
+            for (final EpollTunChannel channel : channels) {
+                if (channel != null) {
+                    channel.close().sync();
+                }
+            }
+            queueGroup.shutdownGracefully(0, 1, TimeUnit.SECONDS).syncUninterruptibly();
+        }
+    }
+
+    static boolean isAvailable() {
+        try {
+            LinuxTunDevice.open(null, 0).close();
+            return true;
+        }
+        catch (final IOException | RuntimeException | LinkageError e) {
+            return false;
+        }
+    }
+
+    /**
+     * Brings the device up and waits until datagrams can be sent via the device.
+     */
+    private static void upWithLinkLocalAddress(final String name) throws IOException, InterruptedException {
+        // tun devices lack a hardware address, so let the kernel generate a random link-local
+        // address and use it right away without waiting for DAD
+        Files.writeString(Path.of("/proc/sys/net/ipv6/conf/" + name + "/addr_gen_mode"), "3");
+        Files.writeString(Path.of("/proc/sys/net/ipv6/conf/" + name + "/accept_dad"), "0");
+        up(name);
+
+        // the address is configured asynchronously. Probe with datagrams to a port nobody expects
+        final long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        final NetworkInterface ifc = NetworkInterface.getByName(name);
+        try (final MulticastSocket socket = new MulticastSocket()) {
+            socket.setNetworkInterface(ifc);
+            while (true) {
+                try {
+                    socket.send(new DatagramPacket(new byte[0], 0, allNodes(ifc), 9));
+                    return;
+                }
+                catch (final BindException e) {
+                    assertTrue(System.nanoTime() < deadline, "no link-local address assigned");
+                    Thread.sleep(10);
+                }
+            }
+        }
+    }
+
+    /**
+     * Returns the link-local all-nodes multicast address scoped to {@code ifc}.
+     */
+    private static InetAddress allNodes(final NetworkInterface ifc) throws UnknownHostException {
+        return Inet6Address.getByAddress(null, InetAddress.getByName("ff02::1").getAddress(), ifc);
+    }
+
+    private static void up(final String name) {
+        final int s = socket(AF_INET, SOCK_DGRAM, 0);
+        try {
+            ioctl(s, SIOCSIFFLAGS, new Ifreq(name, IFF_UP));
+        }
+        finally {
+            close(s);
+        }
+    }
+}
@@ -0,0 +1,151 @@
+/*
+ * Copyright (c) 2021-2022 Heiko Bornholdt and Kevin Röbert
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ * IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM,
+ * DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR
+ * OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE
+ * OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package org.drasyl.channel.tun;
+
+import io.netty.buffer.Unpooled;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.DefaultEventLoopGroup;
+import io.netty.channel.embedded.EmbeddedChannel;
+import io.netty.util.concurrent.EventExecutorGroup;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class FlowHashDispatcherTest {
+    private final EventExecutorGroup group = new DefaultEventLoopGroup(4);
+
+    @AfterEach
+    void tearDown() {
+        group.shutdownGracefully(0, 0, TimeUnit.SECONDS);
+    }
+
+    private static TunPacket packet(final int flow, final int sequence) {
+        return new Tun4Packet(Unpooled.buffer(28)
+                .writeByte(0x45).writeZero(8).writeByte(17).writeShort(0)
+                .writeInt(0x0a000001).writeInt(0x0a000002)
+                .writeShort(1000 + flow).writeShort(53).writeShort(8).writeShort(sequence));
+    }
+
+    @Test
+    void shouldProcessEachFlowInOrderOnSingleWorker() throws InterruptedException {
+        final int flows = 16;
+        final int packetsPerFlow = 100;
+        final CountDownLatch processed = new CountDownLatch(flows * packetsPerFlow);
+        final Map<Integer, List<Integer>> sequences = new ConcurrentHashMap<>();
+        final Map<Integer, Thread> threads = new ConcurrentHashMap<>();
+        final List<Integer> wrongThread = new CopyOnWriteArrayList<>();
+        final EmbeddedChannel channel = new EmbeddedChannel(new FlowHashDispatcher(group, 1024) {
+            @Override
+            protected void channelReadFlow(final ChannelHandlerContext ctx,
+                                           final TunPacket packet) {
+                final int flow = packet.content().getUnsignedShort(20) - 1000;
+                sequences.computeIfAbsent(flow, k -> new CopyOnWriteArrayList<>()).add(packet.content().getUnsignedShort(26));
+                if (threads.putIfAbsent(flow, Thread.currentThread()) != null && threads.get(flow) != Thread.currentThread()) {
+                    wrongThread.add(flow);
+                }
+                processed.countDown();
+            }
+        });
+
+        for (int i = 0; i < packetsPerFlow; i++) {
+            final TunPacketBatch batch = TunPacketBatch.newInstance();
+            for (int flow = 0; flow < flows; flow++) {
+                batch.add(packet(flow, i));
+            }
+            channel.writeInbound(batch);
+        }
+
+        assertTrue(processed.await(10, TimeUnit.SECONDS));
+        assertEquals(List.of(), wrongThread);
+        for (int flow = 0; flow < flows; flow++) {
+            final List<Integer> sequence = sequences.get(flow);
+            assertEquals(packetsPerFlow, sequence.size());
+            for (int i = 0; i < packetsPerFlow; i++) {
+                assertEquals(i, sequence.get(i));
+            }
+        }
+        // flows have been spread across workers
+        assertTrue(threads.values().stream().distinct().count() > 1);
+    }
+
+    @Test
+    void shouldDropPacketsIfWorkerQueueIsFull() throws InterruptedException {
+        final CountDownLatch blocked = new CountDownLatch(1);
+        final EventExecutorGroup singleWorker = new DefaultEventLoopGroup(1);
+        try {
+            final FlowHashDispatcher dispatcher = new FlowHashDispatcher(singleWorker, 2) {
+                @Override
+                protected void channelReadFlow(final ChannelHandlerContext ctx,
+                                               final TunPacket packet) {
+                    // do nothing
+                }
+            };
+            final EmbeddedChannel channel = new EmbeddedChannel(dispatcher);
+            singleWorker.execute(() -> {
+                try {
+                    blocked.await();
+                }
+                catch (final InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            });
+
+            final TunPacket dropped = packet(0, 2);
+            channel.writeInbound(packet(0, 0));
+            channel.writeInbound(packet(0, 1));
+            channel.writeInbound(dropped);
+
+            assertEquals(1, dispatcher.droppedPackets());
+            assertEquals(0, dropped.refCnt());
+            blocked.countDown();
+        }
+        finally {
+            blocked.countDown();
+            singleWorker.shutdownGracefully(0, 0, TimeUnit.SECONDS);
+        }
+    }
+
+    @Test
+    void shouldPassOtherMessages() {
+        final EmbeddedChannel channel = new EmbeddedChannel(new FlowHashDispatcher(group, 16) {
+            @Override
+            protected void channelReadFlow(final ChannelHandlerContext ctx,
+                                           final TunPacket packet) {
+                // do nothing
+            }
+        });
+
+        channel.writeInbound("foo");
+
+        assertSame("foo", channel.readInbound());
+    }
+}
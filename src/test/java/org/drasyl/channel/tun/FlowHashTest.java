@@ -0,0 +1,106 @@
+/*
+ * Copyright (c) 2021-2022 Heiko Bornholdt and Kevin Röbert
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ * IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM,
+ * DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR
+ * OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE
+ * OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package org.drasyl.channel.tun;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+
+class FlowHashTest {
+    private static TunPacket udp4(final int source,
+                                  final int destination,
+                                  final int sourcePort,
+                                  final int destinationPort,
+                                  final int fragment) {
+        final ByteBuf buf = Unpooled.buffer(28)
+                .writeByte(0x45).writeByte(0).writeShort(28)
+                .writeShort(0).writeShort(fragment)
+                .writeByte(64).writeByte(17).writeShort(0)
+                .writeInt(source).writeInt(destination)
+                .writeShort(sourcePort).writeShort(destinationPort).writeShort(8).writeShort(0);
+        return new Tun4Packet(buf);
+    }
+
+    private static TunPacket udp6(final long source,
+                                  final long destination,
+                                  final int sourcePort,
+                                  final int destinationPort,
+                                  final int flowLabel) {
+        final ByteBuf buf = Unpooled.buffer(48)
+                .writeInt(6 << 28 | flowLabel).writeShort(8).writeByte(17).writeByte(64)
+                .writeLong(0x20010db800000000L).writeLong(source)
+                .writeLong(0x20010db800000000L).writeLong(destination)
+                .writeShort(sourcePort).writeShort(destinationPort).writeShort(8).writeShort(0);
+        return new Tun6Packet(buf);
+    }
+
+    @Test
+    void shouldBeSymmetricForIpv4() {
+        assertEquals(FlowHash.of(udp4(0x0a000001, 0x0a000002, 1234, 53, 0)), FlowHash.of(udp4(0x0a000002, 0x0a000001, 53, 1234, 0)));
+        // same address on both sides
+        assertEquals(FlowHash.of(udp4(0x0a000001, 0x0a000001, 1234, 53, 0)), FlowHash.of(udp4(0x0a000001, 0x0a000001, 53, 1234, 0)));
+    }
+
+    @Test
+    void shouldDistinguishPortsForIpv4() {
+        assertNotEquals(FlowHash.of(udp4(0x0a000001, 0x0a000002, 1234, 53, 0)), FlowHash.of(udp4(0x0a000001, 0x0a000002, 1235, 53, 0)));
+    }
+
+    @Test
+    void shouldIgnorePortsOfIpv4Fragments() {
+        // more fragments set and fragment offset set
+        assertEquals(FlowHash.of(udp4(0x0a000001, 0x0a000002, 1234, 53, 0x2000)), FlowHash.of(udp4(0x0a000001, 0x0a000002, 0, 0, 0x0010)));
+    }
+
+    @Test
+    void shouldBeSymmetricForIpv6() {
+        assertEquals(FlowHash.of(udp6(1, 2, 1234, 53, 0)), FlowHash.of(udp6(2, 1, 53, 1234, 0)));
+        assertNotEquals(FlowHash.of(udp6(1, 2, 1234, 53, 0)), FlowHash.of(udp6(1, 2, 1235, 53, 0)));
+    }
+
+    private static TunPacket fragment6(final int fragmentOffset, final boolean moreFragments) {
+        final ByteBuf buf = Unpooled.buffer(56)
+                .writeInt(6 << 28).writeShort(16).writeByte(44).writeByte(64)
+                .writeLong(0x20010db800000000L).writeLong(1)
+                .writeLong(0x20010db800000000L).writeLong(2)
+                // fragment header
+                .writeByte(17).writeByte(0).writeShort(fragmentOffset << 3 | (moreFragments ? 1 : 0)).writeInt(0xcafe)
+                .writeShort(1234).writeShort(53).writeShort(8).writeShort(0);
+        return new Tun6Packet(buf);
+    }
+
+    @Test
+    void shouldHashAllIpv6FragmentsOfDatagramEqually() {
+        assertEquals(FlowHash.of(fragment6(0, true)), FlowHash.of(fragment6(1, false)));
+    }
+
+    @Test
+    void shouldUseFlowLabelForIpv6() {
+        // ports are not examined
+        assertEquals(FlowHash.of(udp6(1, 2, 1234, 53, 0xbeef)), FlowHash.of(udp6(1, 2, 1235, 53, 0xbeef)));
+        assertEquals(FlowHash.of(udp6(1, 2, 1234, 53, 0xbeef)), FlowHash.of(udp6(2, 1, 53, 1234, 0xbeef)));
+        assertNotEquals(FlowHash.of(udp6(1, 2, 1234, 53, 0xbeef)), FlowHash.of(udp6(1, 2, 1234, 53, 0xbeee)));
+    }
+}
@@ -0,0 +1,79 @@
+/*
+ * Copyright (c) 2021-2022 Heiko Bornholdt and Kevin Röbert
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ * IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM,
+ * DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR
+ * OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE
+ * OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package org.drasyl.channel.tun;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class IcmpViewTest {
+    @Test
+    void shouldReadIcmpEchoRequest() {
+        final ByteBuf buf = Unpooled.buffer()
+                .writeBytes(new byte[]{ 0x45, 0, 0, 28, 0, 0, 0, 0, 64, 1, 0, 0, 10, 0, 0, 1, 10, 0, 0, 2 })
+                .writeByte(8).writeByte(0).writeShort(0x1234).writeShort(7).writeShort(1);
+        final TunPacket packet = TunPacket.newInstance(buf);
+        try {
+            final IcmpView icmp = new IcmpView().wrap(packet);
+
+            assertFalse(icmp.isIcmpv6());
+            assertEquals(8, icmp.type());
+            assertEquals(0, icmp.code());
+            assertEquals(0x1234, icmp.checksum());
+            assertEquals(7, icmp.identifier());
+            assertEquals(1, icmp.sequenceNumber());
+            assertEquals(0x00070001L, icmp.restOfHeader());
+            assertEquals(0, icmp.payloadLength());
+        }
+        finally {
+            packet.release();
+        }
+    }
+
+    @Test
+    void shouldReadIcmpv6EchoReply() {
+        final ByteBuf buf = Unpooled.buffer()
+                .writeInt(0x60000000).writeShort(8).writeByte(58).writeByte(64)
+                .writeZero(32)
+                .writeByte(129).writeByte(0).writeShort(0).writeShort(7).writeShort(2);
+        final TunPacket packet = TunPacket.newInstance(buf);
+        try {
+            final IcmpView icmp = new IcmpView();
+
+            assertTrue(icmp.tryWrap(packet));
+            assertTrue(icmp.isIcmpv6());
+            assertEquals(129, icmp.type());
+            assertEquals(2, icmp.sequenceNumber());
+
+            // icmp (v4) protocol number is not valid within ipv6
+            packet.content().setByte(Tun6Packet.INET6_NEXT_HEADER, InetProtocol.ICMP.decimal);
+            assertFalse(icmp.tryWrap(packet));
+        }
+        finally {
+            packet.release();
+        }
+    }
+}
@@ -0,0 +1,122 @@
+/*
+ * Copyright (c) 2021-2022 Heiko Bornholdt and Kevin Röbert
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ * IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM,
+ * DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR
+ * OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE
+ * OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package org.drasyl.channel.tun;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares {@link InetChecksum} with the previous word-by-word implementations: the fixed 20 bytes
+ * IPv4 header checksum of {@link Tun4Packet} and the transport layer checksum of
+ * {@link TunPacketSegmenter}.
+ * <p>
+ * The Vector API is only used if {@link InetChecksum} is loaded from the multi-release jar on Java
+ * 22 or newer with {@code --add-modules jdk.incubator.vector}. Run via {@link #main(String[])} with
+ * the test classpath.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@SuppressWarnings("java:S109")
+public class InetChecksumBenchmark {
+    @Param({ "64", "1500", "9000" })
+    private int length;
+    @Param({ "true", "false" })
+    private boolean direct;
+    private ByteBuf buf;
+
+    @Setup
+    public void setup() {
+        final byte[] bytes = new byte[length];
+        ThreadLocalRandom.current().nextBytes(bytes);
+        // ipv4 header without options
+        bytes[0] = 0x45;
+        buf = (direct ? Unpooled.directBuffer(length) : Unpooled.buffer(length)).writeBytes(bytes);
+    }
+
+    @TearDown
+    public void tearDown() {
+        buf.release();
+    }
+
+    @Benchmark
+    public int ipv4HeaderWordByWord() {
+        int sum = 0;
+        for (int i = 0; i < Tun4Packet.INET4_HEADER_LENGTH; i += 2) {
+            sum += buf.getUnsignedShort(i);
+        }
+        return (~((sum & 0xffff) + (sum >> 16))) & 0xffff;
+    }
+
+    @Benchmark
+    public int ipv4Header() {
+        return InetChecksum.ipv4HeaderChecksum(buf, 0);
+    }
+
+    @Benchmark
+    public long segmentWordByWord() {
+        long sum = 0;
+        int i = 0;
+        for (; i + 1 < length; i += 2) {
+            sum += buf.getUnsignedShort(i);
+        }
+        if (i < length) {
+            sum += buf.getUnsignedByte(i) << 8;
+        }
+        while ((sum >>> 16) != 0) {
+            sum = (sum & 0xffff) + (sum >>> 16);
+        }
+        return sum;
+    }
+
+    @Benchmark
+    public int segment() {
+        return InetChecksum.fold(InetChecksum.sum(buf, 0, length, 0));
+    }
+
+    public static void main(final String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder()
+                .include(InetChecksumBenchmark.class.getSimpleName())
+                .build()).run();
+    }
+}
@@ -0,0 +1,283 @@
+/*
+ * Copyright (c) 2021-2022 Heiko Bornholdt and Kevin Röbert
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ * IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM,
+ * DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR
+ * OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE
+ * OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package org.drasyl.channel.tun;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import org.junit.jupiter.api.Test;
+
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class InetChecksumTest {
+    /**
+     * Straightforward RFC 1071 implementation used as reference.
+     */
+    private static int referenceSum(final ByteBuf buf, final int index, final int length, long sum) {
+        int i = index;
+        for (; i + 1 < index + length; i += 2) {
+            sum += buf.getUnsignedShort(i);
+        }
+        if (i < index + length) {
+            sum += buf.getUnsignedByte(i) << 8;
+        }
+        while ((sum >>> 16) != 0) {
+            sum = (sum & 0xffff) + (sum >>> 16);
+        }
+        return (int) sum;
+    }
+
+    /**
+     * Builds an IPv4 packet with 4 bytes of options carrying the given transport segment.
+     */
+    private static TunPacket ipv4Packet(final int protocol, final ByteBuf segment) {
+        final ByteBuf buf = Unpooled.buffer()
+                .writeByte(0x46).writeByte(0).writeShort(24 + segment.readableBytes())
+                .writeShort(0x1234).writeShort(0x4000).writeByte(64).writeByte(protocol).writeShort(0)
+                .writeInt(0xc0a80001).writeInt(0xc0a800c7)
+                // router alert option
+                .writeInt(0x94040000)
+                .writeBytes(segment);
+        segment.release();
+        buf.setShort(Tun4Packet.INET4_HEADER_CHECKSUM, InetChecksum.ipv4HeaderChecksum(buf, 0));
+        return TunPacket.newInstance(buf);
+    }
+
+    /**
+     * Builds an IPv6 packet with a hop-by-hop options header carrying the given transport segment.
+     */
+    private static TunPacket ipv6Packet(final int protocol, final ByteBuf segment) {
+        final ByteBuf buf = Unpooled.directBuffer()
+                .writeInt(0x60000000).writeShort(8 + segment.readableBytes()).writeByte(0).writeByte(64)
+                .writeLong(0x20010db800000000L).writeLong(1).writeLong(0x20010db800000000L).writeLong(2)
+                // hop-by-hop options
+                .writeByte(protocol).writeByte(0).writeZero(6)
+                .writeBytes(segment);
+        segment.release();
+        return TunPacket.newInstance(buf);
+    }
+
+    @Test
+    void sumShouldMatchReferenceForAllBufferTypes() {
+        final Random random = new Random(42);
+        for (int i = 0; i < 1_000; i++) {
+            final int index = random.nextInt(8);
+            final int length = random.nextInt(2_000);
+            final byte[] bytes = new byte[index + length];
+            random.nextBytes(bytes);
+            final ByteBuf direct = Unpooled.directBuffer(bytes.length).writeBytes(bytes);
+            final ByteBuf[] bufs = {
+                    Unpooled.wrappedBuffer(bytes),
+                    direct,
+                    Unpooled.wrappedBuffer(Unpooled.wrappedBuffer(bytes, 0, bytes.length / 2), Unpooled.wrappedBuffer(bytes, bytes.length / 2, bytes.length - bytes.length / 2))
+            };
+            try {
+                for (final ByteBuf buf : bufs) {
+                    final int expected = referenceSum(buf, index, length, 0);
+                    assertEquals(expected, InetChecksum.fold(InetChecksum.sum(buf, index, length, 0)), () -> buf + " length " + length);
+                }
+            }
+            finally {
+                direct.release();
+            }
+        }
+    }
+
+    @Test
+    void loadShouldFallBackToScalarSummerWithoutVectorApi() {
+        // tests run against the base layer, which has no vectorized implementation
+        assertSame(ChecksumSummer.SCALAR, ChecksumSummer.load());
+    }
+
+    @Test
+    void foldShouldAddCarries() {
+        assertEquals(0xffff, InetChecksum.fold(0xffffL));
+        assertEquals(1, InetChecksum.fold(0x10000L));
+        assertEquals(0xffff, InetChecksum.fold(0xfffffffffffeL + 1));
+        assertEquals(0xffff, InetChecksum.fold(-1L));
+    }
+
+    @Test
+    void ipv4HeaderChecksumShouldCoverOptions() {
+        final TunPacket packet = ipv4Packet(17, Unpooled.buffer().writeZero(8));
+        try {
+            final ByteBuf buf = packet.content();
+            final int checksum = buf.getUnsignedShort(Tun4Packet.INET4_HEADER_CHECKSUM);
+            assertEquals(~referenceSum(buf, 0, 24, ~checksum & 0xffff) & 0xffff, checksum);
+            assertTrue(InetChecksum.verifyIpv4Header(buf, 0));
+            assertTrue(((Tun4Packet) packet).verifyChecksum());
+
+            // corrupt option
+            buf.setByte(22, 1);
+            assertFalse(InetChecksum.verifyIpv4Header(buf, 0));
+            assertFalse(((Tun4Packet) packet).verifyChecksum());
+        }
+        finally {
+            packet.release();
+        }
+    }
+
+    @Test
+    void shouldCalculateTcpChecksumOverIpv4PseudoHeader() {
+        final ByteBuf segment = Unpooled.buffer()
+                .writeShort(443).writeShort(51234).writeInt(1).writeInt(2)
+                .writeByte(0x50).writeByte(TcpView.TCP_FLAG_ACK).writeShort(1024).writeShort(0xdead).writeShort(0)
+                .writeBytes("hello".getBytes());
+        final TunPacket packet = ipv4Packet(6, segment);
+        try {
+            final ByteBuf buf = packet.content();
+            final TcpView tcp = new TcpView().wrap(packet);
+            assertFalse(tcp.verifyChecksum());
+
+            tcp.updateChecksum();
+
+            // pseudo header: addresses, protocol, tcp length
+            final int pseudo = referenceSum(buf, Tun4Packet.INET4_SOURCE_ADDRESS, 8, 6 + 25);
+            assertEquals(0, ~referenceSum(buf, 24, 25, pseudo) & 0xffff);
+            assertTrue(tcp.verifyChecksum());
+            assertEquals(tcp.checksum(), InetChecksum.calculate(tcp));
+        }
+        finally {
+            packet.release();
+        }
+    }
+
+    @Test
+    void shouldCalculateUdpChecksumOverIpv6PseudoHeader() {
+        final ByteBuf segment = Unpooled.buffer()
+                .writeShort(53).writeShort(5353).writeShort(11).writeShort(0)
+                .writeBytes(new byte[]{ 1, 2, 3 });
+        final TunPacket packet = ipv6Packet(17, segment);
+        try {
+            final ByteBuf buf = packet.content();
+            final UdpView udp = new UdpView().wrap(packet);
+            assertFalse(udp.verifyChecksum());
+
+            udp.updateChecksum();
+
+            // pseudo header: addresses, upper-layer packet length, next header of the udp datagram
+            final int pseudo = referenceSum(buf, Tun6Packet.INET6_SOURCE_ADDRESS, 32, 11 + 17);
+            assertEquals(0, ~referenceSum(buf, 48, 11, pseudo) & 0xffff);
+            assertTrue(udp.verifyChecksum());
+
+            buf.setByte(58, 4);
+            assertFalse(udp.verifyChecksum());
+        }
+        finally {
+            packet.release();
+        }
+    }
+
+    @Test
+    void shouldAcceptIpv4UdpWithoutChecksum() {
+        final ByteBuf segment = Unpooled.buffer()
+                .writeShort(53).writeShort(5353).writeShort(8).writeShort(0);
+        final TunPacket packet = ipv4Packet(17, segment);
+        try {
+            assertTrue(new UdpView().wrap(packet).verifyChecksum());
+        }
+        finally {
+            packet.release();
+        }
+    }
+
+    @Test
+    void shouldCalculateIcmpChecksumWithoutPseudoHeader() {
+        final ByteBuf segment = Unpooled.buffer()
+                .writeByte(8).writeByte(0).writeShort(0).writeShort(1).writeShort(2)
+                .writeBytes(new byte[]{ 1, 2, 3, 4, 5 });
+        final TunPacket packet = ipv4Packet(1, segment);
+        try {
+            final IcmpView icmp = new IcmpView().wrap(packet);
+
+            icmp.updateChecksum();
+
+            assertEquals(0, ~referenceSum(packet.content(), 24, 13, 0) & 0xffff);
+            assertTrue(icmp.verifyChecksum());
+        }
+        finally {
+            packet.release();
+        }
+    }
+
+    @Test
+    void shouldCalculateIcmpv6ChecksumOverPseudoHeader() {
+        final ByteBuf segment = Unpooled.buffer()
+                .writeByte(128).writeByte(0).writeShort(0).writeShort(1).writeShort(2);
+        final TunPacket packet = ipv6Packet(58, segment);
+        try {
+            final ByteBuf buf = packet.content();
+            final IcmpView icmp = new IcmpView().wrap(packet);
+
+            icmp.updateChecksum();
+
+            final int pseudo = referenceSum(buf, Tun6Packet.INET6_SOURCE_ADDRESS, 32, 8 + 58);
+            assertEquals(0, ~referenceSum(buf, 48, 8, pseudo) & 0xffff);
+            assertTrue(icmp.verifyChecksum());
+        }
+        finally {
+            packet.release();
+        }
+    }
+
+    @Test
+    void adjustShouldMatchRfc1624Example() {
+        // https://datatracker.ietf.org/doc/html/rfc1624#section-4
+        assertEquals(0x0000, InetChecksum.adjust(0xdd2f, 0x5555, 0x3285));
+    }
+
+    @Test
+    void adjustShouldMatchRecalculation() {
+        final Random random = new Random(42);
+        final ByteBuf buf = Unpooled.buffer(64).writeZero(64);
+        for (int i = 0; i < 1_000; i++) {
+            final byte[] bytes = new byte[64];
+            random.nextBytes(bytes);
+            buf.setBytes(0, bytes);
+            final int checksum = ~InetChecksum.fold(InetChecksum.sum(buf, 0, 64, 0)) & 0xffff;
+
+            final int shortIndex = random.nextInt(32) * 2;
+            final int oldShort = buf.getUnsignedShort(shortIndex);
+            final int newShort = random.nextInt(0x10000);
+            buf.setShort(shortIndex, newShort);
+            final int adjusted = InetChecksum.adjust(checksum, oldShort, newShort);
+            assertEquals(~InetChecksum.fold(InetChecksum.sum(buf, 0, 64, 0)) & 0xffff, adjusted);
+
+            final int intIndex = random.nextInt(16) * 4;
+            final int oldInt = buf.getInt(intIndex);
+            final int newInt = random.nextInt();
+            buf.setInt(intIndex, newInt);
+            final int adjustedInt = InetChecksum.adjustInt(adjusted, oldInt, newInt);
+            assertEquals(~InetChecksum.fold(InetChecksum.sum(buf, 0, 64, 0)) & 0xffff, adjustedInt);
+
+            final int longIndex = random.nextInt(8) * 8;
+            final long oldLong = buf.getLong(longIndex);
+            final long newLong = random.nextLong();
+            buf.setLong(longIndex, newLong);
+            assertEquals(~InetChecksum.fold(InetChecksum.sum(buf, 0, 64, 0)) & 0xffff, InetChecksum.adjustLong(adjustedInt, oldLong, newLong));
+        }
+    }
+}
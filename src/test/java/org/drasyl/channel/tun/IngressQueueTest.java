@@ -0,0 +1,199 @@
+/*
+ * Copyright (c) 2021-2022 Heiko Bornholdt and Kevin Röbert
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ * IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM,
+ * DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR
+ * OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE
+ * OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package org.drasyl.channel.tun;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.LongAdder;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class IngressQueueTest {
+    private static final int BATCH_SIZE = 4;
+    private final LongAdder drops = new LongAdder();
+
+    private IngressQueue queue(final IngressOverflowPolicy policy) {
+        return new IngressQueue(new IngressWaterMark(4, 8), policy, BATCH_SIZE, drops);
+    }
+
+    private static List<ByteBuf> offer(final IngressQueue queue, final int count) {
+        final List<ByteBuf> bufs = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            final ByteBuf buf = Unpooled.buffer(1).writeByte(i);
+            bufs.add(buf);
+            queue.offer(buf);
+        }
+        return bufs;
+    }
+
+    @Test
+    void shouldRejectInvalidWaterMark() {
+        assertThrows(IllegalArgumentException.class, () -> new IngressWaterMark(-1, 8));
+        assertThrows(IllegalArgumentException.class, () -> new IngressWaterMark(0, 0));
+        assertThrows(IllegalArgumentException.class, () -> new IngressWaterMark(9, 8));
+        assertEquals(new IngressWaterMark(4, 8), new IngressWaterMark(4, 8));
+    }
+
+    @Test
+    void shouldStallAtHighAndResumeAtLowWaterMark() {
+        final IngressQueue queue = queue(IngressOverflowPolicy.BLOCK);
+
+        assertTrue(queue.tryRead(BATCH_SIZE));
+        offer(queue, 7);
+        assertTrue(queue.tryRead(BATCH_SIZE));
+        // a batch may exceed the high water mark without dropping packets
+        offer(queue, 4);
+        assertEquals(11, queue.size());
+        assertFalse(queue.tryRead(BATCH_SIZE));
+
+        for (int i = 0; i < 6; i++) {
+            assertFalse(queue.tryResume());
+            ((ByteBuf) queue.poll()).release();
+        }
+        assertEquals(5, queue.size());
+        assertFalse(queue.tryResume());
+        ((ByteBuf) queue.poll()).release();
+        assertTrue(queue.tryResume());
+        // only once per stall
+        assertFalse(queue.tryResume());
+        assertTrue(queue.tryRead(BATCH_SIZE));
+        assertEquals(0, drops.sum());
+    }
+
+    @Test
+    void shouldDropNewPacketsUntilDrainedToLowWaterMark() {
+        final IngressQueue queue = queue(IngressOverflowPolicy.TAIL_DROP);
+
+        final List<ByteBuf> bufs = offer(queue, 10);
+        assertEquals(8, queue.size());
+        assertEquals(2, drops.sum());
+        assertEquals(0, bufs.get(8).refCnt());
+        assertEquals(0, bufs.get(9).refCnt());
+
+        // still dropping above the low water mark
+        queue.poll();
+        queue.poll();
+        offer(queue, 1);
+        assertEquals(6, queue.size());
+        assertEquals(3, drops.sum());
+
+        queue.poll();
+        queue.poll();
+        offer(queue, 1);
+        assertEquals(5, queue.size());
+        assertEquals(3, drops.sum());
+        assertSame(bufs.get(4), queue.poll());
+    }
+
+    @Test
+    void shouldKeepReadingWhileDropping() {
+        final IngressQueue queue = queue(IngressOverflowPolicy.TAIL_DROP);
+
+        offer(queue, 100);
+
+        assertTrue(queue.tryRead(BATCH_SIZE));
+        assertEquals(92, drops.sum());
+    }
+
+    @Test
+    void shouldDropOldestPacketsAboveHighWaterMark() {
+        final IngressQueue queue = queue(IngressOverflowPolicy.HEAD_DROP);
+
+        final List<ByteBuf> bufs = offer(queue, 12);
+        assertEquals(0, drops.sum());
+
+        assertSame(bufs.get(4), queue.poll());
+        assertEquals(4, drops.sum());
+        for (int i = 0; i < 4; i++) {
+            assertEquals(0, bufs.get(i).refCnt());
+        }
+        assertSame(bufs.get(5), queue.poll());
+        assertEquals(4, drops.sum());
+    }
+
+    @Test
+    void shouldStallIfRingCannotTakeWholeBatch() {
+        final IngressQueue queue = queue(IngressOverflowPolicy.HEAD_DROP);
+
+        offer(queue, 12);
+        assertTrue(queue.tryRead(BATCH_SIZE));
+        offer(queue, 4);
+        assertFalse(queue.tryRead(BATCH_SIZE));
+
+        // drops from the head down to the high water mark
+        queue.poll();
+        assertEquals(7, queue.size());
+        assertFalse(queue.tryResume());
+        for (int i = 0; i < 3; i++) {
+            queue.poll();
+        }
+        assertTrue(queue.tryResume());
+    }
+
+    @Test
+    void shouldNeverDropAtOrBelowLowWaterMark() {
+        final IngressQueue queue = queue(IngressOverflowPolicy.RED);
+
+        for (int i = 0; i < 1_000; i++) {
+            offer(queue, 4);
+            assertEquals(0, drops.sum());
+            for (int j = 0; j < 4; j++) {
+                queue.poll();
+            }
+        }
+    }
+
+    @Test
+    void shouldDropEarlyAndAlwaysAtHighWaterMark() {
+        final IngressQueue queue = queue(IngressOverflowPolicy.RED);
+
+        final List<ByteBuf> bufs = offer(queue, 1_000);
+
+        assertTrue(queue.size() > 4);
+        assertTrue(queue.size() <= 8);
+        assertEquals(1_000 - queue.size(), drops.sum());
+        int released = 0;
+        for (final ByteBuf buf : bufs) {
+            if (buf.refCnt() == 0) {
+                released++;
+            }
+        }
+        assertEquals(drops.sum(), released);
+    }
+
+    @Test
+    void shouldReturnNullIfEmpty() {
+        final IngressQueue queue = queue(IngressOverflowPolicy.HEAD_DROP);
+
+        assertTrue(queue.isEmpty());
+        assertNull(queue.poll());
+    }
+}
@@ -0,0 +1,107 @@
+/*
+ * Copyright (c) 2021-2022 Heiko Bornholdt and Kevin Röbert
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ * IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM,
+ * DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR
+ * OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE
+ * OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package org.drasyl.channel.tun;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class IpHeaderViewTest {
+    // 10.0.0.1 -> 10.0.0.2, UDP, ttl 64, ihl 6 (one option word)
+    private static final byte[] IPV4_HEADER = {
+            0x46, 0, 0, 32, 0, 0, 0, 0, 64, 17, 0, 0, 10, 0, 0, 1, 10, 0, 0, 2, 1, 1, 1, 0
+    };
+    // fe80::1 -> fe80::2, TCP, hop limit 255, payload length 20
+    private static final byte[] IPV6_HEADER = {
+            0x60, 0, 0, 0, 0, 20, 6, -1,
+            -2, -128, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 1,
+            -2, -128, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 2
+    };
+
+    @Test
+    void shouldReadIpv4HeaderAtOffset() {
+        final ByteBuf buf = Unpooled.buffer().writeZero(7).writeBytes(IPV4_HEADER);
+        final IpHeaderView view = new IpHeaderView().wrap(buf, 7);
+
+        assertTrue(view.isIpv4());
+        assertFalse(view.isIpv6());
+        assertSame(buf, view.buffer());
+        assertEquals(7, view.offset());
+        assertEquals(24, view.headerLength());
+        assertEquals(32, view.totalLength());
+        assertEquals(InetProtocol.UDP.decimal, view.protocol());
+        assertEquals(64, view.hopLimit());
+        assertEquals(0x0a000001, view.sourceAddress4());
+        assertEquals(0x0a000002, view.destinationAddress4());
+        // ipv4-mapped ipv6 form
+        assertEquals(0, view.sourceAddressHigh());
+        assertEquals(0x0000_ffff_0a00_0001L, view.sourceAddressLow());
+        assertEquals(0, view.destinationAddressHigh());
+        assertEquals(0x0000_ffff_0a00_0002L, view.destinationAddressLow());
+    }
+
+    @Test
+    void shouldReadIpv6Header() {
+        final IpHeaderView view = new IpHeaderView().wrap(Unpooled.wrappedBuffer(IPV6_HEADER), 0);
+
+        assertEquals(6, view.version());
+        assertTrue(view.isIpv6());
+        assertEquals(40, view.headerLength());
+        assertEquals(60, view.totalLength());
+        assertEquals(InetProtocol.TCP.decimal, view.protocol());
+        assertEquals(255, view.hopLimit());
+        assertEquals(0xfe80_0000_0000_0000L, view.sourceAddressHigh());
+        assertEquals(1, view.sourceAddressLow());
+        assertEquals(0xfe80_0000_0000_0000L, view.destinationAddressHigh());
+        assertEquals(2, view.destinationAddressLow());
+        assertThrows(IllegalStateException.class, view::sourceAddress4);
+    }
+
+    @Test
+    void shouldBeReusable() {
+        final IpHeaderView view = new IpHeaderView();
+        final TunPacket packet = TunPacket.newInstance(Unpooled.wrappedBuffer(IPV4_HEADER));
+
+        view.wrap(Unpooled.wrappedBuffer(IPV6_HEADER), 0);
+        assertTrue(view.isIpv6());
+        view.wrap(packet);
+        assertTrue(view.isIpv4());
+        assertEquals(0x0a000001, view.sourceAddress4());
+
+        packet.release();
+    }
+
+    @Test
+    void shouldRejectInvalidHeaders() {
+        final IpHeaderView view = new IpHeaderView();
+
+        assertThrows(IllegalArgumentException.class, () -> view.wrap(Unpooled.wrappedBuffer(new byte[]{ 0x10, 0 }), 0));
+        assertThrows(IllegalArgumentException.class, () -> view.wrap(Unpooled.wrappedBuffer(IPV4_HEADER, 0, 19), 0));
+        assertThrows(IllegalArgumentException.class, () -> view.wrap(Unpooled.wrappedBuffer(IPV6_HEADER), 40));
+    }
+}
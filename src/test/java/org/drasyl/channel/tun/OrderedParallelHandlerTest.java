@@ -0,0 +1,165 @@
+/*
+ * Copyright (c) 2021-2022 Heiko Bornholdt and Kevin Röbert
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ * IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM,
+ * DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR
+ * OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE
+ * OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package org.drasyl.channel.tun;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import io.netty.channel.embedded.EmbeddedChannel;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class OrderedParallelHandlerTest {
+    private final ExecutorService executor = Executors.newFixedThreadPool(4);
+
+    @AfterEach
+    void tearDown() {
+        executor.shutdownNow();
+    }
+
+    private static TunPacket packet(final int sequence) {
+        return new Tun4Packet(Unpooled.buffer(20).writeByte(0x45).writeZero(3).writeInt(sequence).writeZero(12));
+    }
+
+    private static int sequence(final TunPacket packet) {
+        return packet.content().getInt(4);
+    }
+
+    /**
+     * Runs the tasks of the channel's event loop until {@code count} messages have been passed
+     * on.
+     */
+    private static void awaitInbound(final EmbeddedChannel channel,
+                                     final int count) throws InterruptedException {
+        final long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+        while (channel.inboundMessages().size() < count && System.nanoTime() < deadline) {
+            channel.runPendingTasks();
+            Thread.sleep(1);
+        }
+        assertEquals(count, channel.inboundMessages().size());
+    }
+
+    @Test
+    void shouldPassResultsOnInReceiveOrder() throws InterruptedException {
+        final int count = 200;
+        final EmbeddedChannel channel = new EmbeddedChannel(new OrderedParallelHandler(executor, 16) {
+            @Override
+            protected Object process(final TunPacket packet) throws InterruptedException {
+                // complete out of order
+                Thread.sleep(ThreadLocalRandom.current().nextInt(3));
+                return sequence(packet);
+            }
+        });
+
+        for (int i = 0; i < count; i++) {
+            channel.writeInbound(packet(i));
+        }
+        awaitInbound(channel, count);
+
+        for (int i = 0; i < count; i++) {
+            assertEquals(i, (Integer) channel.readInbound());
+        }
+    }
+
+    @Test
+    void shouldBoundInFlightPackets() throws InterruptedException {
+        final CountDownLatch blocked = new CountDownLatch(1);
+        final AtomicInteger processing = new AtomicInteger();
+        final EmbeddedChannel channel = new EmbeddedChannel(new OrderedParallelHandler(executor, 2) {
+            @Override
+            protected Object process(final TunPacket packet) throws InterruptedException {
+                processing.incrementAndGet();
+                blocked.await();
+                return sequence(packet);
+            }
+        });
+
+        for (int i = 0; i < 5; i++) {
+            channel.writeInbound(packet(i));
+        }
+        Thread.sleep(50);
+        assertEquals(2, processing.get());
+        assertFalse(channel.config().isAutoRead());
+
+        blocked.countDown();
+        awaitInbound(channel, 5);
+        assertEquals(5, processing.get());
+        assertTrue(channel.config().isAutoRead());
+        for (int i = 0; i < 5; i++) {
+            assertEquals(i, (Integer) channel.readInbound());
+        }
+    }
+
+    @Test
+    void shouldPassOtherMessagesAndFailuresInOrder() throws InterruptedException {
+        final EmbeddedChannel channel = new EmbeddedChannel(new OrderedParallelHandler(executor, 4) {
+            @Override
+            protected Object process(final TunPacket packet) {
+                final int sequence = sequence(packet);
+                if (sequence == 1) {
+                    throw new IllegalStateException("boom");
+                }
+                return sequence == 2 ? null : sequence;
+            }
+        });
+
+        // writeInbound would rethrow the failure as soon as it has been passed on
+        channel.pipeline().fireChannelRead(TunPacketBatch.newInstance().add(packet(0)).add(packet(1)).add(packet(2)));
+        channel.pipeline().fireChannelRead("foo");
+        awaitInbound(channel, 2);
+
+        assertEquals(0, (Integer) channel.readInbound());
+        assertSame("foo", channel.readInbound());
+        assertNull(channel.readInbound());
+        assertThrows(IllegalStateException.class, channel::checkException);
+    }
+
+    @Test
+    void shouldReleaseProcessedPackets() throws InterruptedException {
+        final TunPacket packet = packet(0);
+        final ByteBuf buf = packet.content();
+        final EmbeddedChannel channel = new EmbeddedChannel(new OrderedParallelHandler(executor, 4) {
+            @Override
+            protected Object process(final TunPacket packet) {
+                return "done";
+            }
+        });
+
+        channel.writeInbound(packet);
+        awaitInbound(channel, 1);
+
+        assertEquals(0, buf.refCnt());
+    }
+}
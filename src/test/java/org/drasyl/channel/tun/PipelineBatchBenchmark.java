@@ -0,0 +1,118 @@
+/*
+ * Copyright (c) 2021-2022 Heiko Bornholdt and Kevin Röbert
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ * IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM,
+ * DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR
+ * OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE
+ * OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package org.drasyl.channel.tun;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelInboundHandlerAdapter;
+import io.netty.channel.ChannelPipeline;
+import io.netty.channel.embedded.EmbeddedChannel;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares passing a burst of packets through a pipeline of pass-through handlers one packet at a
+ * time with passing them as a single {@link TunPacketBatch}. The last handler inspects every
+ * packet in both cases, so the difference is the per-packet pipeline traversal.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class PipelineBatchBenchmark {
+    @Param({ "16" })
+    private int burst;
+    @Param({ "4", "8" })
+    private int handlers;
+    private ByteBuf buf;
+    private TunPacket packet;
+    private EmbeddedChannel channel;
+    private ChannelPipeline pipeline;
+
+    @Setup
+    public void setup(final Blackhole blackhole) {
+        buf = Unpooled.directBuffer(1500).writeByte(0x45).writeZero(1499);
+        packet = new Tun4Packet(buf);
+        channel = new EmbeddedChannel();
+        pipeline = channel.pipeline();
+        for (int i = 0; i < handlers; i++) {
+            pipeline.addLast(new ChannelInboundHandlerAdapter());
+        }
+        pipeline.addLast(new TunPacketBatchHandler() {
+            @Override
+            protected void channelReadBatch(final ChannelHandlerContext ctx,
+                                            final TunPacketBatch batch) {
+                final int size = batch.size();
+                for (int i = 0; i < size; i++) {
+                    blackhole.consume(batch.get(i).content().readableBytes());
+                }
+            }
+        });
+    }
+
+    @TearDown
+    public void tearDown() {
+        channel.finishAndReleaseAll();
+        buf.release();
+    }
+
+    @Benchmark
+    public void firePackets() {
+        for (int i = 0; i < burst; i++) {
+            pipeline.fireChannelRead(packet.retain());
+        }
+    }
+
+    @Benchmark
+    public void fireBatch() {
+        final TunPacketBatch batch = TunPacketBatch.newInstance();
+        for (int i = 0; i < burst; i++) {
+            batch.add(packet.retain());
+        }
+        pipeline.fireChannelRead(batch);
+    }
+
+    public static void main(final String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder()
+                .include(PipelineBatchBenchmark.class.getSimpleName())
+                .build()).run();
+    }
+}
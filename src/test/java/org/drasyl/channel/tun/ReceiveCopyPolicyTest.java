@@ -0,0 +1,93 @@
+/*
+ * Copyright (c) 2021-2022 Heiko Bornholdt and Kevin Röbert
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ * IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM,
+ * DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR
+ * OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE
+ * OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package org.drasyl.channel.tun;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.PooledByteBufAllocator;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ReceiveCopyPolicyTest {
+    private final PooledByteBufAllocator alloc = new PooledByteBufAllocator(true);
+
+    @Test
+    void shouldNotCopyByDefault() {
+        final ByteBuf buf = alloc.directBuffer(1500).writerIndex(100).readerIndex(10);
+        final long memoryAddress = buf.memoryAddress();
+
+        final ByteBuf result = ReceiveCopyPolicy.NEVER.apply(alloc, buf);
+        try {
+            assertSame(buf, result);
+            assertEquals(memoryAddress, result.memoryAddress());
+            assertEquals(1500, result.capacity());
+            assertEquals(10, result.readerIndex());
+            assertEquals(100, result.writerIndex());
+        }
+        finally {
+            result.release();
+        }
+    }
+
+    @Test
+    void shouldCopyIntoRightSizedBufferIfRequested() {
+        final ByteBuf buf = alloc.directBuffer(1500).writeInt(42).writeZero(96).readerIndex(10);
+
+        final ByteBuf result = ReceiveCopyPolicy.ALWAYS.apply(alloc, buf);
+        try {
+            assertNotSame(buf, result);
+            assertEquals(0, buf.refCnt());
+            assertEquals(100, result.capacity());
+            assertEquals(10, result.readerIndex());
+            assertEquals(100, result.writerIndex());
+            assertEquals(42, result.getInt(0));
+        }
+        finally {
+            result.release();
+        }
+    }
+
+    @Test
+    void shouldNotCopyRightSizedBuffer() {
+        final ByteBuf buf = alloc.directBuffer(100, 100).writeZero(100);
+
+        final ByteBuf result = ReceiveCopyPolicy.ALWAYS.apply(alloc, buf);
+        try {
+            assertSame(buf, result);
+        }
+        finally {
+            result.release();
+        }
+    }
+
+    @Test
+    void shouldDetectHighMemoryPressure() {
+        assertFalse(ReceiveCopyPolicy.MemoryPressure.isHigh(50, 100));
+        assertFalse(ReceiveCopyPolicy.MemoryPressure.isHigh(75, 100));
+        assertTrue(ReceiveCopyPolicy.MemoryPressure.isHigh(76, 100));
+        assertFalse(ReceiveCopyPolicy.MemoryPressure.isHigh(76, -1));
+    }
+}
@@ -0,0 +1,110 @@
+/*
+ * Copyright (c) 2021-2022 Heiko Bornholdt and Kevin Röbert
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ * IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM,
+ * DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR
+ * OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE
+ * OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package org.drasyl.channel.tun;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class SpscRingTest {
+    @Test
+    void shouldRoundCapacityUpToPowerOfTwo() {
+        assertEquals(8, new SpscRing<>(5).capacity());
+        assertEquals(8, new SpscRing<>(8).capacity());
+        assertThrows(IllegalArgumentException.class, () -> new SpscRing<>(0));
+    }
+
+    @Test
+    void shouldPollElementsInOfferOrder() {
+        final SpscRing<Integer> ring = new SpscRing<>(4);
+
+        assertTrue(ring.isEmpty());
+        assertNull(ring.poll());
+        // wrap around several times
+        for (int i = 0; i < 10; i++) {
+            assertTrue(ring.offer(2 * i));
+            assertTrue(ring.offer(2 * i + 1));
+            assertFalse(ring.isEmpty());
+            assertEquals(2 * i, ring.poll());
+            assertEquals(2 * i + 1, ring.poll());
+            assertTrue(ring.isEmpty());
+        }
+    }
+
+    @Test
+    void shouldRejectElementsIfFull() {
+        final SpscRing<Integer> ring = new SpscRing<>(4);
+
+        for (int i = 0; i < 4; i++) {
+            assertEquals(4 - i, ring.remainingCapacity());
+            assertTrue(ring.offer(i));
+        }
+
+        assertEquals(0, ring.remainingCapacity());
+        assertFalse(ring.offer(4));
+        assertEquals(0, ring.poll());
+        assertEquals(1, ring.remainingCapacity());
+        assertTrue(ring.offer(4));
+    }
+
+    @Test
+    void shouldTransferAllElementsBetweenThreads() throws InterruptedException {
+        final int count = 100_000;
+        final SpscRing<Integer> ring = new SpscRing<>(64);
+        final AtomicReference<Throwable> failure = new AtomicReference<>();
+
+        final Thread consumer = new Thread(() -> {
+            try {
+                int expected = 0;
+                while (expected < count) {
+                    final Integer e = ring.poll();
+                    if (e != null) {
+                        assertEquals(expected++, e);
+                    }
+                    else {
+                        Thread.yield();
+                    }
+                }
+            }
+            catch (final Throwable t) {
+                failure.set(t);
+            }
+        });
+        consumer.start();
+        for (int i = 0; i < count; i++) {
+            while (!ring.offer(i)) {
+                Thread.yield();
+            }
+        }
+        consumer.join(30_000);
+
+        assertFalse(consumer.isAlive());
+        assertNull(failure.get());
+        assertTrue(ring.isEmpty());
+    }
+}
@@ -0,0 +1,169 @@
+/*
+ * Copyright (c) 2021-2022 Heiko Bornholdt and Kevin Röbert
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ * IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM,
+ * DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR
+ * OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE
+ * OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package org.drasyl.channel.tun;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class TcpViewTest {
+    private TunPacket packet;
+
+    @BeforeEach
+    void setUp() {
+        final ByteBuf buf = Unpooled.buffer()
+                // ipv4 header with one option word, total length 51
+                .writeBytes(new byte[]{ 0x46, 0, 0, 51, 0, 0, 0x40, 0, 64, 6, 0, 0, 10, 0, 0, 1, 10, 0, 0, 2, 1, 1, 1, 0 })
+                // tcp header with one option word
+                .writeShort(443).writeShort(50000)
+                .writeInt(0xfffffff0).writeInt(1)
+                .writeByte(6 << 4).writeByte(TcpView.TCP_FLAG_PSH | TcpView.TCP_FLAG_ACK)
+                .writeShort(65535).writeShort(0).writeShort(0)
+                .writeInt(0x01010101)
+                // payload
+                .writeBytes(new byte[]{ 1, 2, 3 });
+        packet = TunPacket.newInstance(buf);
+    }
+
+    @AfterEach
+    void tearDown() {
+        packet.release();
+    }
+
+    @Test
+    void shouldReadHeaderBehindIpv4Options() {
+        final TcpView tcp = new TcpView().wrap(packet);
+
+        assertEquals(4, tcp.ipVersion());
+        assertEquals(24, tcp.offset());
+        assertEquals(24, tcp.headerLength());
+        assertEquals(27, tcp.length());
+        assertEquals(443, tcp.sourcePort());
+        assertEquals(50000, tcp.destinationPort());
+        assertEquals(0xfffffff0L, tcp.sequenceNumber());
+        assertEquals(1, tcp.acknowledgementNumber());
+        assertTrue(tcp.isPsh());
+        assertTrue(tcp.isAck());
+        assertFalse(tcp.isSyn());
+        assertFalse(tcp.isFin());
+        assertEquals(65535, tcp.window());
+    }
+
+    @Test
+    void payloadShouldShareMemoryWithPacket() {
+        final TcpView tcp = new TcpView().wrap(packet);
+
+        final ByteBuf payload = tcp.payload();
+        assertEquals(48, tcp.payloadOffset());
+        assertEquals(3, payload.readableBytes());
+        assertEquals(1, payload.getByte(0));
+
+        packet.content().setByte(48, 42);
+        assertEquals(42, payload.getByte(0));
+        assertSame(packet.content(), tcp.buffer());
+    }
+
+    @Test
+    void shouldRejectOtherProtocols() {
+        packet.content().setByte(Tun4Packet.INET4_PROTOCOL, InetProtocol.UDP.decimal);
+
+        assertFalse(new TcpView().tryWrap(packet));
+        assertThrows(IllegalArgumentException.class, () -> new TcpView().wrap(packet));
+        assertTrue(new UdpView().tryWrap(packet));
+    }
+
+    @Test
+    void shouldRejectNonFirstFragments() {
+        packet.content().setShort(Tun4Packet.INET4_FLAGS_AND_FRAGMENT_OFFSET, 0x2001);
+
+        assertFalse(new TcpView().tryWrap(packet));
+    }
+
+    @Test
+    void shouldRejectTruncatedHeader() {
+        // data offset exceeds segment
+        packet.content().setByte(24 + TcpView.TCP_DATA_OFFSET, 15 << 4);
+
+        assertFalse(new TcpView().tryWrap(packet));
+    }
+
+    @Test
+    void shouldRejectTruncatedIpv4Packet() {
+        // packet has been truncated after decoding
+        packet.content().capacity(8);
+
+        assertFalse(new TcpView().tryWrap(packet));
+    }
+
+    @Test
+    void rejectedWrapShouldKeepPreviousPacket() {
+        final TcpView tcp = new TcpView().wrap(packet);
+        final TunPacket other = TunPacket.newInstance(packet.content().copy());
+        try {
+            // data offset exceeds segment
+            other.content().setByte(24 + TcpView.TCP_DATA_OFFSET, 15 << 4);
+
+            assertFalse(tcp.tryWrap(other));
+            assertSame(packet.content(), tcp.buffer());
+            assertEquals(24, tcp.offset());
+            assertEquals(27, tcp.length());
+            assertEquals(443, tcp.sourcePort());
+        }
+        finally {
+            other.release();
+        }
+    }
+
+    @Test
+    void settersShouldUpdateChecksumIncrementally() {
+        final TcpView tcp = new TcpView().wrap(packet);
+        tcp.updateChecksum();
+
+        tcp.setSourcePort(8443);
+        tcp.setDestinationPort(40000);
+        tcp.setSequenceNumber(0x12345678L);
+        tcp.setAcknowledgementNumber(0xfedcba98L);
+        tcp.setFlags(TcpView.TCP_FLAG_FIN | TcpView.TCP_FLAG_ACK);
+        tcp.setWindow(1024);
+        tcp.setUrgentPointer(7);
+
+        assertEquals(8443, tcp.sourcePort());
+        assertEquals(40000, tcp.destinationPort());
+        assertEquals(0x12345678L, tcp.sequenceNumber());
+        assertEquals(0xfedcba98L, tcp.acknowledgementNumber());
+        assertTrue(tcp.isFin());
+        assertFalse(tcp.isPsh());
+        assertEquals(6, tcp.dataOffset());
+        assertEquals(1024, tcp.window());
+        assertEquals(7, tcp.urgentPointer());
+        assertTrue(tcp.verifyChecksum());
+        assertEquals(InetChecksum.calculate(tcp), tcp.checksum());
+    }
+}
@@ -32,6 +32,7 @@ import java.net.UnknownHostException;
 
 import static org.drasyl.channel.tun.Tun4Packet.INET4_FLAGS_DONT_FRAGMENT_MASK;
 import static org.drasyl.channel.tun.Tun4Packet.INET4_FLAGS_MORE_FRAGMENTS_MASK;
+import static org.drasyl.channel.tun.Tun4Packet.INET4_HEADER_CHECKSUM;
 import static org.drasyl.channel.tun.Tun4Packet.INET4_TYPE_OF_SERVICE_DELAY_MASK;
 import static org.drasyl.channel.tun.Tun4Packet.INET4_TYPE_OF_SERVICE_PRECEDENCE_ROUTINE;
 import static org.drasyl.channel.tun.Tun4Packet.INET4_TYPE_OF_SERVICE_RELIBILITY_MASK;
@@ -120,6 +121,20 @@ class Tun4PacketTest {
         assertThrows(IllegalArgumentException.class, () -> new Tun4Packet(buf));
     }
 
+    @Test
+    void newInstanceShouldResetCachedAddressesOnRelease() throws UnknownHostException {
+        // recycler pools only every few instances, so ensure some of them are reused
+        for (int i = 0; i < 32; i++) {
+            final ByteBuf buf = Unpooled.buffer(20).writeByte(0x45).writeZero(19);
+            buf.setByte(Tun4Packet.INET4_SOURCE_ADDRESS + 3, i);
+            final Tun4Packet pooledPacket = Tun4Packet.newInstance(buf);
+
+            assertEquals(InetAddress.getByName("0.0.0." + i), pooledPacket.sourceAddress());
+            assertTrue(pooledPacket.release());
+            assertEquals(0, pooledPacket.refCnt());
+        }
+    }
+
     @Test
     void testVersion() {
         assertEquals(4, packet.version());
@@ -186,6 +201,16 @@ class Tun4PacketTest {
         assertEquals(InetAddress.getByName("224.0.0.251"), packet.destinationAddress());
     }
 
+    @Test
+    void testSourceAddressAsInt() {
+        assertEquals(0x0ae1d754, packet.sourceAddressAsInt());
+    }
+
+    @Test
+    void testDestinationAddressAsInt() {
+        assertEquals(0xe00000fb, packet.destinationAddressAsInt());
+    }
+
     @Test
     void testData() {
         assertArrayEquals(new byte[]{
@@ -297,4 +322,105 @@ class Tun4PacketTest {
             buffer.release();
         }
     }
+
+    /**
+     * Builds an IPv4 packet with one option word carrying a TCP segment, both with valid checksums.
+     */
+    private static Tun4Packet tcpPacket(final int flagsAndFragmentOffset) {
+        final ByteBuf buf = Unpooled.buffer()
+                .writeBytes(new byte[]{ 0x46, (byte) 0xb8, 0, 47, 0, 1 }).writeShort(flagsAndFragmentOffset)
+                .writeBytes(new byte[]{ 64, 6, 0, 0, 10, 0, 0, 1, 10, 0, 0, 2, 1, 1, 1, 0 })
+                .writeShort(443).writeShort(50000).writeInt(1).writeInt(2)
+                .writeByte(5 << 4).writeByte(TcpView.TCP_FLAG_ACK).writeShort(1024).writeShort(0).writeShort(0)
+                .writeBytes(new byte[]{ 1, 2, 3 });
+        buf.setShort(INET4_HEADER_CHECKSUM, InetChecksum.ipv4HeaderChecksum(buf, 0));
+        final Tun4Packet tcpPacket = Tun4Packet.newInstance(buf);
+        if (flagsAndFragmentOffset == 0) {
+            new TcpView().wrap(tcpPacket).updateChecksum();
+        }
+        return tcpPacket;
+    }
+
+    @Test
+    void setTimeToLiveShouldUpdateHeaderChecksum() {
+        final Tun4Packet tcpPacket = tcpPacket(0);
+        try {
+            tcpPacket.setTimeToLive(tcpPacket.timeToLive() - 1);
+
+            assertEquals(63, tcpPacket.timeToLive());
+            assertEquals(6, tcpPacket.protocol());
+            assertTrue(tcpPacket.verifyChecksum());
+        }
+        finally {
+            tcpPacket.release();
+        }
+    }
+
+    @Test
+    void setDscpAndEcnShouldUpdateHeaderChecksum() {
+        final Tun4Packet tcpPacket = tcpPacket(0);
+        try {
+            // expedited forwarding
+            assertEquals(46, tcpPacket.dscp());
+            assertEquals(0, tcpPacket.ecn());
+
+            tcpPacket.setDscp(10);
+            tcpPacket.setEcn(3);
+
+            assertEquals(10, tcpPacket.dscp());
+            assertEquals(3, tcpPacket.ecn());
+            assertEquals(6, tcpPacket.internetHeaderLength());
+            assertTrue(tcpPacket.verifyChecksum());
+        }
+        finally {
+            tcpPacket.release();
+        }
+    }
+
+    @Test
+    void setAddressesShouldUpdateHeaderAndTransportChecksums() throws UnknownHostException {
+        final Tun4Packet tcpPacket = tcpPacket(0);
+        try {
+            assertEquals("10.0.0.1", tcpPacket.sourceAddress().getHostAddress());
+
+            tcpPacket.setSourceAddress(0xc0a80101);
+            tcpPacket.setDestinationAddress((Inet4Address) InetAddress.getByName("192.168.1.2"));
+
+            assertEquals("192.168.1.1", tcpPacket.sourceAddress().getHostAddress());
+            assertEquals(0xc0a80102, tcpPacket.destinationAddressAsInt());
+            assertTrue(tcpPacket.verifyChecksum());
+            final TcpView tcp = new TcpView().wrap(tcpPacket);
+            assertTrue(tcp.verifyChecksum());
+            assertEquals(InetChecksum.calculate(tcp), tcp.checksum());
+        }
+        finally {
+            tcpPacket.release();
+        }
+    }
+
+    @Test
+    void setAddressesShouldNotTouchNonFirstFragments() {
+        final Tun4Packet fragment = tcpPacket(1);
+        try {
+            final int payloadWord = fragment.content().getUnsignedShort(24 + TcpView.TCP_CHECKSUM);
+
+            fragment.setSourceAddress(0xc0a80101);
+
+            assertTrue(fragment.verifyChecksum());
+            assertEquals(payloadWord, fragment.content().getUnsignedShort(24 + TcpView.TCP_CHECKSUM));
+        }
+        finally {
+            fragment.release();
+        }
+    }
+
+    @Test
+    void setAddressesShouldKeepMissingUdpChecksum() {
+        // udp checksum of the packet is 0x957a, clear it
+        packet.content().setShort(26, 0);
+
+        packet.setSourceAddress(0x0a000001);
+
+        assertEquals(0, packet.content().getUnsignedShort(26));
+    }
 }
@@ -26,11 +26,14 @@ import io.netty.buffer.Unpooled;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 
+import java.net.Inet6Address;
 import java.net.InetAddress;
 import java.net.UnknownHostException;
 
 import static org.junit.jupiter.api.Assertions.assertArrayEquals;
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
 
 class Tun6PacketTest {
     private Tun6Packet packet;
@@ -153,6 +156,157 @@ class Tun6PacketTest {
         assertEquals(InetAddress.getByName("fe80:0:0:0:66:445e:bedf:f843"), packet.destinationAddress());
     }
 
+    @Test
+    void testSourceAddressHighAndLow() {
+        assertEquals(0xfe80_0000_0000_0000L, packet.sourceAddressHigh());
+        assertEquals(0x1cdf_174b_91df_6407L, packet.sourceAddressLow());
+    }
+
+    @Test
+    void testDestinationAddressHighAndLow() {
+        assertEquals(0xfe80_0000_0000_0000L, packet.destinationAddressHigh());
+        assertEquals(0x0066_445e_bedf_f843L, packet.destinationAddressLow());
+    }
+
+    @Test
+    void testUpperLayerWithoutExtensionHeaders() {
+        assertEquals(InetProtocol.TCP.decimal, packet.upperLayerProtocol());
+        assertEquals(40, packet.upperLayerOffset());
+        assertFalse(packet.isFragment());
+        assertEquals(0, packet.fragmentOffset());
+        assertFalse(packet.moreFragments());
+    }
+
+    @Test
+    void testUpperLayerBehindExtensionHeaders() {
+        final Tun6Packet fragment = fragment(0, true);
+        try {
+            assertEquals(0, fragment.nextHeader());
+            assertEquals(InetProtocol.UDP.decimal, fragment.upperLayerProtocol());
+            assertEquals(72, fragment.upperLayerOffset());
+            assertTrue(fragment.isFragment());
+            assertEquals(0, fragment.fragmentOffset());
+            assertTrue(fragment.moreFragments());
+            assertEquals(0xcafebabeL, fragment.fragmentIdentification());
+        }
+        finally {
+            fragment.release();
+        }
+    }
+
+    @Test
+    void testUpperLayerOfNonFirstFragment() {
+        final Tun6Packet fragment = fragment(185, false);
+        try {
+            assertEquals(InetProtocol.UDP.decimal, fragment.upperLayerProtocol());
+            assertEquals(-1, fragment.upperLayerOffset());
+            assertEquals(185, fragment.fragmentOffset());
+            assertFalse(fragment.moreFragments());
+        }
+        finally {
+            fragment.release();
+        }
+    }
+
+    @Test
+    void testUpperLayerIsCached() {
+        final Tun6Packet fragment = fragment(0, true);
+        try {
+            assertEquals(InetProtocol.UDP.decimal, fragment.upperLayerProtocol());
+
+            // modify next header of fragment header
+            fragment.content().setByte(64, InetProtocol.TCP.decimal);
+            assertEquals(InetProtocol.UDP.decimal, fragment.upperLayerProtocol());
+
+            fragment.invalidateExtensionHeaders();
+            assertEquals(InetProtocol.TCP.decimal, fragment.upperLayerProtocol());
+        }
+        finally {
+            fragment.release();
+        }
+    }
+
+    @Test
+    void settersShouldKeepCachedUpperLayer() {
+        final Tun6Packet fragment = fragment(0, true);
+        try {
+            assertEquals(InetProtocol.UDP.decimal, fragment.upperLayerProtocol());
+
+            // modify next header of fragment header, not visible until invalidated
+            fragment.content().setByte(64, InetProtocol.TCP.decimal);
+            fragment.setDscp(46);
+            fragment.setEcn(1);
+            fragment.setHopLimit(32);
+            fragment.setSourceAddress(1, 2);
+            fragment.setDestinationAddress(3, 4);
+
+            assertEquals(InetProtocol.UDP.decimal, fragment.upperLayerProtocol());
+            assertEquals(72, fragment.upperLayerOffset());
+        }
+        finally {
+            fragment.release();
+        }
+    }
+
+    @Test
+    void testUpperLayerFollowsChangedNextHeader() {
+        final Tun6Packet fragment = fragment(0, true);
+        try {
+            assertEquals(72, fragment.upperLayerOffset());
+
+            // skip all extension headers
+            fragment.content().setByte(Tun6Packet.INET6_NEXT_HEADER, InetProtocol.UDP.decimal);
+            assertEquals(InetProtocol.UDP.decimal, fragment.upperLayerProtocol());
+            assertEquals(40, fragment.upperLayerOffset());
+            assertFalse(fragment.isFragment());
+        }
+        finally {
+            fragment.release();
+        }
+    }
+
+    @Test
+    void replaceShouldNotShareUpperLayer() {
+        final Tun6Packet fragment = fragment(0, true);
+        try {
+            assertEquals(72, fragment.upperLayerOffset());
+
+            final Tun6Packet copy = fragment.replace(Unpooled.buffer()
+                    .writeInt(0x60000000).writeShort(8).writeByte(InetProtocol.TCP.decimal).writeByte(64)
+                    .writeZero(32)
+                    .writeZero(20));
+            try {
+                assertEquals(InetProtocol.TCP.decimal, copy.upperLayerProtocol());
+                assertEquals(40, copy.upperLayerOffset());
+            }
+            finally {
+                copy.release();
+            }
+        }
+        finally {
+            fragment.release();
+        }
+    }
+
+    /**
+     * Returns an IPv6 packet with hop-by-hop options (16 bytes), destination options (8 bytes),
+     * a fragment header, and 8 bytes of UDP.
+     */
+    private static Tun6Packet fragment(final int fragmentOffset, final boolean moreFragments) {
+        final ByteBuf buf = Unpooled.buffer()
+                .writeInt(0x60000000).writeShort(40).writeByte(0).writeByte(64)
+                .writeZero(32)
+                // hop-by-hop options
+                .writeByte(60).writeByte(1).writeZero(14)
+                // destination options
+                .writeByte(44).writeByte(0).writeZero(6)
+                // fragment header
+                .writeByte(17).writeByte(0).writeShort(fragmentOffset << 3 | (moreFragments ? 1 : 0)).writeInt(0xcafebabe)
+                // udp
+                .writeZero(8);
+        return Tun6Packet.newInstance(buf);
+    }
+
     @Test
     void testData() {
         assertArrayEquals(new byte[]{
@@ -195,4 +349,47 @@ class Tun6PacketTest {
     void testToString() {
         assertEquals("Tun6Packet[len=117, src=fe80:0:0:0:1cdf:174b:91df:6407, dst=fe80:0:0:0:66:445e:bedf:f843]", packet.toString());
     }
+
+    @Test
+    void setHopLimitAndTrafficClass() {
+        packet.setHopLimit(63);
+        packet.setDscp(46);
+        packet.setEcn(1);
+
+        assertEquals(63, packet.hopLimit());
+        assertEquals(46, packet.dscp());
+        assertEquals(1, packet.ecn());
+        assertEquals(6, packet.version());
+        assertEquals(0x60c00L, packet.flowLabel());
+    }
+
+    @Test
+    void setAddressesShouldUpdateTransportChecksum() throws UnknownHostException {
+        final ByteBuf buf = Unpooled.buffer()
+                // ipv6 header, payload length 20, next header destination options
+                .writeInt(0x60000000).writeShort(20).writeByte(60).writeByte(64)
+                .writeLong(0xfe80000000000000L).writeLong(1).writeLong(0xfe80000000000000L).writeLong(2)
+                // destination options, next header icmpv6
+                .writeByte(58).writeByte(0).writeZero(6)
+                // icmpv6 echo request
+                .writeByte(128).writeByte(0).writeShort(0).writeShort(1).writeShort(2)
+                .writeInt(0xcafebabe);
+        final Tun6Packet icmpPacket = Tun6Packet.newInstance(buf);
+        try {
+            final IcmpView icmp = new IcmpView().wrap(icmpPacket);
+            icmp.updateChecksum();
+
+            icmpPacket.setSourceAddress(0x20010db800000000L, 0x1234L);
+            icmpPacket.setDestinationAddress((Inet6Address) InetAddress.getByName("2001:db8::1"));
+
+            assertEquals(InetAddress.getByName("2001:db8::1234"), icmpPacket.sourceAddress());
+            assertEquals(0x20010db800000000L, icmpPacket.destinationAddressHigh());
+            assertEquals(1L, icmpPacket.destinationAddressLow());
+            assertTrue(icmp.verifyChecksum());
+            assertEquals(InetChecksum.calculate(icmp), icmp.checksum());
+        }
+        finally {
+            icmpPacket.release();
+        }
+    }
 }
@@ -0,0 +1,666 @@
+/*
+ * Copyright (c) 2021-2022 Heiko Bornholdt and Kevin Röbert
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ * IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM,
+ * DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR
+ * OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE
+ * OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package org.drasyl.channel.tun;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufAllocator;
+import io.netty.buffer.Unpooled;
+import io.netty.channel.ChannelConfig;
+import io.netty.channel.ChannelFuture;
+import io.netty.channel.ChannelHandler;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelInboundHandlerAdapter;
+import io.netty.channel.DefaultMaxMessagesRecvByteBufAllocator;
+import io.netty.channel.EventLoopGroup;
+import io.netty.channel.RecvByteBufAllocator;
+import io.netty.channel.nio.NioEventLoopGroup;
+import io.netty.util.ReferenceCountUtil;
+import org.drasyl.channel.tun.jna.AbstractTunDevice;
+import org.drasyl.channel.tun.jna.PartialWriteException;
+import org.drasyl.channel.tun.jna.TunDevice;
+import org.drasyl.channel.tun.jna.linux.IoUringTunDevice;
+import org.drasyl.channel.tun.jna.linux.LinuxTunDevice;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIf;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.BlockingDeque;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.LinkedBlockingDeque;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BooleanSupplier;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class TunChannelTest {
+    private final EventLoopGroup group = new NioEventLoopGroup(1);
+
+    @AfterEach
+    void tearDown() {
+        group.shutdownGracefully(0, 1, TimeUnit.SECONDS).syncUninterruptibly();
+    }
+
+    @Test
+    void shouldFailOnlyPacketsOfBurstNotWritten() throws InterruptedException {
+        final TestDevice device = new TestDevice(3);
+        final TunChannel channel = newChannel(device);
+        bind(channel);
+
+        final TunPacket[] packets = new TunPacket[5];
+        final ChannelFuture[] futures = new ChannelFuture[packets.length];
+        for (int i = 0; i < packets.length; i++) {
+            packets[i] = packet(i);
+            futures[i] = channel.write(packets[i]);
+        }
+        channel.flush();
+
+        for (int i = 0; i < packets.length; i++) {
+            assertTrue(futures[i].await(5, TimeUnit.SECONDS));
+            assertEquals(0, packets[i].refCnt());
+        }
+        assertEquals(List.of(0, 1), device.written);
+        assertTrue(futures[0].isSuccess());
+        assertTrue(futures[1].isSuccess());
+        for (int i = 2; i < packets.length; i++) {
+            assertFalse(futures[i].isSuccess());
+            assertEquals(2, ((PartialWriteException) futures[i].cause()).written());
+            assertSame(device.failure, futures[i].cause().getCause());
+        }
+        // failed write has closed the channel
+        channel.closeFuture().await();
+    }
+
+    @Test
+    void shouldFailAllPacketsOfBurstIfNoneHasBeenWritten() throws InterruptedException {
+        final TestDevice device = new TestDevice(1);
+        final TunChannel channel = newChannel(device);
+        bind(channel);
+
+        final ChannelFuture first = channel.write(packet(0));
+        final ChannelFuture second = channel.write(packet(1));
+        channel.flush();
+
+        assertTrue(second.await(5, TimeUnit.SECONDS));
+        assertSame(device.failure, first.cause());
+        assertSame(device.failure, second.cause());
+        assertEquals(List.of(), device.written);
+    }
+
+    @Test
+    @EnabledIf("org.drasyl.channel.tun.jna.linux.LinuxTunDeviceTest#isTunAvailable")
+    void openQueuesShouldUseIoUringIfEnabledAndAvailable() throws IOException {
+        final TunChannel channel = new TunChannel();
+        channel.config().setOption(TunChannelOption.TUN_IO_URING, true);
+        channel.config().setOption(TunChannelOption.TUN_QUEUES, 2);
+
+        final List<TunDevice> queues = channel.openQueues(new TunAddress("seltest0"));
+        try {
+            assertEquals(2, queues.size());
+            for (final TunDevice queue : queues) {
+                assertEquals(IoUringTunDevice.isAvailable() ? IoUringTunDevice.class : LinuxTunDevice.class, queue.getClass());
+            }
+        }
+        finally {
+            for (final TunDevice queue : queues) {
+                queue.close();
+            }
+        }
+    }
+
+    @Test
+    @EnabledIf("org.drasyl.channel.tun.jna.linux.LinuxTunDeviceTest#isTunAvailable")
+    void openQueuesShouldUseReadWriteIfIoUringIsDisabled() throws IOException {
+        final TunChannel channel = new TunChannel();
+
+        final List<TunDevice> queues = channel.openQueues(new TunAddress("seltest1"));
+        try {
+            assertEquals(1, queues.size());
+            assertEquals(LinuxTunDevice.class, queues.get(0).getClass());
+        }
+        finally {
+            queues.get(0).close();
+        }
+    }
+
+    @Test
+    void shouldCloseDeviceOnceWriterHasLeftIt() throws InterruptedException {
+        final TestDevice device = new TestDevice(0);
+        device.unblock = new CountDownLatch(1);
+        final TunChannel channel = newChannel(device);
+        channel.config().setOption(TunChannelOption.TUN_WRITE_QUEUE_SIZE, 64);
+        bind(channel);
+
+        channel.writeAndFlush(packet(0));
+        assertTrue(device.blocked.await(5, TimeUnit.SECONDS));
+        channel.close().sync();
+
+        assertFalse(channel.isOpen());
+        assertFalse(device.isClosed());
+        device.unblock.countDown();
+        assertTrue(device.closeLatch.await(5, TimeUnit.SECONDS));
+        assertEquals(List.of(0), device.written);
+    }
+
+    @Test
+    void shouldPassBytesOfBurstToRecvByteBufAllocatorHandle() throws InterruptedException {
+        final TestDevice device = new TestDevice(0);
+        device.reads.add(packet(0));
+        final RecordingAllocator allocator = new RecordingAllocator();
+        final CountDownLatch read = new CountDownLatch(1);
+        final TunChannel channel = newChannel(device);
+        channel.config().setRecvByteBufAllocator(allocator);
+        channel.pipeline().addLast(new ChannelInboundHandlerAdapter() {
+            @Override
+            public void channelRead(final ChannelHandlerContext ctx, final Object msg) {
+                ReferenceCountUtil.release(msg);
+                read.countDown();
+            }
+        });
+        bind(channel);
+
+        assertTrue(read.await(5, TimeUnit.SECONDS));
+        assertEquals(4096, allocator.attemptedBytesRead.get(0));
+        assertEquals(20, allocator.lastBytesRead.get(0));
+        channel.close().sync();
+    }
+
+    @Test
+    void shouldReadPacketsOfAllQueues() throws InterruptedException {
+        final TestDevice first = new TestDevice(0);
+        final TestDevice second = new TestDevice(0);
+        for (int i = 0; i < 3; i++) {
+            first.reads.add(packet(i));
+            second.reads.add(packet(10 + i));
+        }
+        final BlockingQueue<Integer> reads = new LinkedBlockingQueue<>();
+        final TunChannel channel = newChannel(first, second);
+        channel.pipeline().addLast(new ChannelInboundHandlerAdapter() {
+            @Override
+            public void channelRead(final ChannelHandlerContext ctx, final Object msg) {
+                reads.add((int) ((TunPacket) msg).content().getByte(19));
+                ReferenceCountUtil.release(msg);
+            }
+        });
+        bind(channel);
+
+        final Set<Integer> markers = new HashSet<>();
+        for (int i = 0; i < 6; i++) {
+            markers.add(reads.poll(5, TimeUnit.SECONDS));
+        }
+        assertEquals(Set.of(0, 1, 2, 10, 11, 12), markers);
+        channel.close().sync();
+        assertTrue(first.isClosed());
+        assertTrue(second.isClosed());
+    }
+
+    @Test
+    void shouldReleasePacketsReadAfterEventLoopHasTerminated() throws InterruptedException {
+        final TestDevice device = new TestDevice(0);
+        final TunChannel channel = newChannel(device);
+        bind(channel);
+        group.shutdownGracefully(0, 1, TimeUnit.SECONDS).sync();
+
+        try {
+            // the reader is still waiting for packets, but the event loop will never drain them
+            final TunPacket packet = packet(0);
+            device.reads.add(packet);
+            final long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+            while (packet.refCnt() != 0 && System.nanoTime() < deadline) {
+                Thread.sleep(10);
+            }
+            assertEquals(0, packet.refCnt());
+        }
+        finally {
+            device.close();
+        }
+    }
+
+    @Test
+    void shouldPassEachBurstThroughPipelineOnEventLoopAtOnce() throws InterruptedException {
+        final BurstDevice device = new BurstDevice();
+        final List<String> events = new CopyOnWriteArrayList<>();
+        final BlockingQueue<Boolean> reads = new LinkedBlockingQueue<>();
+        final TunChannel channel = newChannel(device);
+        channel.pipeline().addLast(new ChannelInboundHandlerAdapter() {
+            @Override
+            public void channelRead(final ChannelHandlerContext ctx, final Object msg) {
+                events.add("read");
+                reads.add(ctx.executor().inEventLoop());
+                ReferenceCountUtil.release(msg);
+            }
+
+            @Override
+            public void channelReadComplete(final ChannelHandlerContext ctx) {
+                events.add("readComplete");
+            }
+        });
+        bind(channel);
+
+        // the first burst consists of a single packet, as no packet size is known yet
+        device.bursts.add(List.of(packet(0)));
+        assertEquals(Boolean.TRUE, reads.poll(5, TimeUnit.SECONDS));
+        device.bursts.add(List.of(packet(1), packet(2), packet(3), packet(4), packet(5)));
+        for (int i = 0; i < 5; i++) {
+            assertEquals(Boolean.TRUE, reads.poll(5, TimeUnit.SECONDS));
+        }
+        channel.eventLoop().submit(() -> {
+        }).sync();
+
+        // one event loop wakeup per burst, each passing the whole burst through the pipeline
+        assertEquals(List.of("read", "readComplete", "read", "read", "read", "read", "read", "readComplete"), events);
+        assertEquals(2, device.burstsRead.get());
+        channel.close().sync();
+    }
+
+    @Test
+    void blockPolicyShouldStallReaderWhileHandlerIsBlocked() throws InterruptedException {
+        final TestDevice device = new TestDevice(0);
+        final BlockedHandler handler = new BlockedHandler();
+        final TunChannel channel = newChannel(device, IngressOverflowPolicy.BLOCK, handler);
+        for (int i = 0; i < 64; i++) {
+            device.reads.add(packet(i));
+        }
+        bind(channel);
+        try {
+            assertTrue(handler.blocked.await(5, TimeUnit.SECONDS));
+
+            // the reader stops at the high water mark and leaves the other packets to the device
+            Thread.sleep(200);
+            final int remaining = device.reads.size();
+            assertTrue(remaining >= 64 - 1 - 4 - 16, "reader did not stall: " + remaining + " packets left");
+            Thread.sleep(100);
+            assertEquals(remaining, device.reads.size());
+            assertEquals(0, channel.droppedPackets());
+        }
+        finally {
+            handler.unblock.countDown();
+        }
+
+        // no packet is lost once the handler keeps up again
+        for (int i = 0; i < 64; i++) {
+            assertEquals(i, handler.reads.poll(5, TimeUnit.SECONDS));
+        }
+        assertEquals(0, channel.droppedPackets());
+        channel.close().sync();
+    }
+
+    @Test
+    void tailDropPolicyShouldKeepReadingAndDropWhileHandlerIsBlocked() throws InterruptedException {
+        final TestDevice device = new TestDevice(0);
+        final BlockedHandler handler = new BlockedHandler();
+        final TunChannel channel = newChannel(device, IngressOverflowPolicy.TAIL_DROP, handler);
+        for (int i = 0; i < 64; i++) {
+            device.reads.add(packet(i));
+        }
+        bind(channel);
+        try {
+            assertTrue(handler.blocked.await(5, TimeUnit.SECONDS));
+
+            // the reader drains the device and drops the packets exceeding the high water mark
+            awaitUntil(device.reads::isEmpty);
+            assertTrue(channel.droppedPackets() >= 64 - 1 - 4 - 16, "too few packets dropped: " + channel.droppedPackets());
+        }
+        finally {
+            handler.unblock.countDown();
+        }
+
+        // every packet is either passed to the pipeline or counted as dropped
+        awaitUntil(() -> handler.reads.size() + channel.droppedPackets() == 64);
+        final long dropped = channel.droppedPackets();
+        Thread.sleep(100);
+        assertEquals(64 - dropped, handler.reads.size());
+        channel.close().sync();
+    }
+
+    @Test
+    void shouldPassReadPacketsAsBatchesOfConfiguredSize() throws InterruptedException {
+        final BurstDevice device = new BurstDevice();
+        final List<Integer> batchSizes = new CopyOnWriteArrayList<>();
+        final List<Integer> batchRefCnts = new CopyOnWriteArrayList<>();
+        final BlockingQueue<Integer> reads = new LinkedBlockingQueue<>();
+        final TunChannel channel = newChannel(device);
+        channel.config().setOption(TunChannelOption.TUN_READ_BATCH_SIZE, 3);
+        channel.pipeline().addLast(new ChannelInboundHandlerAdapter() {
+            @Override
+            public void channelRead(final ChannelHandlerContext ctx, final Object msg) {
+                final TunPacketBatch batch = (TunPacketBatch) msg;
+                batchSizes.add(batch.size());
+                ctx.fireChannelRead(batch);
+                // the unroller has passed on the packets and released the batch
+                batchRefCnts.add(batch.refCnt());
+            }
+        }, TunPacketBatchUnroller.INSTANCE, new ChannelInboundHandlerAdapter() {
+            @Override
+            public void channelRead(final ChannelHandlerContext ctx, final Object msg) {
+                reads.add((int) ((TunPacket) msg).content().getByte(19));
+                ReferenceCountUtil.release(msg);
+            }
+        });
+        bind(channel);
+
+        final List<TunPacket> packets = new ArrayList<>();
+        for (int i = 0; i < 8; i++) {
+            packets.add(packet(i));
+        }
+        // the first burst consists of a single packet, as no packet size is known yet
+        device.bursts.add(packets.subList(0, 1));
+        assertEquals(0, reads.poll(5, TimeUnit.SECONDS));
+        device.bursts.add(packets.subList(1, 8));
+        for (int i = 1; i < 8; i++) {
+            assertEquals(i, reads.poll(5, TimeUnit.SECONDS));
+        }
+        channel.close().sync();
+
+        // each burst is split into batches of at most three packets
+        assertEquals(List.of(1, 3, 3, 1), batchSizes);
+        assertEquals(List.of(0, 0, 0, 0), batchRefCnts);
+        for (final TunPacket packet : packets) {
+            assertEquals(0, packet.refCnt());
+        }
+    }
+
+    @Test
+    void continueReadingShouldIgnoreMaybeMoreDataOfExtendedHandle() {
+        final RecvByteBufAllocator.Handle handle = new RecordingAllocator().newHandle();
+        handle.reset(new TunChannel().config());
+        handle.attemptedBytesRead(4096);
+        handle.lastBytesRead(20);
+        handle.incMessagesRead(1);
+
+        // fewer bytes than attempted, but the burst size tells whether more packets are available
+        assertFalse(handle.continueReading());
+        assertTrue(TunChannel.continueReading(handle));
+    }
+
+    @Test
+    void continueReadingShouldAskNonExtendedHandle() {
+        assertTrue(TunChannel.continueReading(new NonExtendedHandle(true)));
+        assertFalse(TunChannel.continueReading(new NonExtendedHandle(false)));
+    }
+
+    private static TunChannel newChannel(final TunDevice... queues) {
+        return new TunChannel() {
+            @Override
+            List<TunDevice> openQueues(final TunAddress localAddress) {
+                return List.of(queues);
+            }
+        };
+    }
+
+    /**
+     * Returns a channel reading from {@code device} that applies {@code policy} above a high water
+     * mark of {@code 4} packets and passes read packets to {@code handler}.
+     */
+    private static TunChannel newChannel(final TunDevice device,
+                                         final IngressOverflowPolicy policy,
+                                         final ChannelHandler handler) {
+        final TunChannel channel = newChannel(device);
+        channel.config().setOption(TunChannelOption.TUN_INGRESS_WATER_MARK, new IngressWaterMark(2, 4));
+        channel.config().setOption(TunChannelOption.TUN_INGRESS_OVERFLOW_POLICY, policy);
+        channel.pipeline().addLast(handler);
+        return channel;
+    }
+
+    private static void awaitUntil(final BooleanSupplier condition) throws InterruptedException {
+        final long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (!condition.getAsBoolean()) {
+            assertTrue(System.nanoTime() < deadline, "condition not met in time");
+            Thread.sleep(10);
+        }
+    }
+
+    private void bind(final TunChannel channel) throws InterruptedException {
+        group.register(channel).sync();
+        channel.bind(new TunAddress("test")).sync();
+    }
+
+    private static TunPacket packet(final int marker) {
+        return new Tun4Packet(Unpooled.buffer(20).writeByte(0x45).writeZero(18).writeByte(marker));
+    }
+
+    /**
+     * Guesses 4096 bytes, reads up to 16 messages at once and records the bytes passed to its
+     * handles.
+     */
+    private static class RecordingAllocator extends DefaultMaxMessagesRecvByteBufAllocator {
+        final List<Integer> attemptedBytesRead = new CopyOnWriteArrayList<>();
+        final List<Integer> lastBytesRead = new CopyOnWriteArrayList<>();
+
+        RecordingAllocator() {
+            super(16);
+        }
+
+        @Override
+        @SuppressWarnings("deprecation")
+        public Handle newHandle() {
+            return new MaxMessageHandle() {
+                @Override
+                public int guess() {
+                    return 4096;
+                }
+
+                @Override
+                public void attemptedBytesRead(final int bytes) {
+                    super.attemptedBytesRead(bytes);
+                    attemptedBytesRead.add(bytes);
+                }
+
+                @Override
+                public void lastBytesRead(final int bytes) {
+                    super.lastBytesRead(bytes);
+                    lastBytesRead.add(bytes);
+                }
+            };
+        }
+    }
+
+    @SuppressWarnings("deprecation")
+    private static class NonExtendedHandle implements RecvByteBufAllocator.Handle {
+        private final boolean continueReading;
+
+        NonExtendedHandle(final boolean continueReading) {
+            this.continueReading = continueReading;
+        }
+
+        @Override
+        public ByteBuf allocate(final ByteBufAllocator alloc) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public int guess() {
+            return 4096;
+        }
+
+        @Override
+        public void reset(final ChannelConfig config) {
+            // do nothing
+        }
+
+        @Override
+        public void incMessagesRead(final int numMessages) {
+            // do nothing
+        }
+
+        @Override
+        public void lastBytesRead(final int bytes) {
+            // do nothing
+        }
+
+        @Override
+        public int lastBytesRead() {
+            return 0;
+        }
+
+        @Override
+        public void attemptedBytesRead(final int bytes) {
+            // do nothing
+        }
+
+        @Override
+        public int attemptedBytesRead() {
+            return 0;
+        }
+
+        @Override
+        public boolean continueReading() {
+            return continueReading;
+        }
+
+        @Override
+        public void readComplete() {
+            // do nothing
+        }
+    }
+
+    /**
+     * Blocks the event loop on the first read until {@link #unblock} is counted down and records
+     * the markers of all read packets.
+     */
+    private static class BlockedHandler extends ChannelInboundHandlerAdapter {
+        final CountDownLatch blocked = new CountDownLatch(1);
+        final CountDownLatch unblock = new CountDownLatch(1);
+        final BlockingQueue<Integer> reads = new LinkedBlockingQueue<>();
+
+        @Override
+        public void channelRead(final ChannelHandlerContext ctx, final Object msg) throws InterruptedException {
+            reads.add((int) ((TunPacket) msg).content().getByte(19));
+            ReferenceCountUtil.release(msg);
+            blocked.countDown();
+            unblock.await();
+        }
+    }
+
+    /**
+     * Returns the packets of each burst added to {@link #bursts} by a single read, split into
+     * multiple reads only if the burst exceeds the maximum number of packets to read at once.
+     */
+    private static class BurstDevice extends TestDevice {
+        final BlockingDeque<List<TunPacket>> bursts = new LinkedBlockingDeque<>();
+        final AtomicInteger burstsRead = new AtomicInteger();
+
+        BurstDevice() {
+            super(0);
+        }
+
+        @Override
+        public int readPackets(final ByteBufAllocator alloc,
+                               final TunPacket[] out,
+                               final int max) throws IOException {
+            try {
+                while (!closed) {
+                    final List<TunPacket> burst = bursts.poll(10, TimeUnit.MILLISECONDS);
+                    if (burst != null) {
+                        final int count = Math.min(max, burst.size());
+                        for (int i = 0; i < count; i++) {
+                            out[i] = burst.get(i);
+                        }
+                        if (count < burst.size()) {
+                            bursts.addFirst(burst.subList(count, burst.size()));
+                        }
+                        burstsRead.incrementAndGet();
+                        return count;
+                    }
+                }
+            }
+            catch (final InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            throw new IOException("Device is closed.");
+        }
+    }
+
+    /**
+     * Records the markers of written packets and fails to write the packet at the given position.
+     * Writes block until {@link #unblock} is counted down, if set. Reads return the packets added
+     * to {@link #reads} until the device is closed.
+     */
+    private static class TestDevice extends AbstractTunDevice {
+        final List<Integer> written = new CopyOnWriteArrayList<>();
+        final BlockingQueue<TunPacket> reads = new LinkedBlockingQueue<>();
+        final IOException failure = new IOException("Write failed.");
+        final CountDownLatch closeLatch = new CountDownLatch(1);
+        final CountDownLatch blocked = new CountDownLatch(1);
+        volatile CountDownLatch unblock;
+        final int failAt;
+        int writes;
+
+        TestDevice(final int failAt) {
+            super(new TunAddress("test"));
+            this.failAt = failAt;
+        }
+
+        @Override
+        public TunPacket readPacket(final ByteBufAllocator alloc) throws IOException {
+            try {
+                while (!closed) {
+                    final TunPacket packet = reads.poll(10, TimeUnit.MILLISECONDS);
+                    if (packet != null) {
+                        return packet;
+                    }
+                }
+            }
+            catch (final InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            throw new IOException("Device is closed.");
+        }
+
+        @Override
+        public void writePacket(final ByteBufAllocator alloc, final TunPacket msg) throws IOException {
+            blocked.countDown();
+            try {
+                if (unblock != null) {
+                    unblock.await();
+                }
+                if (++writes == failAt) {
+                    throw failure;
+                }
+                written.add((int) msg.content().getByte(19));
+            }
+            catch (final InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            finally {
+                msg.release();
+            }
+        }
+
+        @Override
+        public void close() {
+            closed = true;
+            closeLatch.countDown();
+        }
+    }
+}
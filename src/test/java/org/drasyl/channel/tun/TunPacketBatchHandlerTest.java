@@ -0,0 +1,80 @@
+/*
+ * Copyright (c) 2021-2022 Heiko Bornholdt and Kevin Röbert
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ * IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM,
+ * DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR
+ * OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE
+ * OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package org.drasyl.channel.tun;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.embedded.EmbeddedChannel;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.drasyl.channel.tun.TunPacketBatchTest.packet;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+
+class TunPacketBatchHandlerTest {
+    private final List<Integer> batchSizes = new ArrayList<>();
+    private final TunPacketBatchHandler handler = new TunPacketBatchHandler() {
+        @Override
+        protected void channelReadBatch(final ChannelHandlerContext ctx,
+                                        final TunPacketBatch batch) {
+            batchSizes.add(batch.size());
+        }
+    };
+
+    @Test
+    void shouldProcessAndReleaseBatches() {
+        final EmbeddedChannel channel = new EmbeddedChannel(handler);
+        final ByteBuf buf1 = Unpooled.buffer(20);
+        final ByteBuf buf2 = Unpooled.buffer(20);
+
+        channel.writeInbound(TunPacketBatch.newInstance().add(packet(buf1)).add(packet(buf2)));
+
+        assertEquals(List.of(2), batchSizes);
+        assertEquals(0, buf1.refCnt());
+        assertEquals(0, buf2.refCnt());
+    }
+
+    @Test
+    void shouldProcessIndividualPacketsAsBatchOfOne() {
+        final EmbeddedChannel channel = new EmbeddedChannel(handler);
+        final ByteBuf buf = Unpooled.buffer(20);
+
+        channel.writeInbound(packet(buf));
+
+        assertEquals(List.of(1), batchSizes);
+        assertEquals(0, buf.refCnt());
+    }
+
+    @Test
+    void shouldPassOtherMessages() {
+        final EmbeddedChannel channel = new EmbeddedChannel(handler);
+
+        channel.writeInbound("foo");
+
+        assertSame("foo", channel.readInbound());
+        assertEquals(List.of(), batchSizes);
+    }
+}
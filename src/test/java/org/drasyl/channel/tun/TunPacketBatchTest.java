@@ -0,0 +1,92 @@
+/*
+ * Copyright (c) 2021-2022 Heiko Bornholdt and Kevin Röbert
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ * IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM,
+ * DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR
+ * OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE
+ * OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package org.drasyl.channel.tun;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class TunPacketBatchTest {
+    static TunPacket packet(final ByteBuf buf) {
+        return new Tun4Packet(buf.writeByte(0x45).writeZero(19));
+    }
+
+    @Test
+    void shouldHoldPacketsInOrder() {
+        final TunPacketBatch batch = TunPacketBatch.newInstance();
+        final List<TunPacket> packets = new ArrayList<>();
+        // exceed the initial capacity
+        for (int i = 0; i < 40; i++) {
+            final TunPacket packet = packet(Unpooled.buffer(20));
+            packets.add(packet);
+            batch.add(packet);
+        }
+
+        assertEquals(40, batch.size());
+        assertFalse(batch.isEmpty());
+        for (int i = 0; i < 40; i++) {
+            assertSame(packets.get(i), batch.get(i));
+        }
+        final List<TunPacket> iterated = new ArrayList<>();
+        batch.forEach(iterated::add);
+        assertEquals(packets, iterated);
+        assertThrows(IndexOutOfBoundsException.class, () -> batch.get(40));
+
+        batch.release();
+    }
+
+    @Test
+    void shouldReleasePacketsOnLastRelease() {
+        final ByteBuf buf1 = Unpooled.buffer(20);
+        final ByteBuf buf2 = Unpooled.buffer(20);
+        final TunPacketBatch batch = TunPacketBatch.newInstance().add(packet(buf1)).add(packet(buf2));
+
+        batch.retain();
+        assertFalse(batch.release());
+        assertEquals(1, buf1.refCnt());
+
+        assertTrue(batch.release());
+        assertEquals(0, buf1.refCnt());
+        assertEquals(0, buf2.refCnt());
+    }
+
+    @Test
+    void shouldBeEmptyWhenObtainedFromPool() {
+        final TunPacketBatch batch = TunPacketBatch.newInstance().add(packet(Unpooled.buffer(20)));
+        batch.release();
+
+        final TunPacketBatch pooled = TunPacketBatch.newInstance();
+
+        assertEquals(1, pooled.refCnt());
+        assertTrue(pooled.isEmpty());
+        pooled.release();
+    }
+}
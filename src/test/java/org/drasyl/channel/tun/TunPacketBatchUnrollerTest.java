@@ -0,0 +1,63 @@
+/*
+ * Copyright (c) 2021-2022 Heiko Bornholdt and Kevin Röbert
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ * IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM,
+ * DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR
+ * OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE
+ * OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package org.drasyl.channel.tun;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import io.netty.channel.embedded.EmbeddedChannel;
+import org.junit.jupiter.api.Test;
+
+import static org.drasyl.channel.tun.TunPacketBatchTest.packet;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+
+class TunPacketBatchUnrollerTest {
+    @Test
+    void shouldPassPacketsOfBatchIndividually() {
+        final EmbeddedChannel channel = new EmbeddedChannel(TunPacketBatchUnroller.INSTANCE);
+        final TunPacket packet1 = packet(Unpooled.buffer(20));
+        final TunPacket packet2 = packet(Unpooled.buffer(20));
+        final ByteBuf buf1 = packet1.content();
+
+        channel.writeInbound(TunPacketBatch.newInstance().add(packet1).add(packet2));
+
+        assertSame(packet1, channel.readInbound());
+        assertSame(packet2, channel.readInbound());
+        assertNull(channel.readInbound());
+        // batch's reference has been released, the one passed on is left
+        assertEquals(1, buf1.refCnt());
+        packet1.release();
+        packet2.release();
+    }
+
+    @Test
+    void shouldPassOtherMessages() {
+        final EmbeddedChannel channel = new EmbeddedChannel(TunPacketBatchUnroller.INSTANCE);
+        final TunPacket packet = packet(Unpooled.buffer(20));
+
+        channel.writeInbound(packet);
+
+        assertSame(packet, channel.readInbound());
+        packet.release();
+    }
+}
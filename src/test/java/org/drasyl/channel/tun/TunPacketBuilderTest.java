@@ -0,0 +1,198 @@
+/*
+ * Copyright (c) 2021-2022 Heiko Bornholdt and Kevin Röbert
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ * IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM,
+ * DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR
+ * OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE
+ * OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package org.drasyl.channel.tun;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufAllocator;
+import io.netty.buffer.CompositeByteBuf;
+import io.netty.buffer.PooledByteBufAllocator;
+import io.netty.buffer.Unpooled;
+import org.junit.jupiter.api.Test;
+
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+
+import static org.drasyl.channel.tun.InetProtocol.TCP;
+import static org.drasyl.channel.tun.InetProtocol.UDP;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class TunPacketBuilderTest {
+    private static final ByteBufAllocator ALLOC = PooledByteBufAllocator.DEFAULT;
+
+    private static ByteBuf writeUdp(final ByteBuf buf) {
+        return buf.writeShort(53).writeShort(5353).writeShort(12).writeShort(0)
+                .writeBytes(new byte[]{ 1, 2, 3, 4 });
+    }
+
+    @Test
+    void shouldWriteIpv4HeaderIntoHeadroom() throws UnknownHostException {
+        final TunPacketBuilder builder = TunPacketBuilder.ipv4()
+                .protocol(UDP)
+                .sourceAddress(InetAddress.getByName("10.0.0.1"))
+                .destinationAddress(InetAddress.getByName("10.0.0.2"))
+                .identification(4711)
+                .dontFragment(true)
+                .dscp(46)
+                .hopLimit(32)
+                .transportChecksum(true);
+        final ByteBuf payload = writeUdp(builder.payloadBuffer(ALLOC, 12));
+        final long payloadAddress = payload.hasMemoryAddress() ? payload.memoryAddress() : -1;
+
+        final Tun4Packet packet = (Tun4Packet) builder.build(ALLOC, payload);
+        try {
+            final ByteBuf content = packet.content();
+            assertFalse(content instanceof CompositeByteBuf);
+            assertEquals(0, content.readerIndex());
+            assertEquals(32, content.readableBytes());
+            if (payloadAddress != -1) {
+                assertEquals(payloadAddress, content.memoryAddress());
+            }
+            assertEquals(32, packet.totalLength());
+            assertEquals(4711, packet.identification());
+            assertEquals(46, packet.dscp());
+            assertEquals(32, packet.timeToLive());
+            assertEquals(17, packet.protocol());
+            assertEquals("10.0.0.1", packet.sourceAddress().getHostAddress());
+            assertEquals("10.0.0.2", packet.destinationAddress().getHostAddress());
+            assertTrue(packet.verifyChecksum());
+
+            final UdpView udp = new UdpView().wrap(packet);
+            assertEquals(5353, udp.destinationPort());
+            assertTrue(udp.verifyChecksum());
+        }
+        finally {
+            packet.release();
+        }
+        assertEquals(0, payload.refCnt());
+    }
+
+    @Test
+    void shouldSliceIfHeadroomIsLargerThanHeader() {
+        final ByteBuf payload = Unpooled.buffer(64).writeZero(30).readerIndex(30);
+        writeUdp(payload);
+
+        final TunPacket packet = TunPacketBuilder.ipv4()
+                .protocol(UDP)
+                .sourceAddress(0x0a000001)
+                .destinationAddress(0x0a000002)
+                .build(ALLOC, payload);
+        try {
+            final ByteBuf content = packet.content();
+            assertEquals(0, content.readerIndex());
+            assertEquals(32, content.readableBytes());
+            assertEquals(1, payload.refCnt());
+
+            // shares memory with payload
+            payload.setByte(40, 42);
+            assertEquals(42, content.getByte(30));
+        }
+        finally {
+            packet.release();
+        }
+        assertEquals(0, payload.refCnt());
+    }
+
+    @Test
+    void shouldBuildCompositeIfPayloadLacksHeadroom() throws UnknownHostException {
+        final ByteBuf payload = writeUdp(Unpooled.buffer());
+
+        final Tun6Packet packet = (Tun6Packet) TunPacketBuilder.ipv6()
+                .protocol(UDP)
+                .sourceAddress(InetAddress.getByName("2001:db8::1"))
+                .destinationAddress(InetAddress.getByName("2001:db8::2"))
+                .flowLabel(0x12345)
+                .ecn(1)
+                .transportChecksum(true)
+                .build(ALLOC, payload);
+        try {
+            final CompositeByteBuf content = assertInstanceOf(CompositeByteBuf.class, packet.content());
+            assertEquals(2, content.numComponents());
+            assertEquals(52, content.readableBytes());
+            assertEquals(6, packet.version());
+            assertEquals(12, packet.payloadLength());
+            assertEquals(17, packet.nextHeader());
+            assertEquals(0x12345, packet.flowLabel());
+            assertEquals(1, packet.ecn());
+            assertEquals(64, packet.hopLimit());
+            assertEquals(InetAddress.getByName("2001:db8::1"), packet.sourceAddress());
+            assertEquals(InetAddress.getByName("2001:db8::2"), packet.destinationAddress());
+            assertTrue(new UdpView().wrap(packet).verifyChecksum());
+        }
+        finally {
+            packet.release();
+        }
+        assertEquals(0, payload.refCnt());
+    }
+
+    @Test
+    void replyToShouldSwapAddresses() {
+        final TunPacketBuilder requestBuilder = TunPacketBuilder.ipv4()
+                .protocol(TCP)
+                .sourceAddress(0x0a000001)
+                .destinationAddress(0x0a000002);
+        final TunPacket request = requestBuilder.build(ALLOC, Unpooled.buffer().writeZero(20));
+        try {
+            final TunPacketBuilder replyBuilder = TunPacketBuilder.replyTo(request);
+            final ByteBuf segment = replyBuilder.payloadBuffer(ALLOC, 20)
+                    .writeShort(80).writeShort(50000).writeInt(1).writeInt(2)
+                    .writeByte(5 << 4).writeByte(TcpView.TCP_FLAG_ACK).writeShort(1024).writeShort(0).writeShort(0);
+            final Tun4Packet reply = (Tun4Packet) replyBuilder.transportChecksum(true).build(ALLOC, segment);
+            try {
+                assertEquals(0x0a000002, reply.sourceAddressAsInt());
+                assertEquals(0x0a000001, reply.destinationAddressAsInt());
+                assertEquals(6, reply.protocol());
+                assertTrue(new TcpView().wrap(reply).verifyChecksum());
+            }
+            finally {
+                reply.release();
+            }
+        }
+        finally {
+            request.release();
+        }
+    }
+
+    @Test
+    void shouldReleasePayloadOnInvalidInput() {
+        final ByteBuf payload = Unpooled.buffer().writeZero(4);
+        final TunPacketBuilder builder = TunPacketBuilder.ipv4().protocol(TCP).transportChecksum(true);
+        assertThrows(IllegalArgumentException.class, () -> builder.build(ALLOC, payload));
+        assertEquals(0, payload.refCnt());
+
+        final ByteBuf payload2 = Unpooled.buffer().writeZero(4);
+        final TunPacketBuilder builder2 = TunPacketBuilder.ipv6();
+        assertThrows(IllegalStateException.class, () -> builder2.build(ALLOC, payload2));
+        assertEquals(0, payload2.refCnt());
+    }
+
+    @Test
+    void shouldRejectAddressesOfOtherVersion() throws UnknownHostException {
+        final TunPacketBuilder builder = TunPacketBuilder.ipv4();
+        final InetAddress address = InetAddress.getByName("2001:db8::1");
+        assertThrows(IllegalArgumentException.class, () -> builder.sourceAddress(address));
+        assertThrows(IllegalArgumentException.class, () -> builder.destinationAddress(1L, 2L));
+    }
+}
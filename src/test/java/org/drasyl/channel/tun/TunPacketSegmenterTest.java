@@ -0,0 +1,192 @@
+/*
+ * Copyright (c) 2021-2022 Heiko Bornholdt and Kevin Röbert
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ * IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM,
+ * DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR
+ * OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE
+ * OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package org.drasyl.channel.tun;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufAllocator;
+import io.netty.buffer.Unpooled;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.drasyl.channel.tun.VirtioNetHeader.VIRTIO_NET_HDR_F_NEEDS_CSUM;
+import static org.drasyl.channel.tun.VirtioNetHeader.VIRTIO_NET_HDR_GSO_NONE;
+import static org.drasyl.channel.tun.VirtioNetHeader.VIRTIO_NET_HDR_GSO_TCPV4;
+import static org.drasyl.channel.tun.VirtioNetHeader.VIRTIO_NET_HDR_GSO_UDP;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class TunPacketSegmenterTest {
+    @Test
+    void shouldSegmentTcp4SuperPacket() {
+        final ByteBuf buf = tcp4Packet(2500, 0x19); // ACK, PSH, FIN
+        final VirtioNetHeader header = new VirtioNetHeader(VIRTIO_NET_HDR_F_NEEDS_CSUM, VIRTIO_NET_HDR_GSO_TCPV4, 40, 1000, 20, 16);
+        final Tun4Packet packet = new Tun4Packet(buf, header);
+
+        final List<TunPacket> segments = TunPacketSegmenter.segment(ByteBufAllocator.DEFAULT, packet);
+        try {
+            assertEquals(3, segments.size());
+            final int[] lengths = { 1040, 1040, 540 };
+            for (int i = 0; i < segments.size(); i++) {
+                final Tun4Packet segment = (Tun4Packet) segments.get(i);
+                final ByteBuf content = segment.content();
+
+                assertEquals(lengths[i], content.readableBytes());
+                assertEquals(lengths[i], segment.totalLength());
+                assertEquals(0x1234 + i, segment.identification());
+                assertTrue(segment.verifyChecksum());
+                assertEquals(1000 + i * 1000L, content.getUnsignedInt(24));
+                assertEquals(i == 2 ? 0x19 : 0x10, content.getUnsignedByte(33));
+                assertEquals(0xffff, tcpChecksum(content));
+                // payload
+                assertEquals((40 + i * 1000) & 0xff, content.getUnsignedByte(40));
+            }
+        }
+        finally {
+            segments.forEach(TunPacket::release);
+            packet.release();
+        }
+    }
+
+    @Test
+    void shouldCompleteChecksumOfNonGsoPacket() {
+        final ByteBuf buf = tcp4Packet(100, 0x18);
+        final VirtioNetHeader header = new VirtioNetHeader(VIRTIO_NET_HDR_F_NEEDS_CSUM, VIRTIO_NET_HDR_GSO_NONE, 0, 0, 20, 16);
+        final Tun4Packet packet = new Tun4Packet(buf, header);
+
+        final List<TunPacket> segments = TunPacketSegmenter.segment(ByteBufAllocator.DEFAULT, packet);
+        try {
+            assertEquals(1, segments.size());
+            assertSame(buf, segments.get(0).content());
+            assertSame(VirtioNetHeader.NONE, segments.get(0).virtioNetHeader());
+            assertEquals(0xffff, tcpChecksum(packet.content()));
+        }
+        finally {
+            segments.forEach(TunPacket::release);
+            packet.release();
+        }
+        assertEquals(0, buf.refCnt());
+    }
+
+    @Test
+    void shouldNotCompleteChecksumTwice() {
+        final ByteBuf buf = tcp4Packet(100, 0x18);
+        final VirtioNetHeader header = new VirtioNetHeader(VIRTIO_NET_HDR_F_NEEDS_CSUM, VIRTIO_NET_HDR_GSO_NONE, 0, 0, 20, 16);
+        final Tun4Packet packet = new Tun4Packet(buf, header);
+
+        final List<TunPacket> segments = TunPacketSegmenter.segment(ByteBufAllocator.DEFAULT, packet);
+        final List<TunPacket> resegments = TunPacketSegmenter.segment(ByteBufAllocator.DEFAULT, segments.get(0));
+        try {
+            assertEquals(1, resegments.size());
+            assertSame(segments.get(0), resegments.get(0));
+            assertEquals(0xffff, tcpChecksum(buf));
+        }
+        finally {
+            resegments.forEach(TunPacket::release);
+            segments.forEach(TunPacket::release);
+            packet.release();
+        }
+    }
+
+    @Test
+    void shouldKeepReservedRoomOfNonGsoPacket() {
+        final ByteBuf frame = Unpooled.buffer();
+        frame.writeZero(32).writeBytes(tcp4Packet(100, 0x18)).writeZero(16);
+        final ByteBuf buf = frame.slice(32, 140);
+        final VirtioNetHeader header = new VirtioNetHeader(VIRTIO_NET_HDR_F_NEEDS_CSUM, VIRTIO_NET_HDR_GSO_NONE, 0, 0, 20, 16);
+        final Tun4Packet packet = new Tun4Packet(buf, header);
+        packet.reserve(frame, 0, 32, 16);
+
+        final List<TunPacket> segments = TunPacketSegmenter.segment(ByteBufAllocator.DEFAULT, packet);
+        try {
+            assertEquals(32, segments.get(0).headroom());
+            assertEquals(16, segments.get(0).tailroom());
+        }
+        finally {
+            segments.forEach(TunPacket::release);
+            packet.release();
+        }
+    }
+
+    @Test
+    void shouldRejectUnsupportedGsoType() {
+        final VirtioNetHeader header = new VirtioNetHeader(0, VIRTIO_NET_HDR_GSO_UDP, 0, 1000, 0, 0);
+        final Tun4Packet packet = new Tun4Packet(tcp4Packet(100, 0x18), header);
+        try {
+            assertThrows(IllegalArgumentException.class, () -> TunPacketSegmenter.segment(ByteBufAllocator.DEFAULT, packet));
+        }
+        finally {
+            packet.release();
+        }
+    }
+
+    /**
+     * Creates an IPv4/TCP packet from 10.0.0.1:1234 to 10.0.0.2:80 with sequence number 1000 and
+     * the pseudo header sum placed in the tcp checksum field (like the kernel does for packets with
+     * pending checksums).
+     */
+    private static ByteBuf tcp4Packet(final int payloadLength, final int tcpFlags) {
+        final ByteBuf buf = Unpooled.buffer();
+        // ip header
+        buf.writeByte(0x45).writeByte(0).writeShort(40 + payloadLength)
+                .writeShort(0x1234).writeShort(0x4000)
+                .writeByte(64).writeByte(6).writeShort(0)
+                .writeBytes(new byte[]{ 10, 0, 0, 1 }).writeBytes(new byte[]{ 10, 0, 0, 2 });
+        buf.setShort(10, Tun4Packet.calculateChecksum(buf));
+        // tcp header
+        buf.writeShort(1234).writeShort(80)
+                .writeInt(1000).writeInt(0)
+                .writeByte(5 << 4).writeByte(tcpFlags).writeShort(65535)
+                .writeShort(0).writeShort(0);
+        // payload
+        for (int i = 0; i < payloadLength; i++) {
+            buf.writeByte(40 + i);
+        }
+        buf.setShort(36, (int) fold(pseudoHeaderSum(buf)));
+        return buf;
+    }
+
+    private static long pseudoHeaderSum(final ByteBuf buf) {
+        long sum = 0;
+        for (int i = 12; i < 20; i += 2) {
+            sum += buf.getUnsignedShort(i);
+        }
+        return sum + 6 + buf.readableBytes() - 20;
+    }
+
+    private static int tcpChecksum(final ByteBuf buf) {
+        long sum = pseudoHeaderSum(buf);
+        for (int i = 20; i < buf.readableBytes(); i += 2) {
+            sum += i + 1 < buf.readableBytes() ? buf.getUnsignedShort(i) : buf.getUnsignedByte(i) << 8;
+        }
+        return (int) fold(sum);
+    }
+
+    private static long fold(long sum) {
+        while ((sum >>> 16) != 0) {
+            sum = (sum & 0xffff) + (sum >>> 16);
+        }
+        return sum;
+    }
+}
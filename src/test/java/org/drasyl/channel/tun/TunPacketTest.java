@@ -0,0 +1,122 @@
+/*
+ * Copyright (c) 2021-2022 Heiko Bornholdt and Kevin Röbert
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ * IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM,
+ * DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR
+ * OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE
+ * OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package org.drasyl.channel.tun;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import io.netty.util.IllegalReferenceCountException;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class TunPacketTest {
+    @Test
+    void newInstanceShouldCreatePacketOfMatchingVersion() {
+        final TunPacket packet4 = TunPacket.newInstance(Unpooled.buffer(20).writeByte(0x45).writeZero(19));
+        final TunPacket packet6 = TunPacket.newInstance(Unpooled.buffer(40).writeByte(0x60).writeZero(39), VirtioNetHeader.NONE);
+
+        assertTrue(packet4 instanceof Tun4Packet);
+        assertTrue(packet6 instanceof Tun6Packet);
+        assertSame(VirtioNetHeader.NONE, packet6.virtioNetHeader());
+
+        packet4.release();
+        packet6.release();
+    }
+
+    @Test
+    void newInstanceShouldRejectUnknownProtocol() {
+        final ByteBuf buf = Unpooled.buffer(20).writeByte(0x10).writeZero(19);
+
+        assertThrows(IllegalArgumentException.class, () -> TunPacket.newInstance(buf));
+        assertThrows(IllegalArgumentException.class, () -> TunPacket.newInstance(Unpooled.EMPTY_BUFFER));
+    }
+
+    @Test
+    void shouldNotBeAccessibleAfterRelease() {
+        final TunPacket packet = TunPacket.newInstance(Unpooled.buffer(20).writeByte(0x45).writeZero(19));
+
+        packet.release();
+
+        assertEquals(0, packet.refCnt());
+        assertThrows(IllegalReferenceCountException.class, packet::content);
+        assertThrows(IllegalReferenceCountException.class, packet::release);
+    }
+
+    @Test
+    void encapsulationBufferShouldExposeReservedRoom() {
+        final ByteBuf frame = Unpooled.buffer(8 + 20 + 4);
+        frame.setByte(8, 0x45);
+        final TunPacket packet = TunPacket.newInstance(frame.slice(8, 20));
+        packet.reserve(frame, 0, 8, 4);
+
+        final ByteBuf buf = packet.encapsulationBuffer();
+        buf.readerIndex(0).setInt(0, 0xcafebabe);
+        buf.writerIndex(buf.capacity()).setInt(28, 0xdeadbeef);
+
+        assertEquals(8, packet.headroom());
+        assertEquals(4, packet.tailroom());
+        assertEquals(32, buf.readableBytes());
+        assertEquals(0x45, buf.getByte(8));
+        assertEquals(0xcafebabe, frame.getInt(0));
+        assertEquals(0xdeadbeef, frame.getInt(28));
+        assertEquals(2, frame.refCnt());
+
+        buf.release();
+        packet.release();
+        assertEquals(0, frame.refCnt());
+    }
+
+    @Test
+    void encapsulationBufferShouldDuplicateContentWithoutReservedRoom() {
+        final TunPacket packet = TunPacket.newInstance(Unpooled.buffer(20).writeByte(0x45).writeZero(19));
+
+        final ByteBuf buf = packet.encapsulationBuffer();
+
+        assertEquals(0, packet.headroom());
+        assertEquals(0, packet.tailroom());
+        assertNotSame(packet.content(), buf);
+        assertEquals(packet.content(), buf);
+        assertEquals(2, packet.refCnt());
+
+        buf.release();
+        packet.release();
+    }
+
+    @Test
+    void releaseShouldResetReservedRoom() {
+        final ByteBuf frame = Unpooled.buffer(40);
+        frame.setByte(8, 0x45);
+        final TunPacket packet = TunPacket.newInstance(frame.slice(8, 20));
+        packet.reserve(frame, 0, 8, 12);
+
+        packet.release();
+        final TunPacket reused = TunPacket.newInstance(Unpooled.buffer(20).writeByte(0x45).writeZero(19));
+
+        assertEquals(0, reused.headroom());
+        assertEquals(0, reused.tailroom());
+        reused.release();
+    }
+}
@@ -0,0 +1,119 @@
+/*
+ * Copyright (c) 2021-2022 Heiko Bornholdt and Kevin Röbert
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ * IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM,
+ * DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR
+ * OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE
+ * OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package org.drasyl.channel.tun;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class UdpViewTest {
+    /**
+     * Builds an IPv6 packet carrying a hop-by-hop options header, a fragment header with the
+     * given fragment offset and a UDP datagram with 4 bytes payload, followed by 2 bytes padding.
+     */
+    private static TunPacket ipv6Packet(final int fragmentOffset) {
+        final ByteBuf buf = Unpooled.buffer()
+                // ipv6 header, payload length 28, next header hop-by-hop
+                .writeInt(0x60000000).writeShort(28).writeByte(0).writeByte(64)
+                .writeZero(32)
+                // hop-by-hop options, next header fragment
+                .writeByte(44).writeByte(0).writeZero(6)
+                // fragment header, next header udp
+                .writeByte(17).writeByte(0).writeShort(fragmentOffset << 3).writeInt(1)
+                // udp
+                .writeShort(53).writeShort(5353).writeShort(12).writeShort(0xbeef)
+                .writeBytes(new byte[]{ 1, 2, 3, 4 })
+                // padding not covered by payload length
+                .writeZero(2);
+        return TunPacket.newInstance(buf);
+    }
+
+    @Test
+    void shouldWalkIpv6ExtensionHeaders() {
+        final TunPacket packet = ipv6Packet(0);
+        try {
+            final UdpView udp = new UdpView().wrap(packet);
+
+            assertEquals(6, udp.ipVersion());
+            assertEquals(56, udp.offset());
+            assertEquals(53, udp.sourcePort());
+            assertEquals(5353, udp.destinationPort());
+            assertEquals(12, udp.udpLength());
+            assertEquals(0xbeef, udp.checksum());
+            assertEquals(12, udp.length());
+            assertEquals(4, udp.payloadLength());
+            assertEquals(4, udp.payload().getByte(3));
+        }
+        finally {
+            packet.release();
+        }
+    }
+
+    @Test
+    void shouldRejectNonFirstFragments() {
+        final TunPacket packet = ipv6Packet(1);
+        try {
+            assertFalse(new UdpView().tryWrap(packet));
+        }
+        finally {
+            packet.release();
+        }
+    }
+
+    @Test
+    void shouldRejectEncryptedPayload() {
+        final TunPacket packet = ipv6Packet(0);
+        try {
+            // encapsulating security payload
+            packet.content().setByte(Tun6Packet.INET6_NEXT_HEADER, 50);
+
+            assertFalse(new UdpView().tryWrap(packet));
+        }
+        finally {
+            packet.release();
+        }
+    }
+
+    @Test
+    void settersShouldUpdateChecksumIncrementally() {
+        final TunPacket packet = ipv6Packet(0);
+        try {
+            final UdpView udp = new UdpView().wrap(packet);
+            udp.updateChecksum();
+
+            udp.setSourcePort(1053);
+            udp.setDestinationPort(5354);
+
+            assertEquals(1053, udp.sourcePort());
+            assertEquals(5354, udp.destinationPort());
+            assertTrue(udp.verifyChecksum());
+            assertEquals(InetChecksum.calculate(udp), udp.checksum());
+        }
+        finally {
+            packet.release();
+        }
+    }
+}
@@ -0,0 +1,69 @@
+/*
+ * Copyright (c) 2021-2022 Heiko Bornholdt and Kevin Röbert
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ * IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM,
+ * DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR
+ * OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE
+ * OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package org.drasyl.channel.tun;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import org.junit.jupiter.api.Test;
+
+import static org.drasyl.channel.tun.VirtioNetHeader.VIRTIO_NET_HDR_F_NEEDS_CSUM;
+import static org.drasyl.channel.tun.VirtioNetHeader.VIRTIO_NET_HDR_GSO_ECN;
+import static org.drasyl.channel.tun.VirtioNetHeader.VIRTIO_NET_HDR_GSO_TCPV6;
+import static org.drasyl.channel.tun.VirtioNetHeader.VIRTIO_NET_HDR_LENGTH;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class VirtioNetHeaderTest {
+    @Test
+    void shouldEncodeAndDecode() {
+        final VirtioNetHeader header = new VirtioNetHeader(VIRTIO_NET_HDR_F_NEEDS_CSUM, VIRTIO_NET_HDR_GSO_TCPV6 | VIRTIO_NET_HDR_GSO_ECN, 60, 1440, 40, 16);
+        final ByteBuf buf = Unpooled.buffer(VIRTIO_NET_HDR_LENGTH).writerIndex(VIRTIO_NET_HDR_LENGTH);
+        try {
+            final VirtioNetHeader decoded = VirtioNetHeader.decode(header.encode(buf, 0), 0);
+
+            assertEquals(header, decoded);
+            assertTrue(decoded.isGso());
+            assertTrue(decoded.needsChecksum());
+            assertEquals(1440, decoded.gsoSize());
+        }
+        finally {
+            buf.release();
+        }
+    }
+
+    @Test
+    void shouldDecodeEmptyHeaderAsNone() {
+        final ByteBuf buf = Unpooled.buffer(VIRTIO_NET_HDR_LENGTH).writeZero(VIRTIO_NET_HDR_LENGTH);
+        try {
+            final VirtioNetHeader decoded = VirtioNetHeader.decode(buf, 0);
+
+            assertSame(VirtioNetHeader.NONE, decoded);
+            assertFalse(decoded.isGso());
+            assertFalse(decoded.needsChecksum());
+        }
+        finally {
+            buf.release();
+        }
+    }
+}
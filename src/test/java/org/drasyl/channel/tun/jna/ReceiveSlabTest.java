@@ -0,0 +1,123 @@
+/*
+ * Copyright (c) 2021-2022 Heiko Bornholdt and Kevin Röbert
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ * IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM,
+ * DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR
+ * OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE
+ * OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package org.drasyl.channel.tun.jna;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.UnpooledByteBufAllocator;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class ReceiveSlabTest {
+    private final UnpooledByteBufAllocator alloc = new UnpooledByteBufAllocator(true);
+
+    @Test
+    void shouldHandOutSlicesOfSameSlab() {
+        final ReceiveSlab slab = new ReceiveSlab(1024);
+
+        final ByteBuf first = slab.next(alloc, 100);
+        first.setBytes(first.writerIndex(), new byte[]{ 1, 2, 3 });
+        final ByteBuf firstPacket = slab.commit(3);
+        final ByteBuf second = slab.next(alloc, 100);
+        second.setByte(second.writerIndex(), 4);
+        final ByteBuf secondPacket = slab.commit(1);
+
+        assertSame(firstPacket.unwrap(), secondPacket.unwrap());
+        assertEquals(3, firstPacket.readableBytes());
+        assertEquals(1, firstPacket.getByte(0));
+        assertEquals(3, firstPacket.getByte(2));
+        assertEquals(1, secondPacket.readableBytes());
+        assertEquals(4, secondPacket.getByte(0));
+        // packets start 8-byte aligned
+        assertEquals(firstPacket.memoryAddress() + 8, secondPacket.memoryAddress());
+
+        slab.release();
+        firstPacket.release();
+        secondPacket.release();
+    }
+
+    @Test
+    void shouldNotHandOutReservedRoom() {
+        final ReceiveSlab slab = new ReceiveSlab(1024);
+
+        final ByteBuf first = slab.next(alloc, 16 + 100 + 8);
+        final int firstFrame = first.writerIndex();
+        final ByteBuf firstPacket = slab.commit(16, 10, 8);
+        final ByteBuf second = slab.next(alloc, 16 + 100 + 8);
+        final int secondFrame = second.writerIndex();
+        final ByteBuf secondPacket = slab.commit(16, 10, 8);
+
+        assertEquals(first.memoryAddress() + firstFrame + 16, firstPacket.memoryAddress());
+        assertEquals(10, firstPacket.readableBytes());
+        // frames are 8-byte aligned and do not overlap
+        assertEquals(firstFrame + 40, secondFrame);
+        assertEquals(second.memoryAddress() + secondFrame + 16, secondPacket.memoryAddress());
+
+        slab.release();
+        firstPacket.release();
+        secondPacket.release();
+    }
+
+    @Test
+    void shouldFreeSlabWhenLastPacketIsReleased() {
+        final ReceiveSlab slab = new ReceiveSlab(1024);
+
+        slab.next(alloc, 100);
+        final ByteBuf firstPacket = slab.commit(50);
+        slab.next(alloc, 100);
+        final ByteBuf secondPacket = slab.commit(50);
+        final ByteBuf slabBuf = firstPacket.unwrap();
+
+        slab.release();
+        assertEquals(2, slabBuf.refCnt());
+        firstPacket.release();
+        assertEquals(1, slabBuf.refCnt());
+        secondPacket.release();
+        assertEquals(0, slabBuf.refCnt());
+    }
+
+    @Test
+    void shouldAllocateNewSlabIfCurrentIsFull() {
+        final ReceiveSlab slab = new ReceiveSlab(256);
+
+        slab.next(alloc, 200);
+        final ByteBuf firstPacket = slab.commit(100);
+        slab.next(alloc, 200);
+        final ByteBuf secondPacket = slab.commit(100);
+
+        assertNotSame(firstPacket.unwrap(), secondPacket.unwrap());
+        // first slab is no longer referenced by receive slab
+        assertEquals(1, firstPacket.unwrap().refCnt());
+
+        slab.release();
+        firstPacket.release();
+        secondPacket.release();
+    }
+
+    @Test
+    void shouldRejectNonPositiveSlabSize() {
+        assertThrows(IllegalArgumentException.class, () -> new ReceiveSlab(0));
+    }
+}
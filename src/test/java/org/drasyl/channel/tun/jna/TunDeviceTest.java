@@ -0,0 +1,147 @@
+/*
+ * Copyright (c) 2021-2022 Heiko Bornholdt and Kevin Röbert
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ * IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM,
+ * DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR
+ * OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE
+ * OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package org.drasyl.channel.tun.jna;
+
+import io.netty.buffer.ByteBufAllocator;
+import io.netty.buffer.Unpooled;
+import org.drasyl.channel.tun.TunAddress;
+import org.drasyl.channel.tun.TunPacket;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class TunDeviceTest {
+    private final ByteBufAllocator alloc = ByteBufAllocator.DEFAULT;
+
+    @Test
+    void readPacketsShouldReadSinglePacket() throws IOException {
+        final TestDevice device = new TestDevice(0);
+        device.reads.add(packet(1));
+        device.reads.add(packet(2));
+        final TunPacket[] out = new TunPacket[4];
+
+        assertEquals(1, device.readPackets(alloc, out, out.length));
+        assertEquals(1, out[0].content().getByte(19));
+        assertNull(out[1]);
+        out[0].release();
+        assertEquals(1, device.readPackets(alloc, out, out.length));
+        out[0].release();
+        assertEquals(0, device.readPackets(alloc, out, out.length));
+    }
+
+    @Test
+    void writePacketsShouldWriteAllPacketsInOrderAndFlush() throws IOException {
+        final TestDevice device = new TestDevice(0);
+        final TunPacket[] msgs = { packet(0), packet(1), packet(2) };
+
+        device.writePackets(alloc, msgs, msgs.length);
+
+        assertEquals(List.of(0, 1, 2), device.written);
+        assertEquals(1, device.flushes);
+        for (final TunPacket msg : msgs) {
+            assertEquals(0, msg.refCnt());
+        }
+    }
+
+    @Test
+    void writePacketsShouldReportPacketsWrittenBeforeFailure() {
+        final TestDevice device = new TestDevice(3);
+        final TunPacket[] msgs = { packet(0), packet(1), packet(2), packet(3), packet(4) };
+
+        final PartialWriteException e = assertThrows(PartialWriteException.class, () -> device.writePackets(alloc, msgs, msgs.length));
+
+        assertEquals(2, e.written());
+        assertSame(device.failure, e.getCause());
+        assertEquals(List.of(0, 1), device.written);
+        assertEquals(0, device.flushes);
+        for (final TunPacket msg : msgs) {
+            assertEquals(0, msg.refCnt());
+        }
+    }
+
+    @Test
+    void writePacketsShouldRethrowIfFirstPacketFails() {
+        final TestDevice device = new TestDevice(1);
+        final TunPacket[] msgs = { packet(0), packet(1) };
+
+        assertSame(device.failure, assertThrows(IOException.class, () -> device.writePackets(alloc, msgs, msgs.length)));
+        assertEquals(0, msgs[0].refCnt());
+        assertEquals(0, msgs[1].refCnt());
+    }
+
+    private static TunPacket packet(final int marker) {
+        final byte[] bytes = new byte[20];
+        bytes[0] = 0x45;
+        bytes[3] = 20;
+        bytes[19] = (byte) marker;
+        return TunPacket.newInstance(Unpooled.wrappedBuffer(bytes));
+    }
+
+    private static class TestDevice extends AbstractTunDevice {
+        final List<TunPacket> reads = new ArrayList<>();
+        final List<Integer> written = new ArrayList<>();
+        final IOException failure = new IOException("Write failed.");
+        final int failAt;
+        int writes;
+        int flushes;
+
+        TestDevice(final int failAt) {
+            super(new TunAddress("test"));
+            this.failAt = failAt;
+        }
+
+        @Override
+        public TunPacket readPacket(final ByteBufAllocator alloc) {
+            return reads.isEmpty() ? null : reads.remove(0);
+        }
+
+        @Override
+        public void writePacket(final ByteBufAllocator alloc, final TunPacket msg) throws IOException {
+            try {
+                if (++writes == failAt) {
+                    throw failure;
+                }
+                written.add((int) msg.content().getByte(19));
+            }
+            finally {
+                msg.release();
+            }
+        }
+
+        @Override
+        public void flush() {
+            flushes++;
+        }
+
+        @Override
+        public void close() {
+            closed = true;
+        }
+    }
+}
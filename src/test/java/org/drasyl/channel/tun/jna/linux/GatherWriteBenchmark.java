@@ -0,0 +1,113 @@
+/*
+ * Copyright (c) 2021-2022 Heiko Bornholdt and Kevin Röbert
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ * IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM,
+ * DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR
+ * OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE
+ * OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package org.drasyl.channel.tun.jna.linux;
+
+import com.sun.jna.NativeLong;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.CompositeByteBuf;
+import io.netty.buffer.PooledByteBufAllocator;
+import org.drasyl.channel.tun.Tun4Packet;
+import org.drasyl.channel.tun.TunAddress;
+import org.drasyl.channel.tun.jna.shared.LibC;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.concurrent.TimeUnit;
+
+import static org.drasyl.channel.tun.jna.linux.Fcntl.O_RDWR;
+
+/**
+ * Compares writing a packet consisting of multiple direct components (e.g. an encapsulation
+ * header followed by its payload) by flattening it into a single {@link ByteBuffer} first with
+ * {@link LinuxTunDevice#writePacket(io.netty.buffer.ByteBufAllocator, org.drasyl.channel.tun.TunPacket)},
+ * which passes each component to writev. Writes to {@code /dev/null}, so that the numbers are
+ * dominated by the copy and not by the kernel. Run on Linux via {@link #main(String[])} with the
+ * test classpath.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@SuppressWarnings({ "java:S2142", "java:S106" })
+public class GatherWriteBenchmark {
+    @Param({ "2", "3" })
+    private int components;
+    @Param({ "1500", "9000" })
+    private int length;
+    private final PooledByteBufAllocator alloc = new PooledByteBufAllocator(true);
+    private int nullFd;
+    private LinuxTunDevice device;
+    private CompositeByteBuf content;
+
+    @Setup
+    public void setup() {
+        nullFd = LibC.open("/dev/null", O_RDWR);
+        device = new LinuxTunDevice(nullFd, 65535, false, false, new TunAddress("null"));
+        content = alloc.compositeDirectBuffer(components);
+        content.addComponent(true, alloc.directBuffer(20).writeByte(0x45).writeZero(19));
+        for (int i = 1; i < components; i++) {
+            final int componentLength = (length - 20) / (components - 1);
+            content.addComponent(true, alloc.directBuffer(componentLength).writeZero(componentLength));
+        }
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        content.release();
+        device.close();
+    }
+
+    @Benchmark
+    public int writeFlattened() {
+        final ByteBuffer byteBuffer = content.nioBuffer();
+        return LibC.write(nullFd, byteBuffer, new NativeLong(byteBuffer.remaining()));
+    }
+
+    @Benchmark
+    public ByteBuf writeGathered() throws IOException {
+        device.writePacket(alloc, Tun4Packet.newInstance(content.retain()));
+        return content;
+    }
+
+    public static void main(final String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder()
+                .include(GatherWriteBenchmark.class.getSimpleName())
+                .build()).run();
+    }
+}
@@ -0,0 +1,219 @@
+/*
+ * Copyright (c) 2021-2022 Heiko Bornholdt and Kevin Röbert
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ * IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM,
+ * DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR
+ * OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE
+ * OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package org.drasyl.channel.tun.jna.linux;
+
+import io.netty.buffer.PooledByteBufAllocator;
+import org.drasyl.channel.tun.ReceiveCopyPolicy;
+import org.drasyl.channel.tun.Tun4Packet;
+import org.drasyl.channel.tun.TunAddress;
+import org.drasyl.channel.tun.TunPacket;
+import org.drasyl.channel.tun.jna.PartialWriteException;
+import org.drasyl.channel.tun.jna.TunDevice;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIf;
+
+import java.io.IOException;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Connects an {@link IoUringTunDevice} to a {@link LinuxTunDevice} via a socket pair.
+ */
+@EnabledIf("org.drasyl.channel.tun.jna.linux.IoUringTunDevice#isAvailable")
+class IoUringTunDeviceTest {
+    private final PooledByteBufAllocator alloc = new PooledByteBufAllocator(true);
+    private LinuxTunDevice peer;
+    private IoUringTunDevice device;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        final int[] fds = new int[2];
+        SocketPair.socketpair(SocketPair.AF_UNIX, SocketPair.SOCK_SEQPACKET, 0, fds);
+        peer = new LinuxTunDevice(fds[0], 1500, false, false, new TunAddress("peer"));
+        device = new IoUringTunDevice(new LinuxTunDevice(fds[1], 1500, false, false, new TunAddress("uring")));
+    }
+
+    @AfterEach
+    void tearDown() throws IOException {
+        device.close();
+        peer.close();
+    }
+
+    private TunPacket packet(final int marker) {
+        return Tun4Packet.newInstance(alloc.buffer(20).writeByte(0x45).writeZero(18).writeByte(marker));
+    }
+
+    private static int marker(final TunPacket packet) {
+        try {
+            return packet.content().getByte(19);
+        }
+        finally {
+            packet.release();
+        }
+    }
+
+    @Test
+    void shouldPassPacketsInBothDirections() throws IOException {
+        device.writePacket(alloc, packet(1));
+        device.flush();
+        assertEquals(1, marker(peer.readPacket(alloc)));
+
+        peer.writePacket(alloc, packet(2));
+        assertEquals(2, marker(device.readPacket(alloc)));
+    }
+
+    @Test
+    void shouldWriteBatchExceedingWriteBuffers() throws IOException {
+        // more packets than write buffers, so buffers must be reused within the batch
+        final TunPacket[] batch = new TunPacket[50];
+        for (int i = 0; i < batch.length; i++) {
+            batch[i] = packet(i);
+        }
+        device.writePackets(alloc, batch, batch.length);
+
+        for (int i = 0; i < batch.length; i++) {
+            assertEquals(i, marker(peer.readPacket(alloc)));
+        }
+    }
+
+    @Test
+    void shouldRejectPacketExceedingWriteBuffer() throws IOException {
+        final TunPacket tooLarge = Tun4Packet.newInstance(alloc.buffer(2000).writeByte(0x45).writeZero(1999));
+        assertThrows(IOException.class, () -> device.writePacket(alloc, tooLarge));
+        assertEquals(0, tooLarge.refCnt());
+
+        // write buffer has been returned
+        device.writePacket(alloc, packet(1));
+        device.flush();
+        assertEquals(1, marker(peer.readPacket(alloc)));
+    }
+
+    @Test
+    void shouldFailReadOnClosedDevice() throws IOException {
+        device.close();
+
+        final TunPacket[] out = new TunPacket[16];
+        assertThrows(IOException.class, () -> device.readPacket(alloc));
+        assertThrows(IOException.class, () -> device.readPackets(alloc, out, out.length));
+        assertThrows(IOException.class, () -> device.writePacket(alloc, packet(1)));
+    }
+
+    @Test
+    void shouldReportReadFailureAfterPacketsReadBefore() throws IOException {
+        peer.writePacket(alloc, packet(1));
+        // unknown protocol, fails to decode
+        peer.writePacket(alloc, new Tun4Packet(alloc.buffer(20).writeByte(0x10).writeZero(19)));
+        peer.writePacket(alloc, packet(3));
+
+        final TunPacket[] out = new TunPacket[16];
+        assertEquals(1, device.readPackets(alloc, out, out.length));
+        assertEquals(1, marker(out[0]));
+        assertThrows(IOException.class, () -> device.readPackets(alloc, out, out.length));
+        assertEquals(1, device.readPackets(alloc, out, out.length));
+        assertEquals(3, marker(out[0]));
+    }
+
+    @Test
+    void shouldHandOutReadBuffersUntilReleased() throws IOException {
+        // more packets than read buffers, so released buffers must be used again
+        for (int i = 0; i < 100; i++) {
+            peer.writePacket(alloc, packet(i));
+            final TunPacket packet = device.readPacket(alloc);
+            assertTrue(packet.content().hasMemoryAddress());
+            assertEquals(1, device.lentReadBuffers());
+            assertEquals(i, marker(packet));
+            assertEquals(0, device.lentReadBuffers());
+        }
+    }
+
+    @Test
+    void shouldCopyReadBuffersIfPolicyRequiresIt() throws IOException {
+        device.setReceiveCopyPolicy(ReceiveCopyPolicy.ALWAYS);
+        peer.writePacket(alloc, packet(1));
+
+        final TunPacket packet = device.readPacket(alloc);
+        assertEquals(0, device.lentReadBuffers());
+        assertEquals(1, marker(packet));
+    }
+
+    @Test
+    void writePacketsShouldReportPacketsWrittenBeforeFailure() throws IOException {
+        final TunPacket tooLarge = Tun4Packet.newInstance(alloc.buffer(2000).writeByte(0x45).writeZero(1999));
+        final TunPacket[] batch = { packet(0), packet(1), tooLarge, packet(3) };
+
+        final PartialWriteException e = assertThrows(PartialWriteException.class, () -> device.writePackets(alloc, batch, batch.length));
+
+        assertEquals(2, e.written());
+        for (final TunPacket packet : batch) {
+            assertEquals(0, packet.refCnt());
+        }
+        assertEquals(0, marker(peer.readPacket(alloc)));
+        assertEquals(1, marker(peer.readPacket(alloc)));
+        // subsequent writes are not affected
+        device.writePackets(alloc, new TunPacket[]{ packet(4) }, 1);
+        assertEquals(4, marker(peer.readPacket(alloc)));
+    }
+
+    @Test
+    void closeShouldFreeReadBuffersOnceOutstandingReadsHaveBeenCancelled() throws IOException {
+        device.close();
+
+        assertTrue(device.isReadBufferFreed());
+    }
+
+    @Test
+    void closeShouldKeepReadBuffersHeldByApplication() throws IOException {
+        peer.writePacket(alloc, packet(7));
+        final TunPacket packet = device.readPacket(alloc);
+
+        device.close();
+
+        assertFalse(device.isReadBufferFreed());
+        assertEquals(7, marker(packet));
+        assertTrue(device.isReadBufferFreed());
+    }
+
+    @Test
+    @EnabledIf("org.drasyl.channel.tun.jna.linux.LinuxTunDeviceTest#isTunAvailable")
+    void openQueuesShouldUseIoUringForEveryQueue() throws IOException {
+        final List<TunDevice> queues = IoUringTunDevice.openQueues("uringtest0", 0, 2, false);
+        try {
+            assertEquals(2, queues.size());
+            for (final TunDevice queue : queues) {
+                assertInstanceOf(IoUringTunDevice.class, queue);
+                assertEquals("uringtest0", queue.localAddress().ifName());
+            }
+        }
+        finally {
+            for (final TunDevice queue : queues) {
+                queue.close();
+            }
+        }
+    }
+}
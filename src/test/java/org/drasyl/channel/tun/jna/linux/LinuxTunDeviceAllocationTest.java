@@ -0,0 +1,141 @@
+/*
+ * Copyright (c) 2021-2022 Heiko Bornholdt and Kevin Röbert
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ * IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM,
+ * DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR
+ * OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE
+ * OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package org.drasyl.channel.tun.jna.linux;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.PooledByteBufAllocator;
+import io.netty.util.ResourceLeakDetector;
+import io.netty.util.concurrent.FastThreadLocalThread;
+import org.drasyl.channel.tun.Tun4Packet;
+import org.drasyl.channel.tun.TunAddress;
+import org.drasyl.channel.tun.TunPacket;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledOnOs;
+import org.junit.jupiter.api.condition.OS;
+
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.FutureTask;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+
+/**
+ * Ensures that writing and reading packets does not allocate any heap memory once warmed up. Two
+ * {@link LinuxTunDevice}s are connected via a {@code SOCK_SEQPACKET} socket pair, which preserves
+ * packet boundaries like a tun device does.
+ */
+@EnabledOnOs(OS.LINUX)
+class LinuxTunDeviceAllocationTest {
+    private static final int WARMUP_PACKETS = 50_000;
+    private static final int PACKETS = 100_000;
+    private static final int PACKET_LENGTH = 100;
+    private static ResourceLeakDetector.Level leakDetectionLevel;
+    private final PooledByteBufAllocator alloc = new PooledByteBufAllocator(true);
+
+    @BeforeAll
+    static void disableLeakDetection() {
+        // leak detection samples buffers and allocates a tracker for each sample
+        leakDetectionLevel = ResourceLeakDetector.getLevel();
+        ResourceLeakDetector.setLevel(ResourceLeakDetector.Level.DISABLED);
+    }
+
+    @AfterAll
+    static void restoreLeakDetection() {
+        ResourceLeakDetector.setLevel(leakDetectionLevel);
+    }
+
+    @Test
+    void shouldNotAllocate() throws Exception {
+        assertEquals(0, bytesAllocatedPerPacket(false, 0, 0));
+    }
+
+    @Test
+    void shouldNotAllocateInOffloadMode() throws Exception {
+        assertEquals(0, bytesAllocatedPerPacket(true, 0, 0));
+    }
+
+    @Test
+    void shouldNotAllocateWithReceiveSlab() throws Exception {
+        assertEquals(0, bytesAllocatedPerPacket(false, 64 * 1024, 0));
+    }
+
+    @Test
+    void shouldNotAllocateWithReceiveRoom() throws Exception {
+        assertEquals(0, bytesAllocatedPerPacket(false, 0, 64));
+        assertEquals(0, bytesAllocatedPerPacket(false, 64 * 1024, 64));
+    }
+
+    private long bytesAllocatedPerPacket(final boolean offload,
+                                         final int receiveSlabSize,
+                                         final int receiveRoom) throws Exception {
+        final com.sun.management.ThreadMXBean threadMXBean = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        assumeTrue(threadMXBean.isThreadAllocatedMemorySupported());
+        threadMXBean.setThreadAllocatedMemoryEnabled(true);
+
+        final int[] fds = new int[2];
+        SocketPair.socketpair(SocketPair.AF_UNIX, SocketPair.SOCK_SEQPACKET, 0, fds);
+        final LinuxTunDevice writer = new LinuxTunDevice(fds[0], 1500, offload, true, new TunAddress("writer"));
+        final LinuxTunDevice reader = new LinuxTunDevice(fds[1], 1500, offload, true, new TunAddress("reader"));
+        reader.setReceiveSlabSize(receiveSlabSize);
+        reader.setReceiveRoom(receiveRoom, receiveRoom);
+        try {
+            // measure on a netty thread, like the event loop, so that pooled buffers are cached
+            final FutureTask<Long> task = new FutureTask<>(() -> {
+                final long threadId = Thread.currentThread().getId();
+                final byte[] template = new byte[PACKET_LENGTH];
+                template[0] = 0x45;
+
+                echo(writer, reader, template, WARMUP_PACKETS);
+                final long before = threadMXBean.getThreadAllocatedBytes(threadId);
+                echo(writer, reader, template, PACKETS);
+                final long after = threadMXBean.getThreadAllocatedBytes(threadId);
+
+                return (after - before) / PACKETS;
+            });
+            new FastThreadLocalThread(task).start();
+            return task.get();
+        }
+        finally {
+            writer.close();
+            reader.close();
+        }
+    }
+
+    private void echo(final LinuxTunDevice writer,
+                      final LinuxTunDevice reader,
+                      final byte[] template,
+                      final int packets) throws IOException {
+        for (int i = 0; i < packets; i++) {
+            final ByteBuf buf = alloc.directBuffer(PACKET_LENGTH).writeBytes(template);
+            writer.writePacket(alloc, Tun4Packet.newInstance(buf));
+
+            final TunPacket packet = reader.readPacket(alloc);
+            if (packet == null || packet.content().readableBytes() != PACKET_LENGTH) {
+                throw new IOException("Packet got lost: " + packet);
+            }
+            packet.release();
+        }
+    }
+}
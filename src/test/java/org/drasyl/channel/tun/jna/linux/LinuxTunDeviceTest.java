@@ -0,0 +1,289 @@
+/*
+ * Copyright (c) 2021-2022 Heiko Bornholdt and Kevin Röbert
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ * IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM,
+ * DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR
+ * OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE
+ * OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package org.drasyl.channel.tun.jna.linux;
+
+import com.sun.jna.LastErrorException;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufAllocator;
+import io.netty.buffer.ByteBufUtil;
+import io.netty.buffer.CompositeByteBuf;
+import io.netty.buffer.PooledByteBufAllocator;
+import org.drasyl.channel.tun.Tun4Packet;
+import org.drasyl.channel.tun.TunAddress;
+import org.drasyl.channel.tun.TunPacket;
+import org.drasyl.channel.tun.VirtioNetHeader;
+import org.drasyl.channel.tun.jna.TunDevice;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIf;
+import org.junit.jupiter.api.condition.EnabledOnOs;
+import org.junit.jupiter.api.condition.OS;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.stream.Stream;
+
+import static org.drasyl.channel.tun.VirtioNetHeader.VIRTIO_NET_HDR_LENGTH;
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class LinuxTunDeviceTest {
+    private final PooledByteBufAllocator alloc = new PooledByteBufAllocator(true);
+
+    @Test
+    void decodePacketShouldNotCopy() throws IOException {
+        final ByteBuf buf = alloc.directBuffer(1500).writeByte(0x45).writeZero(19);
+        final long memoryAddress = buf.memoryAddress();
+
+        final TunPacket packet = LinuxTunDevice.decodePacket(buf, false);
+        try {
+            assertTrue(packet instanceof Tun4Packet);
+            assertSame(VirtioNetHeader.NONE, packet.virtioNetHeader());
+            assertEquals(memoryAddress, packet.content().memoryAddress());
+            assertEquals(20, packet.content().readableBytes());
+            assertEquals(1500, buf.capacity());
+        }
+        finally {
+            packet.release();
+        }
+    }
+
+    @Test
+    void decodePacketShouldSkipVirtioNetHeaderWithoutCopy() throws IOException {
+        final ByteBuf buf = alloc.directBuffer(1500).writeZero(VIRTIO_NET_HDR_LENGTH).writeByte(0x60).writeZero(39);
+        final long memoryAddress = buf.memoryAddress();
+
+        final TunPacket packet = LinuxTunDevice.decodePacket(buf, true);
+        try {
+            assertEquals(6, packet.version());
+            assertEquals(memoryAddress + VIRTIO_NET_HDR_LENGTH, packet.content().memoryAddress());
+            assertEquals(40, packet.content().readableBytes());
+        }
+        finally {
+            packet.release();
+        }
+    }
+
+    @Test
+    void decodePacketShouldReleaseBufferOfUnknownProtocol() {
+        final ByteBuf buf = alloc.directBuffer(1500).writeByte(0x10).writeZero(19);
+
+        assertThrows(IOException.class, () -> LinuxTunDevice.decodePacket(buf, false));
+        assertEquals(0, buf.refCnt());
+    }
+
+    @Test
+    @EnabledOnOs(OS.LINUX)
+    void readPacketShouldReserveRoom() throws IOException {
+        assertReceiveRoom(alloc, false, 0, 0);
+    }
+
+    @Test
+    @EnabledOnOs(OS.LINUX)
+    void readPacketShouldReserveRoomInReceiveSlab() throws IOException {
+        assertReceiveRoom(alloc, false, 4096, 0);
+    }
+
+    @Test
+    @EnabledOnOs(OS.LINUX)
+    void readPacketShouldReserveRoomInOffloadMode() throws IOException {
+        assertReceiveRoom(alloc, true, 0, 0);
+    }
+
+    @Test
+    @EnabledOnOs(OS.LINUX)
+    void readPacketShouldReserveRoomAroundVirtioNetHeaderInHeapBuffers() throws IOException {
+        // without vectored io, the virtio net header is read into the headroom
+        assertReceiveRoom(new PooledByteBufAllocator(false), true, 0, VIRTIO_NET_HDR_LENGTH);
+    }
+
+    @Test
+    @EnabledOnOs(OS.LINUX)
+    void writePacketShouldGatherCompositeContent() throws IOException {
+        assertCompositeWrite(false, true);
+    }
+
+    @Test
+    @EnabledOnOs(OS.LINUX)
+    void writePacketShouldGatherCompositeContentInOffloadMode() throws IOException {
+        assertCompositeWrite(true, true);
+    }
+
+    @Test
+    @EnabledOnOs(OS.LINUX)
+    void writePacketShouldFlattenCompositeContentWithHeapComponents() throws IOException {
+        assertCompositeWrite(false, false);
+        assertCompositeWrite(true, false);
+    }
+
+    @Test
+    @EnabledIf("isTunAvailable")
+    void openQueuesShouldAttachAllQueuesToSameDevice() throws IOException {
+        final List<TunDevice> queues = LinuxTunDevice.openQueues("mqtest0", 0, 3, false);
+        try {
+            assertEquals(3, queues.size());
+            assertEquals(3, queues.stream().mapToInt(queue -> ((LinuxTunDevice) queue).fd()).distinct().count());
+            for (final TunDevice queue : queues) {
+                assertEquals("mqtest0", queue.localAddress().ifName());
+            }
+            // IFF_MULTI_QUEUE
+            final int flags = Integer.decode(Files.readString(Path.of("/sys/class/net/mqtest0/tun_flags")).trim());
+            assertNotEquals(0, flags & 0x0100);
+        }
+        finally {
+            for (final TunDevice queue : queues) {
+                queue.close();
+            }
+        }
+
+        // device is removed together with its last queue
+        assertFalse(Files.exists(Path.of("/sys/class/net/mqtest0")));
+    }
+
+    @Test
+    @EnabledIf("isTunAvailable")
+    void openQueuesShouldCloseAttachedQueuesIfAttachingFails() throws IOException {
+        final long openFds = openFileDescriptors();
+
+        // the kernel attaches no more than 256 queues to a device
+        assertThrows(LastErrorException.class, () -> LinuxTunDevice.openQueues("mqtest1", 0, 257, false));
+
+        assertEquals(openFds, openFileDescriptors());
+        assertFalse(Files.exists(Path.of("/sys/class/net/mqtest1")));
+    }
+
+    @Test
+    @EnabledIf("isTunAvailable")
+    void openQueuesShouldCloseAttachedQueuesIfMtuCannotBeSet() throws IOException {
+        final long openFds = openFileDescriptors();
+
+        assertThrows(LastErrorException.class, () -> LinuxTunDevice.openQueues("mqtest2", 1_000_000, 2, false));
+
+        assertEquals(openFds, openFileDescriptors());
+        assertFalse(Files.exists(Path.of("/sys/class/net/mqtest2")));
+    }
+
+    static boolean isTunAvailable() {
+        try {
+            LinuxTunDevice.open(null, 0).close();
+            return true;
+        }
+        catch (final IOException | RuntimeException | LinkageError e) {
+            return false;
+        }
+    }
+
+    private static long openFileDescriptors() throws IOException {
+        try (final Stream<Path> fds = Files.list(Path.of("/proc/self/fd"))) {
+            return fds.count();
+        }
+    }
+
+    private void assertCompositeWrite(final boolean offload, final boolean direct) throws IOException {
+        final int[] fds = new int[2];
+        SocketPair.socketpair(SocketPair.AF_UNIX, SocketPair.SOCK_SEQPACKET, 0, fds);
+        final LinuxTunDevice writer = new LinuxTunDevice(fds[0], 1500, offload, true, new TunAddress("writer"));
+        final LinuxTunDevice reader = new LinuxTunDevice(fds[1], 1500, offload, true, new TunAddress("reader"));
+        try {
+            // ip header, transport header and payload in separate components
+            final CompositeByteBuf content = alloc.compositeDirectBuffer(3).addComponents(true,
+                    alloc.directBuffer(20).writeByte(0x45).writeZero(19),
+                    alloc.directBuffer(8).writeLong(0x0102030405060708L),
+                    direct ? alloc.directBuffer(100).writeZero(99).writeByte(42) : alloc.heapBuffer(100).writeZero(99).writeByte(42));
+            final byte[] expected = ByteBufUtil.getBytes(content);
+            writer.writePacket(alloc, Tun4Packet.newInstance(content));
+
+            final TunPacket packet = reader.readPacket(alloc);
+            try {
+                assertNotNull(packet);
+                assertArrayEquals(expected, ByteBufUtil.getBytes(packet.content()));
+                assertSame(VirtioNetHeader.NONE, packet.virtioNetHeader());
+            }
+            finally {
+                packet.release();
+            }
+            assertEquals(0, content.refCnt());
+        }
+        finally {
+            writer.close();
+            reader.close();
+        }
+    }
+
+    private static void assertReceiveRoom(final ByteBufAllocator alloc,
+                                          final boolean offload,
+                                          final int receiveSlabSize,
+                                          final int extraHeadroom) throws IOException {
+        final int[] fds = new int[2];
+        SocketPair.socketpair(SocketPair.AF_UNIX, SocketPair.SOCK_SEQPACKET, 0, fds);
+        final LinuxTunDevice writer = new LinuxTunDevice(fds[0], 1500, offload, true, new TunAddress("writer"));
+        final LinuxTunDevice reader = new LinuxTunDevice(fds[1], 1500, offload, true, new TunAddress("reader"));
+        reader.setReceiveSlabSize(receiveSlabSize);
+        reader.setReceiveRoom(32, 16);
+        try {
+            for (int i = 0; i < 2; i++) {
+                writer.writePacket(alloc, Tun4Packet.newInstance(alloc.buffer(20).writeByte(0x45).writeZero(18).writeByte(i)));
+            }
+            final TunPacket first = reader.readPacket(alloc);
+            final TunPacket second = reader.readPacket(alloc);
+            assertNotNull(first);
+            assertNotNull(second);
+
+            final ByteBuf firstBuf = first.encapsulationBuffer();
+            final ByteBuf secondBuf = second.encapsulationBuffer();
+            try {
+                assertEquals(32 + extraHeadroom, first.headroom());
+                assertEquals(16, first.tailroom());
+                assertEquals(32 + extraHeadroom, firstBuf.readerIndex());
+                assertEquals(20, firstBuf.readableBytes());
+                assertEquals(firstBuf.readerIndex() + 20 + 16, firstBuf.capacity());
+                assertEquals(0, firstBuf.getByte(firstBuf.writerIndex() - 1));
+                assertEquals(1, secondBuf.getByte(secondBuf.writerIndex() - 1));
+
+                // room may be overwritten without affecting any packet
+                firstBuf.setZero(0, firstBuf.readerIndex());
+                firstBuf.setBytes(firstBuf.writerIndex(), new byte[16]);
+                secondBuf.setZero(0, secondBuf.readerIndex());
+                assertEquals(0x45, first.content().getByte(0));
+                assertEquals(0x45, second.content().getByte(0));
+                assertEquals(1, second.content().getByte(19));
+            }
+            finally {
+                firstBuf.release();
+                secondBuf.release();
+                first.release();
+                second.release();
+            }
+        }
+        finally {
+            writer.close();
+            reader.close();
+        }
+    }
+}
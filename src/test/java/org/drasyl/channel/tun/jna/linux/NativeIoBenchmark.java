@@ -0,0 +1,112 @@
+/*
+ * Copyright (c) 2021-2022 Heiko Bornholdt and Kevin Röbert
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ * IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM,
+ * DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR
+ * OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE
+ * OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package org.drasyl.channel.tun.jna.linux;
+
+import com.sun.jna.NativeLong;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import org.drasyl.channel.tun.jna.shared.LibC;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.TimeUnit;
+
+import static org.drasyl.channel.tun.jna.linux.Fcntl.O_RDWR;
+
+/**
+ * Compares the per-call overhead of the JNA {@link ByteBuffer}/{@link NativeLong} path with the
+ * address-based {@link NativeIo} binding. Reads from {@code /dev/zero} and writes to
+ * {@code /dev/null}, so that the numbers are dominated by the binding and not by the kernel.
+ * <p>
+ * {@link NativeIo} is backed by the Foreign Function & Memory API only if loaded from the
+ * multi-release jar on Java 22 or newer. Otherwise, both benchmarks use JNA and only the per-call
+ * allocations differ. Run on Linux via {@link #main(String[])} with the test classpath.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@SuppressWarnings({ "java:S2142", "java:S106" })
+public class NativeIoBenchmark {
+    @Param({ "64", "1500" })
+    private int length;
+    private int zeroFd;
+    private int nullFd;
+    private ByteBuf buf;
+
+    @Setup
+    public void setup() {
+        zeroFd = LibC.open("/dev/zero", O_RDWR);
+        nullFd = LibC.open("/dev/null", O_RDWR);
+        buf = Unpooled.directBuffer(length).writerIndex(length);
+        System.out.println("NativeIo binding: " + NativeIo.binding());
+    }
+
+    @TearDown
+    public void tearDown() {
+        LibC.close(zeroFd);
+        LibC.close(nullFd);
+        buf.release();
+    }
+
+    @Benchmark
+    public int readJna() {
+        return LibC.read(zeroFd, buf.nioBuffer(0, length), new NativeLong(length));
+    }
+
+    @Benchmark
+    public long readNativeIo() {
+        return NativeIo.read(zeroFd, buf.memoryAddress(), length);
+    }
+
+    @Benchmark
+    public int writeJna() {
+        return LibC.write(nullFd, buf.nioBuffer(0, length), new NativeLong(length));
+    }
+
+    @Benchmark
+    public long writeNativeIo() {
+        return NativeIo.write(nullFd, buf.memoryAddress(), length);
+    }
+
+    public static void main(final String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder()
+                .include(NativeIoBenchmark.class.getSimpleName())
+                .build()).run();
+    }
+}
@@ -0,0 +1,136 @@
+/*
+ * Copyright (c) 2021-2022 Heiko Bornholdt and Kevin Röbert
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT.
+ * IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM,
+ * DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR
+ * OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE
+ * OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package org.drasyl.channel.tun.jna.linux;
+
+import com.sun.jna.LastErrorException;
+import com.sun.jna.Memory;
+import com.sun.jna.Pointer;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufUtil;
+import io.netty.buffer.Unpooled;
+import org.drasyl.channel.tun.jna.shared.LibC;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfSystemProperty;
+import org.junit.jupiter.api.condition.EnabledOnOs;
+import org.junit.jupiter.api.condition.OS;
+
+import static org.drasyl.channel.tun.jna.linux.Errno.EAGAIN;
+import static org.drasyl.channel.tun.jna.linux.IfTun.TUNSETIFF;
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+/**
+ * Tests the {@link NativeIo} binding in use. When the tests are run against the multi-release jar
+ * on Java 22 or newer (see the {@code java22} profile), this is the Foreign Function & Memory API
+ * binding. Otherwise, it is the JNA binding.
+ */
+@EnabledOnOs(OS.LINUX)
+class NativeIoTest {
+    // from <errno.h>
+    private static final int EBADF = 9;
+    // struct iovec
+    private static final int IOVEC_SIZE = 16;
+    private final int[] fds = new int[2];
+    private ByteBuf src;
+    private ByteBuf dst;
+
+    @BeforeEach
+    void setUp() {
+        SocketPair.socketpair(SocketPair.AF_UNIX, SocketPair.SOCK_SEQPACKET, 0, fds);
+        src = Unpooled.directBuffer(8).writeLong(0x0102030405060708L);
+        dst = Unpooled.directBuffer(8);
+    }
+
+    @AfterEach
+    void tearDown() {
+        LibC.close(fds[0]);
+        LibC.close(fds[1]);
+        src.release();
+        dst.release();
+    }
+
+    @Test
+    @EnabledIfSystemProperty(named = "nativeIo.expectedBinding", matches = ".+")
+    void shouldUseExpectedBinding() {
+        assertEquals(System.getProperty("nativeIo.expectedBinding"), NativeIo.binding());
+    }
+
+    @Test
+    void readShouldReturnWrittenBytes() {
+        assertEquals(8, NativeIo.write(fds[0], src.memoryAddress(), 8));
+        assertEquals(8, NativeIo.read(fds[1], dst.memoryAddress(), 8));
+
+        assertArrayEquals(ByteBufUtil.getBytes(src, 0, 8), ByteBufUtil.getBytes(dst, 0, 8));
+    }
+
+    @Test
+    void readvShouldScatterWrittenBytesAndWritevShouldGatherThem() {
+        final Memory iov = new Memory(2L * IOVEC_SIZE);
+        iov.setLong(0, src.memoryAddress());
+        iov.setLong(8, 3);
+        iov.setLong(IOVEC_SIZE, src.memoryAddress() + 3);
+        iov.setLong(IOVEC_SIZE + 8L, 5);
+        assertEquals(8, NativeIo.writev(fds[0], Pointer.nativeValue(iov), 2));
+
+        iov.setLong(0, dst.memoryAddress() + 4);
+        iov.setLong(8, 4);
+        iov.setLong(IOVEC_SIZE, dst.memoryAddress());
+        iov.setLong(IOVEC_SIZE + 8L, 4);
+        assertEquals(8, NativeIo.readv(fds[1], Pointer.nativeValue(iov), 2));
+
+        assertEquals(0x0506070801020304L, dst.getLong(0));
+    }
+
+    @Test
+    void readShouldReportEagainOnEmptyNonBlockingDescriptor() {
+        LinuxTunDevice.setNonBlocking(fds[1], true);
+
+        assertEquals(-1, NativeIo.read(fds[1], dst.memoryAddress(), 8));
+        assertEquals(EAGAIN, NativeIo.errno());
+    }
+
+    @Test
+    void callsShouldReportErrnoOnInvalidDescriptor() {
+        final Memory iov = new Memory(IOVEC_SIZE);
+        iov.setLong(0, dst.memoryAddress());
+        iov.setLong(8, 8);
+
+        assertEquals(-1, NativeIo.read(-1, dst.memoryAddress(), 8));
+        assertEquals(EBADF, NativeIo.errno());
+        assertEquals(-1, NativeIo.write(-1, src.memoryAddress(), 8));
+        assertEquals(EBADF, NativeIo.errno());
+        assertEquals(-1, NativeIo.readv(-1, Pointer.nativeValue(iov), 1));
+        assertEquals(EBADF, NativeIo.errno());
+        assertEquals(-1, NativeIo.writev(-1, Pointer.nativeValue(iov), 1));
+        assertEquals(EBADF, NativeIo.errno());
+    }
+
+    @Test
+    void ioctlShouldThrowLastErrorException() {
+        final LastErrorException e = assertThrows(LastErrorException.class, () -> NativeIo.ioctl(-1, TUNSETIFF.longValue(), 0));
+
+        assertEquals(EBADF, e.getErrorCode());
+    }
+}